@@ -446,6 +446,26 @@ public class AdapterDeploymentContext {
         public int getMinTimeBetweenJwksRequests() {
             return delegate.getMinTimeBetweenJwksRequests();
         }
+
+        @Override
+        public void setJwksRefreshInterval(int jwksRefreshInterval) {
+            delegate.setJwksRefreshInterval(jwksRefreshInterval);
+        }
+
+        @Override
+        public int getJwksRefreshInterval() {
+            return delegate.getJwksRefreshInterval();
+        }
+
+        @Override
+        public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+            delegate.setVerifiedTokenCache(verifiedTokenCache);
+        }
+
+        @Override
+        public VerifiedTokenCache getVerifiedTokenCache() {
+            return delegate.getVerifiedTokenCache();
+        }
     }
 
     protected KeycloakUriBuilder getBaseBuilder(HttpFacade facade, String base) {
@@ -84,7 +84,7 @@ public class BearerTokenRequestAuthenticator {
     
     protected AuthOutcome authenticateToken(HttpFacade exchange, String tokenString) {
         try {
-            token = AdapterRSATokenVerifier.verifyToken(tokenString, deployment);
+            token = verifyToken(tokenString);
         } catch (VerificationException e) {
             log.error("Failed to verify token", e);
             challenge = challengeResponse(exchange, OIDCAuthenticationError.Reason.INVALID_TOKEN, "invalid_token", e.getMessage());
@@ -127,6 +127,23 @@ public class BearerTokenRequestAuthenticator {
         return AuthOutcome.AUTHENTICATED;
     }
 
+    protected AccessToken verifyToken(String tokenString) throws VerificationException {
+        VerifiedTokenCache cache = deployment.getVerifiedTokenCache();
+
+        if (cache == null) {
+            return AdapterRSATokenVerifier.verifyToken(tokenString, deployment);
+        }
+
+        AccessToken token = cache.get(tokenString, deployment.getNotBefore());
+
+        if (token == null) {
+            token = AdapterRSATokenVerifier.verifyToken(tokenString, deployment);
+            cache.put(tokenString, token);
+        }
+
+        return token;
+    }
+
     protected AuthChallenge clientCertChallenge() {
         return new AuthChallenge() {
             @Override
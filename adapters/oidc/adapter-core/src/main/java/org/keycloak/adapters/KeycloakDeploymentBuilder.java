@@ -105,6 +105,11 @@ public class KeycloakDeploymentBuilder {
         deployment.setRegisterNodePeriod(adapterConfig.getRegisterNodePeriod());
         deployment.setTokenMinimumTimeToLive(adapterConfig.getTokenMinimumTimeToLive());
         deployment.setMinTimeBetweenJwksRequests(adapterConfig.getMinTimeBetweenJwksRequests());
+        deployment.setJwksRefreshInterval(adapterConfig.getJwksRefreshInterval());
+
+        if (adapterConfig.getVerifiedTokenCacheSize() > 0) {
+            deployment.setVerifiedTokenCache(new VerifiedTokenCache(adapterConfig.getVerifiedTokenCacheSize()));
+        }
 
         if (realmKeyPem == null && adapterConfig.isBearerOnly() && adapterConfig.getAuthServerUrl() == null) {
             throw new IllegalArgumentException("For bearer auth, you must set the realm-public-key or auth-server-url");
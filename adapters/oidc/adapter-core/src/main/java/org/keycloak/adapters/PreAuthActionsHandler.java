@@ -23,6 +23,7 @@ import org.jboss.logging.Logger;
 import org.keycloak.adapters.authentication.ClientCredentialsProvider;
 import org.keycloak.adapters.authentication.JWTClientCredentialsProvider;
 import org.keycloak.adapters.rotation.AdapterRSATokenVerifier;
+import org.keycloak.adapters.rotation.JWKPublicKeyLocator;
 import org.keycloak.adapters.spi.HttpFacade;
 import org.keycloak.adapters.spi.UserSessionManagement;
 import org.keycloak.common.util.StreamUtil;
@@ -34,7 +35,6 @@ import org.keycloak.representations.VersionRepresentation;
 import org.keycloak.constants.AdapterConstants;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.representations.VersionRepresentation;
 import org.keycloak.representations.adapters.action.AdminAction;
 import org.keycloak.representations.adapters.action.LogoutAction;
@@ -178,6 +178,11 @@ public class PreAuthActionsHandler {
             PushNotBeforeAction action = JsonSerialization.readValue(token.getContent(), PushNotBeforeAction.class);
             if (!validateAction(action)) return;
             deployment.setNotBefore(action.getNotBefore());
+
+            // Not-before policy is pushed when keys of the realm are rotated, so the new keys are downloaded before tokens signed with them arrive
+            if (deployment.getPublicKeyLocator() instanceof JWKPublicKeyLocator) {
+                ((JWKPublicKeyLocator) deployment.getPublicKeyLocator()).prefetch(deployment);
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -215,7 +220,7 @@ public class PreAuthActionsHandler {
         try {
             JWSInput input = new JWSInput(token);
             PublicKey publicKey = AdapterRSATokenVerifier.getPublicKey(input.getHeader().getKeyId(), deployment);
-            if (RSAProvider.verify(input, publicKey)) {
+            if (input.verify(publicKey)) {
                 return input;
             }
         } catch (JWSInputException ignore) {
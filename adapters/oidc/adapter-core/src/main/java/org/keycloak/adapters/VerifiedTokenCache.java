@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.adapters;
+
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.common.util.Time;
+import org.keycloak.common.util.reflections.Reflections;
+import org.keycloak.representations.AccessToken;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of bearer tokens, which were already verified. API clients usually send the same token with many requests, so verifying
+ * the signature of the token is done just once for each token. Entries are keyed by SHA-256 digest of the token, so raw tokens
+ * are not kept in memory.
+ *
+ * The parsed token is cached and each request gets its own copy, so requests are free to set the claims of the token. The maps,
+ * sets and lists of the claims are copied as well, but the objects in them are shared, so they must not be changed. Cached token is
+ * returned just while it is active and issued after the not-before policy of the deployment. When the cache is full, least recently
+ * used token is evicted.
+ */
+public class VerifiedTokenCache {
+
+    // instance fields of the token and its superclasses, which are copied for each request
+    private static final List<Field> TOKEN_FIELDS = getTokenFields();
+
+    private final int maxSize;
+    private final Map<String, AccessToken> tokens;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public VerifiedTokenCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.tokens = Collections.synchronizedMap(new LinkedHashMap<String, AccessToken>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AccessToken> eldest) {
+                if (size() > maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @param tokenString the raw token
+     * @param notBefore not-before policy of the deployment
+     * @return copy of the verified token or null if the token is not cached, is not active anymore or was issued before notBefore
+     */
+    public AccessToken get(String tokenString, int notBefore) {
+        String key = digest(tokenString);
+        AccessToken token = tokens.get(key);
+
+        if (token == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        if (!token.isActive() || token.getIssuedAt() < notBefore) {
+            tokens.remove(key);
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+        return copy(token);
+    }
+
+    /**
+     * Caches copy of the token, so changes done to the token by the request don't affect the cache. Token must be already verified.
+     */
+    public void put(String tokenString, AccessToken token) {
+        if (maxSize <= 0 || token.getExpiration() == 0) {
+            // tokens without expiration would be cached forever
+            return;
+        }
+
+        tokens.put(digest(tokenString), copy(token));
+    }
+
+    public void clear() {
+        tokens.clear();
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private static String digest(String tokenString) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64Url.encode(digest.digest(tokenString.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static AccessToken copy(AccessToken token) {
+        AccessToken copy = new AccessToken();
+
+        try {
+            for (Field field : TOKEN_FIELDS) {
+                field.set(copy, copyValue(field.get(token)));
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            return new HashMap<>((Map<Object, Object>) value);
+        }
+        if (value instanceof Set) {
+            return new HashSet<>((Set<Object>) value);
+        }
+        if (value instanceof List) {
+            return new ArrayList<>((List<Object>) value);
+        }
+        if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        }
+        return value;
+    }
+
+    private static List<Field> getTokenFields() {
+        List<Field> fields = new ArrayList<>();
+
+        for (Field field : Reflections.getAllDeclaredFields(AccessToken.class)) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                fields.add(Reflections.setAccessible(field));
+            }
+        }
+
+        return fields;
+    }
+}
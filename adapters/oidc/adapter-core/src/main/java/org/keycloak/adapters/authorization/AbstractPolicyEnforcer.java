@@ -23,8 +23,6 @@ import org.keycloak.adapters.OIDCHttpFacade;
 import org.keycloak.adapters.spi.HttpFacade.Request;
 import org.keycloak.adapters.spi.HttpFacade.Response;
 import org.keycloak.authorization.client.AuthzClient;
-import org.keycloak.authorization.client.representation.ResourceRepresentation;
-import org.keycloak.authorization.client.resource.ProtectedResource;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.EnforcementMode;
@@ -32,7 +30,6 @@ import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathCon
 import org.keycloak.representations.idm.authorization.Permission;
 
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -47,16 +44,12 @@ public abstract class AbstractPolicyEnforcer {
     private final PolicyEnforcerConfig enforcerConfig;
     private final PolicyEnforcer policyEnforcer;
 
-    private List<PathConfig> paths;
     private AuthzClient authzClient;
-    private PathMatcher pathMatcher;
 
     public AbstractPolicyEnforcer(PolicyEnforcer policyEnforcer) {
         this.policyEnforcer = policyEnforcer;
         this.enforcerConfig = policyEnforcer.getEnforcerConfig();
         this.authzClient = policyEnforcer.getClient();
-        this.pathMatcher = new PathMatcher();
-        this.paths = new ArrayList<>(policyEnforcer.getPaths());
     }
 
     public AuthorizationContext authorize(OIDCHttpFacade httpFacade) {
@@ -69,13 +62,12 @@ public abstract class AbstractPolicyEnforcer {
         AccessToken accessToken = httpFacade.getSecurityContext().getToken();
         Request request = httpFacade.getRequest();
         Response response = httpFacade.getResponse();
-        String pathInfo = URI.create(request.getURI()).getPath().substring(1);
-        String path = pathInfo.substring(pathInfo.indexOf('/'), pathInfo.length());
-        PathConfig pathConfig = this.pathMatcher.matches(path, this.paths);
+        String path = getPath(request);
+        PathConfig actualPathConfig = this.policyEnforcer.resolvePath(path);
 
-        LOGGER.debugf("Checking permissions for path [%s] with config [%s].", request.getURI(), pathConfig);
+        LOGGER.debugf("Checking permissions for path [%s] with config [%s].", request.getURI(), actualPathConfig);
 
-        if (pathConfig == null) {
+        if (actualPathConfig == null) {
             if (EnforcementMode.PERMISSIVE.equals(enforcementMode)) {
                 return createAuthorizationContext(accessToken);
             }
@@ -86,7 +78,6 @@ public abstract class AbstractPolicyEnforcer {
             return createEmptyAuthorizationContext(false);
         }
 
-        PathConfig actualPathConfig = resolvePathConfig(pathConfig, request);
         Set<String> requiredScopes = getRequiredScopes(actualPathConfig, request);
 
         if (isAuthorized(actualPathConfig, requiredScopes, accessToken, httpFacade)) {
@@ -98,7 +89,7 @@ public abstract class AbstractPolicyEnforcer {
         }
 
         if (!challenge(actualPathConfig, requiredScopes, httpFacade)) {
-            LOGGER.debugf("Sending challenge to the client. Path [%s]", pathConfig);
+            LOGGER.debugf("Sending challenge to the client. Path [%s]", actualPathConfig);
             response.sendError(403, "Authorization failed.");
         }
 
@@ -125,8 +116,11 @@ public abstract class AbstractPolicyEnforcer {
         }
 
         List<Permission> permissions = authorization.getPermissions();
+        PermissionIndex permissionIndex = this.policyEnforcer.getPermissionIndex(authorization);
+        String parentId = actualPathConfig.isInstance() ? actualPathConfig.getParentConfig().getId() : null;
 
-        for (Permission permission : permissions) {
+        // only permissions for the resource of the path (or its parent) and permissions without resource can grant access
+        for (Permission permission : permissionIndex.find(actualPathConfig.getId(), parentId)) {
             if (permission.getResourceSetId() != null) {
                 if (isResourcePermission(actualPathConfig, permission)) {
                     if (actualPathConfig.isInstance() && !matchResourcePermission(actualPathConfig, permission)) {
@@ -136,7 +130,7 @@ public abstract class AbstractPolicyEnforcer {
                     if (hasResourceScopePermission(requiredScopes, permission, actualPathConfig)) {
                         LOGGER.debugf("Authorization GRANTED for path [%s]. Permissions [%s].", actualPathConfig, permissions);
                         if (request.getMethod().equalsIgnoreCase("DELETE") && actualPathConfig.isInstance()) {
-                            this.paths.remove(actualPathConfig);
+                            this.policyEnforcer.getPathCache().remove(getPath(request));
                         }
                         return true;
                     }
@@ -199,35 +193,6 @@ public abstract class AbstractPolicyEnforcer {
         };
     }
 
-    private PathConfig resolvePathConfig(PathConfig originalConfig, Request request) {
-        if (originalConfig.hasPattern()) {
-            String pathInfo = URI.create(request.getURI()).getPath().substring(1);
-            String path = pathInfo.substring(pathInfo.indexOf('/'), pathInfo.length());
-            ProtectedResource resource = this.authzClient.protection().resource();
-            Set<String> search = resource.findByFilter("uri=" + path);
-
-            if (!search.isEmpty()) {
-                // resource does exist on the server, cache it
-                ResourceRepresentation targetResource = resource.findById(search.iterator().next()).getResourceDescription();
-                PathConfig config = new PathConfig();
-
-                config.setId(targetResource.getId());
-                config.setName(targetResource.getName());
-                config.setType(targetResource.getType());
-                config.setPath(targetResource.getUri());
-                config.setScopes(originalConfig.getScopes());
-                config.setMethods(originalConfig.getMethods());
-                config.setParentConfig(originalConfig);
-
-                this.paths.add(config);
-
-                return config;
-            }
-        }
-
-        return originalConfig;
-    }
-
     private Set<String> getRequiredScopes(PathConfig pathConfig, Request request) {
         Set<String> requiredScopes = new HashSet<>();
 
@@ -245,7 +210,12 @@ public abstract class AbstractPolicyEnforcer {
     }
 
     private AuthorizationContext createAuthorizationContext(AccessToken accessToken) {
-        return new AuthorizationContext(accessToken, this.paths);
+        return new AuthorizationContext(accessToken, this.policyEnforcer.getPaths());
+    }
+
+    private String getPath(Request request) {
+        String pathInfo = URI.create(request.getURI()).getPath().substring(1);
+        return pathInfo.substring(pathInfo.indexOf('/'), pathInfo.length());
     }
 
     private boolean isResourcePermission(PathConfig actualPathConfig, Permission permission) {
@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.adapters.authorization;
+
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Bounded cache of the paths resolved through the protection API, keyed by the requested path. Least recently used entries are
+ * evicted when the cache is full and entries expire after the lifespan, so resources created or removed on the server are
+ * picked up eventually. Paths not known to the server are cached as well, so unknown paths don't hit the server on each request.
+ * They are kept separately with a shorter lifespan, so requests to many unknown paths don't evict the resolved paths and
+ * resources created for them are picked up sooner.
+ *
+ * Concurrent misses for the same path are coalesced, just one of the threads loads the path and the others wait for its result.
+ */
+class PathCache {
+
+    private final int maxEntries;
+    private final long lifespan;
+    private final long missLifespan;
+    private final Map<String, CacheEntry> entries;
+    private final Map<String, CacheEntry> misses;
+    private final ConcurrentMap<String, FutureTask<PathConfig>> loading = new ConcurrentHashMap<>();
+
+    PathCache(int maxEntries, long lifespan, long missLifespan) {
+        this.maxEntries = maxEntries;
+        this.lifespan = lifespan;
+        this.missLifespan = missLifespan;
+        this.entries = createMap(maxEntries);
+        this.misses = createMap(maxEntries);
+    }
+
+    /**
+     * Returns the cached path or loads it with the loader.
+     *
+     * @param path the requested path
+     * @param loader loads the configuration of the path from the server, returns null if there is no resource for the path
+     * @return the configuration of the path or null if there is no resource for the path
+     */
+    PathConfig get(final String path, final Callable<PathConfig> loader) {
+        CacheEntry entry = getEntry(path);
+
+        if (entry != null) {
+            return entry.config;
+        }
+
+        FutureTask<PathConfig> task = new FutureTask<>(new Callable<PathConfig>() {
+            @Override
+            public PathConfig call() throws Exception {
+                PathConfig config = loader.call();
+                put(path, config);
+                return config;
+            }
+        });
+        FutureTask<PathConfig> existing = loading.putIfAbsent(path, task);
+
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                // the result is already cached, so threads coming after removal don't load the path again
+                loading.remove(path, task);
+            }
+            existing = task;
+        }
+
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving path [" + path + "].", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Could not resolve path [" + path + "].", cause);
+        }
+    }
+
+    void remove(String path) {
+        synchronized (entries) {
+            entries.remove(path);
+        }
+        synchronized (misses) {
+            misses.remove(path);
+        }
+    }
+
+    /**
+     * @return configurations of the cached paths, which are known to the server
+     */
+    List<PathConfig> getPaths() {
+        List<PathConfig> paths = new ArrayList<>();
+        long now = Time.currentTimeMillis();
+
+        synchronized (entries) {
+            Iterator<CacheEntry> iterator = entries.values().iterator();
+
+            while (iterator.hasNext()) {
+                CacheEntry entry = iterator.next();
+
+                if (entry.isExpired(now)) {
+                    iterator.remove();
+                } else if (entry.config != null) {
+                    paths.add(entry.config);
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    int missCount() {
+        synchronized (misses) {
+            return misses.size();
+        }
+    }
+
+    private CacheEntry getEntry(String path) {
+        CacheEntry entry = getEntry(entries, path);
+        return entry != null ? entry : getEntry(misses, path);
+    }
+
+    private void put(String path, PathConfig config) {
+        if (maxEntries <= 0) {
+            return;
+        }
+
+        if (config != null) {
+            synchronized (entries) {
+                entries.put(path, new CacheEntry(config, Time.currentTimeMillis() + lifespan));
+            }
+        } else if (missLifespan > 0) {
+            synchronized (misses) {
+                misses.put(path, new CacheEntry(null, Time.currentTimeMillis() + missLifespan));
+            }
+        }
+    }
+
+    private static CacheEntry getEntry(Map<String, CacheEntry> map, String path) {
+        synchronized (map) {
+            CacheEntry entry = map.get(path);
+
+            if (entry != null && entry.isExpired(Time.currentTimeMillis())) {
+                map.remove(path);
+                return null;
+            }
+
+            return entry;
+        }
+    }
+
+    private static Map<String, CacheEntry> createMap(final int maxEntries) {
+        return new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static class CacheEntry {
+
+        private final PathConfig config;
+        private final long expiration;
+
+        private CacheEntry(PathConfig config, long expiration) {
+            this.config = config;
+            this.expiration = expiration;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiration;
+        }
+    }
+}
@@ -19,85 +19,249 @@ package org.keycloak.adapters.authorization;
 
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
+ * <p>Index of the path configurations, which finds the configuration of a requested path without going through all of them.
+ * A path is matched by a configuration if any of these applies:
+ *
+ * <ul>
+ *     <li>the path is the same as the configuration</li>
+ *     <li>the configuration ends with <code>/*</code> and the path starts with the configuration without the wildcards, or is the
+ *     same except for the trailing slash. Those are kept in a trie of path segments</li>
+ *     <li>the configuration contains <code>/*.</code> and the path ends with the suffix after the wildcard</li>
+ *     <li>the configuration contains <code>{</code> and the path starts with the configuration up to the brace. Those are kept
+ *     in the same trie, by the segments before the brace</li>
+ *     <li>the configuration is <code>/*</code> and nothing matched the path before it</li>
+ * </ul>
+ *
+ * <p>If more configurations match, they are considered in the order they were added and each of them replaces the previous one
+ * if it starts with the previous configuration without its wildcards.
+ *
+ * <p>The index is built once and never changes, so it can be used by concurrent requests without locking.
+ *
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
  */
 class PathMatcher {
 
     private static final String ANY_RESOURCE_PATTERN = "/*";
+    private static final String ANY_SUFFIX_PATTERN = "/*.";
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return Long.compare(o1.order, o2.order);
+        }
+    };
+
+    private final List<PathConfig> paths;
+    private final Map<String, List<Entry>> exactPaths = new HashMap<>();
+    private final Map<String, List<Entry>> suffixes = new HashMap<>();
+    // wildcard configurations by the path without the wildcards and the trailing slash
+    private final Map<String, List<Entry>> wildcardBases = new HashMap<>();
+    private final List<Entry> anyResource = new ArrayList<>();
+    private final Node root = new Node();
 
-    PathConfig matches(final String requestedUri, List<PathConfig> paths) {
-        PathConfig actualConfig = null;
+    PathMatcher(List<PathConfig> paths) {
+        this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
 
-        for (PathConfig entry : paths) {
-            String protectedUri = entry.getPath();
-            String selectedUri = null;
+        Map<PathConfig, Entry> entries = new IdentityHashMap<>();
+        long order = 0;
 
-            if (protectedUri.equals(ANY_RESOURCE_PATTERN) && actualConfig == null) {
-                selectedUri = protectedUri;
+        for (PathConfig pathConfig : paths) {
+            if (pathConfig.getPath() == null || entries.containsKey(pathConfig)) {
+                continue;
             }
 
-            int suffixIndex = protectedUri.indexOf(ANY_RESOURCE_PATTERN + ".");
+            Entry entry = new Entry(pathConfig, order++);
 
-            if (suffixIndex != -1) {
-                String protectedSuffix = protectedUri.substring(suffixIndex + ANY_RESOURCE_PATTERN.length());
+            entries.put(pathConfig, entry);
+            index(entry);
+        }
+    }
 
-                if (requestedUri.endsWith(protectedSuffix)) {
-                    selectedUri = protectedUri;
-                }
-            }
+    /**
+     * @return all the configurations in the order they were added
+     */
+    List<PathConfig> getPaths() {
+        return paths;
+    }
 
-            if (protectedUri.equals(requestedUri)) {
-                selectedUri = protectedUri;
-            }
+    PathConfig matches(String requestedUri) {
+        List<Entry> matches = new ArrayList<>();
 
-            if (protectedUri.endsWith(ANY_RESOURCE_PATTERN)) {
-                String formattedPattern = removeWildCardsFromUri(protectedUri);
+        addAll(matches, exactPaths.get(requestedUri));
+        addAll(matches, wildcardBases.get(requestedUri));
 
-                if (!formattedPattern.equals("/") && requestedUri.startsWith(formattedPattern)) {
-                    selectedUri = protectedUri;
-                }
+        for (int i = requestedUri.indexOf('.'); i != -1; i = requestedUri.indexOf('.', i + 1)) {
+            addAll(matches, suffixes.get(requestedUri.substring(i)));
+        }
 
-                if (!formattedPattern.equals("/") && formattedPattern.endsWith("/") && formattedPattern.substring(0, formattedPattern.length() - 1).equals(requestedUri)) {
-                    selectedUri = protectedUri;
-                }
+        Node node = root;
+        int start = 0;
+
+        node.match(requestedUri, 0, matches);
+
+        for (int slash = requestedUri.indexOf('/'); slash != -1; slash = requestedUri.indexOf('/', start)) {
+            node = node.children.get(requestedUri.substring(start, slash));
+
+            if (node == null) {
+                break;
             }
 
-            int startRegex = protectedUri.indexOf('{');
+            start = slash + 1;
+            node.match(requestedUri, start, matches);
+        }
 
-            if (startRegex != -1) {
-                String prefix = protectedUri.substring(0, startRegex);
+        Collections.sort(matches, ORDER);
 
-                if (requestedUri.startsWith(prefix)) {
-                    selectedUri = protectedUri;
-                }
+        if (!anyResource.isEmpty()) {
+            Entry any = anyResource.get(0);
+
+            // same as any other configuration, but applies only if nothing matched before it
+            if (matches.isEmpty() || matches.get(0).order > any.order) {
+                matches.add(0, any);
             }
+        }
+
+        Entry actual = null;
 
-            if (selectedUri != null) {
-                selectedUri = protectedUri;
+        for (Entry entry : matches) {
+            if (actual == null) {
+                actual = entry;
+            } else if (entry.path.startsWith(actual.pathWithoutWildcards)) {
+                actual = entry;
             }
+        }
 
-            if (selectedUri != null) {
-                if (actualConfig == null) {
-                    actualConfig = entry;
-                } else {
-                    if (actualConfig.equals(ANY_RESOURCE_PATTERN)) {
-                        actualConfig = entry;
-                    }
+        return actual == null ? null : actual.config;
+    }
 
-                    if (protectedUri.startsWith(removeWildCardsFromUri(actualConfig.getPath()))) {
-                        actualConfig = entry;
-                    }
-                }
+    private void index(Entry entry) {
+        String path = entry.path;
+
+        put(exactPaths, path, entry);
+
+        if (path.equals(ANY_RESOURCE_PATTERN)) {
+            anyResource.add(entry);
+        }
+
+        int suffixIndex = path.indexOf(ANY_SUFFIX_PATTERN);
+
+        if (suffixIndex != -1) {
+            put(suffixes, path.substring(suffixIndex + ANY_RESOURCE_PATTERN.length()), entry);
+        }
+
+        if (path.endsWith(ANY_RESOURCE_PATTERN) && !entry.pathWithoutWildcards.equals("/")) {
+            String prefix = entry.pathWithoutWildcards;
+
+            node(prefix).wildcards.add(entry);
+            put(wildcardBases, prefix.substring(0, prefix.length() - 1), entry);
+        }
+
+        int startRegex = path.indexOf('{');
+
+        if (startRegex != -1) {
+            String prefix = path.substring(0, startRegex);
+            String segments = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+
+            entry.templateRemainder = prefix.substring(segments.length());
+            node(segments).templates.add(entry);
+        }
+    }
+
+    // Node of the trie for the given prefix, which is either empty or ends with a slash
+    private Node node(String prefix) {
+        Node node = root;
+        int start = 0;
+
+        for (int slash = prefix.indexOf('/'); slash != -1; slash = prefix.indexOf('/', start)) {
+            String segment = prefix.substring(start, slash);
+            Node child = node.children.get(segment);
+
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
             }
+
+            node = child;
+            start = slash + 1;
         }
 
-        return actualConfig;
+        return node;
     }
 
-    private String removeWildCardsFromUri(String protectedUri) {
+    private static void put(Map<String, List<Entry>> index, String key, Entry entry) {
+        List<Entry> entries = index.get(key);
+
+        if (entries == null) {
+            entries = new ArrayList<>(1);
+            index.put(key, entries);
+        }
+
+        entries.add(entry);
+    }
+
+    private static void addAll(List<Entry> matches, List<Entry> entries) {
+        if (entries == null) {
+            return;
+        }
+
+        for (Entry entry : entries) {
+            if (!matches.contains(entry)) {
+                matches.add(entry);
+            }
+        }
+    }
+
+    private static String removeWildCardsFromUri(String protectedUri) {
         return protectedUri.replaceAll("/[*]", "/");
     }
+
+    private static class Entry {
+
+        private final PathConfig config;
+        private final String path;
+        private final String pathWithoutWildcards;
+        private final long order;
+
+        // part of the path before the brace, which follows the last slash
+        private String templateRemainder;
+
+        private Entry(PathConfig config, long order) {
+            this.config = config;
+            this.path = config.getPath();
+            this.pathWithoutWildcards = removeWildCardsFromUri(path);
+            this.order = order;
+        }
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        // wildcard configurations, which are the prefix of this node followed by wildcards
+        private final List<Entry> wildcards = new ArrayList<>(0);
+
+        // configurations with a template after the prefix of this node
+        private final List<Entry> templates = new ArrayList<>(0);
+
+        private void match(String requestedUri, int offset, List<Entry> matches) {
+            addAll(matches, wildcards);
+
+            for (Entry template : templates) {
+                if (requestedUri.startsWith(template.templateRemainder, offset)) {
+                    if (!matches.contains(template)) {
+                        matches.add(template);
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.adapters.authorization;
+
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Permissions of a token indexed by resource id, so checking the permissions for a path doesn't go through all of them.
+ */
+class PermissionIndex {
+
+    private final List<Permission> source;
+    private final List<Permission> permissions;
+    private final int size;
+    private final Map<String, List<Integer>> byResource = new HashMap<>();
+    private final List<Integer> withoutResource = new ArrayList<>();
+
+    PermissionIndex(List<Permission> permissions) {
+        this.source = permissions;
+        this.permissions = permissions == null ? Collections.<Permission>emptyList() : permissions;
+        this.size = this.permissions.size();
+
+        for (int i = 0; i < size; i++) {
+            String resourceId = this.permissions.get(i).getResourceSetId();
+
+            if (resourceId == null) {
+                withoutResource.add(i);
+            } else {
+                List<Integer> positions = byResource.get(resourceId);
+
+                if (positions == null) {
+                    positions = new ArrayList<>(1);
+                    byResource.put(resourceId, positions);
+                }
+
+                positions.add(i);
+            }
+        }
+    }
+
+    /**
+     * @return true if this index was built from the given permissions and they didn't change since
+     */
+    boolean isIndexOf(List<Permission> permissions) {
+        return this.source == permissions && (permissions == null || permissions.size() == size);
+    }
+
+    /**
+     * Returns the permissions for the resource or its parent resource and all the permissions without resource, in the same order
+     * as in the token.
+     *
+     * @param resourceId id of the resource, may be <code>null</code>
+     * @param parentResourceId id of the parent resource, may be <code>null</code>
+     */
+    List<Permission> find(String resourceId, String parentResourceId) {
+        List<Integer> positions = new ArrayList<>(withoutResource);
+
+        addPositions(positions, resourceId);
+
+        if (parentResourceId != null && !parentResourceId.equals(resourceId)) {
+            addPositions(positions, parentResourceId);
+        }
+
+        Collections.sort(positions);
+
+        List<Permission> found = new ArrayList<>(positions.size());
+
+        for (Integer position : positions) {
+            found.add(permissions.get(position));
+        }
+
+        return found;
+    }
+
+    private void addPositions(List<Integer> positions, String resourceId) {
+        List<Integer> resourcePositions = resourceId == null ? null : byResource.get(resourceId);
+
+        if (resourcePositions != null) {
+            positions.addAll(resourcePositions);
+        }
+    }
+}
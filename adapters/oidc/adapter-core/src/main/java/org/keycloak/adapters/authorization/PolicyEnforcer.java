@@ -27,16 +27,21 @@ import org.keycloak.authorization.client.representation.RegistrationResponse;
 import org.keycloak.authorization.client.representation.ResourceRepresentation;
 import org.keycloak.authorization.client.representation.ScopeRepresentation;
 import org.keycloak.authorization.client.resource.ProtectedResource;
+import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.adapters.config.AdapterConfig;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
 import org.keycloak.representations.idm.authorization.Permission;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
@@ -48,17 +53,27 @@ public class PolicyEnforcer {
     private final KeycloakDeployment deployment;
     private final AuthzClient authzClient;
     private final PolicyEnforcerConfig enforcerConfig;
-    private final List<PathConfig> paths;
+    private final PathMatcher pathMatcher;
+    private final PathCache pathCache;
+    private final Map<AccessToken.Authorization, PermissionIndex> permissionIndexes = Collections.synchronizedMap(new WeakHashMap<AccessToken.Authorization, PermissionIndex>());
 
     public PolicyEnforcer(KeycloakDeployment deployment, AdapterConfig adapterConfig) {
         this.deployment = deployment;
         this.enforcerConfig = adapterConfig.getPolicyEnforcerConfig();
         this.authzClient = AuthzClient.create(new Configuration(adapterConfig.getAuthServerUrl(), adapterConfig.getRealm(), adapterConfig.getResource(), adapterConfig.getCredentials(), deployment.getClient()));
-        this.paths = configurePaths(this.authzClient.protection().resource(), this.enforcerConfig);
+        this.pathMatcher = new PathMatcher(configurePaths(this.authzClient.protection().resource(), this.enforcerConfig));
+
+        PolicyEnforcerConfig.PathCacheConfig pathCacheConfig = this.enforcerConfig.getPathCacheConfig();
+
+        if (pathCacheConfig == null) {
+            pathCacheConfig = new PolicyEnforcerConfig.PathCacheConfig();
+        }
+
+        this.pathCache = new PathCache(pathCacheConfig.getMaxEntries(), pathCacheConfig.getLifespan(), pathCacheConfig.getMissLifespan());
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Initialization complete. Path configurations:");
-            for (PathConfig pathConfig : this.paths) {
+            for (PathConfig pathConfig : getPaths()) {
                 LOGGER.debug(pathConfig);
             }
         }
@@ -96,15 +111,122 @@ public class PolicyEnforcer {
         return authzClient;
     }
 
+    /**
+     * Returns an unmodifiable view of the configured paths followed by the paths resolved so far. Nothing is copied until the view is
+     * read, so creating an {@link AuthorizationContext} for each request doesn't cost more with the number of paths.
+     */
     public List<PathConfig> getPaths() {
-        return Collections.unmodifiableList(paths);
+        return new PathsView();
+    }
+
+    PathCache getPathCache() {
+        return pathCache;
+    }
+
+    /**
+     * Returns the configuration for the path. When the path matches a pattern, the resource with the actual path is looked up on
+     * the server and its configuration is returned as an instance of the pattern. When paths are loaded lazily, paths not matching
+     * exactly any configured path are looked up on the server as well. The lookups are cached in {@link PathCache}.
+     *
+     * @param path the requested path
+     * @return the configuration for the path or null if there is none
+     */
+    PathConfig resolvePath(final String path) {
+        final PathConfig pathConfig = pathMatcher.matches(path);
+
+        if (pathConfig != null) {
+            resolveResourceId(pathConfig);
+
+            if (!pathConfig.hasPattern() && (!isLazyLoadPaths() || path.equals(pathConfig.getPath()))) {
+                return pathConfig;
+            }
+        } else if (!isLazyLoadPaths()) {
+            return null;
+        }
+
+        PathConfig resolved = pathCache.get(path, new Callable<PathConfig>() {
+            @Override
+            public PathConfig call() {
+                return loadPath(path, pathConfig);
+            }
+        });
+
+        return resolved != null ? resolved : pathConfig;
+    }
+
+    /**
+     * Returns the permissions of the token indexed by resource. The index is kept as long as the token, so it is built just once
+     * for tokens kept in the session.
+     */
+    PermissionIndex getPermissionIndex(AccessToken.Authorization authorization) {
+        PermissionIndex index = permissionIndexes.get(authorization);
+
+        if (index == null || !index.isIndexOf(authorization.getPermissions())) {
+            index = new PermissionIndex(authorization.getPermissions());
+            permissionIndexes.put(authorization, index);
+        }
+
+        return index;
     }
 
     KeycloakDeployment getDeployment() {
         return deployment;
     }
 
+    private boolean isLazyLoadPaths() {
+        return Boolean.TRUE.equals(enforcerConfig.isLazyLoadPaths());
+    }
+
+    private PathConfig loadPath(String path, PathConfig matchedConfig) {
+        LOGGER.debugf("Trying to find resource with uri [%s] for path [%s].", path, path);
+        ProtectedResource protectedResource = this.authzClient.protection().resource();
+        Set<String> search = protectedResource.findByFilter("uri=" + path);
+
+        if (search.isEmpty()) {
+            return null;
+        }
+
+        ResourceRepresentation resource = protectedResource.findById(search.iterator().next()).getResourceDescription();
+
+        if (matchedConfig != null && matchedConfig.hasPattern()) {
+            return createPatternInstance(resource, matchedConfig);
+        }
+
+        PathConfig config = createPathConfig(resource);
+
+        if (matchedConfig != null) {
+            // resource under a wildcard path, scopes and methods required for the wildcard apply to it as well
+            for (String scope : matchedConfig.getScopes()) {
+                if (!config.getScopes().contains(scope)) {
+                    config.getScopes().add(scope);
+                }
+            }
+
+            config.getMethods().addAll(matchedConfig.getMethods());
+        }
+
+        return config;
+    }
+
+    // configured paths are resolved on first request when paths are loaded lazily
+    private void resolveResourceId(PathConfig pathConfig) {
+        if (pathConfig.getId() != null) {
+            return;
+        }
+
+        synchronized (pathConfig) {
+            if (pathConfig.getId() == null) {
+                pathConfig.setId(findResource(this.authzClient.protection().resource(), pathConfig));
+            }
+        }
+    }
+
     private List<PathConfig> configurePaths(ProtectedResource protectedResource, PolicyEnforcerConfig enforcerConfig) {
+        if (isLazyLoadPaths()) {
+            LOGGER.info("Paths are loaded lazily.");
+            return configureLazyPaths(enforcerConfig);
+        }
+
         if (enforcerConfig.getPaths().isEmpty()) {
             LOGGER.info("No path provided in configuration.");
             return configureAllPathsForResourceServer(protectedResource);
@@ -118,53 +240,37 @@ public class PolicyEnforcer {
         List<PathConfig> paths = new ArrayList<>();
 
         for (PathConfig pathConfig : enforcerConfig.getPaths()) {
-            Set<String> search;
-            String resourceName = pathConfig.getName();
-            String path = pathConfig.getPath();
-
-            if (resourceName != null) {
-                LOGGER.debugf("Trying to find resource with name [%s] for path [%s].", resourceName, path);
-                search = protectedResource.findByFilter("name=" + resourceName);
-            } else {
-                LOGGER.debugf("Trying to find resource with uri [%s] for path [%s].", path, path);
-                search = protectedResource.findByFilter("uri=" + path);
-            }
-
-            if (search.isEmpty()) {
-                if (enforcerConfig.isCreateResources()) {
-                    LOGGER.debugf("Creating resource on server for path [%s].", pathConfig);
-                    ResourceRepresentation resource = new ResourceRepresentation();
-
-                    resource.setName(resourceName);
-                    resource.setType(pathConfig.getType());
-                    resource.setUri(path);
-
-                    HashSet<ScopeRepresentation> scopes = new HashSet<>();
-
-                    for (String scopeName : pathConfig.getScopes()) {
-                        ScopeRepresentation scope = new ScopeRepresentation();
-
-                        scope.setName(scopeName);
-
-                        scopes.add(scope);
-                    }
-
-                    resource.setScopes(scopes);
+            pathConfig.setId(findResource(protectedResource, pathConfig));
 
-                    RegistrationResponse registrationResponse = protectedResource.create(resource);
+            PathConfig existingPath = null;
 
-                    pathConfig.setId(registrationResponse.getId());
-                } else {
-                    throw new RuntimeException("Could not find matching resource on server with uri [" + path + "] or name [" + resourceName + "]. Make sure you have created a resource on the server that matches with the path configuration.");
+            for (PathConfig current : paths) {
+                if (current.getId().equals(pathConfig.getId()) && current.getPath().equals(pathConfig.getPath())) {
+                    existingPath = current;
+                    break;
                 }
+            }
+
+            if (existingPath == null) {
+                paths.add(pathConfig);
             } else {
-                pathConfig.setId(search.iterator().next());
+                existingPath.getMethods().addAll(pathConfig.getMethods());
+                existingPath.getScopes().addAll(pathConfig.getScopes());
             }
+        }
+
+        return paths;
+    }
+
+    private List<PathConfig> configureLazyPaths(PolicyEnforcerConfig enforcerConfig) {
+        List<PathConfig> paths = new ArrayList<>();
 
+        // resources are not known yet, so paths with the same name and path are merged
+        for (PathConfig pathConfig : enforcerConfig.getPaths()) {
             PathConfig existingPath = null;
 
             for (PathConfig current : paths) {
-                if (current.getId().equals(pathConfig.getId()) && current.getPath().equals(pathConfig.getPath())) {
+                if (current.getPath().equals(pathConfig.getPath()) && (current.getName() == null ? pathConfig.getName() == null : current.getName().equals(pathConfig.getName()))) {
                     existingPath = current;
                     break;
                 }
@@ -181,6 +287,51 @@ public class PolicyEnforcer {
         return paths;
     }
 
+    private String findResource(ProtectedResource protectedResource, PathConfig pathConfig) {
+        Set<String> search;
+        String resourceName = pathConfig.getName();
+        String path = pathConfig.getPath();
+
+        if (resourceName != null) {
+            LOGGER.debugf("Trying to find resource with name [%s] for path [%s].", resourceName, path);
+            search = protectedResource.findByFilter("name=" + resourceName);
+        } else {
+            LOGGER.debugf("Trying to find resource with uri [%s] for path [%s].", path, path);
+            search = protectedResource.findByFilter("uri=" + path);
+        }
+
+        if (search.isEmpty()) {
+            if (this.enforcerConfig.isCreateResources()) {
+                LOGGER.debugf("Creating resource on server for path [%s].", pathConfig);
+                ResourceRepresentation resource = new ResourceRepresentation();
+
+                resource.setName(resourceName);
+                resource.setType(pathConfig.getType());
+                resource.setUri(path);
+
+                HashSet<ScopeRepresentation> scopes = new HashSet<>();
+
+                for (String scopeName : pathConfig.getScopes()) {
+                    ScopeRepresentation scope = new ScopeRepresentation();
+
+                    scope.setName(scopeName);
+
+                    scopes.add(scope);
+                }
+
+                resource.setScopes(scopes);
+
+                RegistrationResponse registrationResponse = protectedResource.create(resource);
+
+                return registrationResponse.getId();
+            } else {
+                throw new RuntimeException("Could not find matching resource on server with uri [" + path + "] or name [" + resourceName + "]. Make sure you have created a resource on the server that matches with the path configuration.");
+            }
+        } else {
+            return search.iterator().next();
+        }
+    }
+
     private List<PathConfig> configureAllPathsForResourceServer(ProtectedResource protectedResource) {
         LOGGER.info("Querying the server for all resources associated with this application.");
         List<PathConfig> paths = new ArrayList<>();
@@ -197,6 +348,24 @@ public class PolicyEnforcer {
         return paths;
     }
 
+    /**
+     * Creates the configuration of a resource matching a pattern. The resource keeps its own id and name, so it can be checked
+     * by {@link AuthorizationContext}, but the scopes and methods come from the pattern.
+     */
+    static PathConfig createPatternInstance(ResourceRepresentation resourceDescription, PathConfig pattern) {
+        PathConfig config = new PathConfig();
+
+        config.setId(resourceDescription.getId());
+        config.setName(resourceDescription.getName());
+        config.setType(resourceDescription.getType());
+        config.setPath(resourceDescription.getUri());
+        config.setScopes(pattern.getScopes());
+        config.setMethods(pattern.getMethods());
+        config.setParentConfig(pattern);
+
+        return config;
+    }
+
     private PathConfig createPathConfig(ResourceRepresentation resourceDescription) {
         PathConfig pathConfig = new PathConfig();
 
@@ -215,4 +384,29 @@ public class PolicyEnforcer {
 
         return pathConfig;
     }
+
+    private class PathsView extends AbstractList<PathConfig> {
+
+        private final List<PathConfig> configured = pathMatcher.getPaths();
+        private List<PathConfig> resolved;
+
+        @Override
+        public PathConfig get(int index) {
+            return index < configured.size() ? configured.get(index) : getResolved().get(index - configured.size());
+        }
+
+        @Override
+        public int size() {
+            return configured.size() + getResolved().size();
+        }
+
+        // cached paths are read once, so the view doesn't change while it is iterated
+        private List<PathConfig> getResolved() {
+            if (resolved == null) {
+                resolved = pathCache.getPaths();
+            }
+
+            return resolved;
+        }
+    }
 }
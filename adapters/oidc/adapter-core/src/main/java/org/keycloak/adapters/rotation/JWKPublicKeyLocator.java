@@ -25,55 +25,170 @@ import org.keycloak.adapters.KeycloakDeployment;
 import org.keycloak.common.util.Time;
 import org.keycloak.jose.jwk.JSONWebKeySet;
 import org.keycloak.jose.jwk.JWK;
-import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.util.JWKSUtils;
 
 import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * When needed, publicKeys are downloaded by sending request to realm's jwks_url
  *
+ * Keys are replaced all at once when downloaded, so requests are served with the cached keys while the download is in progress.
+ * Just one download runs at a time, requests with unknown kid wait for the download in progress instead of sending another one.
+ * When {@link KeycloakDeployment#getJwksRefreshInterval()} is set, keys older than the interval are downloaded again in background,
+ * so keys added to the realm ahead of rotation are known before tokens signed with them arrive. Keys are downloaded in background
+ * also when the realm pushes new not-before policy.
+ *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class JWKPublicKeyLocator implements PublicKeyLocator {
 
     private static final Logger log = Logger.getLogger(JWKPublicKeyLocator.class);
 
-    private Map<String, PublicKey> currentKeys = new ConcurrentHashMap<>();
+    // Downloads are rare and short, so one thread is shared by all deployments. It's not kept when idle, so it doesn't outlive undeployment
+    private static final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "keycloak-jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private volatile Map<String, PublicKey> currentKeys = Collections.emptyMap();
 
     private volatile int lastRequestTime = 0;
 
+    private final AtomicReference<FutureTask<Void>> refreshInProgress = new AtomicReference<>();
+
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private final AtomicLong failedRefreshCount = new AtomicLong();
+
     @Override
     public PublicKey getPublicKey(String kid, KeycloakDeployment deployment) {
-        int minTimeBetweenRequests = deployment.getMinTimeBetweenJwksRequests();
-
         // Check if key is in cache.
         PublicKey publicKey = currentKeys.get(kid);
         if (publicKey != null) {
+            int refreshInterval = deployment.getJwksRefreshInterval();
+            if (refreshInterval > 0 && Time.currentTime() > lastRequestTime + refreshInterval) {
+                refreshKeys(deployment, true);
+            }
             return publicKey;
         }
 
-        int currentTime = Time.currentTime();
+        Future<Void> refresh = getRefreshInProgress();
 
         // Check if we are allowed to send request
-        if (currentTime > lastRequestTime + minTimeBetweenRequests) {
-            synchronized (this) {
-                currentTime = Time.currentTime();
-                if (currentTime > lastRequestTime + minTimeBetweenRequests) {
-                    sendRequest(deployment);
+        if (refresh == null) {
+            if (Time.currentTime() > lastRequestTime + deployment.getMinTimeBetweenJwksRequests()) {
+                refresh = refreshKeys(deployment, false);
+            } else {
+                log.debugf("Won't send request to realm jwks url. Last request time was %d", lastRequestTime);
+            }
+        }
+
+        if (refresh != null) {
+            awaitRefresh(refresh);
+        }
+
+        return currentKeys.get(kid);
+    }
+
+    /**
+     * Downloads the keys in background, unless they were downloaded less than {@link KeycloakDeployment#getMinTimeBetweenJwksRequests()}
+     * seconds ago.
+     */
+    public void prefetch(KeycloakDeployment deployment) {
+        refreshKeys(deployment, true);
+    }
+
+    public int getLastRequestTime() {
+        return lastRequestTime;
+    }
+
+    public int getKeyCount() {
+        return currentKeys.size();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getFailedRefreshCount() {
+        return failedRefreshCount.get();
+    }
+
+    public boolean isRefreshInProgress() {
+        return refreshInProgress.get() != null;
+    }
+
+    // Overridden by tests to control the interleaving of concurrent refreshes
+    Future<Void> getRefreshInProgress() {
+        return refreshInProgress.get();
+    }
+
+    // Returns the refresh in progress or null if other refresh has just finished, so the keys are up to date
+    private Future<Void> refreshKeys(final KeycloakDeployment deployment, boolean async) {
+        final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                // Need to check it again in case that other thread already finished the download in the meantime
+                int currentTime = Time.currentTime();
+                if (currentTime > lastRequestTime + deployment.getMinTimeBetweenJwksRequests()) {
                     lastRequestTime = currentTime;
-                } else {
-                    log.debugf("Won't send request to realm jwks url. Last request time was %d", lastRequestTime);
+                    sendRequest(deployment);
                 }
             }
+        }, null) {
+            @Override
+            protected void done() {
+                refreshInProgress.compareAndSet(this, null);
+            }
+        };
+
+        if (!refreshInProgress.compareAndSet(null, task)) {
+            // null if the download finished in the meantime. The local task never runs, so it can't be returned
+            return getRefreshInProgress();
         }
 
-        return currentKeys.get(kid);
+        if (async) {
+            refreshExecutor.execute(task);
+        } else {
+            task.run();
+        }
 
+        return task;
     }
 
+    private void awaitRefresh(Future<Void> refresh) {
+        try {
+            refresh.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
 
     private void sendRequest(KeycloakDeployment deployment) {
         if (log.isTraceEnabled()) {
@@ -90,12 +205,16 @@ public class JWKPublicKeyLocator implements PublicKeyLocator {
                 log.debugf("Realm public keys successfully retrieved for client %s. New kids: %s", deployment.getResourceName(), publicKeys.keySet().toString());
             }
 
-            // Update current keys
-            currentKeys.clear();
-            currentKeys.putAll(publicKeys);
+            // Update current keys. Swapping the whole map, so that requests never see it partially updated
+            currentKeys = Collections.unmodifiableMap(new HashMap<>(publicKeys));
+            refreshCount.incrementAndGet();
 
         } catch (HttpClientAdapterException e) {
+            failedRefreshCount.incrementAndGet();
             log.error("Error when sending request to retrieve realm keys", e);
+        } catch (RuntimeException e) {
+            failedRefreshCount.incrementAndGet();
+            throw e;
         }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class VerifiedTokenCacheTest {
+
+    private final Map<String, String> tokenStrings = new HashMap<>();
+
+    @After
+    public void resetTime() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testGet() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token = token("token1", 300);
+
+        Assert.assertNull(cache.get(tokenString("token1"), 0));
+        cache.put(tokenString("token1"), token);
+        Assert.assertEquals("token1", cache.get(tokenString("token1"), 0).getId());
+        Assert.assertNull(cache.get(tokenString("token2"), 0));
+
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEachRequestGetsOwnToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token = token("token1", 300);
+        cache.put(tokenString("token1"), token);
+
+        AccessToken first = cache.get(tokenString("token1"), 0);
+        first.setAuthorization(new AccessToken.Authorization());
+
+        AccessToken second = cache.get(tokenString("token1"), 0);
+        Assert.assertNotSame(token, first);
+        Assert.assertNotSame(first, second);
+        Assert.assertNull(second.getAuthorization());
+    }
+
+    @Test
+    public void testCopyKeepsClaims() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token = token("token1", 300);
+        token.subject("user1");
+        token.audience("app1");
+        token.setOtherClaims("claim1", "value1");
+        token.addAccess("app1").addRole("role1");
+        cache.put(tokenString("token1"), token);
+
+        // changes done after the token was cached don't affect the cache
+        token.subject("user2");
+        token.getOtherClaims().clear();
+
+        AccessToken first = cache.get(tokenString("token1"), 0);
+        Assert.assertEquals("token1", first.getId());
+        Assert.assertEquals("user1", first.getSubject());
+        Assert.assertArrayEquals(new String[] { "app1" }, first.getAudience());
+        Assert.assertEquals(token.getExpiration(), first.getExpiration());
+        Assert.assertEquals("value1", first.getOtherClaims().get("claim1"));
+        Assert.assertTrue(first.getResourceAccess("app1").isUserInRole("role1"));
+
+        first.getOtherClaims().put("claim2", "value2");
+        first.getResourceAccess().remove("app1");
+
+        AccessToken second = cache.get(tokenString("token1"), 0);
+        Assert.assertFalse(second.getOtherClaims().containsKey("claim2"));
+        Assert.assertNotNull(second.getResourceAccess("app1"));
+    }
+
+    @Test
+    public void testExpiredTokenIsRemoved() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token = token("token1", 300);
+        cache.put(tokenString("token1"), token);
+
+        Time.setOffset(301);
+        Assert.assertNull(cache.get(tokenString("token1"), 0));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testTokenIssuedBeforeNotBeforeIsBypassed() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token = token("token1", 300);
+        cache.put(tokenString("token1"), token);
+
+        Assert.assertNotNull(cache.get(tokenString("token1"), token.getIssuedAt()));
+        Assert.assertNull(cache.get(tokenString("token1"), token.getIssuedAt() + 1));
+    }
+
+    @Test
+    public void testTokenWithoutExpirationIsNotCached() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token = token("token1", 300);
+        token.expiration(0);
+
+        cache.put(tokenString("token1"), token);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(3);
+
+        for (int i = 1; i <= 3; i++) {
+            AccessToken token = token("token" + i, 300);
+            cache.put(tokenString("token" + i), token);
+        }
+
+        Assert.assertNotNull(cache.get(tokenString("token1"), 0));
+        AccessToken token4 = token("token4", 300);
+        cache.put(tokenString("token4"), token4);
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull(cache.get(tokenString("token2"), 0));
+        Assert.assertNotNull(cache.get(tokenString("token1"), 0));
+
+        for (int i = 5; i < 20; i++) {
+            AccessToken token = token("token" + i, 300);
+            cache.put(tokenString("token" + i), token);
+            Assert.assertTrue(cache.size() <= 3);
+        }
+        Assert.assertNotNull(cache.get(tokenString("token19"), 0));
+        Assert.assertEquals(16, cache.getEvictionCount());
+    }
+
+    private AccessToken token(String id, int lifespan) {
+        AccessToken token = new AccessToken();
+        token.id(id);
+        token.issuedNow();
+        token.expiration(Time.currentTime() + lifespan);
+        tokenStrings.put(id, new JWSBuilder().jsonContent(token).none());
+        return token;
+    }
+
+    private String tokenString(String id) {
+        String tokenString = tokenStrings.get(id);
+        return tokenString != null ? tokenString : id;
+    }
+}
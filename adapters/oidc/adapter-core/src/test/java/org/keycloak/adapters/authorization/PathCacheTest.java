@@ -0,0 +1,219 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.adapters.authorization;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PathCacheTest {
+
+    @After
+    public void resetTime() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testCachesResolvedAndUnknownPaths() {
+        PathCache cache = new PathCache(10, 30000, 5000);
+        CountingLoader found = new CountingLoader(path("/api/1"));
+        CountingLoader notFound = new CountingLoader(null);
+
+        Assert.assertEquals("/api/1", cache.get("/api/1", found).getPath());
+        Assert.assertEquals("/api/1", cache.get("/api/1", found).getPath());
+        Assert.assertNull(cache.get("/unknown", notFound));
+        Assert.assertNull(cache.get("/unknown", notFound));
+
+        Assert.assertEquals(1, found.count.get());
+        Assert.assertEquals(1, notFound.count.get());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.missCount());
+        Assert.assertEquals(1, cache.getPaths().size());
+
+        cache.remove("/api/1");
+        cache.get("/api/1", found);
+        Assert.assertEquals(2, found.count.get());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        PathCache cache = new PathCache(2, 30000, 5000);
+        CountingLoader loader = new CountingLoader(path("/api/1"));
+
+        cache.get("/a", loader);
+        cache.get("/b", loader);
+        cache.get("/a", loader);
+        cache.get("/c", loader);
+        Assert.assertEquals(3, loader.count.get());
+        Assert.assertEquals(2, cache.size());
+
+        cache.get("/a", loader);
+        Assert.assertEquals(3, loader.count.get());
+        cache.get("/b", loader);
+        Assert.assertEquals(4, loader.count.get());
+    }
+
+    @Test
+    public void testExpires() {
+        PathCache cache = new PathCache(10, 30000, 5000);
+        CountingLoader loader = new CountingLoader(path("/api/1"));
+
+        cache.get("/api/1", loader);
+        Time.setOffset(20);
+        cache.get("/api/1", loader);
+        Assert.assertEquals(1, loader.count.get());
+
+        Time.setOffset(31);
+        Assert.assertTrue(cache.getPaths().isEmpty());
+        cache.get("/api/1", loader);
+        Assert.assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void testUnknownPathsExpireSooner() {
+        PathCache cache = new PathCache(10, 30000, 5000);
+        CountingLoader loader = new CountingLoader(null);
+
+        cache.get("/unknown", loader);
+        Time.setOffset(4);
+        cache.get("/unknown", loader);
+        Assert.assertEquals(1, loader.count.get());
+
+        Time.setOffset(6);
+        cache.get("/unknown", loader);
+        Assert.assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void testUnknownPathsDontEvictResolvedPaths() {
+        PathCache cache = new PathCache(2, 30000, 5000);
+        CountingLoader found = new CountingLoader(path("/api/1"));
+        CountingLoader notFound = new CountingLoader(null);
+
+        cache.get("/api/1", found);
+        cache.get("/api/2", found);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("/unknown/" + i, notFound);
+        }
+
+        cache.get("/api/1", found);
+        cache.get("/api/2", found);
+        Assert.assertEquals(2, found.count.get());
+        Assert.assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        PathCache cache = new PathCache(10, 30000, 5000);
+
+        try {
+            cache.get("/api/1", new Callable<PathConfig>() {
+                @Override
+                public PathConfig call() {
+                    throw new RuntimeException("server not available");
+                }
+            });
+            Assert.fail("Expected failure");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("server not available", e.getMessage());
+        }
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.missCount());
+    }
+
+    @Test
+    public void testCoalescesConcurrentMisses() throws Exception {
+        final PathCache cache = new PathCache(10, 30000, 5000);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        final Callable<PathConfig> loader = new Callable<PathConfig>() {
+            @Override
+            public PathConfig call() throws Exception {
+                count.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return path("/api/1");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<PathConfig>> results = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<PathConfig>() {
+                    @Override
+                    public PathConfig call() {
+                        return cache.get("/api/1", loader);
+                    }
+                }));
+            }
+
+            Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            // give the other threads time to miss as well
+            Thread.sleep(100);
+            release.countDown();
+
+            PathConfig first = results.get(0).get(10, TimeUnit.SECONDS);
+
+            for (Future<PathConfig> result : results) {
+                Assert.assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+
+            Assert.assertEquals(1, count.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PathConfig path(String path) {
+        PathConfig config = new PathConfig();
+        config.setPath(path);
+        return config;
+    }
+
+    private static class CountingLoader implements Callable<PathConfig> {
+
+        private final PathConfig config;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingLoader(PathConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public PathConfig call() {
+            count.incrementAndGet();
+            return config;
+        }
+    }
+}
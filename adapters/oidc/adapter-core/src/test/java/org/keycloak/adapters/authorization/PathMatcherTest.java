@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.adapters.authorization;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class PathMatcherTest {
+
+    @Test
+    public void testMatches() {
+        PathMatcher matcher = new PathMatcher(paths("/*", "/api/*", "/api/admin/*", "/api/{id}", "/static/*.html", "/exact"));
+
+        Assert.assertEquals("/api/admin/*", matcher.matches("/api/admin/users").getPath());
+        Assert.assertEquals("/api/{id}", matcher.matches("/api/1").getPath());
+        Assert.assertEquals("/api/*", matcher.matches("/api").getPath());
+        Assert.assertEquals("/static/*.html", matcher.matches("/index.html").getPath());
+        Assert.assertEquals("/exact", matcher.matches("/exact").getPath());
+        Assert.assertEquals("/*", matcher.matches("/other").getPath());
+        Assert.assertNull(new PathMatcher(paths("/api/*")).matches("/other"));
+    }
+
+    @Test
+    public void testSameAsLinearScan() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200; i++) {
+            List<PathConfig> paths = randomPaths(random, 1 + random.nextInt(30));
+            PathMatcher matcher = new PathMatcher(paths);
+
+            for (int j = 0; j < 50; j++) {
+                String requestedUri = randomUri(random);
+                Assert.assertSame("Requested " + requestedUri + " with paths " + paths, linearScan(requestedUri, paths), matcher.matches(requestedUri));
+            }
+        }
+    }
+
+    private static List<PathConfig> randomPaths(Random random, int count) {
+        String[] segments = { "api", "admin", "{id}", "*", "*.html", "*.js", "item-{id}", "" };
+        List<PathConfig> paths = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            StringBuilder path = new StringBuilder();
+            int length = random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                path.append('/').append(segments[random.nextInt(segments.length)]);
+            }
+            if (path.length() == 0 || random.nextInt(5) == 0) {
+                path.append("/*");
+            }
+            paths.add(path(path.toString()));
+        }
+
+        return paths;
+    }
+
+    private static String randomUri(Random random) {
+        String[] segments = { "api", "admin", "1", "item-1", "index.html", "app.js", "", "*" };
+        StringBuilder uri = new StringBuilder();
+        int length = random.nextInt(5);
+
+        for (int i = 0; i < length; i++) {
+            uri.append('/').append(segments[random.nextInt(segments.length)]);
+        }
+
+        return uri.length() == 0 ? "/" : uri.toString();
+    }
+
+    private static List<PathConfig> paths(String... paths) {
+        List<PathConfig> configs = new ArrayList<>();
+        for (String path : Arrays.asList(paths)) {
+            configs.add(path(path));
+        }
+        return configs;
+    }
+
+    private static PathConfig path(String path) {
+        PathConfig config = new PathConfig();
+        config.setPath(path);
+        return config;
+    }
+
+    // Matching of paths before the index, scanning all the configurations for each request
+    private static PathConfig linearScan(final String requestedUri, List<PathConfig> paths) {
+        PathConfig actualConfig = null;
+
+        for (PathConfig entry : paths) {
+            String protectedUri = entry.getPath();
+            String selectedUri = null;
+
+            if (protectedUri.equals("/*") && actualConfig == null) {
+                selectedUri = protectedUri;
+            }
+
+            int suffixIndex = protectedUri.indexOf("/*.");
+
+            if (suffixIndex != -1) {
+                String protectedSuffix = protectedUri.substring(suffixIndex + 2);
+
+                if (requestedUri.endsWith(protectedSuffix)) {
+                    selectedUri = protectedUri;
+                }
+            }
+
+            if (protectedUri.equals(requestedUri)) {
+                selectedUri = protectedUri;
+            }
+
+            if (protectedUri.endsWith("/*")) {
+                String formattedPattern = protectedUri.replaceAll("/[*]", "/");
+
+                if (!formattedPattern.equals("/") && requestedUri.startsWith(formattedPattern)) {
+                    selectedUri = protectedUri;
+                }
+
+                if (!formattedPattern.equals("/") && formattedPattern.endsWith("/") && formattedPattern.substring(0, formattedPattern.length() - 1).equals(requestedUri)) {
+                    selectedUri = protectedUri;
+                }
+            }
+
+            int startRegex = protectedUri.indexOf('{');
+
+            if (startRegex != -1) {
+                String prefix = protectedUri.substring(0, startRegex);
+
+                if (requestedUri.startsWith(prefix)) {
+                    selectedUri = protectedUri;
+                }
+            }
+
+            if (selectedUri != null) {
+                if (actualConfig == null) {
+                    actualConfig = entry;
+                } else if (protectedUri.startsWith(actualConfig.getPath().replaceAll("/[*]", "/"))) {
+                    actualConfig = entry;
+                }
+            }
+        }
+
+        return actualConfig;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.adapters.authorization;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PermissionIndexTest {
+
+    @Test
+    public void testFind() {
+        Permission first = permission("r1");
+        Permission scope = permission(null);
+        Permission parent = permission("parent");
+        Permission other = permission("r2");
+        Permission second = permission("r1");
+        List<Permission> permissions = new ArrayList<>(Arrays.asList(first, scope, parent, other, second));
+        PermissionIndex index = new PermissionIndex(permissions);
+
+        Assert.assertEquals(Arrays.asList(first, scope, second), index.find("r1", null));
+        Assert.assertEquals(Arrays.asList(first, scope, parent, second), index.find("r1", "parent"));
+        Assert.assertEquals(Arrays.asList(scope), index.find("unknown", null));
+
+        Assert.assertTrue(index.isIndexOf(permissions));
+        permissions.add(permission("r3"));
+        Assert.assertFalse(index.isIndexOf(permissions));
+        Assert.assertTrue(new PermissionIndex(null).find("r1", null).isEmpty());
+    }
+
+    private static Permission permission(String resourceId) {
+        return new Permission(resourceId, resourceId, Collections.<String>emptySet());
+    }
+}
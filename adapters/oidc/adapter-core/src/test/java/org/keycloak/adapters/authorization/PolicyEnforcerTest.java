@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.adapters.authorization;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.AuthorizationContext;
+import org.keycloak.authorization.client.representation.ResourceRepresentation;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class PolicyEnforcerTest {
+
+    @Test
+    public void testResourcePermissionOfPatternInstance() {
+        PathConfig pattern = new PathConfig();
+        pattern.setPath("/api/{id}");
+        pattern.setScopes(new ArrayList<>(Arrays.asList("read")));
+
+        List<PathConfig> configured = new ArrayList<>();
+        configured.add(pattern);
+
+        PathMatcher matcher = new PathMatcher(configured);
+        PathConfig matched = matcher.matches("/api/1");
+        Assert.assertSame(pattern, matched);
+
+        ResourceRepresentation resource = new ResourceRepresentation();
+        resource.setId("resource-1");
+        resource.setName("Resource 1");
+        resource.setUri("/api/1");
+
+        PathConfig instance = PolicyEnforcer.createPatternInstance(resource, matched);
+        Assert.assertEquals("Resource 1", instance.getName());
+        Assert.assertEquals("/api/1", instance.getPath());
+        Assert.assertEquals(Arrays.asList("read"), instance.getScopes());
+        Assert.assertSame(pattern, instance.getParentConfig());
+
+        AuthorizationContext context = new AuthorizationContext(token(new Permission("resource-1", "Resource 1", new HashSet<>(Arrays.asList("read")))), Arrays.asList(pattern, instance));
+
+        Assert.assertTrue(context.hasResourcePermission("Resource 1"));
+        Assert.assertTrue(context.hasPermission("Resource 1", "read"));
+        Assert.assertFalse(context.hasPermission("Resource 1", "write"));
+        Assert.assertFalse(context.hasResourcePermission("Resource 2"));
+    }
+
+    @Test
+    public void testScopePermissionWithUnnamedPaths() {
+        PathConfig unnamed = new PathConfig();
+        unnamed.setPath("/api/*");
+
+        AuthorizationContext context = new AuthorizationContext(token(new Permission(null, null, new HashSet<>(Arrays.asList("read")))), Collections.singletonList(unnamed));
+
+        Assert.assertFalse(context.hasResourcePermission("Resource 1"));
+        Assert.assertFalse(context.hasPermission("Resource 1", "read"));
+        Assert.assertTrue(context.hasScopePermission("read"));
+    }
+
+    private static AccessToken token(Permission... permissions) {
+        AccessToken.Authorization authorization = new AccessToken.Authorization();
+        authorization.setPermissions(Arrays.asList(permissions));
+
+        AccessToken token = new AccessToken();
+        token.setAuthorization(authorization);
+
+        return token;
+    }
+}
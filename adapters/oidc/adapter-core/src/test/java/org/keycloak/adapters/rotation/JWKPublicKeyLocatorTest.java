@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters.rotation;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.adapters.KeycloakDeployment;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.util.JsonSerialization;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JWKPublicKeyLocatorTest {
+
+    @After
+    public void resetTime() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testDownloadsUnknownKid() throws Exception {
+        JwksServer server = new JwksServer();
+        TestDeployment deployment = new TestDeployment(server, 0);
+        JWKPublicKeyLocator locator = new JWKPublicKeyLocator();
+
+        PublicKey k1 = server.rotate("k1");
+        Assert.assertEquals(k1, locator.getPublicKey("k1", deployment));
+        Assert.assertEquals(k1, locator.getPublicKey("k1", deployment));
+        Assert.assertEquals(1, server.requests.get());
+
+        // not allowed to send another request yet
+        PublicKey k2 = server.rotate("k2");
+        Assert.assertNull(locator.getPublicKey("k2", deployment));
+        Assert.assertEquals(1, server.requests.get());
+
+        Time.setOffset(11);
+        Assert.assertEquals(k2, locator.getPublicKey("k2", deployment));
+        Assert.assertNull(locator.getPublicKey("k1", deployment));
+        Assert.assertEquals(2, server.requests.get());
+        Assert.assertEquals(2, locator.getRefreshCount());
+        Assert.assertEquals(1, locator.getKeyCount());
+    }
+
+    @Test
+    public void testServesCachedKeysWhileRefreshing() throws Exception {
+        JwksServer server = new JwksServer();
+        TestDeployment deployment = new TestDeployment(server, 60);
+        JWKPublicKeyLocator locator = new JWKPublicKeyLocator();
+
+        PublicKey k1 = server.rotate("k1");
+        Assert.assertEquals(k1, locator.getPublicKey("k1", deployment));
+
+        server.block();
+        server.rotate("k2");
+        Time.setOffset(61);
+
+        // refresh is started in background, cached key is returned right away
+        Assert.assertEquals(k1, locator.getPublicKey("k1", deployment));
+        Assert.assertTrue(server.awaitRequest());
+        Assert.assertTrue(locator.isRefreshInProgress());
+        Assert.assertEquals(k1, locator.getPublicKey("k1", deployment));
+        Assert.assertEquals(2, server.requests.get());
+
+        server.release();
+        for (int i = 0; i < 100 && locator.isRefreshInProgress(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(locator.isRefreshInProgress());
+        Assert.assertNotNull(locator.getPublicKey("k2", deployment));
+        Assert.assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void testCoalescesConcurrentDownloads() throws Exception {
+        JwksServer server = new JwksServer();
+        final TestDeployment deployment = new TestDeployment(server, 0);
+        final JWKPublicKeyLocator locator = new JWKPublicKeyLocator();
+
+        server.rotate("k1");
+        server.block();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<PublicKey>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<PublicKey>() {
+                    @Override
+                    public PublicKey call() {
+                        return locator.getPublicKey("k1", deployment);
+                    }
+                }));
+            }
+
+            Assert.assertTrue(server.awaitRequest());
+            // give the other threads time to ask for the key as well
+            Thread.sleep(100);
+            server.release();
+
+            for (Future<PublicKey> result : results) {
+                Assert.assertNotNull(result.get(10, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, server.requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRefreshFinishedBeforeLosingThreadLooksItUp() throws Exception {
+        final JwksServer server = new JwksServer();
+        final TestDeployment deployment = new TestDeployment(server, 0);
+        final JWKPublicKeyLocator locator = new JWKPublicKeyLocator() {
+
+            private int lookups;
+
+            @Override
+            Future<Void> getRefreshInProgress() {
+                try {
+                    if (lookups++ == 0) {
+                        // other refresh starts right after the first lookup, so this thread loses the race to start its own
+                        prefetch(deployment);
+                        Assert.assertTrue(server.awaitRequest());
+                        return null;
+                    }
+
+                    // and finishes before this thread looks it up
+                    server.release();
+                    for (int i = 0; i < 100 && isRefreshInProgress(); i++) {
+                        Thread.sleep(50);
+                    }
+                    return super.getRefreshInProgress();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        // the other refresh would start after this thread checked the time of the last request, so it doesn't stop this thread
+        deployment.setMinTimeBetweenJwksRequests(-1);
+
+        PublicKey k1 = server.rotate("k1");
+        server.block();
+
+        Assert.assertEquals(k1, locator.getPublicKey("k1", deployment));
+        Assert.assertEquals(1, server.requests.get());
+    }
+
+    private static class TestDeployment extends KeycloakDeployment {
+
+        private final HttpClient client;
+
+        private TestDeployment(JwksServer server, int refreshInterval) {
+            this.client = (HttpClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpClient.class }, server);
+            this.minTimeBetweenJwksRequests = 10;
+            this.jwksRefreshInterval = refreshInterval;
+        }
+
+        @Override
+        public String getJwksUrl() {
+            return "http://localhost/auth/realms/test/protocol/openid-connect/certs";
+        }
+
+        @Override
+        public HttpClient getClient() {
+            return client;
+        }
+    }
+
+    private static class JwksServer implements InvocationHandler {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch requested = new CountDownLatch(1);
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+        private volatile String jwks;
+
+        private PublicKey rotate(String kid) throws Exception {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024);
+            PublicKey publicKey = generator.generateKeyPair().getPublic();
+
+            JSONWebKeySet keySet = new JSONWebKeySet();
+            keySet.setKeys(new JWK[] { JWKBuilder.create().kid(kid).rs256(publicKey) });
+            jwks = JsonSerialization.writeValueAsString(keySet);
+
+            return publicKey;
+        }
+
+        private void block() {
+            blocked = new CountDownLatch(1);
+        }
+
+        private void release() {
+            blocked.countDown();
+        }
+
+        private boolean awaitRequest() throws InterruptedException {
+            return requested.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("execute")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+
+            String body = jwks;
+            requests.incrementAndGet();
+            if (blocked.getCount() > 0) {
+                requested.countDown();
+                blocked.await(10, TimeUnit.SECONDS);
+            }
+
+            HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new StringEntity(body));
+            return response;
+        }
+    }
+}
@@ -96,6 +96,18 @@ public class SecureDeploymentDefinition extends SimpleResourceDefinition {
                     .setValidator(new IntRangeValidator(-1, true))
                     .setAllowExpression(true)
                     .build();
+    protected static final SimpleAttributeDefinition JWKS_REFRESH_INTERVAL =
+            new SimpleAttributeDefinitionBuilder("jwks-refresh-interval", ModelType.INT, true)
+                    .setXmlName("jwks-refresh-interval")
+                    .setValidator(new IntRangeValidator(-1, true))
+                    .setAllowExpression(true)
+                    .build();
+    protected static final SimpleAttributeDefinition VERIFIED_TOKEN_CACHE_SIZE =
+            new SimpleAttributeDefinitionBuilder("verified-token-cache-size", ModelType.INT, true)
+                    .setXmlName("verified-token-cache-size")
+                    .setValidator(new IntRangeValidator(0, true))
+                    .setAllowExpression(true)
+                    .build();
 
     protected static final List<SimpleAttributeDefinition> DEPLOYMENT_ONLY_ATTRIBUTES = new ArrayList<SimpleAttributeDefinition>();
     static {
@@ -108,6 +120,8 @@ public class SecureDeploymentDefinition extends SimpleResourceDefinition {
         DEPLOYMENT_ONLY_ATTRIBUTES.add(TURN_OFF_CHANGE_SESSION);
         DEPLOYMENT_ONLY_ATTRIBUTES.add(TOKEN_MINIMUM_TIME_TO_LIVE);
         DEPLOYMENT_ONLY_ATTRIBUTES.add(MIN_TIME_BETWEEN_JWKS_REQUESTS);
+        DEPLOYMENT_ONLY_ATTRIBUTES.add(JWKS_REFRESH_INTERVAL);
+        DEPLOYMENT_ONLY_ATTRIBUTES.add(VERIFIED_TOKEN_CACHE_SIZE);
     }
 
     protected static final List<SimpleAttributeDefinition> ALL_ATTRIBUTES = new ArrayList<SimpleAttributeDefinition>();
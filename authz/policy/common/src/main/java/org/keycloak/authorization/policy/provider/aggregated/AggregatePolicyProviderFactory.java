@@ -52,6 +52,12 @@ public class AggregatePolicyProviderFactory implements PolicyProviderFactory {
         return new AggregatePolicyAdminResource(resourceServer);
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // outcome depends on its associated policies, which are checked separately
+        return true;
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return null;
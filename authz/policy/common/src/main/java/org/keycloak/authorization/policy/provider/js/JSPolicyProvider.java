@@ -21,8 +21,6 @@ import org.keycloak.authorization.model.Policy;
 import org.keycloak.authorization.policy.evaluation.Evaluation;
 import org.keycloak.authorization.policy.provider.PolicyProvider;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 /**
@@ -31,20 +29,17 @@ import javax.script.ScriptException;
 public class JSPolicyProvider implements PolicyProvider {
 
     private final Policy policy;
+    private final JSPolicyProviderFactory factory;
 
-    public JSPolicyProvider(Policy policy) {
+    public JSPolicyProvider(Policy policy, JSPolicyProviderFactory factory) {
         this.policy = policy;
+        this.factory = factory;
     }
 
     @Override
     public void evaluate(Evaluation evaluation) {
-        ScriptEngineManager manager = new ScriptEngineManager();
-        ScriptEngine engine = manager.getEngineByName("nashorn");
-
-        engine.put("$evaluation", evaluation);
-
         try {
-            engine.eval(policy.getConfig().get("code"));
+            factory.getScript(policy).eval(evaluation);
         } catch (ScriptException e) {
             throw new RuntimeException("Error evaluating JS Policy [" + policy.getName() + "].", e);
         }
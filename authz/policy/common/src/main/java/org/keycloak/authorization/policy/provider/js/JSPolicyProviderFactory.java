@@ -10,11 +10,26 @@ import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 
+import javax.script.Compilable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
  */
 public class JSPolicyProviderFactory implements PolicyProviderFactory {
 
+    public static final int DEFAULT_MAX_SCRIPTS = 1000;
+    public static final int DEFAULT_MAX_POOLED_BINDINGS = Runtime.getRuntime().availableProcessors();
+
+    private Map<String, JSPolicyScript> scripts = createScripts(DEFAULT_MAX_SCRIPTS);
+    private int maxPooledBindings = DEFAULT_MAX_POOLED_BINDINGS;
+    private ScriptEngine engine;
+
     @Override
     public String getName() {
         return "JavaScript";
@@ -27,7 +42,7 @@ public class JSPolicyProviderFactory implements PolicyProviderFactory {
 
     @Override
     public PolicyProvider create(Policy policy, AuthorizationProvider authorization) {
-        return new JSPolicyProvider(policy);
+        return new JSPolicyProvider(policy, this);
     }
 
     @Override
@@ -35,6 +50,46 @@ public class JSPolicyProviderFactory implements PolicyProviderFactory {
         return null;
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // scripts can inspect anything in the evaluation, so decisions are cached only if the policy opts in
+        return Boolean.parseBoolean(policy.getConfig().get(DECISION_CACHEABLE_CONFIG));
+    }
+
+    /**
+     * Returns the code of the policy compiled by the single Nashorn engine of this factory. Compiled code is cached by
+     * the policy and its code, so updates made on any node of the cluster are compiled again. Scripts of updated or
+     * removed policies are dropped once the cache is full. Each script pools up to "maxPooledBindings" global scopes
+     * for its evaluations.
+     */
+    JSPolicyScript getScript(Policy policy) throws ScriptException {
+        String code = policy.getConfig().get("code");
+        String key = policy.getId() + "." + code.hashCode();
+        JSPolicyScript script = scripts.get(key);
+        if (script != null && script.isCompiledFrom(code)) {
+            return script;
+        }
+        script = new JSPolicyScript(code, ((Compilable) getEngine()).compile(code), maxPooledBindings);
+        scripts.put(key, script);
+        return script;
+    }
+
+    private static Map<String, JSPolicyScript> createScripts(int maxScripts) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, JSPolicyScript>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JSPolicyScript> eldest) {
+                return size() > maxScripts;
+            }
+        });
+    }
+
+    private synchronized ScriptEngine getEngine() {
+        if (engine == null) {
+            engine = new ScriptEngineManager().getEngineByName("nashorn");
+        }
+        return engine;
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return null;
@@ -42,7 +97,8 @@ public class JSPolicyProviderFactory implements PolicyProviderFactory {
 
     @Override
     public void init(Config.Scope config) {
-
+        scripts = createScripts(config.getInt("maxScripts", DEFAULT_MAX_SCRIPTS));
+        maxPooledBindings = config.getInt("maxPooledBindings", DEFAULT_MAX_POOLED_BINDINGS);
     }
 
     @Override
@@ -52,7 +108,7 @@ public class JSPolicyProviderFactory implements PolicyProviderFactory {
 
     @Override
     public void close() {
-
+        scripts.clear();
     }
 
     @Override
@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.policy.provider.js;
+
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import org.keycloak.authorization.policy.evaluation.Evaluation;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Code of a JS policy compiled once. Parsing and compiling the code is the expensive part of the evaluation, followed by
+ * creating the {@link Bindings} (global scope of the script) for the evaluation. Bindings are pooled, so each evaluation
+ * gets bindings not used by any other evaluation at the same time. When released to the pool, variables set by the script
+ * are removed from the bindings, so they don't leak to the next evaluation. Changes the script makes to the built-in objects
+ * of the global scope are not reverted.
+ */
+class JSPolicyScript {
+
+    private static final String EVALUATION = "$evaluation";
+
+    private final String code;
+    private final CompiledScript script;
+    private final BlockingQueue<PooledBindings> pool;
+
+    JSPolicyScript(String code, CompiledScript script, int maxPooledBindings) {
+        this.code = code;
+        this.script = script;
+        this.pool = maxPooledBindings > 0 ? new ArrayBlockingQueue<>(maxPooledBindings) : null;
+    }
+
+    /**
+     * @return true if the script was compiled from the code
+     */
+    boolean isCompiledFrom(String code) {
+        return this.code.equals(code);
+    }
+
+    void eval(Evaluation evaluation) throws ScriptException {
+        PooledBindings bindings = acquire();
+        try {
+            bindings.bindings.put(EVALUATION, evaluation);
+            script.eval(bindings.bindings);
+        } finally {
+            release(bindings);
+        }
+    }
+
+    int getPooledBindings() {
+        return pool == null ? 0 : pool.size();
+    }
+
+    private PooledBindings acquire() {
+        PooledBindings bindings = pool == null ? null : pool.poll();
+        return bindings != null ? bindings : new PooledBindings(script.getEngine().createBindings());
+    }
+
+    // Bindings, which can't be reset, are not returned to the pool
+    private void release(PooledBindings bindings) {
+        if (pool != null && bindings.reset()) {
+            pool.offer(bindings);
+        }
+    }
+
+    private static class PooledBindings {
+
+        private final Bindings bindings;
+        // properties of the global scope before any evaluation, such as the built-in objects
+        private final Set<String> initialKeys;
+        private final Object undefined;
+
+        private PooledBindings(Bindings bindings) {
+            this.bindings = bindings;
+            if (bindings instanceof ScriptObjectMirror) {
+                ScriptObjectMirror global = (ScriptObjectMirror) bindings;
+                this.initialKeys = new HashSet<>(Arrays.asList(global.getOwnKeys(true)));
+                this.undefined = global.eval("undefined");
+            } else {
+                this.initialKeys = null;
+                this.undefined = null;
+            }
+        }
+
+        private boolean reset() {
+            if (initialKeys == null) {
+                return false;
+            }
+
+            ScriptObjectMirror global = (ScriptObjectMirror) bindings;
+            for (String key : global.getOwnKeys(true)) {
+                if (!initialKeys.contains(key)) {
+                    global.remove(key);
+                    // variables declared by var can't be deleted, so they are reset to undefined
+                    if (global.hasMember(key)) {
+                        global.setMember(key, undefined);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -63,6 +63,12 @@ public class RolePolicyProviderFactory implements PolicyProviderFactory {
         return null;
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // outcome depends just on the roles of the identity
+        return true;
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return new RolePolicyProvider();
@@ -35,6 +35,12 @@ public class ScopePolicyProviderFactory implements PolicyProviderFactory {
         return null;
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // permission, outcome depends on its associated policies, which are checked separately
+        return true;
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return null;
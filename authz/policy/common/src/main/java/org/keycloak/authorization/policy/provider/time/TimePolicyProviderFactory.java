@@ -35,6 +35,12 @@ public class TimePolicyProviderFactory implements PolicyProviderFactory {
         return new TimePolicyAdminResource();
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // outcome depends on the current time, so decisions are cached only if the policy opts in
+        return Boolean.parseBoolean(policy.getConfig().get(DECISION_CACHEABLE_CONFIG));
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return null;
@@ -61,6 +61,12 @@ public class UserPolicyProviderFactory implements PolicyProviderFactory {
         return null;
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // outcome depends just on the identity
+        return true;
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return null;
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.policy.provider.js;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.permission.ResourcePermission;
+import org.keycloak.authorization.policy.evaluation.Evaluation;
+import org.keycloak.authorization.policy.evaluation.EvaluationContext;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JSPolicyProviderTest {
+
+    private static final String GRANT = "var permission = $evaluation.getPermission(); if (permission == null) $evaluation.grant();";
+    private static final String DENY = "$evaluation.deny();";
+
+    @Test
+    public void testScriptCompiledOnce() throws Exception {
+        JSPolicyProviderFactory factory = new JSPolicyProviderFactory();
+        Map<String, String> config = new HashMap<>();
+        config.put("code", GRANT);
+        Policy policy = policy("1", config);
+
+        TestEvaluation evaluation = new TestEvaluation();
+        factory.create(policy, null).evaluate(evaluation);
+        factory.create(policy, null).evaluate(evaluation);
+        Assert.assertEquals(2, evaluation.granted.get());
+        Assert.assertSame(factory.getScript(policy), factory.getScript(policy));
+    }
+
+    @Test
+    public void testScriptRecompiledWhenCodeChanged() throws Exception {
+        JSPolicyProviderFactory factory = new JSPolicyProviderFactory();
+        Map<String, String> config = new HashMap<>();
+        config.put("code", GRANT);
+        Policy policy = policy("1", config);
+        JSPolicyScript script = factory.getScript(policy);
+
+        // updated on another node
+        config.put("code", DENY);
+        TestEvaluation evaluation = new TestEvaluation();
+        factory.create(policy, null).evaluate(evaluation);
+        Assert.assertEquals(1, evaluation.denied.get());
+        Assert.assertNotSame(script, factory.getScript(policy));
+    }
+
+    @Test
+    public void testGlobalsNotShared() {
+        JSPolicyProviderFactory factory = new JSPolicyProviderFactory();
+        Map<String, String> config = new HashMap<>();
+        config.put("code", "if (typeof counter === 'undefined') { counter = 0; $evaluation.grant(); } else { $evaluation.deny(); }");
+        Policy policy = policy("1", config);
+
+        TestEvaluation evaluation = new TestEvaluation();
+        factory.create(policy, null).evaluate(evaluation);
+        factory.create(policy, null).evaluate(evaluation);
+        Assert.assertEquals(2, evaluation.granted.get());
+        Assert.assertEquals(0, evaluation.denied.get());
+    }
+
+    @Test
+    public void testVariablesResetBetweenEvaluations() throws Exception {
+        JSPolicyProviderFactory factory = new JSPolicyProviderFactory();
+        Map<String, String> config = new HashMap<>();
+        config.put("code", "var seen; if (typeof seen === 'undefined' && typeof $evaluation !== 'undefined') { seen = true; $evaluation.grant(); } else { $evaluation.deny(); }");
+        Policy policy = policy("1", config);
+
+        TestEvaluation evaluation = new TestEvaluation();
+        for (int i = 0; i < 3; i++) {
+            factory.create(policy, null).evaluate(evaluation);
+        }
+        Assert.assertEquals(3, evaluation.granted.get());
+        Assert.assertEquals(0, evaluation.denied.get());
+
+        // the same global scope was used by all the evaluations
+        Assert.assertEquals(1, factory.getScript(policy).getPooledBindings());
+    }
+
+    @Test
+    public void testBindingsResetAfterError() throws Exception {
+        JSPolicyProviderFactory factory = new JSPolicyProviderFactory();
+        Map<String, String> config = new HashMap<>();
+        config.put("code", "if (typeof leaked !== 'undefined') $evaluation.deny(); leaked = 1; throw 'error';");
+        Policy policy = policy("1", config);
+
+        TestEvaluation evaluation = new TestEvaluation();
+        for (int i = 0; i < 2; i++) {
+            try {
+                factory.create(policy, null).evaluate(evaluation);
+                Assert.fail("Expected error");
+            } catch (RuntimeException expected) {
+            }
+        }
+        Assert.assertEquals(0, evaluation.denied.get());
+        Assert.assertEquals(1, factory.getScript(policy).getPooledBindings());
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        JSPolicyProviderFactory factory = new JSPolicyProviderFactory();
+        Map<String, String> config = new HashMap<>();
+        config.put("code", GRANT);
+        Policy policy = policy("1", config);
+        TestEvaluation evaluation = new TestEvaluation();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        factory.create(policy, null).evaluate(evaluation);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1600, evaluation.granted.get());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidScript() {
+        Map<String, String> config = new HashMap<>();
+        config.put("code", "$evaluation.grant(");
+        new JSPolicyProviderFactory().create(policy("1", config), null).evaluate(new TestEvaluation());
+    }
+
+    private static Policy policy(String id, Map<String, String> config) {
+        return (Policy) Proxy.newProxyInstance(Policy.class.getClassLoader(), new Class[] { Policy.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                    return id;
+                case "getName":
+                    return "policy-" + id;
+                case "getConfig":
+                    return config;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static class TestEvaluation implements Evaluation {
+        private final AtomicInteger granted = new AtomicInteger();
+        private final AtomicInteger denied = new AtomicInteger();
+
+        @Override
+        public ResourcePermission getPermission() {
+            return null;
+        }
+
+        @Override
+        public EvaluationContext getContext() {
+            return null;
+        }
+
+        @Override
+        public void grant() {
+            granted.incrementAndGet();
+        }
+
+        @Override
+        public void deny() {
+            denied.incrementAndGet();
+        }
+    }
+}
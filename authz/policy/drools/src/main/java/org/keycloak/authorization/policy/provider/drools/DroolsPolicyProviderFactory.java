@@ -52,6 +52,12 @@ public class DroolsPolicyProviderFactory implements PolicyProviderFactory {
         return new DroolsPolicyAdminResource(resourceServer, this);
     }
 
+    @Override
+    public boolean isDecisionCacheable(Policy policy) {
+        // rules can inspect anything in the evaluation, so decisions are cached only if the policy opts in
+        return Boolean.parseBoolean(policy.getConfig().get(DECISION_CACHEABLE_CONFIG));
+    }
+
     @Override
     public PolicyProvider create(KeycloakSession session) {
         return null;
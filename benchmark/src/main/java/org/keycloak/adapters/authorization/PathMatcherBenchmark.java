@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters.authorization;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig.PathConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of the requested URI by the {@link PathMatcher} index against scanning all the configured paths, for a policy
+ * enforcer configured with up to 10k exact, wildcard and pattern paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathMatcherBenchmark {
+
+    private static final int REQUESTS = 1024;
+
+    @Param({"100", "1000", "10000"})
+    private int pathCount;
+
+    private List<PathConfig> paths;
+    private PathMatcher matcher;
+    private String[] requests;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        paths = new ArrayList<>();
+
+        paths.add(path("/*"));
+        for (int i = 0; i < pathCount; i++) {
+            String base = "/api/v" + random.nextInt(5) + "/resource-" + i;
+            switch (random.nextInt(3)) {
+                case 0: paths.add(path(base)); break;
+                case 1: paths.add(path(base + "/*")); break;
+                default: paths.add(path(base + "/{id}")); break;
+            }
+        }
+
+        matcher = new PathMatcher(paths);
+        requests = new String[REQUESTS];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = "/api/v" + random.nextInt(5) + "/resource-" + random.nextInt(pathCount + pathCount / 5) + "/" + random.nextInt(100);
+        }
+    }
+
+    @Benchmark
+    public PathConfig index() {
+        return matcher.matches(nextRequest());
+    }
+
+    @Benchmark
+    public PathConfig linearScan() {
+        return linearScan(nextRequest(), paths);
+    }
+
+    private String nextRequest() {
+        return requests[next++ & (REQUESTS - 1)];
+    }
+
+    private static PathConfig path(String path) {
+        PathConfig config = new PathConfig();
+        config.setPath(path);
+        return config;
+    }
+
+    // Matching of paths before the index, scanning all the configurations for each request
+    private static PathConfig linearScan(final String requestedUri, List<PathConfig> paths) {
+        PathConfig actualConfig = null;
+
+        for (PathConfig entry : paths) {
+            String protectedUri = entry.getPath();
+            String selectedUri = null;
+
+            if (protectedUri.equals("/*") && actualConfig == null) {
+                selectedUri = protectedUri;
+            }
+
+            int suffixIndex = protectedUri.indexOf("/*.");
+
+            if (suffixIndex != -1) {
+                String protectedSuffix = protectedUri.substring(suffixIndex + 2);
+
+                if (requestedUri.endsWith(protectedSuffix)) {
+                    selectedUri = protectedUri;
+                }
+            }
+
+            if (protectedUri.equals(requestedUri)) {
+                selectedUri = protectedUri;
+            }
+
+            if (protectedUri.endsWith("/*")) {
+                String formattedPattern = protectedUri.replaceAll("/[*]", "/");
+
+                if (!formattedPattern.equals("/") && requestedUri.startsWith(formattedPattern)) {
+                    selectedUri = protectedUri;
+                }
+
+                if (!formattedPattern.equals("/") && formattedPattern.endsWith("/") && formattedPattern.substring(0, formattedPattern.length() - 1).equals(requestedUri)) {
+                    selectedUri = protectedUri;
+                }
+            }
+
+            int startRegex = protectedUri.indexOf('{');
+
+            if (startRegex != -1) {
+                String prefix = protectedUri.substring(0, startRegex);
+
+                if (requestedUri.startsWith(prefix)) {
+                    selectedUri = protectedUri;
+                }
+            }
+
+            if (selectedUri != null) {
+                if (actualConfig == null) {
+                    actualConfig = entry;
+                } else if (protectedUri.startsWith(actualConfig.getPath().replaceAll("/[*]", "/"))) {
+                    actualConfig = entry;
+                }
+            }
+        }
+
+        return actualConfig;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.permission.evaluator;
+
+import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.identity.Identity;
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.model.Resource;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.permission.ResourcePermission;
+import org.keycloak.authorization.policy.evaluation.DecisionResultCollector;
+import org.keycloak.authorization.policy.evaluation.Evaluation;
+import org.keycloak.authorization.policy.evaluation.EvaluationContext;
+import org.keycloak.authorization.policy.evaluation.PolicyIndex;
+import org.keycloak.authorization.policy.evaluation.Result;
+import org.keycloak.authorization.policy.provider.PolicyProvider;
+import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
+import org.keycloak.authorization.store.PolicyStore;
+import org.keycloak.authorization.store.ResourceServerStore;
+import org.keycloak.authorization.store.ResourceStore;
+import org.keycloak.authorization.store.StoreFactory;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.representations.idm.authorization.PolicyEnforcementMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latency of evaluating the permissions of a large resource server by {@link ParallelPermissionEvaluator}, for an increasing
+ * count of evaluation threads, against the sequential evaluation. Stores and sessions are in-memory stubs and each policy
+ * busy-waits for {@code policyWork} microseconds, so the results show how the evaluation scales with the available cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelPermissionEvaluatorBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int threads;
+
+    @Param({"2000"})
+    private int permissionCount;
+
+    @Param({"50"})
+    private int partitionSize;
+
+    // work done by the policy provider for each evaluated policy, in microseconds
+    @Param({"200"})
+    private long policyWork;
+
+    private final ResourceServer resourceServer = proxy(ResourceServer.class, values("getId", "rs", "getClientId", "client",
+            "getPolicyEnforcementMode", PolicyEnforcementMode.ENFORCING));
+
+    private ExecutorService executor;
+    private List<ResourcePermission> permissions;
+    private Evaluators parallel;
+    private Evaluators sequential;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(threads);
+        permissions = new ArrayList<>();
+        for (int i = 0; i < permissionCount; i++) {
+            Resource resource = proxy(Resource.class, values("getId", "resource-" + i, "getOwner", "client", "getScopes", Collections.emptyList()));
+            permissions.add(new ResourcePermission(resource, Collections.emptyList(), resourceServer));
+        }
+        parallel = authorization(executor).evaluators();
+        sequential = authorization(null).evaluators();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Result> parallel() {
+        return evaluate(parallel.from(permissions, context()));
+    }
+
+    @Benchmark
+    public List<Result> sequential() {
+        return evaluate(sequential.from(permissions, context()));
+    }
+
+    private List<Result> evaluate(PermissionEvaluator evaluator) {
+        AtomicReference<List<Result>> completed = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        evaluator.evaluate(new DecisionResultCollector() {
+            @Override
+            public void onError(Throwable cause) {
+                error.set(cause);
+            }
+
+            @Override
+            protected void onComplete(List<Result> results) {
+                completed.set(results);
+            }
+        });
+
+        if (error.get() != null) {
+            throw new RuntimeException(error.get());
+        }
+
+        return completed.get();
+    }
+
+    private AuthorizationProvider authorization(ExecutorService parallelExecutor) {
+        Policy grant = proxy(Policy.class, values("getId", "grant", "getName", "grant", "getType", "benchmark", "getResources", Collections.emptySet(),
+                "getScopes", Collections.emptySet(), "getAssociatedPolicies", Collections.emptySet(), "getConfig", Collections.emptyMap()));
+        Map<String, Policy> policies = new HashMap<>();
+        List<Resource> resources = new ArrayList<>();
+        policies.put("grant", grant);
+        for (ResourcePermission permission : permissions) {
+            Resource resource = permission.getResource();
+            String id = "permission-" + resource.getId();
+            resources.add(resource);
+            policies.put(id, proxy(Policy.class, values("getId", id, "getName", id, "getType", "resource", "getResources", Collections.singleton(resource),
+                    "getScopes", Collections.emptySet(), "getAssociatedPolicies", Collections.singleton(grant), "getConfig", Collections.emptyMap())));
+        }
+
+        ResourceStore resourceStore = proxy(ResourceStore.class, (proxy, method, args) -> {
+            if (method.getName().equals("findByResourceServer")) return resources;
+            if (method.getName().equals("findById")) {
+                return proxy(Resource.class, values("getId", args[0], "getOwner", "client", "getScopes", Collections.emptyList()));
+            }
+            return null;
+        });
+        ResourceServerStore resourceServerStore = proxy(ResourceServerStore.class, values("findById", resourceServer));
+        PolicyStore policyStore = proxy(PolicyStore.class, (proxy, method, args) -> {
+            if (method.getName().equals("findById")) return policies.get(args[0]);
+            if (method.getName().equals("findByResourceServer")) return new ArrayList<>(policies.values());
+            return null;
+        });
+        StoreFactory stores = proxy(StoreFactory.class, values("getResourceStore", resourceStore, "getPolicyStore", policyStore));
+        PolicyIndex index = PolicyIndex.build(resourceServer, stores);
+        StoreFactory storeFactory = proxy(StoreFactory.class, values("getResourceStore", resourceStore, "getPolicyStore", policyStore, "getPolicyIndex", index,
+                "getResourceServerStore", resourceServerStore));
+
+        ClientModel client = proxy(ClientModel.class, values("getAttribute", "true"));
+        RealmModel realm = proxy(RealmModel.class, values("getId", "realm", "getClientById", client));
+        PolicyProviderFactory providerFactory = proxy(PolicyProviderFactory.class, values("getId", "benchmark", "create", new PolicyProvider() {
+            @Override
+            public void evaluate(Evaluation evaluation) {
+                long end = System.nanoTime() + policyWork * 1000;
+                while (System.nanoTime() < end) {
+                    // simulates the evaluation of a policy
+                }
+                evaluation.grant();
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+
+        AtomicReference<KeycloakSessionFactory> sessionFactory = new AtomicReference<>();
+        sessionFactory.set(proxy(KeycloakSessionFactory.class, (proxy, method, args) -> {
+            if (method.getName().equals("getProviderFactories")) return Arrays.asList(providerFactory);
+            if (method.getName().equals("create")) return session(sessionFactory.get(), realm, storeFactory);
+            return null;
+        }));
+
+        KeycloakSession session = proxy(KeycloakSession.class, values("getKeycloakSessionFactory", sessionFactory.get()));
+        return new AuthorizationProvider(session, realm, storeFactory, Runnable::run, parallelExecutor, partitionSize);
+    }
+
+    private static KeycloakSession session(KeycloakSessionFactory sessionFactory, RealmModel realm, StoreFactory storeFactory) {
+        KeycloakTransactionManager transaction = proxy(KeycloakTransactionManager.class, values("isActive", false));
+        RealmProvider realms = proxy(RealmProvider.class, values("getRealm", realm));
+        KeycloakContext context = proxy(KeycloakContext.class, values());
+        AtomicReference<KeycloakSession> session = new AtomicReference<>();
+        session.set(proxy(KeycloakSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getKeycloakSessionFactory": return sessionFactory;
+                case "getTransactionManager": return transaction;
+                case "realms": return realms;
+                case "getContext": return context;
+                case "getProvider": return new AuthorizationProvider(session.get(), realm, storeFactory);
+                default: return null;
+            }
+        }));
+        return session.get();
+    }
+
+    private static EvaluationContext context() {
+        Identity identity = proxy(Identity.class, values("getId", "alice"));
+        return proxy(EvaluationContext.class, values("getIdentity", identity));
+    }
+
+    private static Map<String, Object> values(Object... keyValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            values.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return values;
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> values) {
+        return proxy(type, (proxy, method, args) -> {
+            if (method.getName().equals("equals")) return proxy == args[0];
+            if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+            return values.get(method.getName());
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler));
+    }
+}
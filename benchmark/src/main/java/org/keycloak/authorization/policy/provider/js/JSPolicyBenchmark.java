@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.authorization.policy.provider.js;
+
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.permission.ResourcePermission;
+import org.keycloak.authorization.policy.evaluation.Evaluation;
+import org.keycloak.authorization.policy.evaluation.EvaluationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-evaluation cost of a JS policy evaluated with the script compiled and the global scope pooled by
+ * {@link JSPolicyProviderFactory}, against creating a new engine and evaluating the code for every evaluation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSPolicyBenchmark {
+
+    private static final String CODE = "var permission = $evaluation.getPermission(); if (permission == null) $evaluation.grant(); else $evaluation.deny();";
+
+    private final Evaluation evaluation = new NoopEvaluation();
+
+    private JSPolicyProviderFactory factory;
+    private Policy policy;
+
+    @Setup
+    public void setup() {
+        factory = new JSPolicyProviderFactory();
+
+        final Map<String, String> config = new HashMap<>();
+        config.put("code", CODE);
+        policy = (Policy) Proxy.newProxyInstance(Policy.class.getClassLoader(), new Class[] { Policy.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                    return "1";
+                case "getName":
+                    return "policy-1";
+                case "getConfig":
+                    return config;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @Benchmark
+    public void compiled() {
+        factory.create(policy, null).evaluate(evaluation);
+    }
+
+    @Benchmark
+    public Object interpreted() throws ScriptException {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+        engine.put("$evaluation", evaluation);
+        return engine.eval(CODE);
+    }
+
+    private static class NoopEvaluation implements Evaluation {
+        @Override
+        public ResourcePermission getPermission() {
+            return null;
+        }
+
+        @Override
+        public EvaluationContext getContext() {
+            return null;
+        }
+
+        @Override
+        public void grant() {
+        }
+
+        @Override
+        public void deny() {
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jws;
+
+import org.keycloak.common.util.KeyUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares signing tokens with a {@link JWSSigner}, which keeps the initialized signature or mac, against looking
+ * up a new one for every token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSigningBenchmark {
+
+    private static final byte[] CONTENT = "{\"sub\":\"12345678901234567890\"}".getBytes();
+
+    private KeyPair keyPair;
+    private SecretKey secret;
+    private JWSSigner rsaSigner;
+    private JWSSigner hmacSigner;
+
+    @Setup
+    public void setup() throws Exception {
+        keyPair = KeyUtils.generateRsaKeyPair(2048);
+        secret = new SecretKeySpec(UUID.randomUUID().toString().getBytes(), "HmacSHA256");
+        rsaSigner = JWSSigner.rsa(Algorithm.RS256, "kid1", keyPair.getPrivate());
+        hmacSigner = JWSSigner.hmac(Algorithm.HS256, "kid1", secret);
+    }
+
+    @Benchmark
+    public String rs256Provider() {
+        return new JWSBuilder().type("JWT").kid("kid1").content(CONTENT).sign(Algorithm.RS256, keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public String rs256Signer() {
+        return new JWSBuilder().type("JWT").content(CONTENT).sign(rsaSigner);
+    }
+
+    @Benchmark
+    public String hs256Provider() {
+        return new JWSBuilder().type("JWT").kid("kid1").content(CONTENT).hmac256(secret);
+    }
+
+    @Benchmark
+    public String hs256Signer() {
+        return new JWSBuilder().type("JWT").content(CONTENT).sign(hmacSigner);
+    }
+
+}
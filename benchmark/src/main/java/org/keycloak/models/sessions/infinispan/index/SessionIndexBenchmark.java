@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lookup of the user sessions of single user through the {@link SessionIndex} with the stream over whole cache, for the
+ * increasing count of sessions in the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionIndexBenchmark {
+
+    private static final int USERS = 10000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int sessions;
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, SessionEntity> cache;
+    private SessionIndex index;
+    private int next;
+
+    @Setup
+    public void setup() {
+        GlobalConfigurationBuilder gcb = new GlobalConfigurationBuilder();
+        gcb.globalJmxStatistics().allowDuplicateDomains(true);
+        cacheManager = new DefaultCacheManager(gcb.build());
+        cacheManager.defineConfiguration("sessions", new ConfigurationBuilder().build());
+        cache = cacheManager.getCache("sessions");
+        index = SessionIndexListener.register(cache);
+
+        for (int i = 0; i < sessions; i++) {
+            UserSessionEntity entity = new UserSessionEntity();
+            entity.setId("us-" + i);
+            entity.setRealm("realm");
+            entity.setUser("user-" + (i % USERS));
+            cache.put(entity.getId(), entity);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cacheManager.stop();
+    }
+
+    @Benchmark
+    public void indexLookup(Blackhole blackhole) {
+        for (String id : index.getUserSessionsByUser("realm", nextUser())) {
+            blackhole.consume(cache.get(id));
+        }
+    }
+
+    @Benchmark
+    public long streamScan() {
+        return cache.entrySet().stream().filter(UserSessionPredicate.create("realm").user(nextUser())).count();
+    }
+
+    private String nextUser() {
+        return "user-" + (next++ % USERS);
+    }
+
+}
@@ -53,17 +53,18 @@ public final class DerUtils {
         dis.readFully(keyBytes);
         dis.close();
 
-        PKCS8EncodedKeySpec spec =
-                new PKCS8EncodedKeySpec(keyBytes);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePrivate(spec);
+        return decodePrivateKey(keyBytes);
     }
 
     public static PublicKey decodePublicKey(byte[] der) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         X509EncodedKeySpec spec =
                 new X509EncodedKeySpec(der);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePublic(spec);
+        try {
+            return KeyFactory.getInstance("RSA", "BC").generatePublic(spec);
+        } catch (InvalidKeySpecException e) {
+            // Not an RSA key, try elliptic curve key
+            return KeyFactory.getInstance("EC", "BC").generatePublic(spec);
+        }
     }
 
     public static X509Certificate decodeCertificate(InputStream is) throws Exception {
@@ -76,7 +77,11 @@ public final class DerUtils {
     public static PrivateKey decodePrivateKey(byte[] der) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         PKCS8EncodedKeySpec spec =
                 new PKCS8EncodedKeySpec(der);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePrivate(spec);
+        try {
+            return KeyFactory.getInstance("RSA", "BC").generatePrivate(spec);
+        } catch (InvalidKeySpecException e) {
+            // Not an RSA key, try elliptic curve key
+            return KeyFactory.getInstance("EC", "BC").generatePrivate(spec);
+        }
     }
 }
@@ -26,6 +26,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.RSAPublicKeySpec;
 
 /**
@@ -49,6 +50,19 @@ public class KeyUtils {
         }
     }
 
+    /**
+     * @param curve standard name of the curve, for example secp256r1
+     */
+    public static KeyPair generateEcKeyPair(String curve) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(curve));
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static PublicKey extractPublicKey(PrivateKey key) {
         if (key == null) {
             return null;
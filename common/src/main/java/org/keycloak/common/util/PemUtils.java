@@ -113,6 +113,10 @@ public final class PemUtils {
      * @throws Exception
      */
     public static String encodeKey(Key key) {
+        if (key instanceof PrivateKey && "EC".equals(key.getAlgorithm())) {
+            // PEMWriter would use SEC1 format, which can't be decoded back by decodePrivateKey. PKCS#8 is used instead
+            return Base64.encodeBytes(key.getEncoded());
+        }
         return encode(key);
     }
 
@@ -46,8 +46,8 @@ public class AuthorizationContext {
     public boolean hasPermission(String resourceName, String scopeName) {
         for (Permission permission : authzToken.getAuthorization().getPermissions()) {
             for (PathConfig pathHolder : this.paths) {
-                if (pathHolder.getName().equals(resourceName)) {
-                    if (pathHolder.getId().equals(permission.getResourceSetId())) {
+                if (resourceName.equals(pathHolder.getName())) {
+                    if (pathHolder.getId() != null && pathHolder.getId().equals(permission.getResourceSetId())) {
                         if (permission.getScopes().contains(scopeName)) {
                             return true;
                         }
@@ -62,8 +62,8 @@ public class AuthorizationContext {
     public boolean hasResourcePermission(String resourceName) {
         for (Permission permission : authzToken.getAuthorization().getPermissions()) {
             for (PathConfig pathHolder : this.paths) {
-                if (pathHolder.getName().equals(resourceName)) {
-                    if (pathHolder.getId().equals(permission.getResourceSetId())) {
+                if (resourceName.equals(pathHolder.getName())) {
+                    if (pathHolder.getId() != null && pathHolder.getId().equals(permission.getResourceSetId())) {
                         return true;
                     }
                 }
@@ -21,7 +21,6 @@ import org.keycloak.common.VerificationException;
 import org.keycloak.jose.jws.JWSHeader;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.util.TokenUtil;
 
@@ -127,7 +126,8 @@ public class RSATokenVerifier {
             throw new VerificationException("Realm URL not set");
         }
 
-        if (!RSAProvider.verify(jws, publicKey)) {
+        // RSA or ECDSA, depending on the algorithm of the token
+        if (!jws.verify(publicKey)) {
             throw new VerificationException("Invalid token signature");
         }
 
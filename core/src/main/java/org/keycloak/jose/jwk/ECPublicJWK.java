@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jwk;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ECPublicJWK extends JWK {
+
+    public static final String EC = "EC";
+    public static final String ES256 = "ES256";
+    public static final String ES384 = "ES384";
+    public static final String ES512 = "ES512";
+
+    public static final String P256 = "P-256";
+    public static final String P384 = "P-384";
+    public static final String P521 = "P-521";
+
+    public static final String CURVE = "crv";
+    public static final String X = "x";
+    public static final String Y = "y";
+
+    @JsonProperty(CURVE)
+    private String curve;
+
+    @JsonProperty(X)
+    private String x;
+
+    @JsonProperty(Y)
+    private String y;
+
+    public String getCurve() {
+        return curve;
+    }
+
+    public void setCurve(String curve) {
+        this.curve = curve;
+    }
+
+    public String getX() {
+        return x;
+    }
+
+    public void setX(String x) {
+        this.x = x;
+    }
+
+    public String getY() {
+        return y;
+    }
+
+    public void setY(String y) {
+        this.y = y;
+    }
+
+    /**
+     * @return standard name of the curve for JCA
+     */
+    public static String getStandardCurveName(String curve) {
+        if (P256.equals(curve)) return "secp256r1";
+        if (P384.equals(curve)) return "secp384r1";
+        if (P521.equals(curve)) return "secp521r1";
+        throw new IllegalArgumentException("Unsupported curve " + curve);
+    }
+
+}
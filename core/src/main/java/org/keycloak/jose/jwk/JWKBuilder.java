@@ -19,12 +19,15 @@ package org.keycloak.jose.jwk;
 
 import org.keycloak.common.util.Base64Url;
 import org.keycloak.common.util.KeyUtils;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
 
 import java.math.BigInteger;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 
 /**
@@ -65,6 +68,37 @@ public class JWKBuilder {
         return k;
     }
 
+    public JWK ec(PublicKey key) {
+        ECPublicKey ecKey = (ECPublicKey) key;
+        Algorithm algorithm = ECDSAProvider.getAlgorithm(ecKey);
+        int fieldSize = ecKey.getParams().getCurve().getField().getFieldSize();
+
+        ECPublicJWK k = new ECPublicJWK();
+
+        String kid = this.kid != null ? this.kid : KeyUtils.createKeyId(key);
+        k.setKeyId(kid);
+        k.setKeyType(ECPublicJWK.EC);
+        k.setAlgorithm(algorithm.name());
+        k.setPublicKeyUse(DEFAULT_PUBLIC_KEY_USE);
+        k.setCurve(algorithm == Algorithm.ES256 ? ECPublicJWK.P256 : algorithm == Algorithm.ES384 ? ECPublicJWK.P384 : ECPublicJWK.P521);
+        k.setX(Base64Url.encode(toFixedLengthBytes(ecKey.getW().getAffineX(), (fieldSize + 7) / 8)));
+        k.setY(Base64Url.encode(toFixedLengthBytes(ecKey.getW().getAffineY(), (fieldSize + 7) / 8)));
+
+        return k;
+    }
+
+    // Coordinates must have the full length of the curve field (RFC 7518, section 6.2.1.2)
+    private static byte[] toFixedLengthBytes(BigInteger bigInt, int length) {
+        byte[] bytes = bigInt.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] fixed = new byte[length];
+        int copied = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copied, fixed, length - copied, copied);
+        return fixed;
+    }
+
     /**
      * Copied from org.apache.commons.codec.binary.Base64
      */
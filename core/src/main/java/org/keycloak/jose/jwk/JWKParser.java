@@ -22,8 +22,13 @@ import org.keycloak.common.util.Base64Url;
 import org.keycloak.util.JsonSerialization;
 
 import java.math.BigInteger;
+import java.security.AlgorithmParameters;
 import java.security.KeyFactory;
 import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.Map;
 
@@ -66,7 +71,7 @@ public class JWKParser {
 
     public PublicKey toPublicKey() {
         String keyType = jwk.getKeyType();
-        if (isKeyTypeSupported(keyType)) {
+        if (RSAPublicJWK.RSA.equals(keyType)) {
             BigInteger modulus = new BigInteger(1, Base64Url.decode(jwk.getOtherClaims().get(RSAPublicJWK.MODULUS).toString()));
             BigInteger publicExponent = new BigInteger(1, Base64Url.decode(jwk.getOtherClaims().get(RSAPublicJWK.PUBLIC_EXPONENT).toString()));
 
@@ -75,13 +80,26 @@ public class JWKParser {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
+        } else if (ECPublicJWK.EC.equals(keyType)) {
+            String curve = jwk.getOtherClaims().get(ECPublicJWK.CURVE).toString();
+            BigInteger x = new BigInteger(1, Base64Url.decode(jwk.getOtherClaims().get(ECPublicJWK.X).toString()));
+            BigInteger y = new BigInteger(1, Base64Url.decode(jwk.getOtherClaims().get(ECPublicJWK.Y).toString()));
+
+            try {
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(ECPublicJWK.getStandardCurveName(curve)));
+                ECParameterSpec spec = parameters.getParameterSpec(ECParameterSpec.class);
+                return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(new ECPoint(x, y), spec));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
         } else {
             throw new RuntimeException("Unsupported keyType " + keyType);
         }
     }
 
     public boolean isKeyTypeSupported(String keyType) {
-        return RSAPublicJWK.RSA.equals(keyType);
+        return RSAPublicJWK.RSA.equals(keyType) || ECPublicJWK.EC.equals(keyType);
     }
 
 }
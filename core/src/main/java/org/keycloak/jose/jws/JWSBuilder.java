@@ -18,6 +18,7 @@
 package org.keycloak.jose.jws;
 
 import org.keycloak.common.util.Base64Url;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
 import org.keycloak.jose.jws.crypto.HMACProvider;
 import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.util.JsonSerialization;
@@ -26,6 +27,8 @@ import javax.crypto.SecretKey;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -100,6 +103,31 @@ public class JWSBuilder {
         return contentBytes;
     }
 
+    /**
+     * Encodes the content of all the builders and signs them at once with the signer. Kid of the signer is used for the builders without kid.
+     */
+    public static List<String> sign(JWSSigner signer, List<EncodingBuilder> builders) {
+        List<StringBuffer> buffers = new ArrayList<>(builders.size());
+        List<byte[]> data = new ArrayList<>(builders.size());
+        for (EncodingBuilder builder : builders) {
+            StringBuffer buffer = builder.encodeWith(signer);
+            buffers.add(buffer);
+            try {
+                data.add(buffer.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        List<byte[]> signatures = signer.sign(data);
+        List<String> encoded = new ArrayList<>(builders.size());
+        for (int i = 0; i < builders.size(); i++) {
+            StringBuffer buffer = buffers.get(i).append('.');
+            encoded.add(buffer.append(Base64Url.encode(signatures.get(i))).toString());
+        }
+        return encoded;
+    }
+
     public class EncodingBuilder {
         public String none() {
             StringBuffer buffer = new StringBuffer();
@@ -114,13 +142,39 @@ public class JWSBuilder {
             encode(algorithm, data, buffer);
             byte[] signature = null;
             try {
-                signature = RSAProvider.sign(buffer.toString().getBytes("UTF-8"), algorithm, privateKey);
+                if (ECDSAProvider.isECDSA(algorithm)) {
+                    signature = ECDSAProvider.sign(buffer.toString().getBytes("UTF-8"), algorithm, privateKey);
+                } else {
+                    signature = RSAProvider.sign(buffer.toString().getBytes("UTF-8"), algorithm, privateKey);
+                }
             } catch (UnsupportedEncodingException e) {
                 throw new RuntimeException(e);
             }
             return encodeAll(buffer, signature);
         }
 
+        /**
+         * Signs with the signer. Kid of the signer is used if the builder doesn't have kid.
+         */
+        public String sign(JWSSigner signer) {
+            StringBuffer buffer = encodeWith(signer);
+            byte[] signature = null;
+            try {
+                signature = signer.sign(buffer.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            return encodeAll(buffer, signature);
+        }
+
+        private StringBuffer encodeWith(JWSSigner signer) {
+            if (kid == null) kid = signer.getKid();
+            StringBuffer buffer = new StringBuffer();
+            byte[] data = marshalContent();
+            encode(signer.getAlgorithm(), data, buffer);
+            return buffer;
+        }
+
         public String rsa256(PrivateKey privateKey) {
             return sign(Algorithm.RS256, privateKey);
         }
@@ -133,6 +187,18 @@ public class JWSBuilder {
             return sign(Algorithm.RS512, privateKey);
         }
 
+        public String ecdsa256(PrivateKey privateKey) {
+            return sign(Algorithm.ES256, privateKey);
+        }
+
+        public String ecdsa384(PrivateKey privateKey) {
+            return sign(Algorithm.ES384, privateKey);
+        }
+
+        public String ecdsa512(PrivateKey privateKey) {
+            return sign(Algorithm.ES512, privateKey);
+        }
+
 
         public String hmac256(byte[] sharedSecret) {
             StringBuffer buffer = new StringBuffer();
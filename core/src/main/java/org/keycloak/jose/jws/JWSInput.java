@@ -18,10 +18,13 @@
 package org.keycloak.jose.jws;
 
 import org.keycloak.common.util.Base64Url;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.util.JsonSerialization;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.security.PublicKey;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -97,6 +100,30 @@ public class JWSInput {
         return header.getAlgorithm().getProvider().verify(this, key);
     }
 
+    /**
+     * Verifies RSA or ECDSA signature, depending on the algorithm from the header.
+     *
+     * @return false if signature is invalid or algorithm doesn't use public key
+     */
+    public boolean verify(PublicKey publicKey) {
+        Algorithm algorithm = header.getAlgorithm();
+        if (algorithm == null || publicKey == null) {
+            return false;
+        }
+        switch (algorithm) {
+            case RS256:
+            case RS384:
+            case RS512:
+                return RSAProvider.verify(this, publicKey);
+            case ES256:
+            case ES384:
+            case ES512:
+                return ECDSAProvider.verify(this, publicKey);
+            default:
+                return false;
+        }
+    }
+
     public <T> T readJsonContent(Class<T> type) throws JWSInputException {
         try {
             return JsonSerialization.readValue(content, type);
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jws;
+
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
+import org.keycloak.jose.jws.crypto.HMACProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs JWS with one key. Looking up the JCA provider and initializing {@link Signature} or {@link Mac} with the key is done
+ * just once for each instance in the pool, which is reused by subsequent signing. Signer is thread safe, each thread borrows
+ * its own instance from the pool.
+ *
+ * Signer is supposed to be kept as long as the key is valid, see {@code KeyManager.getActiveSigner}.
+ */
+public abstract class JWSSigner {
+
+    private static final int MAX_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final Algorithm algorithm;
+    private final String kid;
+    private final Key key;
+
+    protected JWSSigner(Algorithm algorithm, String kid, Key key) {
+        this.algorithm = algorithm;
+        this.kid = kid;
+        this.key = key;
+    }
+
+    public static JWSSigner rsa(Algorithm algorithm, String kid, PrivateKey privateKey) {
+        return new RSASigner(algorithm, kid, privateKey);
+    }
+
+    public static JWSSigner ecdsa(Algorithm algorithm, String kid, PrivateKey privateKey) {
+        return new ECDSASigner(algorithm, kid, privateKey);
+    }
+
+    public static JWSSigner hmac(Algorithm algorithm, String kid, SecretKey secretKey) {
+        return new HMACSigner(algorithm, kid, secretKey);
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getKid() {
+        return kid;
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    public abstract byte[] sign(byte[] data);
+
+    /**
+     * Signs all the data with one instance from the pool.
+     */
+    public abstract List<byte[]> sign(List<byte[]> data);
+
+    private abstract static class PooledSigner<T> extends JWSSigner {
+
+        private final Queue<T> pool = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger poolSize = new AtomicInteger();
+
+        private PooledSigner(Algorithm algorithm, String kid, Key key) {
+            super(algorithm, kid, key);
+        }
+
+        @Override
+        public byte[] sign(byte[] data) {
+            T instance = borrow();
+            boolean reusable = false;
+            try {
+                byte[] signature = sign(instance, data);
+                reusable = true;
+                return signature;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (reusable) release(instance);
+            }
+        }
+
+        @Override
+        public List<byte[]> sign(List<byte[]> data) {
+            List<byte[]> signatures = new ArrayList<>(data.size());
+            T instance = borrow();
+            boolean reusable = false;
+            try {
+                for (byte[] d : data) {
+                    signatures.add(sign(instance, d));
+                }
+                reusable = true;
+                return signatures;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (reusable) release(instance);
+            }
+        }
+
+        private T borrow() {
+            T instance = pool.poll();
+            if (instance != null) {
+                poolSize.decrementAndGet();
+                return instance;
+            }
+            try {
+                return create();
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // Instance, which failed to sign, is in unknown state, so it's never released back to the pool
+        private void release(T instance) {
+            if (poolSize.incrementAndGet() > MAX_POOL_SIZE) {
+                poolSize.decrementAndGet();
+                return;
+            }
+            pool.offer(instance);
+        }
+
+        /**
+         * @return new instance initialized with the key
+         */
+        protected abstract T create() throws GeneralSecurityException;
+
+        /**
+         * Signs the data. Instance must be ready for signing next data afterwards.
+         */
+        protected abstract byte[] sign(T instance, byte[] data) throws GeneralSecurityException;
+    }
+
+    private static class RSASigner extends PooledSigner<Signature> {
+
+        private RSASigner(Algorithm algorithm, String kid, PrivateKey privateKey) {
+            super(algorithm, kid, privateKey);
+        }
+
+        @Override
+        protected Signature create() throws GeneralSecurityException {
+            Signature signature = Signature.getInstance(RSAProvider.getJavaAlgorithm(getAlgorithm()));
+            signature.initSign((PrivateKey) getKey());
+            return signature;
+        }
+
+        @Override
+        protected byte[] sign(Signature signature, byte[] data) throws GeneralSecurityException {
+            // sign() resets the signature to the state after initSign
+            signature.update(data);
+            return signature.sign();
+        }
+    }
+
+    private static class ECDSASigner extends PooledSigner<Signature> {
+
+        private final int signatureLength;
+
+        private ECDSASigner(Algorithm algorithm, String kid, PrivateKey privateKey) {
+            super(algorithm, kid, privateKey);
+            this.signatureLength = ECDSAProvider.getSignatureLength(algorithm);
+        }
+
+        @Override
+        protected Signature create() throws GeneralSecurityException {
+            Signature signature = Signature.getInstance(ECDSAProvider.getJavaAlgorithm(getAlgorithm()));
+            signature.initSign((PrivateKey) getKey());
+            return signature;
+        }
+
+        @Override
+        protected byte[] sign(Signature signature, byte[] data) throws GeneralSecurityException {
+            signature.update(data);
+            return ECDSAProvider.derToConcatenated(signature.sign(), signatureLength);
+        }
+    }
+
+    private static class HMACSigner extends PooledSigner<Mac> {
+
+        private HMACSigner(Algorithm algorithm, String kid, SecretKey secretKey) {
+            super(algorithm, kid, secretKey);
+        }
+
+        @Override
+        protected Mac create() throws GeneralSecurityException {
+            Mac mac = Mac.getInstance(HMACProvider.getJavaAlgorithm(getAlgorithm()));
+            mac.init(getKey());
+            return mac;
+        }
+
+        @Override
+        protected byte[] sign(Mac mac, byte[] data) throws GeneralSecurityException {
+            // doFinal() resets the mac to the state after init
+            mac.update(data);
+            return mac.doFinal();
+        }
+    }
+}
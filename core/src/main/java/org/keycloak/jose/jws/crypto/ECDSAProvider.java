@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jws.crypto;
+
+
+import org.keycloak.common.util.PemUtils;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
+
+/**
+ * ECDSA signatures. JCA produces and expects ASN.1 DER encoded signatures, while JWS uses concatenation of R and S
+ * (see RFC 7518, section 3.4), so signatures are transcoded.
+ */
+public class ECDSAProvider implements SignatureProvider {
+
+    public static String getJavaAlgorithm(Algorithm alg) {
+        switch (alg) {
+            case ES256:
+                return "SHA256withECDSA";
+            case ES384:
+                return "SHA384withECDSA";
+            case ES512:
+                return "SHA512withECDSA";
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * @return length of the JWS signature in bytes
+     */
+    public static int getSignatureLength(Algorithm alg) {
+        switch (alg) {
+            case ES256:
+                return 64;
+            case ES384:
+                return 96;
+            case ES512:
+                return 132;
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * @return algorithm for the curve of the key (P-256, P-384 or P-521)
+     */
+    public static Algorithm getAlgorithm(ECKey key) {
+        int fieldSize = key.getParams().getCurve().getField().getFieldSize();
+        switch (fieldSize) {
+            case 256:
+                return Algorithm.ES256;
+            case 384:
+                return Algorithm.ES384;
+            case 521:
+                return Algorithm.ES512;
+            default:
+                throw new IllegalArgumentException("Unsupported curve with field size " + fieldSize);
+        }
+    }
+
+    public static boolean isECDSA(Algorithm alg) {
+        return alg == Algorithm.ES256 || alg == Algorithm.ES384 || alg == Algorithm.ES512;
+    }
+
+    public static Signature getSignature(Algorithm alg) {
+        try {
+            return Signature.getInstance(getJavaAlgorithm(alg));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        try {
+            Signature signature = getSignature(algorithm);
+            signature.initSign(privateKey);
+            signature.update(data);
+            return derToConcatenated(signature.sign(), getSignatureLength(algorithm));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static boolean verifyViaCertificate(JWSInput input, String cert) {
+        X509Certificate certificate = null;
+        try {
+            certificate = PemUtils.decodeCertificate(cert);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return verify(input, certificate.getPublicKey());
+    }
+
+    public static boolean verify(JWSInput input, PublicKey publicKey) {
+        try {
+            Algorithm algorithm = input.getHeader().getAlgorithm();
+            byte[] signature = input.getSignature();
+            if (signature.length != getSignatureLength(algorithm)) return false;
+
+            Signature verifier = getSignature(algorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(input.getEncodedSignatureInput().getBytes("UTF-8"));
+            return verifier.verify(concatenatedToDer(signature));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean verify(JWSInput input, String key) {
+        return verifyViaCertificate(input, key);
+    }
+
+    /**
+     * Transcodes DER encoded sequence of R and S integers to their concatenation, each of them padded to half of the length
+     */
+    public static byte[] derToConcatenated(byte[] der, int length) {
+        if (der.length < 8 || der[0] != 0x30) {
+            throw new IllegalArgumentException("Invalid ECDSA signature");
+        }
+        // length of the sequence is encoded in two bytes for P-521
+        int offset = der[1] == (byte) 0x81 ? 3 : 2;
+
+        byte[] concatenated = new byte[length];
+        offset = copyInteger(der, offset, concatenated, 0, length / 2);
+        copyInteger(der, offset, concatenated, length / 2, length / 2);
+        return concatenated;
+    }
+
+    private static int copyInteger(byte[] der, int offset, byte[] target, int targetOffset, int length) {
+        if (der[offset] != 0x02) {
+            throw new IllegalArgumentException("Invalid ECDSA signature");
+        }
+        int integerLength = der[offset + 1];
+        int start = offset + 2;
+        int end = start + integerLength;
+        // leading zero is added to DER integer, which would be negative otherwise
+        while (end - start > length && der[start] == 0) {
+            start++;
+        }
+        if (end - start > length) {
+            throw new IllegalArgumentException("Invalid ECDSA signature");
+        }
+        System.arraycopy(der, start, target, targetOffset + length - (end - start), end - start);
+        return end;
+    }
+
+    /**
+     * Transcodes concatenated R and S to DER encoded sequence of two integers
+     */
+    public static byte[] concatenatedToDer(byte[] concatenated) {
+        byte[] r = toDerInteger(concatenated, 0, concatenated.length / 2);
+        byte[] s = toDerInteger(concatenated, concatenated.length / 2, concatenated.length / 2);
+        int length = r.length + s.length;
+        int headerLength = length > 127 ? 3 : 2;
+
+        byte[] der = new byte[headerLength + length];
+        der[0] = 0x30;
+        if (length > 127) {
+            der[1] = (byte) 0x81;
+            der[2] = (byte) length;
+        } else {
+            der[1] = (byte) length;
+        }
+        System.arraycopy(r, 0, der, headerLength, r.length);
+        System.arraycopy(s, 0, der, headerLength + r.length, s.length);
+        return der;
+    }
+
+    private static byte[] toDerInteger(byte[] data, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end - 1 && data[start] == 0) {
+            start++;
+        }
+        int padding = (data[start] & 0x80) != 0 ? 1 : 0;
+        int integerLength = end - start + padding;
+
+        byte[] integer = new byte[integerLength + 2];
+        integer[0] = 0x02;
+        integer[1] = (byte) integerLength;
+        System.arraycopy(data, start, integer, 2 + padding, end - start);
+        return integer;
+    }
+}
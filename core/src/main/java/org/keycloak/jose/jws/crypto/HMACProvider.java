@@ -32,7 +32,7 @@ import java.security.NoSuchAlgorithmException;
  * @version $Revision: 1 $
  */
 public class HMACProvider implements SignatureProvider {
-    private static String getJavaAlgorithm(Algorithm alg) {
+    public static String getJavaAlgorithm(Algorithm alg) {
         switch (alg) {
             case HS256:
                 return "HMACSHA256";
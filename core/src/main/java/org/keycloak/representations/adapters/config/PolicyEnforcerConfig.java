@@ -57,6 +57,14 @@ public class PolicyEnforcerConfig {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private String accessDeniedPath;
 
+    @JsonProperty("lazy-load-paths")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean lazyLoadPaths = Boolean.FALSE;
+
+    @JsonProperty("path-cache")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private PathCacheConfig pathCacheConfig;
+
     public Boolean isCreateResources() {
         return this.createResources;
     }
@@ -101,6 +109,22 @@ public class PolicyEnforcerConfig {
         return accessDeniedPath;
     }
 
+    public Boolean isLazyLoadPaths() {
+        return lazyLoadPaths;
+    }
+
+    public void setLazyLoadPaths(Boolean lazyLoadPaths) {
+        this.lazyLoadPaths = lazyLoadPaths;
+    }
+
+    public PathCacheConfig getPathCacheConfig() {
+        return pathCacheConfig;
+    }
+
+    public void setPathCacheConfig(PathCacheConfig pathCacheConfig) {
+        this.pathCacheConfig = pathCacheConfig;
+    }
+
     public static class PathConfig {
 
         private String name;
@@ -211,6 +235,48 @@ public class PolicyEnforcerConfig {
         }
     }
 
+    public static class PathCacheConfig {
+
+        @JsonProperty("max-entries")
+        private int maxEntries = 1000;
+
+        @JsonProperty("lifespan")
+        private long lifespan = 30000;
+
+        @JsonProperty("miss-lifespan")
+        private long missLifespan = 5000;
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * @return time in milliseconds for which the paths resolved from the server are cached
+         */
+        public long getLifespan() {
+            return lifespan;
+        }
+
+        public void setLifespan(long lifespan) {
+            this.lifespan = lifespan;
+        }
+
+        /**
+         * @return time in milliseconds for which the paths not known to the server are cached
+         */
+        public long getMissLifespan() {
+            return missLifespan;
+        }
+
+        public void setMissLifespan(long missLifespan) {
+            this.missLifespan = missLifespan;
+        }
+    }
+
     public enum EnforcementMode {
         PERMISSIVE,
         ENFORCING,
@@ -31,6 +31,9 @@ public class UserFederationSyncResultRepresentation {
 
     private String status;
 
+    private long duration;
+    private double throughput;
+
     public boolean isIgnored() {
         return ignored;
     }
@@ -71,6 +74,22 @@ public class UserFederationSyncResultRepresentation {
         this.failed = failed;
     }
 
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public void setThroughput(double throughput) {
+        this.throughput = throughput;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.common.util.PemUtils;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSSigner;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.RSATokenVerifier;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+
+public class ECDSATest {
+
+    private static final byte[] CONTENT = "{\"sub\":\"12345678901234567890\"}".getBytes();
+
+    @Test
+    public void testSignAndVerify() throws Exception {
+        testSignAndVerify("secp256r1", Algorithm.ES256);
+        testSignAndVerify("secp384r1", Algorithm.ES384);
+        testSignAndVerify("secp521r1", Algorithm.ES512);
+    }
+
+    private void testSignAndVerify(String curve, Algorithm algorithm) throws Exception {
+        KeyPair keyPair = KeyUtils.generateEcKeyPair(curve);
+        Assert.assertEquals(algorithm, ECDSAProvider.getAlgorithm((ECPublicKey) keyPair.getPublic()));
+
+        JWSSigner signer = JWSSigner.ecdsa(algorithm, "kid1", keyPair.getPrivate());
+        for (int i = 0; i < 20; i++) {
+            JWSInput input = new JWSInput(new JWSBuilder().content(CONTENT).sign(signer));
+            Assert.assertEquals(algorithm, input.getHeader().getAlgorithm());
+            Assert.assertEquals(ECDSAProvider.getSignatureLength(algorithm), input.getSignature().length);
+            Assert.assertTrue(input.verify(keyPair.getPublic()));
+        }
+
+        JWSInput input = new JWSInput(new JWSBuilder().content(CONTENT).sign(algorithm, keyPair.getPrivate()));
+        Assert.assertTrue(input.verify(keyPair.getPublic()));
+        Assert.assertFalse(input.verify(KeyUtils.generateEcKeyPair(curve).getPublic()));
+        Assert.assertFalse(input.verify(KeyUtils.generateRsaKeyPair(2048).getPublic()));
+    }
+
+    @Test
+    public void testTranscoding() throws Exception {
+        KeyPair keyPair = KeyUtils.generateEcKeyPair("secp521r1");
+        Signature signature = Signature.getInstance("SHA512withECDSA");
+        for (int i = 0; i < 50; i++) {
+            signature.initSign(keyPair.getPrivate());
+            signature.update(CONTENT);
+            byte[] der = signature.sign();
+
+            byte[] concatenated = ECDSAProvider.derToConcatenated(der, 132);
+            Assert.assertArrayEquals(der, ECDSAProvider.concatenatedToDer(concatenated));
+        }
+
+        // R with leading zeros and S with highest bit set
+        byte[] concatenated = new byte[64];
+        concatenated[31] = 1;
+        Arrays.fill(concatenated, 32, 64, (byte) 0xff);
+        byte[] der = ECDSAProvider.concatenatedToDer(concatenated);
+        Assert.assertEquals(2 + 3 + 2 + 33, der.length);
+        Assert.assertArrayEquals(concatenated, ECDSAProvider.derToConcatenated(der, 64));
+    }
+
+    @Test
+    public void testTokenVerifier() throws Exception {
+        KeyPair keyPair = KeyUtils.generateEcKeyPair("secp256r1");
+        AccessToken token = new AccessToken();
+        token.subject("subject");
+        token.issuer("http://localhost/auth/realms/test");
+        String encoded = new JWSBuilder().jsonContent(token).ecdsa256(keyPair.getPrivate());
+
+        // Keys from PEM, as they are configured in adapters
+        AccessToken verified = RSATokenVerifier.verifyToken(encoded, PemUtils.decodePublicKey(PemUtils.encodeKey(keyPair.getPublic())),
+                "http://localhost/auth/realms/test", false, false);
+        Assert.assertEquals("subject", verified.getSubject());
+
+        String pemSigned = new JWSBuilder().jsonContent(token).ecdsa256(PemUtils.decodePrivateKey(PemUtils.encodeKey(keyPair.getPrivate())));
+        Assert.assertTrue(new JWSInput(pemSigned).verify(keyPair.getPublic()));
+    }
+}
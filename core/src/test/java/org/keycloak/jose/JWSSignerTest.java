@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSSigner;
+import org.keycloak.jose.jws.crypto.HMACProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class JWSSignerTest {
+
+    private static final byte[] CONTENT = "{\"sub\":\"12345678901234567890\"}".getBytes();
+
+    @Test
+    public void testRsa() throws Exception {
+        KeyPair keyPair = KeyUtils.generateRsaKeyPair(2048);
+        JWSSigner signer = JWSSigner.rsa(Algorithm.RS256, "kid1", keyPair.getPrivate());
+
+        for (int i = 0; i < 3; i++) {
+            JWSInput input = new JWSInput(new JWSBuilder().type("JWT").content(CONTENT).sign(signer));
+            Assert.assertEquals("kid1", input.getHeader().getKeyId());
+            Assert.assertEquals(Algorithm.RS256, input.getHeader().getAlgorithm());
+            Assert.assertTrue(RSAProvider.verify(input, keyPair.getPublic()));
+        }
+    }
+
+    @Test
+    public void testHmacSameAsProvider() throws Exception {
+        SecretKey secret = new SecretKeySpec(UUID.randomUUID().toString().getBytes(), "HmacSHA256");
+        JWSSigner signer = JWSSigner.hmac(Algorithm.HS256, null, secret);
+
+        for (int i = 0; i < 3; i++) {
+            String encoded = new JWSBuilder().content(CONTENT).sign(signer);
+            Assert.assertEquals(new JWSBuilder().content(CONTENT).hmac256(secret), encoded);
+            Assert.assertTrue(HMACProvider.verify(new JWSInput(encoded), secret));
+        }
+    }
+
+    @Test
+    public void testSignMultiple() throws Exception {
+        KeyPair keyPair = KeyUtils.generateRsaKeyPair(2048);
+        JWSSigner signer = JWSSigner.rsa(Algorithm.RS256, "kid1", keyPair.getPrivate());
+
+        List<String> encoded = JWSBuilder.sign(signer, Arrays.asList(
+                new JWSBuilder().type("JWT").content("first".getBytes()),
+                new JWSBuilder().type("JWT").kid("other").content("second".getBytes())));
+
+        Assert.assertEquals(2, encoded.size());
+        JWSInput first = new JWSInput(encoded.get(0));
+        Assert.assertEquals("first", new String(first.getContent()));
+        Assert.assertEquals("kid1", first.getHeader().getKeyId());
+        Assert.assertTrue(RSAProvider.verify(first, keyPair.getPublic()));
+
+        JWSInput second = new JWSInput(encoded.get(1));
+        Assert.assertEquals("second", new String(second.getContent()));
+        Assert.assertEquals("other", second.getHeader().getKeyId());
+        Assert.assertTrue(RSAProvider.verify(second, keyPair.getPublic()));
+    }
+
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        SecretKey secret = new SecretKeySpec(UUID.randomUUID().toString().getBytes(), "HmacSHA256");
+        final JWSSigner signer = JWSSigner.hmac(Algorithm.HS256, null, secret);
+        final String expected = new JWSBuilder().content(CONTENT).hmac256(secret);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new LinkedList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 100; j++) {
+                            if (!expected.equals(new JWSBuilder().content(CONTENT).sign(signer))) return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
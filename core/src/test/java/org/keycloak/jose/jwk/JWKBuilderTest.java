@@ -18,6 +18,7 @@
 package org.keycloak.jose.jwk;
 
 import org.junit.Test;
+import org.keycloak.common.util.KeyUtils;
 import org.keycloak.util.JsonSerialization;
 
 import java.security.KeyPairGenerator;
@@ -56,6 +57,27 @@ public class JWKBuilderTest {
         assertArrayEquals(publicKey.getEncoded(), JWKParser.create().parse(jwkJson).toPublicKey().getEncoded());
     }
 
+    @Test
+    public void publicEc() throws Exception {
+        for (String curve : new String[] { "secp256r1", "secp384r1", "secp521r1" }) {
+            PublicKey publicKey = KeyUtils.generateEcKeyPair(curve).getPublic();
+
+            JWK jwk = JWKBuilder.create().ec(publicKey);
+
+            assertNotNull(jwk.getKeyId());
+            assertEquals("EC", jwk.getKeyType());
+            assertEquals("sig", jwk.getPublicKeyUse());
+
+            assertTrue(jwk instanceof ECPublicJWK);
+            assertEquals(curve, ECPublicJWK.getStandardCurveName(((ECPublicJWK) jwk).getCurve()));
+
+            String jwkJson = JsonSerialization.writeValueAsString(jwk);
+
+            // Parse
+            assertArrayEquals(publicKey.getEncoded(), JWKParser.create().parse(jwkJson).toPublicKey().getEncoded());
+        }
+    }
+
     @Test
     public void parse() throws NoSuchAlgorithmException, InvalidKeySpecException {
         String jwkJson = "{" +
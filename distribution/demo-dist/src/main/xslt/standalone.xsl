@@ -87,6 +87,7 @@
                 <local-cache name="sessions"/>
                 <local-cache name="offlineSessions"/>
                 <local-cache name="loginFailures"/>
+                <local-cache name="loginRateLimits"/>
                 <local-cache name="authorization"/>
                 <local-cache name="work"/>
                 <local-cache name="keys">
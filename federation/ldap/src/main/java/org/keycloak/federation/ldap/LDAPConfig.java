@@ -107,6 +107,17 @@ public class LDAPConfig {
         return config.get(LDAPConstants.CONNECTION_POOLING);
     }
 
+    public int getConnectionPoolSize() {
+        String poolSizeConfig = config.get(LDAPConstants.CONNECTION_POOL_SIZE);
+        int poolSize = poolSizeConfig!=null && !poolSizeConfig.isEmpty() ? Integer.parseInt(poolSizeConfig) : LDAPConstants.DEFAULT_CONNECTION_POOL_SIZE;
+        return Math.max(poolSize, 0);
+    }
+
+    public int getConnectionPoolMaxLifetime() {
+        String lifetimeConfig = config.get(LDAPConstants.CONNECTION_POOL_MAX_LIFETIME);
+        return lifetimeConfig!=null && !lifetimeConfig.isEmpty() ? Integer.parseInt(lifetimeConfig) : LDAPConstants.DEFAULT_CONNECTION_POOL_MAX_LIFETIME;
+    }
+
     public Properties getAdditionalConnectionProperties() {
         // not supported for now
         return null;
@@ -138,6 +149,12 @@ public class LDAPConfig {
         return pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
     }
 
+    public int getSyncWorkers() {
+        String workersConfig = config.get(LDAPConstants.SYNC_WORKERS);
+        int workers = workersConfig!=null && !workersConfig.isEmpty() ? Integer.parseInt(workersConfig) : LDAPConstants.DEFAULT_SYNC_WORKERS;
+        return Math.max(workers, 1);
+    }
+
     public String getUsernameLdapAttribute() {
         String username = config.get(LDAPConstants.USERNAME_LDAP_ATTRIBUTE);
         if (username == null) {
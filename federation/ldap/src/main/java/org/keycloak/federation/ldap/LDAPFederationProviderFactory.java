@@ -53,8 +53,17 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -92,6 +101,9 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
     @Override
     public void close() {
+        if (this.ldapStoreRegistry != null) {
+            this.ldapStoreRegistry.close();
+        }
         this.ldapStoreRegistry = null;
     }
 
@@ -280,31 +292,115 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         });
     }
 
-    protected UserFederationSyncResult syncImpl(KeycloakSessionFactory sessionFactory, LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel) {
+    /**
+     * Users are fetched from LDAP page by page on the calling thread, while the batches already fetched are imported by the sync
+     * workers, each batch in its own transaction. Count of the batches waiting for import is bounded, so the whole LDAP is never
+     * held in memory.
+     */
+    protected UserFederationSyncResult syncImpl(final KeycloakSessionFactory sessionFactory, LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel) {
 
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        final long startTime = System.currentTimeMillis();
 
         LDAPConfig ldapConfig = new LDAPConfig(fedModel.getConfig());
         boolean pagination = ldapConfig.isPagination();
-        if (pagination) {
-            int pageSize = ldapConfig.getBatchSizeForSync();
+        int batchSize = ldapConfig.getBatchSizeForSync();
+        int workers = ldapConfig.getSyncWorkers();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ldap-sync-" + fedModel.getDisplayName() + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+        final Semaphore pendingBatches = new Semaphore(workers * 2);
+        List<Future<?>> futures = new LinkedList<>();
 
+        try {
             boolean nextPage = true;
             while (nextPage) {
-                userQuery.setLimit(pageSize);
-                final List<LDAPObject> users = userQuery.getResultList();
-                nextPage = userQuery.getPaginationContext() != null;
-                UserFederationSyncResult currentPageSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-                syncResult.add(currentPageSync);
+                final List<LDAPObject> users;
+                if (pagination) {
+                    userQuery.setLimit(batchSize);
+                    users = userQuery.getResultList();
+                    nextPage = userQuery.getPaginationContext() != null;
+                } else {
+                    // LDAP pagination not available. All users are fetched at once
+                    users = userQuery.getResultList();
+                    nextPage = false;
+                }
+
+                for (int from = 0; from < users.size(); from += batchSize) {
+                    final List<LDAPObject> batch = users.subList(from, Math.min(from + batchSize, users.size()));
+
+                    pendingBatches.acquire();
+                    futures.add(executor.submit(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                UserFederationSyncResult batchResult = importLdapUsers(sessionFactory, realmId, fedModel, batch);
+                                synchronized (syncResult) {
+                                    syncResult.add(batchResult);
+                                    syncResult.setDuration(System.currentTimeMillis() - startTime);
+                                    logger.debugf("Sync progress of federation provider '%s': %s, %.1f users per second", fedModel.getDisplayName(), syncResult.getStatus(), syncResult.getThroughput());
+                                }
+                            } finally {
+                                pendingBatches.release();
+                            }
+                        }
+
+                    }));
+                }
+
+                removeCompleted(futures);
             }
-        } else {
-            // LDAP pagination not available. Do everything in single transaction
-            final List<LDAPObject> users = userQuery.getResultList();
-            UserFederationSyncResult currentSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-            syncResult.add(currentSync);
+
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ModelException("Interrupted during sync of users from LDAP", ie);
+        } finally {
+            executor.shutdownNow();
         }
 
-        return syncResult;
+        synchronized (syncResult) {
+            syncResult.setDuration(System.currentTimeMillis() - startTime);
+            logger.infof("Sync of federation provider '%s' took %d ms, %.1f users per second", fedModel.getDisplayName(), syncResult.getDuration(), syncResult.getThroughput());
+            return syncResult;
+        }
+    }
+
+    // Failure of the batch is propagated right away, so the sync doesn't go on with next pages
+    private void removeCompleted(List<Future<?>> futures) throws InterruptedException {
+        Iterator<Future<?>> iterator = futures.iterator();
+        while (iterator.hasNext()) {
+            Future<?> future = iterator.next();
+            if (future.isDone()) {
+                await(future);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void await(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ModelException("Failed during sync of users from LDAP", cause);
+        }
     }
 
     private LDAPQuery createQuery(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel model) {
@@ -326,19 +422,15 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return queryHolder.query;
     }
 
-    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
-        final UserFederationSyncResult syncResult = new UserFederationSyncResult();
-
-        class BooleanHolder {
-            private boolean value = true;
-        }
-        final BooleanHolder exists = new BooleanHolder();
-
-        for (final LDAPObject ldapUser : ldapUsers) {
+    /**
+     * Imports the users in single transaction. If the transaction fails, users are imported again one by one, each in its own
+     * transaction, so that just the users, which can't be imported, are failed.
+     */
+    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final List<LDAPObject> ldapUsers) {
+        if (ldapUsers.size() > 1) {
+            final UserFederationSyncResult batchResult = new UserFederationSyncResult();
 
             try {
-
-                // Process each user in it's own transaction to avoid global fail
                 KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
 
                     @Override
@@ -346,36 +438,33 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
                         LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
                         RealmModel currentRealm = session.realms().getRealm(realmId);
 
-                        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        exists.value = true;
-                        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
+                        for (LDAPObject ldapUser : ldapUsers) {
+                            importLdapUser(session, ldapFedProvider, currentRealm, fedModel, ldapUser, batchResult, new BooleanHolder());
+                        }
+                    }
+
+                });
+                return batchResult;
+            } catch (RuntimeException re) {
+                logger.warnf("Failed to import batch of %d users from LDAP in single transaction, importing them one by one. Cause: %s", ldapUsers.size(), re.toString());
+            }
+        }
 
-                        if (currentUser == null) {
+        final UserFederationSyncResult syncResult = new UserFederationSyncResult();
 
-                            // Add new user to Keycloak
-                            exists.value = false;
-                            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
-                            syncResult.increaseAdded();
+        for (final LDAPObject ldapUser : ldapUsers) {
+            final BooleanHolder exists = new BooleanHolder();
 
-                        } else {
-                            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
+            try {
 
-                                // Update keycloak user
-                                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
-                                List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
-                                for (UserFederationMapperModel mapperModel : sortedMappers) {
-                                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
-                                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
-                                }
+                // Process each user in it's own transaction to avoid global fail
+                KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
 
-                                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
-                                syncResult.increaseUpdated();
-                            } else {
-                                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
-                                syncResult.increaseFailed();
-                            }
-                        }
+                    @Override
+                    public void run(KeycloakSession session) {
+                        LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+                        RealmModel currentRealm = session.realms().getRealm(realmId);
+                        importLdapUser(session, ldapFedProvider, currentRealm, fedModel, ldapUser, syncResult, exists);
                     }
 
                 });
@@ -413,6 +502,44 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return syncResult;
     }
 
+    private void importLdapUser(KeycloakSession session, LDAPFederationProvider ldapFedProvider, RealmModel currentRealm, UserFederationProviderModel fedModel,
+                                LDAPObject ldapUser, UserFederationSyncResult syncResult, BooleanHolder exists) {
+        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        exists.value = true;
+        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
+
+        if (currentUser == null) {
+
+            // Add new user to Keycloak
+            exists.value = false;
+            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
+            syncResult.increaseAdded();
+
+        } else {
+            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
+
+                // Update keycloak user
+                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
+                List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
+                for (UserFederationMapperModel mapperModel : sortedMappers) {
+                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
+                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
+                }
+
+                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
+                syncResult.increaseUpdated();
+            } else {
+                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
+                syncResult.increaseFailed();
+            }
+        }
+    }
+
+    private static class BooleanHolder {
+        private boolean value = true;
+    }
+
     protected SPNEGOAuthenticator createSPNEGOAuthenticator(String spnegoToken, CommonKerberosConfig kerberosConfig) {
         KerberosServerSubjectAuthenticator kerberosAuth = createKerberosSubjectAuthenticator(kerberosConfig);
         return new SPNEGOAuthenticator(kerberosConfig, kerberosAuth, spnegoToken);
@@ -44,12 +44,22 @@ public class LDAPIdentityStoreRegistry {
             logLDAPConfig(model.getDisplayName(), config);
 
             LDAPIdentityStore store = createLdapIdentityStore(config);
-            context = new LDAPIdentityStoreContext(config, store);
-            ldapStores.put(model.getId(), context);
+            LDAPIdentityStoreContext previous = ldapStores.put(model.getId(), new LDAPIdentityStoreContext(config, store));
+            if (previous != null) {
+                previous.store.close();
+            }
+            return store;
         }
         return context.store;
     }
 
+    public void close() {
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            context.store.close();
+        }
+        ldapStores.clear();
+    }
+
     // Don't log LDAP password
     private void logLDAPConfig(String fedProviderDisplayName, Map<String, String> ldapConfig) {
         Map<String, String> copy = new HashMap<String, String>(ldapConfig);
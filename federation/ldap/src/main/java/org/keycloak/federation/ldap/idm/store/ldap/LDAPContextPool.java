@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Time;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of LDAP connections. Count of connections, which are borrowed or idle in the pool, never exceeds the max size.
+ * Borrowed connection is used by one thread only and must be always released back to the pool.
+ *
+ * Idle connections are reused in LIFO order, so the rarely used ones exceed the max lifetime and get closed. If enabled,
+ * connections idle for longer than {@link #VALIDATION_INTERVAL} are validated with a cheap read before they are borrowed.
+ */
+public class LDAPContextPool {
+
+    private static final Logger logger = Logger.getLogger(LDAPContextPool.class);
+
+    public static final long VALIDATION_INTERVAL = 30000;
+    public static final long BORROW_TIMEOUT = 30000;
+
+    interface ContextFactory {
+        LdapContext create() throws NamingException;
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final long maxLifetime;
+    private final boolean validateIdle;
+    private final ContextFactory factory;
+
+    // Each borrowed connection holds one permit
+    private final Semaphore permits;
+    private final BlockingDeque<PooledContext> idle = new LinkedBlockingDeque<PooledContext>();
+    private volatile boolean closed;
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong borrowedCount = new AtomicLong();
+    private final AtomicLong validationFailedCount = new AtomicLong();
+    private final AtomicLong borrowTimeoutCount = new AtomicLong();
+
+    /**
+     * @param maxLifetime in milliseconds
+     * @param validateIdle whether connections idle for a while are validated before they are borrowed
+     */
+    LDAPContextPool(String name, int maxSize, long maxLifetime, boolean validateIdle, ContextFactory factory) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.maxLifetime = maxLifetime;
+        this.validateIdle = validateIdle;
+        this.factory = factory;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrows idle connection or creates new one. Waits up to {@link #BORROW_TIMEOUT} if all the connections are borrowed.
+     */
+    PooledContext borrow() throws NamingException {
+        if (closed) {
+            throw new ServiceUnavailableException("LDAP connection pool " + name + " is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                borrowTimeoutCount.incrementAndGet();
+                throw new ServiceUnavailableException("Timeout when waiting for connection from LDAP connection pool " + name);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted when waiting for connection from LDAP connection pool " + name);
+        }
+
+        try {
+            PooledContext pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    borrowedCount.incrementAndGet();
+                    return pooled;
+                }
+                destroy(pooled);
+            }
+
+            pooled = new PooledContext(factory.create());
+            createdCount.incrementAndGet();
+            borrowedCount.incrementAndGet();
+            return pooled;
+        } catch (NamingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param reusable false if the connection is in unknown state after failed operation. It is closed then
+     */
+    void release(PooledContext pooled, boolean reusable) {
+        try {
+            if (reusable && !closed && !isExpired(pooled) && reset(pooled)) {
+                pooled.lastUsed = Time.currentTimeMillis();
+                idle.offerFirst(pooled);
+
+                // Pool might have been closed in the meantime
+                if (closed && idle.remove(pooled)) {
+                    destroy(pooled);
+                }
+            } else {
+                destroy(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all the idle connections. Used when some connection is found broken, as the other ones are likely broken too
+     */
+    void evictIdle() {
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Closes idle connections. Borrowed connections are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        evictIdle();
+        logger.debugf("Closed LDAP connection pool %s. Created: %d, destroyed: %d, borrowed: %d, failed validations: %d, borrow timeouts: %d",
+                name, getCreatedCount(), getDestroyedCount(), getBorrowedCount(), getValidationFailedCount(), getBorrowTimeoutCount());
+    }
+
+    private boolean isExpired(PooledContext pooled) {
+        return Time.currentTimeMillis() - pooled.created > maxLifetime;
+    }
+
+    private boolean isUsable(PooledContext pooled) {
+        if (isExpired(pooled)) {
+            return false;
+        }
+        if (!validateIdle || Time.currentTimeMillis() - pooled.lastUsed <= VALIDATION_INTERVAL) {
+            return true;
+        }
+
+        try {
+            // Just round trip to the server. OID 1.1 means that no attributes are returned
+            pooled.context.getAttributes("", new String[] { "1.1" });
+            return true;
+        } catch (NamingException ne) {
+            validationFailedCount.incrementAndGet();
+            logger.debugf(ne, "Validation of idle connection from LDAP connection pool %s failed", name);
+            return false;
+        }
+    }
+
+    // Request controls are kept by the context and would be sent with next operations
+    private boolean reset(PooledContext pooled) {
+        try {
+            pooled.context.setRequestControls(null);
+            return true;
+        } catch (NamingException ne) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledContext pooled) {
+        destroyedCount.incrementAndGet();
+        try {
+            pooled.context.close();
+        } catch (NamingException ne) {
+            logger.debugf(ne, "Could not close connection from LDAP connection pool %s", name);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getBorrowedCount() {
+        return borrowedCount.get();
+    }
+
+    public long getValidationFailedCount() {
+        return validationFailedCount.get();
+    }
+
+    public long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.get();
+    }
+
+    static class PooledContext {
+
+        private final LdapContext context;
+        private final long created;
+        private long lastUsed;
+
+        private PooledContext(LdapContext context) {
+            this.context = context;
+            this.created = Time.currentTimeMillis();
+            this.lastUsed = created;
+        }
+
+        LdapContext getContext() {
+            return context;
+        }
+    }
+}
@@ -79,6 +79,17 @@ public class LDAPIdentityStore implements IdentityStore {
         return this.config;
     }
 
+    public LDAPOperationManager getOperationManager() {
+        return this.operationManager;
+    }
+
+    /**
+     * Closes pooled LDAP connections. Operations in progress can still finish
+     */
+    public void close() {
+        this.operationManager.close();
+    }
+
     @Override
     public void add(LDAPObject ldapObject) {
         // id will be assigned by the ldap server
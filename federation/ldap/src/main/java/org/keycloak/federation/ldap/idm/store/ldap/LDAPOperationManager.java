@@ -25,10 +25,12 @@ import org.keycloak.models.ModelException;
 
 import javax.naming.AuthenticationException;
 import javax.naming.Binding;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
@@ -65,9 +67,38 @@ public class LDAPOperationManager {
     private final LDAPConfig config;
     private final Map<String, Object> connectionProperties;
 
+    // Dedicated connection pools. Both are null if they are disabled
+    private final LDAPContextPool searchPool;
+    private final LDAPContextPool bindPool;
+
     public LDAPOperationManager(LDAPConfig config) throws NamingException {
         this.config = config;
         this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+
+        int poolSize = config.getConnectionPoolSize();
+        if (poolSize > 0) {
+            long maxLifetime = config.getConnectionPoolMaxLifetime() * 1000L;
+            this.searchPool = new LDAPContextPool("search", poolSize, maxLifetime, true, new LDAPContextPool.ContextFactory() {
+
+                @Override
+                public LdapContext create() throws NamingException {
+                    return createLdapContext();
+                }
+
+            });
+            // Bind connections don't keep credentials of the last user, so they can't be validated without binding again
+            this.bindPool = new LDAPContextPool("bind", poolSize, maxLifetime, false, new LDAPContextPool.ContextFactory() {
+
+                @Override
+                public LdapContext create() throws NamingException {
+                    return createBindContext();
+                }
+
+            });
+        } else {
+            this.searchPool = null;
+            this.bindPool = null;
+        }
     }
 
     /**
@@ -348,6 +379,11 @@ public class LDAPOperationManager {
                 throw new AuthenticationException("Empty password used");
             }
 
+            if (bindPool != null) {
+                bind(dn, password);
+                return;
+            }
+
             Hashtable<String, Object> env = new Hashtable<String, Object>(this.connectionProperties);
 
             env.put(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_SIMPLE);
@@ -379,6 +415,39 @@ public class LDAPOperationManager {
         }
     }
 
+    // Pooled connection is re-bound with credentials of the user, which saves the connect and TLS handshake. Connection is reused just
+    // if the bind succeeded, as the state of the connection after failed bind depends on the LDAP server
+    private void bind(String dn, String password) throws NamingException {
+        try {
+            bind(bindPool.borrow(), dn, password);
+        } catch (CommunicationException ce) {
+            // Idle connections might have been dropped by the server or a firewall without us noticing
+            logger.debugf(ce, "Pooled LDAP connection failed when validating password of DN [%s]. Retrying with new connection", dn);
+            bindPool.evictIdle();
+            bind(bindPool.borrow(), dn, password);
+        }
+    }
+
+    private void bind(LDAPContextPool.PooledContext pooled, String dn, String password) throws NamingException {
+        LdapContext context = pooled.getContext();
+        boolean reusable = false;
+        try {
+            context.addToEnvironment(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_SIMPLE);
+            context.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            context.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+            context.reconnect(null);
+            reusable = true;
+        } finally {
+            // Don't keep password of the user in the pooled connection. Next bind sets the credentials again
+            try {
+                context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            } catch (NamingException ne) {
+                reusable = false;
+            }
+            bindPool.release(pooled, reusable);
+        }
+    }
+
     public void modifyAttributes(final String dn, final ModificationItem[] mods) {
         try {
             if (logger.isTraceEnabled()) {
@@ -472,6 +541,33 @@ public class LDAPOperationManager {
         return new InitialLdapContext(new Hashtable<Object, Object>(this.connectionProperties), null);
     }
 
+    // Connection is opened without bind. It is bound with credentials of the user later
+    private LdapContext createBindContext() throws NamingException {
+        Hashtable<Object, Object> env = new Hashtable<Object, Object>(this.connectionProperties);
+        env.put(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_NONE);
+        env.remove(Context.SECURITY_PRINCIPAL);
+        env.remove(Context.SECURITY_CREDENTIALS);
+        return new InitialLdapContext(env, null);
+    }
+
+    public LDAPContextPool getSearchPool() {
+        return searchPool;
+    }
+
+    public LDAPContextPool getBindPool() {
+        return bindPool;
+    }
+
+    /**
+     * Closes the dedicated connection pools, if they are enabled
+     */
+    public void close() {
+        if (searchPool != null) {
+            searchPool.close();
+            bindPool.close();
+        }
+    }
+
     private Map<String, Object> createConnectionProperties() {
         HashMap<String, Object> env = new HashMap<String, Object>();
 
@@ -504,7 +600,10 @@ public class LDAPOperationManager {
         LDAPConstants.setTruststoreSpiIfNeeded(useTruststoreSpi, url, env);
 
         String connectionPooling = this.config.getConnectionPooling();
-        if (connectionPooling != null) {
+        if (this.config.getConnectionPoolSize() > 0) {
+            // Connections are pooled by LDAPContextPool
+            env.put("com.sun.jndi.ldap.connect.pool", "false");
+        } else if (connectionPooling != null) {
             env.put("com.sun.jndi.ldap.connect.pool", connectionPooling);
         }
 
@@ -528,6 +627,10 @@ public class LDAPOperationManager {
     }
 
     private <R> R execute(LdapOperation<R> operation) throws NamingException {
+        if (searchPool != null) {
+            return executePooled(operation);
+        }
+
         LdapContext context = null;
 
         try {
@@ -546,6 +649,25 @@ public class LDAPOperationManager {
         }
     }
 
+    // Connection is reused after failed operation, unless the failure was caused by the connection itself
+    private <R> R executePooled(LdapOperation<R> operation) throws NamingException {
+        LDAPContextPool.PooledContext pooled = searchPool.borrow();
+        boolean reusable = false;
+        try {
+            R result = operation.execute(pooled.getContext());
+            reusable = true;
+            return result;
+        } catch (CommunicationException | ServiceUnavailableException e) {
+            searchPool.evictIdle();
+            throw e;
+        } catch (NamingException ne) {
+            reusable = true;
+            throw ne;
+        } finally {
+            searchPool.release(pooled, reusable);
+        }
+    }
+
     private interface LdapOperation<R> {
         R execute(LdapContext context) throws NamingException;
     }
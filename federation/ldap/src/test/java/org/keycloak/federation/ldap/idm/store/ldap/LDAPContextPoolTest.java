@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LDAPContextPoolTest {
+
+    private final List<TestContext> contexts = new ArrayList<>();
+    private boolean failValidation;
+
+    @After
+    public void after() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        LDAPContextPool pool = createPool(true);
+
+        LDAPContextPool.PooledContext first = pool.borrow();
+        LDAPContextPool.PooledContext second = pool.borrow();
+        Assert.assertEquals(2, pool.getActiveCount());
+        Assert.assertEquals(2, pool.getCreatedCount());
+
+        pool.release(second, true);
+        pool.release(first, true);
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(2, pool.getIdleCount());
+
+        // Last released connection is reused first
+        Assert.assertSame(first, pool.borrow());
+        Assert.assertEquals(2, pool.getCreatedCount());
+        Assert.assertEquals(3, pool.getBorrowedCount());
+        Assert.assertEquals(1, contexts.get(0).resets);
+    }
+
+    @Test
+    public void testNotReusableClosed() throws Exception {
+        LDAPContextPool pool = createPool(true);
+
+        LDAPContextPool.PooledContext pooled = pool.borrow();
+        pool.release(pooled, false);
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getDestroyedCount());
+        Assert.assertTrue(contexts.get(0).closed);
+        Assert.assertNotSame(pooled, pool.borrow());
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        LDAPContextPool pool = createPool(true);
+
+        LDAPContextPool.PooledContext pooled = pool.borrow();
+        pool.release(pooled, true);
+
+        Time.setOffset(120);
+        Assert.assertNotSame(pooled, pool.borrow());
+        Assert.assertTrue(contexts.get(0).closed);
+        Assert.assertEquals(0, contexts.get(0).validations);
+    }
+
+    @Test
+    public void testIdleValidation() throws Exception {
+        LDAPContextPool pool = createPool(true);
+
+        LDAPContextPool.PooledContext pooled = pool.borrow();
+        pool.release(pooled, true);
+
+        // Idle just for a while
+        Assert.assertSame(pooled, pool.borrow());
+        Assert.assertEquals(0, contexts.get(0).validations);
+        pool.release(pooled, true);
+
+        Time.setOffset(40);
+        Assert.assertSame(pooled, pool.borrow());
+        Assert.assertEquals(1, contexts.get(0).validations);
+        pool.release(pooled, true);
+
+        Time.setOffset(80);
+        failValidation = true;
+        Assert.assertNotSame(pooled, pool.borrow());
+        Assert.assertEquals(1, pool.getValidationFailedCount());
+        Assert.assertTrue(contexts.get(0).closed);
+    }
+
+    @Test
+    public void testIdleNotValidated() throws Exception {
+        LDAPContextPool pool = createPool(false);
+
+        LDAPContextPool.PooledContext pooled = pool.borrow();
+        pool.release(pooled, true);
+
+        Time.setOffset(40);
+        failValidation = true;
+        Assert.assertSame(pooled, pool.borrow());
+        Assert.assertEquals(0, contexts.get(0).validations);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        LDAPContextPool pool = createPool(true);
+
+        LDAPContextPool.PooledContext borrowed = pool.borrow();
+        pool.release(pool.borrow(), true);
+
+        pool.close();
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertTrue(contexts.get(1).closed);
+        Assert.assertFalse(contexts.get(0).closed);
+
+        pool.release(borrowed, true);
+        Assert.assertTrue(contexts.get(0).closed);
+        Assert.assertEquals(0, pool.getActiveCount());
+
+        try {
+            pool.borrow();
+            Assert.fail("Closed pool must not lend connections");
+        } catch (ServiceUnavailableException expected) {
+        }
+    }
+
+    // Max lifetime 100 seconds. Idle connections are validated after 30 seconds
+    private LDAPContextPool createPool(boolean validateIdle) {
+        return new LDAPContextPool("test", 2, 100000, validateIdle, new LDAPContextPool.ContextFactory() {
+
+            @Override
+            public LdapContext create() throws NamingException {
+                TestContext context = new TestContext();
+                contexts.add(context);
+                return (LdapContext) Proxy.newProxyInstance(LDAPContextPoolTest.class.getClassLoader(), new Class[] { LdapContext.class }, context);
+            }
+
+        });
+    }
+
+    private class TestContext implements InvocationHandler {
+
+        private boolean closed;
+        private int resets;
+        private int validations;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    closed = true;
+                    return null;
+                case "setRequestControls":
+                    resets++;
+                    return null;
+                case "getAttributes":
+                    validations++;
+                    if (failValidation) {
+                        throw new CommunicationException("Connection reset");
+                    }
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
@@ -65,12 +65,19 @@ public class CachedPolicyStore implements PolicyStore {
         Policy policy = getDelegate().create(name, type, getStoreFactory().getResourceServerStore().findById(resourceServer.getId()));
 
         this.transaction.whenRollback(() -> cache.remove(getCacheKeyForPolicy(policy.getId())));
+        this.transaction.invalidatePolicyIndex(cache, resourceServer.getId());
 
         return createAdapter(new CachedPolicy(policy));
     }
 
     @Override
     public void delete(String id) {
+        Policy policy = findById(id);
+
+        if (policy != null) {
+            this.transaction.invalidatePolicyIndex(cache, policy.getResourceServer().getId());
+        }
+
         getDelegate().delete(id);
         this.transaction.whenCommit(() -> cache.remove(getCacheKeyForPolicy(id)));
     }
@@ -395,6 +402,7 @@ public class CachedPolicyStore implements PolicyStore {
                     this.updated = getDelegate().findById(getId());
                     if (this.updated == null) throw new IllegalStateException("Not found in database");
                     transaction.whenCommit(() -> cache.remove(getCacheKeyForPolicy(getId())));
+                    transaction.invalidatePolicyIndex(cache, cached.getResourceServerId());
                 }
 
                 return this.updated;
@@ -65,6 +65,7 @@ public class CachedResourceServerStore implements ResourceServerStore {
     public void delete(String id) {
         getDelegate().delete(id);
         this.transaction.whenCommit(() -> this.cache.remove(getCacheKeyForResourceServer(id)));
+        this.transaction.removePolicyIndex(cache, id);
     }
 
     @Override
@@ -63,12 +63,19 @@ public class CachedResourceStore implements ResourceStore {
         Resource resource = getDelegate().create(name, getStoreFactory().getResourceServerStore().findById(resourceServer.getId()), owner);
 
         this.transaction.whenRollback(() -> cache.remove(getCacheKeyForResource(resource.getId())));
+        this.transaction.invalidatePolicyIndex(cache, resourceServer.getId());
 
         return createAdapter(new CachedResource(resource));
     }
 
     @Override
     public void delete(String id) {
+        Resource resource = findById(id);
+
+        if (resource != null) {
+            this.transaction.invalidatePolicyIndex(cache, resource.getResourceServer().getId());
+        }
+
         List<CachedResource> removed = this.cache.remove(getCacheKeyForResource(id));
 
         if (removed != null) {
@@ -277,6 +284,7 @@ public class CachedResourceStore implements ResourceStore {
                     this.updated = getDelegate().findById(getId());
                     if (this.updated == null) throw new IllegalStateException("Not found in database");
                     transaction.whenCommit(() -> cache.remove(getCacheKeyForResource(getId())));
+                    transaction.invalidatePolicyIndex(cache, cached.getResourceServerId());
                 }
 
                 return this.updated;
@@ -64,6 +64,12 @@ public class CachedScopeStore implements ScopeStore {
 
     @Override
     public void delete(String id) {
+        Scope scope = findById(id);
+
+        if (scope != null) {
+            this.transaction.invalidatePolicyIndex(cache, scope.getResourceServer().getId());
+        }
+
         getDelegate().delete(id);
         this.transaction.whenCommit(() -> cache.remove(getCacheKeyForScope(id)));
     }
@@ -18,22 +18,33 @@
 
 package org.keycloak.models.authorization.infinispan;
 
+import org.infinispan.Cache;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.policy.evaluation.PolicyIndex;
 import org.keycloak.authorization.store.PolicyStore;
 import org.keycloak.authorization.store.ResourceServerStore;
 import org.keycloak.authorization.store.ResourceStore;
 import org.keycloak.authorization.store.ScopeStore;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.cache.authorization.CachedStoreFactoryProvider;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
  */
 public class InfinispanStoreFactoryProvider implements CachedStoreFactoryProvider {
 
+    static final String POLICY_INDEX_CACHE_PREFIX = "policy-index-";
+    static final String POLICY_INDEX_REVISION_CACHE_PREFIX = "policy-index-revision-";
+
     private final KeycloakSession session;
     private final CacheTransaction transaction;
 
@@ -63,6 +74,70 @@ public class InfinispanStoreFactoryProvider implements CachedStoreFactoryProvide
         return new CachedPolicyStore(this.session, this.transaction);
     }
 
+    /**
+     * Index is cached until some policy, resource or scope of the resource server changes. Each change commits a new revision
+     * of the resource server and the cached index is used just if it was built with the current revision, so an index built
+     * concurrently with a change is never used after the change. It's not cached while this transaction has uncommitted
+     * changes of the resource server.
+     */
+    @Override
+    public PolicyIndex getPolicyIndex(ResourceServer resourceServer) {
+        Cache<String, List> cache = this.session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.AUTHORIZATION_CACHE_NAME);
+        String cacheKey = POLICY_INDEX_CACHE_PREFIX + resourceServer.getId();
+        String revision = getPolicyIndexRevision(cache, resourceServer.getId());
+        List<CachedPolicyIndex> cached = cache.get(cacheKey);
+
+        if (cached != null) {
+            CachedPolicyIndex entry = cached.get(0);
+
+            if (entry.revision.equals(revision)) {
+                return entry.index;
+            }
+
+            cache.remove(cacheKey);
+        }
+
+        PolicyIndex index = PolicyIndex.build(resourceServer, this);
+
+        if (!this.transaction.isPolicyIndexInvalidated(resourceServer.getId())) {
+            List<CachedPolicyIndex> value = new ArrayList<>();
+
+            value.add(new CachedPolicyIndex(revision, index));
+
+            cache.putIfAbsent(cacheKey, value);
+        }
+
+        return index;
+    }
+
+    static String getPolicyIndexRevision(Cache<String, List> cache, String resourceServerId) {
+        List<String> revision = cache.get(POLICY_INDEX_REVISION_CACHE_PREFIX + resourceServerId);
+
+        if (revision == null) {
+            List<String> initial = new ArrayList<>();
+
+            initial.add(KeycloakModelUtils.generateId());
+            revision = cache.putIfAbsent(POLICY_INDEX_REVISION_CACHE_PREFIX + resourceServerId, initial);
+
+            if (revision == null) {
+                revision = initial;
+            }
+        }
+
+        return revision.get(0);
+    }
+
+    static class CachedPolicyIndex implements Serializable {
+
+        private final String revision;
+        private final PolicyIndex index;
+
+        CachedPolicyIndex(String revision, PolicyIndex index) {
+            this.revision = revision;
+            this.index = index;
+        }
+    }
+
     @Override
     public void close() {
 
@@ -72,6 +147,9 @@ public class InfinispanStoreFactoryProvider implements CachedStoreFactoryProvide
 
         private List<Runnable> completeTasks = new ArrayList<>();
         private List<Runnable> rollbackTasks = new ArrayList<>();
+        // Task updating the cached index of each changed resource server on commit. Removal of the resource server replaces
+        // invalidation registered before in the same transaction, so no revision is left behind
+        private Map<String, Runnable> policyIndexTasks = new LinkedHashMap<>();
 
         @Override
         public void begin() {
@@ -81,6 +159,7 @@ public class InfinispanStoreFactoryProvider implements CachedStoreFactoryProvide
         @Override
         public void commit() {
             this.completeTasks.forEach(task -> task.run());
+            this.policyIndexTasks.values().forEach(task -> task.run());
         }
 
         @Override
@@ -110,5 +189,26 @@ public class InfinispanStoreFactoryProvider implements CachedStoreFactoryProvide
         protected void whenRollback(Runnable task) {
             this.rollbackTasks.add(task);
         }
+
+        protected void invalidatePolicyIndex(Cache<String, List> cache, String resourceServerId) {
+            this.policyIndexTasks.putIfAbsent(resourceServerId, () -> {
+                List<String> revision = new ArrayList<>();
+
+                revision.add(KeycloakModelUtils.generateId());
+                cache.put(POLICY_INDEX_REVISION_CACHE_PREFIX + resourceServerId, revision);
+                cache.remove(POLICY_INDEX_CACHE_PREFIX + resourceServerId);
+            });
+        }
+
+        protected void removePolicyIndex(Cache<String, List> cache, String resourceServerId) {
+            this.policyIndexTasks.put(resourceServerId, () -> {
+                cache.remove(POLICY_INDEX_REVISION_CACHE_PREFIX + resourceServerId);
+                cache.remove(POLICY_INDEX_CACHE_PREFIX + resourceServerId);
+            });
+        }
+
+        protected boolean isPolicyIndexInvalidated(String resourceServerId) {
+            return this.policyIndexTasks.containsKey(resourceServerId);
+        }
     }
 }
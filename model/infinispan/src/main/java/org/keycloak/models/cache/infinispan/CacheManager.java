@@ -8,7 +8,9 @@ import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEve
 import org.jboss.logging.Logger;
 import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.models.cache.infinispan.stream.IndexedPredicate;
 
+import java.util.AbstractMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -50,6 +52,10 @@ import java.util.function.Predicate;
  6. Node 1 receives invalidation event for invalidation.key.userid. Bumps the version counter for that user
  7. node 1 version check fails, it doesn't cache the user
  *
+ * Invalidation of the dependent objects (for example all the queries containing some role) is driven by the predicates from the stream
+ * package. To avoid streaming the whole cache for each invalidated object, each node also maintains {@link DependencyIndex} of its local
+ * cache content, which is updated alongside addRevisioned and on each removal, invalidation or eviction of the entry.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
@@ -58,6 +64,7 @@ public abstract class CacheManager {
     protected final Cache<String, Long> revisions;
     protected final Cache<String, Revisioned> cache;
     protected final UpdateCounter counter = new UpdateCounter();
+    protected final DependencyIndex dependencies = new DependencyIndex();
 
     public CacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         this.cache = cache;
@@ -112,6 +119,8 @@ public abstract class CacheManager {
     }
 
     public Object invalidateObject(String id) {
+        // Removing from index before the cache. The other way around, concurrent addRevisioned may index the object just before we unindex it
+        dependencies.remove(id);
         Revisioned removed = (Revisioned)cache.remove(id);
         // if you do cache.remove() on node 1 and the entry doesn't exist on node 2, node 2 never receives a invalidation event
         // so, we do this to force the event.
@@ -155,6 +164,7 @@ public abstract class CacheManager {
             if (rev.equals(object.getRevision())) {
                 if (id.endsWith("realm.clients")) RealmCacheManager.logger.tracev("adding Object.revision {0} rev {1}", object.getRevision(), rev);
                 cache.putForExternalRead(id, object);
+                dependencies.add(object);
                 return;
             }
             if (rev > object.getRevision()) { // revision is ahead, don't cache
@@ -165,6 +175,7 @@ public abstract class CacheManager {
             if (id.endsWith("realm.clients")) RealmCacheManager.logger.tracev("adding Object.revision {0} rev {1}", object.getRevision(), rev);
             revisions.put(id, object.getRevision());
             cache.putForExternalRead(id, object);
+            dependencies.add(object);
         } finally {
             endRevisionBatch();
         }
@@ -174,9 +185,21 @@ public abstract class CacheManager {
     public void clear() {
         cache.clear();
         revisions.clear();
+        dependencies.clear();
     }
 
     public void addInvalidations(Predicate<Map.Entry<String, Revisioned>> predicate, Set<String> invalidations) {
+        Set<String> candidates = predicate instanceof IndexedPredicate ? ((IndexedPredicate) predicate).getCandidates(dependencies) : null;
+        if (candidates != null) {
+            for (String key : candidates) {
+                Revisioned value = cache.get(key);
+                if (value != null && predicate.test(new AbstractMap.SimpleImmutableEntry<>(key, value))) {
+                    invalidations.add(key);
+                }
+            }
+            return;
+        }
+
         Iterator<Map.Entry<String, Revisioned>> it = getEntryIterator(predicate);
         while (it.hasNext()) {
             invalidations.add(it.next().getKey());
@@ -202,6 +225,7 @@ public abstract class CacheManager {
                 bumpVersion(bump);
                 return;
             }
+            dependencies.remove(key);
 
         } else {
         //if (!event.isPre()) {
@@ -230,6 +254,7 @@ public abstract class CacheManager {
         if (!event.isPre())
         for (Map.Entry<String, Object> entry : event.getEntries().entrySet()) {
             Object object = entry.getValue();
+            dependencies.remove(entry.getKey());
             bumpVersion(entry.getKey());
             if (object == null) continue;
             RealmCacheManager.logger.tracev("evicting: {0}" + object.getClass().getName());
@@ -243,6 +268,7 @@ public abstract class CacheManager {
         addInvalidations(current, evictions);
         RealmCacheManager.logger.tracev("running evictions size: {0}", evictions.size());
         for (String key : evictions) {
+            dependencies.remove(key);
             cache.evict(key);
             bumpVersion(key);
         }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.keycloak.models.cache.infinispan.entities.CachedClient;
+import org.keycloak.models.cache.infinispan.entities.CachedClientTemplate;
+import org.keycloak.models.cache.infinispan.entities.CachedGroup;
+import org.keycloak.models.cache.infinispan.entities.CachedRole;
+import org.keycloak.models.cache.infinispan.entities.ClientQuery;
+import org.keycloak.models.cache.infinispan.entities.ClientTemplateQuery;
+import org.keycloak.models.cache.infinispan.entities.GroupQuery;
+import org.keycloak.models.cache.infinispan.entities.InClient;
+import org.keycloak.models.cache.infinispan.entities.InRealm;
+import org.keycloak.models.cache.infinispan.entities.RealmQuery;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.models.cache.infinispan.entities.RoleQuery;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reverse dependency index of the local content of the cache. For each realm, client, role, group and client template it tracks the ids of
+ * the cached objects, which would be matched by the corresponding predicate from the stream package. Invalidation then needs to look just
+ * at those objects instead of streaming the whole cache.
+ *
+ * The index may contain more ids than the cache actually does (for example when putForExternalRead didn't store the object as it was
+ * already cached), so the candidates must always be re-checked with the predicate. It must never miss a dependency of a cached object,
+ * hence dependencies are just added while the object is cached and removed together with the object.
+ */
+public class DependencyIndex {
+
+    public enum Type {
+        REALM_QUERY, IN_REALM, CLIENT_QUERY, CLIENT_QUERY_REALM, IN_CLIENT, HAS_ROLE, GROUP_QUERY, CLIENT_TEMPLATE_QUERY
+    }
+
+    private final ConcurrentMap<String, Set<Dependency>> dependencies = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Dependency, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    public Set<String> getDependents(Type type, String id) {
+        if (id == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> ids = dependents.get(new Dependency(type, id));
+        return ids != null ? new HashSet<>(ids) : Collections.<String>emptySet();
+    }
+
+    public void add(Revisioned object) {
+        final String id = object.getId();
+        final Set<Dependency> added = getDependencies(object);
+
+        dependencies.compute(id, (key, current) -> {
+            if (current == null) {
+                current = new HashSet<>();
+            }
+
+            for (Dependency dependency : added) {
+                if (current.add(dependency)) {
+                    dependents.computeIfAbsent(dependency, d -> ConcurrentHashMap.newKeySet()).add(id);
+                }
+            }
+            return current;
+        });
+    }
+
+    public void remove(String id) {
+        dependencies.computeIfPresent(id, (key, current) -> {
+            for (Dependency dependency : current) {
+                dependents.computeIfPresent(dependency, (d, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+            return null;
+        });
+    }
+
+    public void clear() {
+        dependencies.clear();
+        dependents.clear();
+    }
+
+    /**
+     * Count of the indexed objects
+     */
+    public int size() {
+        return dependencies.size();
+    }
+
+    private static Set<Dependency> getDependencies(Revisioned object) {
+        Set<Dependency> result = new HashSet<>();
+
+        if (object instanceof RealmQuery) {
+            addAll(result, Type.REALM_QUERY, ((RealmQuery) object).getRealms());
+        }
+        if (object instanceof InRealm) {
+            add(result, Type.IN_REALM, ((InRealm) object).getRealm());
+        }
+        if (object instanceof ClientQuery) {
+            addAll(result, Type.CLIENT_QUERY, ((ClientQuery) object).getClients());
+            add(result, Type.CLIENT_QUERY_REALM, ((ClientQuery) object).getRealm());
+        }
+        if (object instanceof InClient) {
+            add(result, Type.IN_CLIENT, ((InClient) object).getClientId());
+        }
+        if (object instanceof CachedRole) {
+            addAll(result, Type.HAS_ROLE, ((CachedRole) object).getComposites());
+        }
+        if (object instanceof CachedGroup) {
+            addAll(result, Type.HAS_ROLE, ((CachedGroup) object).getRoleMappings());
+        }
+        if (object instanceof RoleQuery) {
+            addAll(result, Type.HAS_ROLE, ((RoleQuery) object).getRoles());
+        }
+        if (object instanceof CachedClient) {
+            addAll(result, Type.HAS_ROLE, ((CachedClient) object).getScope());
+        }
+        if (object instanceof CachedClientTemplate) {
+            addAll(result, Type.HAS_ROLE, ((CachedClientTemplate) object).getScope());
+        }
+        if (object instanceof GroupQuery) {
+            addAll(result, Type.GROUP_QUERY, ((GroupQuery) object).getGroups());
+        }
+        if (object instanceof ClientTemplateQuery) {
+            addAll(result, Type.CLIENT_TEMPLATE_QUERY, ((ClientTemplateQuery) object).getTemplates());
+        }
+
+        return result;
+    }
+
+    private static void addAll(Set<Dependency> result, Type type, Collection<String> ids) {
+        if (ids != null) {
+            for (String id : ids) {
+                add(result, type, id);
+            }
+        }
+    }
+
+    private static void add(Set<Dependency> result, Type type, String id) {
+        if (id != null) {
+            result.add(new Dependency(type, id));
+        }
+    }
+
+    private static class Dependency {
+
+        private final Type type;
+        private final String id;
+
+        private Dependency(Type type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Dependency)) return false;
+
+            Dependency that = (Dependency) o;
+            return type == that.type && id.equals(that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + id.hashCode();
+        }
+    }
+
+}
@@ -36,10 +36,12 @@ import org.keycloak.models.cache.infinispan.entities.CachedGroup;
 import org.keycloak.models.cache.infinispan.entities.CachedRealm;
 import org.keycloak.models.cache.infinispan.entities.CachedRealmRole;
 import org.keycloak.models.cache.infinispan.entities.CachedRole;
+import org.keycloak.models.cache.infinispan.entities.CachedRoleClosure;
 import org.keycloak.models.cache.infinispan.entities.ClientListQuery;
 import org.keycloak.models.cache.infinispan.entities.RealmListQuery;
 import org.keycloak.models.cache.infinispan.entities.RoleListQuery;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.RoleClosure;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -99,6 +101,8 @@ import java.util.Set;
  * Groups and Roles:
  * - roles are tricky because of composites.  Composite lists are cached too.  So, when a role is removed
  * we also iterate and invalidate any role or group that contains that role being removed.
+ * - the closure of each composite role is cached as a query containing all the roles reachable from it, so it is invalidated
+ * whenever any of those roles is invalidated.  Closures are never returned in a transaction, which invalidated some role.
  *
  * - any relationship should be resolved from session.realms().  For example if JPA.getClientByClientId() is invoked,
  *  JPA should find the id of the client and then call session.realms().getClientById().  THis is to ensure that the cached
@@ -112,6 +116,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public static final String REALM_CLIENTS_QUERY_SUFFIX = ".realm.clients";
     public static final String ROLES_QUERY_SUFFIX = ".roles";
     public static final String ROLE_BY_NAME_QUERY_SUFFIX = ".role.by-name";
+    public static final String ROLE_CLOSURE_QUERY_SUFFIX = ".role.closure";
     protected RealmCacheManager cache;
     protected KeycloakSession session;
     protected RealmProvider delegate;
@@ -125,6 +130,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     protected Map<String, GroupAdapter> managedGroups = new HashMap<>();
     protected Set<String> listInvalidations = new HashSet<>();
     protected Set<String> invalidations = new HashSet<>();
+    protected boolean rolesInvalidated;
 
     protected boolean clearAll;
     protected final long startupRevision;
@@ -208,6 +214,8 @@ public class RealmCacheSession implements CacheRealmProvider {
     }
 
     private void roleInvalidations(String roleId) {
+        rolesInvalidated = true;
+        invalidations.add(getRoleClosureCacheKey(roleId));
         Set<String> newInvalidations = new HashSet<>();
         cache.roleInvalidation(roleId, newInvalidations);
         invalidations.addAll(newInvalidations);
@@ -492,6 +500,9 @@ public class RealmCacheSession implements CacheRealmProvider {
     private String getRolesCacheKey(String container) {
         return container + ROLES_QUERY_SUFFIX;
     }
+    private String getRoleClosureCacheKey(String role) {
+        return role + ROLE_CLOSURE_QUERY_SUFFIX;
+    }
     private String getRoleByNameCacheKey(String container, String name) {
         return container + "." + name + ROLES_QUERY_SUFFIX;
     }
@@ -724,6 +735,37 @@ public class RealmCacheSession implements CacheRealmProvider {
         return getDelegate().removeRole(realm, role);
     }
 
+    @Override
+    public Set<String> getRoleClosure(final RealmModel realm, RoleModel role) {
+        // roles updated in this transaction are not committed yet, so caller needs to walk the composites itself
+        if (rolesInvalidated) {
+            return null;
+        }
+
+        String cacheKey = getRoleClosureCacheKey(role.getId());
+        CachedRoleClosure cached = cache.get(cacheKey, CachedRoleClosure.class);
+        if (cached != null) {
+            logger.tracev("getRoleClosure cache hit: {0}", role.getName());
+            return cached.getRoles();
+        }
+
+        Long loaded = cache.getCurrentRevision(cacheKey);
+        // composites are resolved through this cache, closures of already cached composites are reused
+        Set<String> closure = RoleClosure.compute(role, new RoleClosure.Lookup() {
+
+            @Override
+            public Set<String> getClosure(RoleModel child) {
+                CachedRoleClosure cachedChild = cache.get(getRoleClosureCacheKey(child.getId()), CachedRoleClosure.class);
+                return cachedChild == null ? null : cachedChild.getRoles();
+            }
+
+        });
+        cached = new CachedRoleClosure(loaded, cacheKey, realm, closure);
+        logger.tracev("adding role closure cache miss: role {0} key {1}", role.getName(), cacheKey);
+        cache.addRevisioned(cached, startupRevision);
+        return closure;
+    }
+
     @Override
     public RoleModel getRoleById(String id, RealmModel realm) {
         CachedRole cached = cache.get(id, CachedRole.class);
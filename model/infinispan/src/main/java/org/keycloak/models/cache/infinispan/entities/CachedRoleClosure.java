@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import org.keycloak.models.RealmModel;
+
+import java.util.Set;
+
+/**
+ * Closure of a composite role: ids of the role and of all the roles reachable through its composites. It's a {@link RoleQuery} over those
+ * roles, so it's invalidated whenever any of them changes.
+ */
+public class CachedRoleClosure extends AbstractRevisioned implements RoleQuery {
+    private final String realm;
+    private final Set<String> roles;
+
+    public CachedRoleClosure(Long revision, String id, RealmModel realm, Set<String> roles) {
+        super(revision, id);
+        this.realm = realm.getId();
+        this.roles = roles;
+    }
+
+    @Override
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    @Override
+    public String getRealm() {
+        return realm;
+    }
+}
@@ -1,18 +1,19 @@
 package org.keycloak.models.cache.infinispan.stream;
 
 import org.jboss.logging.Logger;
+import org.keycloak.models.cache.infinispan.DependencyIndex;
 import org.keycloak.models.cache.infinispan.entities.ClientQuery;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 
 import java.io.Serializable;
 import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class ClientQueryPredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+public class ClientQueryPredicate implements IndexedPredicate, Serializable {
     protected static final Logger logger = Logger.getLogger(ClientQueryPredicate.class);
     private String client;
     private String inRealm;
@@ -35,6 +36,17 @@ public class ClientQueryPredicate implements Predicate<Map.Entry<String, Revisio
 
 
 
+    @Override
+    public Set<String> getCandidates(DependencyIndex index) {
+        if (client != null) {
+            return index.getDependents(DependencyIndex.Type.CLIENT_QUERY, client);
+        } else if (inRealm != null) {
+            return index.getDependents(DependencyIndex.Type.CLIENT_QUERY_REALM, inRealm);
+        } else {
+            return null;
+        }
+    }
+
     @Override
     public boolean test(Map.Entry<String, Revisioned> entry) {
         Object value = entry.getValue();
@@ -1,17 +1,18 @@
 package org.keycloak.models.cache.infinispan.stream;
 
+import org.keycloak.models.cache.infinispan.DependencyIndex;
 import org.keycloak.models.cache.infinispan.entities.GroupQuery;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 
 import java.io.Serializable;
 import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class GroupQueryPredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+public class GroupQueryPredicate implements IndexedPredicate, Serializable {
     private String group;
 
     public static GroupQueryPredicate create() {
@@ -27,6 +28,11 @@ public class GroupQueryPredicate implements Predicate<Map.Entry<String, Revision
 
 
 
+    @Override
+    public Set<String> getCandidates(DependencyIndex index) {
+        return index.getDependents(DependencyIndex.Type.GROUP_QUERY, group);
+    }
+
     @Override
     public boolean test(Map.Entry<String, Revisioned> entry) {
         Object value = entry.getValue();
@@ -1,5 +1,6 @@
 package org.keycloak.models.cache.infinispan.stream;
 
+import org.keycloak.models.cache.infinispan.DependencyIndex;
 import org.keycloak.models.cache.infinispan.entities.CachedClient;
 import org.keycloak.models.cache.infinispan.entities.CachedClientTemplate;
 import org.keycloak.models.cache.infinispan.entities.CachedGroup;
@@ -9,13 +10,13 @@ import org.keycloak.models.cache.infinispan.entities.RoleQuery;
 
 import java.io.Serializable;
 import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class HasRolePredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+public class HasRolePredicate implements IndexedPredicate, Serializable {
     private String role;
 
     public static HasRolePredicate create() {
@@ -27,6 +28,11 @@ public class HasRolePredicate implements Predicate<Map.Entry<String, Revisioned>
         return this;
     }
 
+    @Override
+    public Set<String> getCandidates(DependencyIndex index) {
+        return index.getDependents(DependencyIndex.Type.HAS_ROLE, role);
+    }
+
     @Override
     public boolean test(Map.Entry<String, Revisioned> entry) {
         Object value = entry.getValue();
@@ -1,17 +1,18 @@
 package org.keycloak.models.cache.infinispan.stream;
 
+import org.keycloak.models.cache.infinispan.DependencyIndex;
 import org.keycloak.models.cache.infinispan.entities.InClient;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 
 import java.io.Serializable;
 import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class InClientPredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+public class InClientPredicate implements IndexedPredicate, Serializable {
     private String clientId;
 
     public static InClientPredicate create() {
@@ -23,6 +24,11 @@ public class InClientPredicate implements Predicate<Map.Entry<String, Revisioned
         return this;
     }
 
+    @Override
+    public Set<String> getCandidates(DependencyIndex index) {
+        return index.getDependents(DependencyIndex.Type.IN_CLIENT, clientId);
+    }
+
     @Override
     public boolean test(Map.Entry<String, Revisioned> entry) {
         Object value = entry.getValue();
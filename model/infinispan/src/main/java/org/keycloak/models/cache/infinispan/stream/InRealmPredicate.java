@@ -1,17 +1,18 @@
 package org.keycloak.models.cache.infinispan.stream;
 
+import org.keycloak.models.cache.infinispan.DependencyIndex;
 import org.keycloak.models.cache.infinispan.entities.InRealm;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 
 import java.io.Serializable;
 import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class InRealmPredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+public class InRealmPredicate implements IndexedPredicate, Serializable {
     private String realm;
 
     public static InRealmPredicate create() {
@@ -23,6 +24,11 @@ public class InRealmPredicate implements Predicate<Map.Entry<String, Revisioned>
         return this;
     }
 
+    @Override
+    public Set<String> getCandidates(DependencyIndex index) {
+        return index.getDependents(DependencyIndex.Type.IN_REALM, realm);
+    }
+
     @Override
     public boolean test(Map.Entry<String, Revisioned> entry) {
         Object value = entry.getValue();
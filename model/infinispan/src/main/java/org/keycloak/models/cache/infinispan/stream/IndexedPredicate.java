@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.stream;
+
+import org.keycloak.models.cache.infinispan.DependencyIndex;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Predicate, which is able to find all the possibly matching cache entries in the {@link DependencyIndex}, so that the whole cache
+ * doesn't need to be streamed.
+ */
+public interface IndexedPredicate extends Predicate<Map.Entry<String, Revisioned>> {
+
+    /**
+     * @return ids of the cached objects, which may match this predicate. Never returns less than the matching objects. Returns null
+     * if the candidates can't be looked up in the index and whole cache needs to be checked.
+     */
+    Set<String> getCandidates(DependencyIndex index);
+
+    default IndexedPredicate or(IndexedPredicate other) {
+        return new Or(this, other);
+    }
+
+    class Or implements IndexedPredicate, Serializable {
+
+        private final IndexedPredicate first;
+        private final IndexedPredicate second;
+
+        public Or(IndexedPredicate first, IndexedPredicate second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public Set<String> getCandidates(DependencyIndex index) {
+            Set<String> firstCandidates = first.getCandidates(index);
+            Set<String> secondCandidates = second.getCandidates(index);
+            if (firstCandidates == null || secondCandidates == null) {
+                return null;
+            }
+
+            Set<String> candidates = new HashSet<>(firstCandidates);
+            candidates.addAll(secondCandidates);
+            return candidates;
+        }
+
+        @Override
+        public boolean test(Map.Entry<String, Revisioned> entry) {
+            return first.test(entry) || second.test(entry);
+        }
+    }
+
+}
@@ -1,17 +1,18 @@
 package org.keycloak.models.cache.infinispan.stream;
 
+import org.keycloak.models.cache.infinispan.DependencyIndex;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.entities.RoleQuery;
 
 import java.io.Serializable;
 import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class RoleQueryPredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+public class RoleQueryPredicate implements IndexedPredicate, Serializable {
     private String role;
 
     public static RoleQueryPredicate create() {
@@ -27,6 +28,11 @@ public class RoleQueryPredicate implements Predicate<Map.Entry<String, Revisione
 
 
 
+    @Override
+    public Set<String> getCandidates(DependencyIndex index) {
+        return index.getDependents(DependencyIndex.Type.HAS_ROLE, role);
+    }
+
     @Override
     public boolean test(Map.Entry<String, Revisioned> entry) {
         Object value = entry.getValue();
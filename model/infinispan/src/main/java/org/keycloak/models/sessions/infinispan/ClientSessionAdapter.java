@@ -119,6 +119,10 @@ public class ClientSessionAdapter implements ClientSessionModel {
     public void setTimestamp(int timestamp) {
         entity.setTimestamp(timestamp);
         update();
+
+        if (offline) {
+            provider.offlineClientSessionRefreshed(entity.getId(), timestamp);
+        }
     }
 
     @Override
@@ -18,13 +18,13 @@
 package org.keycloak.models.sessions.infinispan;
 
 import org.infinispan.Cache;
-import org.infinispan.CacheStream;
 import org.jboss.logging.Logger;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.ClientInitialAccessModel;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionTask;
 import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserLoginFailureModel;
@@ -38,6 +38,7 @@ import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
 import org.keycloak.models.sessions.infinispan.stream.ClientInitialAccessPredicate;
 import org.keycloak.models.sessions.infinispan.stream.ClientSessionPredicate;
 import org.keycloak.models.sessions.infinispan.stream.Comparators;
@@ -48,6 +49,7 @@ import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.RealmInfoUtil;
 
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -56,6 +58,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -71,14 +74,25 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected final Cache<String, SessionEntity> sessionCache;
     protected final Cache<String, SessionEntity> offlineSessionCache;
     protected final Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache;
+    protected final SessionIndex sessionIndex;
+    protected final SessionIndex offlineSessionIndex;
+    protected final int expirationBatchSize;
+    protected final int expirationMaxRemovalsPerSecond;
+    protected final OfflineSessionRefreshWriter refreshWriter;
     protected final InfinispanKeycloakTransaction tx;
 
     public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
-                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache) {
+                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache, SessionIndex sessionIndex, SessionIndex offlineSessionIndex,
+                                         int expirationBatchSize, int expirationMaxRemovalsPerSecond, OfflineSessionRefreshWriter refreshWriter) {
         this.session = session;
         this.sessionCache = sessionCache;
         this.offlineSessionCache = offlineSessionCache;
         this.loginFailureCache = loginFailureCache;
+        this.sessionIndex = sessionIndex;
+        this.offlineSessionIndex = offlineSessionIndex;
+        this.expirationBatchSize = expirationBatchSize;
+        this.expirationMaxRemovalsPerSecond = expirationMaxRemovalsPerSecond;
+        this.refreshWriter = refreshWriter;
         this.tx = new InfinispanKeycloakTransaction();
 
         session.getTransactionManager().enlistAfterCompletion(tx);
@@ -88,6 +102,29 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return offline ? offlineSessionCache : sessionCache;
     }
 
+    protected SessionIndex getIndex(boolean offline) {
+        return offline ? offlineSessionIndex : sessionIndex;
+    }
+
+    // Refreshes of offline sessions are passed to the refresh writer after commit, so the refreshes rolled back are not written
+    protected void offlineUserSessionRefreshed(String userSessionId, int lastSessionRefresh) {
+        if (refreshWriter != null) {
+            tx.lastSessionRefreshes.put(userSessionId, lastSessionRefresh);
+        }
+    }
+
+    protected void offlineClientSessionRefreshed(String clientSessionId, int timestamp) {
+        if (refreshWriter != null) {
+            tx.clientSessionTimestamps.put(clientSessionId, timestamp);
+        }
+    }
+
+    // Persistent timestamps of offline sessions may be behind the refreshes, so the sessions loaded from the DB are not expired too early
+    private int getExpiredOffline(RealmModel realm) {
+        int staleness = refreshWriter != null ? refreshWriter.getMaxStaleness() : 0;
+        return Time.currentTime() - realm.getOfflineSessionIdleTimeout() - staleness;
+    }
+
     @Override
     public ClientSessionModel createClientSession(RealmModel realm, ClientModel client) {
         String id = KeycloakModelUtils.generateId();
@@ -180,30 +217,55 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return wrap(realm, entity, offline);
     }
 
-    protected List<UserSessionModel> getUserSessions(RealmModel realm, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
-        CacheStream<Map.Entry<String, SessionEntity>> cacheStream = getCache(offline).entrySet().stream();
-        Iterator<Map.Entry<String, SessionEntity>> itr = cacheStream.filter(predicate).iterator();
+    // Lookup of sessions found in the index. Entity is re-checked with the predicate as the index may be slightly behind the cache
+    protected List<UserSessionModel> getUserSessions(RealmModel realm, Set<String> userSessionIds, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
         List<UserSessionModel> sessions = new LinkedList<>();
-        while (itr.hasNext()) {
-            UserSessionEntity e = (UserSessionEntity) itr.next().getValue();
-            sessions.add(wrap(realm, e, offline));
+        for (UserSessionEntity entity : getUserSessionEntities(userSessionIds, predicate, offline)) {
+            sessions.add(wrap(realm, entity, offline));
         }
         return sessions;
     }
 
+    protected List<UserSessionEntity> getUserSessionEntities(Set<String> userSessionIds, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
+        Cache<String, SessionEntity> cache = getCache(offline);
+        List<UserSessionEntity> entities = new LinkedList<>();
+        for (String id : userSessionIds) {
+            SessionEntity entity = cache.get(id);
+            if (entity != null && predicate.test(new AbstractMap.SimpleImmutableEntry<>(id, entity))) {
+                entities.add((UserSessionEntity) entity);
+            }
+        }
+        return entities;
+    }
+
+    protected List<ClientSessionEntity> getClientSessionEntities(Set<String> clientSessionIds, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
+        Cache<String, SessionEntity> cache = getCache(offline);
+        List<ClientSessionEntity> entities = new LinkedList<>();
+        for (String id : clientSessionIds) {
+            SessionEntity entity = cache.get(id);
+            if (entity != null && predicate.test(new AbstractMap.SimpleImmutableEntry<>(id, entity))) {
+                entities.add((ClientSessionEntity) entity);
+            }
+        }
+        return entities;
+    }
+
     @Override
     public List<UserSessionModel> getUserSessions(final RealmModel realm, UserModel user) {
-        return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).user(user.getId()), false);
+        Set<String> ids = sessionIndex.getUserSessionsByUser(realm.getId(), user.getId());
+        return getUserSessions(realm, ids, UserSessionPredicate.create(realm.getId()).user(user.getId()), false);
     }
 
     @Override
     public List<UserSessionModel> getUserSessionByBrokerUserId(RealmModel realm, String brokerUserId) {
-        return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId), false);
+        Set<String> ids = sessionIndex.getUserSessionsByBrokerUserId(realm.getId(), brokerUserId);
+        return getUserSessions(realm, ids, UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId), false);
     }
 
     @Override
     public UserSessionModel getUserSessionByBrokerSessionId(RealmModel realm, String brokerSessionId) {
-        List<UserSessionModel> userSessions = getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerSessionId(brokerSessionId), false);
+        Set<String> ids = sessionIndex.getUserSessionsByBrokerSessionId(realm.getId(), brokerSessionId);
+        List<UserSessionModel> userSessions = getUserSessions(realm, ids, UserSessionPredicate.create(realm.getId()).brokerSessionId(brokerSessionId), false);
         return userSessions.isEmpty() ? null : userSessions.get(0);
     }
 
@@ -220,14 +282,12 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected List<UserSessionModel> getUserSessions(final RealmModel realm, ClientModel client, int firstResult, int maxResults, final boolean offline) {
         final Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<UserSessionTimestamp> itr = cache.entrySet().stream()
-                .filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession())
-                .map(Mappers.clientSessionToUserSessionTimestamp())
-                .iterator();
+        Set<String> clientSessionIds = getIndex(offline).getClientSessionsByClient(realm.getId(), client.getId());
+        List<ClientSessionEntity> clientSessions = getClientSessionEntities(clientSessionIds, ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession(), offline);
 
         Map<String, UserSessionTimestamp> m = new HashMap<>();
-        while(itr.hasNext()) {
-            UserSessionTimestamp next = itr.next();
+        for (ClientSessionEntity clientSession : clientSessions) {
+            UserSessionTimestamp next = new UserSessionTimestamp(clientSession.getUserSession(), clientSession.getTimestamp());
             if (!m.containsKey(next.getUserSessionId()) || m.get(next.getUserSessionId()).getClientSessionTimestamp() < next.getClientSessionTimestamp()) {
                 m.put(next.getUserSessionId(), next);
             }
@@ -263,7 +323,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     protected long getUserSessionsCount(RealmModel realm, ClientModel client, boolean offline) {
-        return getCache(offline).entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession()).map(Mappers.clientSessionToUserSessionId()).distinct().count();
+        return getIndex(offline).getUserSessionsByClient(realm.getId(), client.getId()).size();
     }
 
     @Override
@@ -280,11 +340,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     protected void removeUserSessions(RealmModel realm, UserModel user, boolean offline) {
-        Cache<String, SessionEntity> cache = getCache(offline);
-
-        Iterator<SessionEntity> itr = cache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).map(Mappers.sessionEntity()).iterator();
-        while (itr.hasNext()) {
-            UserSessionEntity userSessionEntity = (UserSessionEntity) itr.next();
+        Set<String> ids = getIndex(offline).getUserSessionsByUser(realm.getId(), user.getId());
+        for (UserSessionEntity userSessionEntity : getUserSessionEntities(ids, UserSessionPredicate.create(realm.getId()).user(user.getId()), offline)) {
             removeUserSession(realm, userSessionEntity, offline);
         }
     }
@@ -302,62 +359,144 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         int expired = Time.currentTime() - realm.getSsoSessionMaxLifespan();
         int expiredRefresh = Time.currentTime() - realm.getSsoSessionIdleTimeout();
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).expired(expired, expiredRefresh)).iterator();
-
-        while (itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
-            tx.remove(sessionCache, entity.getId());
+        Set<String> candidates = sessionIndex.getExpiredUserSessions(realm.getId(), expired, expiredRefresh);
+        removeExpired(sessionCache, candidates, UserSessionPredicate.create(realm.getId()).expired(expired, expiredRefresh), new BiConsumer<InfinispanUserSessionProvider, SessionEntity>() {
 
-            if (entity.getClientSessions() != null) {
-                for (String clientSessionId : entity.getClientSessions()) {
-                    tx.remove(sessionCache, clientSessionId);
+            @Override
+            public void accept(InfinispanUserSessionProvider provider, SessionEntity entity) {
+                Set<String> clientSessions = ((UserSessionEntity) entity).getClientSessions();
+                if (clientSessions != null) {
+                    for (String clientSessionId : clientSessions) {
+                        provider.tx.remove(provider.sessionCache, clientSessionId);
+                    }
                 }
             }
-        }
+
+        });
     }
 
     private void removeExpiredClientSessions(RealmModel realm) {
         int expiredDettachedClientSession = Time.currentTime() - RealmInfoUtil.getDettachedClientSessionLifespan(realm);
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredDettachedClientSession).requireNullUserSession()).iterator();
-        while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next().getKey());
-        }
+        Set<String> candidates = sessionIndex.getExpiredClientSessions(realm.getId(), expiredDettachedClientSession, true);
+        removeExpired(sessionCache, candidates, ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredDettachedClientSession).requireNullUserSession(), null);
     }
 
     private void removeExpiredOfflineUserSessions(RealmModel realm) {
-        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
-
-        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).expired(null, expiredOffline)).iterator();
-        while (itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
-            tx.remove(offlineSessionCache, entity.getId());
+        int expiredOffline = getExpiredOffline(realm);
 
-            persister.removeUserSession(entity.getId(), true);
+        Set<String> candidates = offlineSessionIndex.getExpiredUserSessions(realm.getId(), null, expiredOffline);
+        removeExpired(offlineSessionCache, candidates, UserSessionPredicate.create(realm.getId()).expired(null, expiredOffline), new BiConsumer<InfinispanUserSessionProvider, SessionEntity>() {
 
-            for (String clientSessionId : entity.getClientSessions()) {
-                tx.remove(offlineSessionCache, clientSessionId);
+            @Override
+            public void accept(InfinispanUserSessionProvider provider, SessionEntity entity) {
+                provider.session.getProvider(UserSessionPersisterProvider.class).removeUserSession(entity.getId(), true);
+
+                Set<String> clientSessions = ((UserSessionEntity) entity).getClientSessions();
+                if (clientSessions != null) {
+                    for (String clientSessionId : clientSessions) {
+                        provider.tx.remove(provider.offlineSessionCache, clientSessionId);
+                    }
+                }
             }
-        }
+
+        });
     }
 
     private void removeExpiredOfflineClientSessions(RealmModel realm) {
-        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
+        int expiredOffline = getExpiredOffline(realm);
 
-        Iterator<String> itr = offlineSessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline)).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            String sessionId = itr.next();
-            tx.remove(offlineSessionCache, sessionId);
-            persister.removeClientSession(sessionId, true);
-        }
+        Set<String> candidates = offlineSessionIndex.getExpiredClientSessions(realm.getId(), expiredOffline, false);
+        removeExpired(offlineSessionCache, candidates, ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline), new BiConsumer<InfinispanUserSessionProvider, SessionEntity>() {
+
+            @Override
+            public void accept(InfinispanUserSessionProvider provider, SessionEntity entity) {
+                provider.session.getProvider(UserSessionPersisterProvider.class).removeClientSession(entity.getId(), true);
+            }
+
+        });
     }
 
     private void removeExpiredClientInitialAccess(RealmModel realm) {
-        Iterator<String> itr = sessionCache.entrySet().stream().filter(ClientInitialAccessPredicate.create(realm.getId()).expired(Time.currentTime())).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next());
+        int currentTime = Time.currentTime();
+
+        Set<String> candidates = sessionIndex.getExpiredClientInitialAccess(realm.getId(), currentTime);
+        removeExpired(sessionCache, candidates, ClientInitialAccessPredicate.create(realm.getId()).expired(currentTime), null);
+    }
+
+    /**
+     * Removes the expired entries in batches of expirationBatchSize entries. Each batch is removed in its own transaction, so that the count
+     * of pending operations stays bounded and a failure rolls back just the removals of the current batch, including the persister ones.
+     * If expirationMaxRemovalsPerSecond is set, the removal is throttled.
+     *
+     * @param candidates ids of the entries found in the expiration index. Entry is re-checked with the predicate before it's removed
+     * @param onRemove callback for removing dependent entries with the provider of the batch transaction. May be null
+     */
+    private void removeExpired(Cache<String, SessionEntity> cache, Set<String> candidates, Predicate<Map.Entry<String, SessionEntity>> predicate, BiConsumer<InfinispanUserSessionProvider, SessionEntity> onRemove) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int removed = 0;
+        List<SessionEntity> batch = new LinkedList<>();
+
+        for (String id : candidates) {
+            SessionEntity entity = cache.get(id);
+            if (entity == null || !predicate.test(new AbstractMap.SimpleImmutableEntry<>(id, entity))) {
+                continue;
+            }
+
+            batch.add(entity);
+            if (batch.size() >= expirationBatchSize) {
+                removeBatch(cache, batch, onRemove);
+                removed += batch.size();
+                batch.clear();
+
+                throttle(start, removed);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            removeBatch(cache, batch, onRemove);
+            removed += batch.size();
+        }
+
+        log.debugf("Removed %d expired entries from cache '%s' out of %d candidates. Took %d ms", removed, cache.getName(), candidates.size(), System.currentTimeMillis() - start);
+    }
+
+    private void removeBatch(final Cache<String, SessionEntity> cache, final List<SessionEntity> batch, final BiConsumer<InfinispanUserSessionProvider, SessionEntity> onRemove) {
+        KeycloakModelUtils.runJobInTransaction(session.getKeycloakSessionFactory(), new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession batchSession) {
+                InfinispanUserSessionProvider provider = (InfinispanUserSessionProvider) batchSession.getProvider(UserSessionProvider.class);
+
+                for (SessionEntity entity : batch) {
+                    provider.tx.remove(cache, entity.getId());
+                    if (onRemove != null) {
+                        onRemove.accept(provider, entity);
+                    }
+                }
+            }
+
+        });
+    }
+
+    private void throttle(long start, int removed) {
+        if (expirationMaxRemovalsPerSecond <= 0) {
+            return;
+        }
+
+        long expectedTime = start + (removed * 1000L / expirationMaxRemovalsPerSecond);
+        long sleep = expectedTime - System.currentTimeMillis();
+        if (sleep > 0) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ie);
+            }
         }
     }
 
@@ -421,9 +560,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     private void onClientRemoved(RealmModel realm, ClientModel client, boolean offline) {
         Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = cache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId())).iterator();
-        while (itr.hasNext()) {
-            ClientSessionEntity entity = (ClientSessionEntity) itr.next().getValue();
+        Set<String> ids = getIndex(offline).getClientSessionsByClient(realm.getId(), client.getId());
+        for (ClientSessionEntity entity : getClientSessionEntities(ids, ClientSessionPredicate.create(realm.getId()).client(client.getId()), offline)) {
             ClientSessionAdapter adapter = wrap(realm, entity, offline);
             adapter.setUserSession(null);
 
@@ -600,11 +738,10 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<ClientSessionModel> getOfflineClientSessions(RealmModel realm, UserModel user) {
-        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).iterator();
+        Set<String> ids = offlineSessionIndex.getUserSessionsByUser(realm.getId(), user.getId());
         List<ClientSessionModel> clientSessions = new LinkedList<>();
 
-        while(itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
+        for (UserSessionEntity entity : getUserSessionEntities(ids, UserSessionPredicate.create(realm.getId()).user(user.getId()), true)) {
             Set<String> currClientSessions = entity.getClientSessions();
             for (String clientSessionId : currClientSessions) {
                 ClientSessionEntity cls = (ClientSessionEntity) offlineSessionCache.get(clientSessionId);
@@ -733,6 +870,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         private boolean active;
         private boolean rollback;
         private Map<Object, CacheTask> tasks = new HashMap<>();
+        private Map<String, Integer> lastSessionRefreshes = new HashMap<>();
+        private Map<String, Integer> clientSessionTimestamps = new HashMap<>();
 
         @Override
         public void begin() {
@@ -748,11 +887,20 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             for (CacheTask task : tasks.values()) {
                 task.execute();
             }
+
+            for (Map.Entry<String, Integer> entry : lastSessionRefreshes.entrySet()) {
+                refreshWriter.userSessionRefreshed(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Integer> entry : clientSessionTimestamps.entrySet()) {
+                refreshWriter.clientSessionRefreshed(entry.getKey(), entry.getValue());
+            }
         }
 
         @Override
         public void rollback() {
             tasks.clear();
+            lastSessionRefreshes.clear();
+            clientSessionTimestamps.clear();
         }
 
         @Override
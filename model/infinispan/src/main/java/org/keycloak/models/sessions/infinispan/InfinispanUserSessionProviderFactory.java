@@ -29,12 +29,16 @@ import org.keycloak.models.UserSessionProviderFactory;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
+import org.keycloak.models.sessions.infinispan.index.SessionIndexListener;
 import org.keycloak.models.sessions.infinispan.initializer.InfinispanUserSessionInitializer;
 import org.keycloak.models.sessions.infinispan.initializer.OfflineUserSessionLoader;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.PostMigrationEvent;
+import org.keycloak.models.utils.PreShutdownEvent;
 import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.timer.TimerProvider;
 
 import java.io.Serializable;
 
@@ -44,6 +48,20 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     private Config.Scope config;
 
+    // Count of expired sessions removed from the cache at once
+    private int expirationBatchSize;
+
+    // Limit of expired sessions removed per second by single removeExpired run. Zero means unlimited
+    private int expirationMaxRemovalsPerSecond;
+
+    // Seconds between writes of the refreshes of offline sessions to the persister. Zero means they are not written
+    private int offlineRefreshFlushInterval;
+
+    private OfflineSessionRefreshWriter refreshWriter;
+
+    private volatile SessionIndex sessionIndex;
+    private volatile SessionIndex offlineSessionIndex;
+
     @Override
     public UserSessionProvider create(KeycloakSession session) {
         InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
@@ -51,12 +69,29 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         Cache<String, SessionEntity> offlineSessionsCache = connections.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
         Cache<LoginFailureKey, LoginFailureEntity> loginFailures = connections.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
 
-        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures);
+        lazyInit(cache, offlineSessionsCache);
+
+        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures, sessionIndex, offlineSessionIndex,
+                expirationBatchSize, expirationMaxRemovalsPerSecond, refreshWriter);
+    }
+
+    private void lazyInit(Cache<String, SessionEntity> cache, Cache<String, SessionEntity> offlineSessionsCache) {
+        if (offlineSessionIndex == null) {
+            synchronized (this) {
+                if (offlineSessionIndex == null) {
+                    sessionIndex = SessionIndexListener.register(cache);
+                    offlineSessionIndex = SessionIndexListener.register(offlineSessionsCache);
+                }
+            }
+        }
     }
 
     @Override
     public void init(Config.Scope config) {
         this.config = config;
+        this.expirationBatchSize = config.getInt("expirationBatchSize", 1000);
+        this.expirationMaxRemovalsPerSecond = config.getInt("expirationMaxRemovalsPerSecond", 0);
+        this.offlineRefreshFlushInterval = config.getInt("offlineRefreshFlushInterval", 0);
     }
 
     @Override
@@ -67,17 +102,50 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         // Count of sessions to be computed in each segment
         final int sessionsPerSegment = config.getInt("sessionsPerSegment", 100);
 
+        if (offlineRefreshFlushInterval > 0) {
+            refreshWriter = new OfflineSessionRefreshWriter(factory, offlineRefreshFlushInterval);
+        }
+
         factory.register(new ProviderEventListener() {
 
             @Override
             public void onEvent(ProviderEvent event) {
                 if (event instanceof PostMigrationEvent) {
                     loadPersistentSessions(factory, maxErrors, sessionsPerSegment);
+                    if (refreshWriter != null) {
+                        scheduleRefreshWriter(factory);
+                    }
+                } else if (event instanceof PreShutdownEvent) {
+                    // Persister is still available, so no refresh is lost on clean shutdown
+                    if (refreshWriter != null) {
+                        refreshWriter.flush();
+                    }
                 }
             }
         });
     }
 
+    private void scheduleRefreshWriter(KeycloakSessionFactory sessionFactory) {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession session) {
+                TimerProvider timer = session.getProvider(TimerProvider.class);
+                timer.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        refreshWriter.flush();
+                    }
+
+                }, offlineRefreshFlushInterval * 1000L, "FlushOfflineSessionRefreshes");
+            }
+
+        });
+
+        log.debugf("Refreshes of offline sessions are written every %d seconds", offlineRefreshFlushInterval);
+    }
+
 
     @Override
     public void loadPersistentSessions(final KeycloakSessionFactory sessionFactory, final int maxErrors, final int sessionsPerSegment) {
@@ -90,7 +158,7 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
                 InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
                 Cache<String, Serializable> cache = connections.getCache(InfinispanConnectionProvider.WORK_CACHE_NAME);
 
-                InfinispanUserSessionInitializer initializer = new InfinispanUserSessionInitializer(sessionFactory, cache, new OfflineUserSessionLoader(), maxErrors, sessionsPerSegment, "offlineUserSessions");
+                InfinispanUserSessionInitializer initializer = new InfinispanUserSessionInitializer(sessionFactory, cache, new OfflineUserSessionLoader(refreshWriter == null), maxErrors, sessionsPerSegment, "offlineUserSessions");
                 initializer.initCache();
                 initializer.loadPersistentSessions();
             }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind of offline session refreshes to {@link UserSessionPersisterProvider}. Refresh of offline userSession or clientSession
+ * just records its timestamp in memory, where the refreshes of the same session are coalesced, and the recorded timestamps are
+ * written in batches by {@link #flush()}, which is called periodically and at shutdown.
+ *
+ * Persistent timestamps are so at most {@link #getMaxStaleness()} seconds behind the refreshes, which is tolerated by the expiration
+ * of offline sessions.
+ */
+public class OfflineSessionRefreshWriter {
+
+    private static final Logger log = Logger.getLogger(OfflineSessionRefreshWriter.class);
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final int flushInterval;
+
+    private final ConcurrentMap<String, Integer> lastSessionRefreshes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> clientSessionTimestamps = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * @param flushInterval seconds between the flushes
+     */
+    public OfflineSessionRefreshWriter(KeycloakSessionFactory sessionFactory, int flushInterval) {
+        this.sessionFactory = sessionFactory;
+        this.flushInterval = flushInterval;
+    }
+
+    public void userSessionRefreshed(String userSessionId, int lastSessionRefresh) {
+        lastSessionRefreshes.merge(userSessionId, lastSessionRefresh, Math::max);
+        recordedCount.incrementAndGet();
+    }
+
+    public void clientSessionRefreshed(String clientSessionId, int timestamp) {
+        clientSessionTimestamps.merge(clientSessionId, timestamp, Math::max);
+        recordedCount.incrementAndGet();
+    }
+
+    /**
+     * @return seconds, which the persistent timestamps may be behind the refreshes
+     */
+    public int getMaxStaleness() {
+        return flushInterval;
+    }
+
+    /**
+     * Writes all the recorded refreshes. If writing fails, refreshes are kept for the next flush.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, Integer> refreshes = drain(lastSessionRefreshes);
+            Map<String, Integer> timestamps = drain(clientSessionTimestamps);
+            if (refreshes.isEmpty() && timestamps.isEmpty()) {
+                return;
+            }
+
+            try {
+                write(refreshes, timestamps);
+                writtenCount.addAndGet(refreshes.size() + timestamps.size());
+                flushCount.incrementAndGet();
+                log.debugf("Written %d userSession and %d clientSession refreshes", refreshes.size(), timestamps.size());
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                // Newer refreshes recorded in the meantime win
+                for (Map.Entry<String, Integer> entry : refreshes.entrySet()) {
+                    lastSessionRefreshes.merge(entry.getKey(), entry.getValue(), Math::max);
+                }
+                for (Map.Entry<String, Integer> entry : timestamps.entrySet()) {
+                    clientSessionTimestamps.merge(entry.getKey(), entry.getValue(), Math::max);
+                }
+                log.warnf(e, "Failed to write %d offline session refreshes. Will retry with next flush", refreshes.size() + timestamps.size());
+            }
+        }
+    }
+
+    protected void write(final Map<String, Integer> lastSessionRefreshes, final Map<String, Integer> clientSessionTimestamps) {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession session) {
+                UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+                persister.updateTimestamps(lastSessionRefreshes, clientSessionTimestamps, true);
+            }
+
+        });
+    }
+
+    private static Map<String, Integer> drain(ConcurrentMap<String, Integer> pending) {
+        Map<String, Integer> drained = new HashMap<>();
+        for (String id : pending.keySet()) {
+            Integer timestamp = pending.remove(id);
+            if (timestamp != null) {
+                drained.put(id, timestamp);
+            }
+        }
+        return drained;
+    }
+
+    public int getPendingCount() {
+        return lastSessionRefreshes.size() + clientSessionTimestamps.size();
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
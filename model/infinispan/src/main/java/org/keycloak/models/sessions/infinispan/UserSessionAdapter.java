@@ -111,6 +111,10 @@ public class UserSessionAdapter implements UserSessionModel {
     public void setLastSessionRefresh(int lastSessionRefresh) {
         entity.setLastSessionRefresh(lastSessionRefresh);
         update();
+
+        if (offline) {
+            provider.offlineUserSessionRefreshed(entity.getId(), lastSessionRefresh);
+        }
     }
 
     @Override
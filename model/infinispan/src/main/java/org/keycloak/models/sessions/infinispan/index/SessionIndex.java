@@ -0,0 +1,330 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.keycloak.models.sessions.infinispan.entities.ClientInitialAccessEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Node-local secondary index over the entries of a session cache. It maps user id, broker session id, broker user id and client id
+ * (always scoped to a realm) to the ids of the matching sessions, so that lookups cost proportional to the size of the result rather
+ * than to the size of the cache.
+ *
+ * The index is maintained by {@link SessionIndexListener} from cache events. Entities are mutated in place by the adapters, so the
+ * values which were indexed for each session are remembered and used to unindex the session when it's modified or removed.
+ *
+ * Sessions are also indexed by the timestamps relevant for their expiration, grouped into buckets of {@link #EXPIRATION_BUCKET_SECONDS}.
+ * The lookup of expired sessions then returns just the sessions from the buckets up to the given time, instead of all the sessions of the
+ * realm. As the last bucket may contain sessions, which are not yet expired, callers need to re-check the expiration.
+ *
+ * Lookups may return ids of sessions, which were removed in the meantime. Callers are expected to load the entity from the cache
+ * and ignore the missing ones.
+ */
+public class SessionIndex {
+
+    public static final int EXPIRATION_BUCKET_SECONDS = 60;
+
+    enum Type {
+        USER, BROKER_SESSION_ID, BROKER_USER_ID, CLIENT,
+
+        // Expiration indexes. The value is the expiration bucket
+        USER_SESSION_STARTED, USER_SESSION_REFRESH, CLIENT_SESSION_TIMESTAMP, DETACHED_CLIENT_SESSION_TIMESTAMP, CLIENT_INITIAL_ACCESS_EXPIRATION
+    }
+
+    private final ConcurrentMap<String, Indexed> indexed = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<IndexKey, Set<String>> index = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<IndexKey, ConcurrentNavigableMap<Integer, Set<String>>> expirationIndex = new ConcurrentHashMap<>();
+
+    public Set<String> getUserSessionsByUser(String realm, String user) {
+        return get(Type.USER, realm, user);
+    }
+
+    public Set<String> getUserSessionsByBrokerSessionId(String realm, String brokerSessionId) {
+        return get(Type.BROKER_SESSION_ID, realm, brokerSessionId);
+    }
+
+    public Set<String> getUserSessionsByBrokerUserId(String realm, String brokerUserId) {
+        return get(Type.BROKER_USER_ID, realm, brokerUserId);
+    }
+
+    public Set<String> getClientSessionsByClient(String realm, String client) {
+        return get(Type.CLIENT, realm, client);
+    }
+
+    /**
+     * Returns ids of the user sessions, which have at least one client session of the given client attached.
+     */
+    public Set<String> getUserSessionsByClient(String realm, String client) {
+        Set<String> result = new HashSet<>();
+        for (String clientSessionId : getClientSessionsByClient(realm, client)) {
+            Indexed i = indexed.get(clientSessionId);
+            if (i != null && i.userSession != null) {
+                result.add(i.userSession);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns ids of the user sessions, which were started before the given time or which were refreshed before the given time.
+     *
+     * @param startedBefore May be null if just the last refresh should be checked
+     */
+    public Set<String> getExpiredUserSessions(String realm, Integer startedBefore, int refreshedBefore) {
+        Set<String> result = getExpired(Type.USER_SESSION_REFRESH, realm, refreshedBefore);
+        if (startedBefore != null) {
+            result.addAll(getExpired(Type.USER_SESSION_STARTED, realm, startedBefore));
+        }
+        return result;
+    }
+
+    /**
+     * Returns ids of the client sessions with the timestamp before the given time.
+     *
+     * @param detachedOnly if true, just the client sessions without attached user session are returned
+     */
+    public Set<String> getExpiredClientSessions(String realm, int timestampBefore, boolean detachedOnly) {
+        return getExpired(detachedOnly ? Type.DETACHED_CLIENT_SESSION_TIMESTAMP : Type.CLIENT_SESSION_TIMESTAMP, realm, timestampBefore);
+    }
+
+    /**
+     * Returns ids of the client initial access entries, which expired before the given time or which have no remaining count.
+     */
+    public Set<String> getExpiredClientInitialAccess(String realm, int time) {
+        return getExpired(Type.CLIENT_INITIAL_ACCESS_EXPIRATION, realm, time);
+    }
+
+    /**
+     * Count of indexed entries (user sessions, client sessions and client initial access)
+     */
+    public int size() {
+        return indexed.size();
+    }
+
+    public void index(String id, SessionEntity entity) {
+        indexed.compute(id, (key, previous) -> {
+            if (previous != null) {
+                remove(key, previous);
+            }
+
+            Indexed current = toIndexed(entity);
+            if (current != null) {
+                add(key, current);
+            }
+            return current;
+        });
+    }
+
+    public void unindex(String id) {
+        indexed.computeIfPresent(id, (key, previous) -> {
+            remove(key, previous);
+            return null;
+        });
+    }
+
+    public void clear() {
+        indexed.clear();
+        index.clear();
+        expirationIndex.clear();
+    }
+
+    private Set<String> get(Type type, String realm, String value) {
+        if (value == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> ids = index.get(new IndexKey(type, realm, value));
+        return ids != null ? new HashSet<>(ids) : Collections.<String>emptySet();
+    }
+
+    private Set<String> getExpired(Type type, String realm, int time) {
+        Set<String> result = new HashSet<>();
+
+        ConcurrentNavigableMap<Integer, Set<String>> buckets = expirationIndex.get(new IndexKey(type, realm, null));
+        if (buckets != null) {
+            for (Set<String> ids : buckets.headMap(toBucket(time), true).values()) {
+                result.addAll(ids);
+            }
+        }
+        return result;
+    }
+
+    private void add(String id, Indexed i) {
+        for (IndexKey key : i.keys) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+
+        for (ExpirationKey key : i.expirationKeys) {
+            expirationIndex.computeIfAbsent(key.key, k -> new ConcurrentSkipListMap<>())
+                    .computeIfAbsent(key.bucket, b -> ConcurrentHashMap.newKeySet())
+                    .add(id);
+        }
+    }
+
+    private void remove(String id, Indexed i) {
+        for (IndexKey key : i.keys) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        for (ExpirationKey key : i.expirationKeys) {
+            ConcurrentNavigableMap<Integer, Set<String>> buckets = expirationIndex.get(key.key);
+            if (buckets != null) {
+                buckets.computeIfPresent(key.bucket, (b, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }
+    }
+
+    private static int toBucket(int time) {
+        return time / EXPIRATION_BUCKET_SECONDS;
+    }
+
+    private static Indexed toIndexed(SessionEntity entity) {
+        if (entity instanceof UserSessionEntity) {
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            String realm = userSession.getRealm();
+
+            List<IndexKey> keys = new LinkedList<>();
+            addKey(keys, Type.USER, realm, userSession.getUser());
+            addKey(keys, Type.BROKER_SESSION_ID, realm, userSession.getBrokerSessionId());
+            addKey(keys, Type.BROKER_USER_ID, realm, userSession.getBrokerUserId());
+
+            List<ExpirationKey> expirationKeys = new LinkedList<>();
+            addExpirationKey(expirationKeys, Type.USER_SESSION_STARTED, realm, userSession.getStarted());
+            addExpirationKey(expirationKeys, Type.USER_SESSION_REFRESH, realm, userSession.getLastSessionRefresh());
+            return new Indexed(keys, expirationKeys, null);
+        } else if (entity instanceof ClientSessionEntity) {
+            ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+            String realm = clientSession.getRealm();
+
+            List<IndexKey> keys = new LinkedList<>();
+            addKey(keys, Type.CLIENT, realm, clientSession.getClient());
+
+            List<ExpirationKey> expirationKeys = new LinkedList<>();
+            addExpirationKey(expirationKeys, Type.CLIENT_SESSION_TIMESTAMP, realm, clientSession.getTimestamp());
+            if (clientSession.getUserSession() == null) {
+                addExpirationKey(expirationKeys, Type.DETACHED_CLIENT_SESSION_TIMESTAMP, realm, clientSession.getTimestamp());
+            }
+            return new Indexed(keys, expirationKeys, clientSession.getUserSession());
+        } else if (entity instanceof ClientInitialAccessEntity) {
+            ClientInitialAccessEntity clientInitialAccess = (ClientInitialAccessEntity) entity;
+
+            // Entries without remaining count are expired immediately
+            int expiration;
+            if (clientInitialAccess.getRemainingCount() <= 0) {
+                expiration = 0;
+            } else if (clientInitialAccess.getExpiration() > 0) {
+                expiration = clientInitialAccess.getTimestamp() + clientInitialAccess.getExpiration();
+            } else {
+                return null;
+            }
+
+            List<ExpirationKey> expirationKeys = new LinkedList<>();
+            addExpirationKey(expirationKeys, Type.CLIENT_INITIAL_ACCESS_EXPIRATION, clientInitialAccess.getRealm(), expiration);
+            return new Indexed(new LinkedList<>(), expirationKeys, null);
+        } else {
+            return null;
+        }
+    }
+
+    private static void addKey(List<IndexKey> keys, Type type, String realm, String value) {
+        if (realm != null && value != null) {
+            keys.add(new IndexKey(type, realm, value));
+        }
+    }
+
+    private static void addExpirationKey(List<ExpirationKey> keys, Type type, String realm, int time) {
+        if (realm != null) {
+            keys.add(new ExpirationKey(new IndexKey(type, realm, null), toBucket(time)));
+        }
+    }
+
+    private static class Indexed {
+
+        private final List<IndexKey> keys;
+        private final List<ExpirationKey> expirationKeys;
+        private final String userSession;
+
+        private Indexed(List<IndexKey> keys, List<ExpirationKey> expirationKeys, String userSession) {
+            this.keys = keys;
+            this.expirationKeys = expirationKeys;
+            this.userSession = userSession;
+        }
+    }
+
+    private static class ExpirationKey {
+
+        private final IndexKey key;
+        private final int bucket;
+
+        private ExpirationKey(IndexKey key, int bucket) {
+            this.key = key;
+            this.bucket = bucket;
+        }
+    }
+
+    private static class IndexKey {
+
+        private final Type type;
+        private final String realm;
+        private final String value;
+
+        private IndexKey(Type type, String realm, String value) {
+            this.type = type;
+            this.realm = realm;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IndexKey)) return false;
+
+            IndexKey that = (IndexKey) o;
+            return type == that.type && realm.equals(that.realm) && (value != null ? value.equals(that.value) : that.value == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type.hashCode();
+            result = 31 * result + realm.hashCode();
+            result = 31 * result + (value != null ? value.hashCode() : 0);
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.jboss.logging.Logger;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+
+/**
+ * Keeps {@link SessionIndex} in sync with the session cache.
+ *
+ * The listener is clustered, so with distributed cache this node is notified about changes of sessions owned by other nodes too. With
+ * local or replicated cache, it behaves like a plain local listener. The current content of the cache is indexed during registration,
+ * which covers the case when node joins the cluster with already existing sessions.
+ */
+@Listener(clustered = true, includeCurrentState = true)
+public class SessionIndexListener {
+
+    private static final Logger log = Logger.getLogger(SessionIndexListener.class);
+
+    private final SessionIndex index;
+
+    public SessionIndexListener(SessionIndex index) {
+        this.index = index;
+    }
+
+    public static SessionIndex register(Cache<String, SessionEntity> cache) {
+        SessionIndex index = new SessionIndex();
+        cache.addListener(new SessionIndexListener(index));
+
+        log.debugf("Registered session index for cache '%s'. Indexed sessions: %d", cache.getName(), index.size());
+        return index;
+    }
+
+    @CacheEntryCreated
+    public void created(CacheEntryCreatedEvent<String, SessionEntity> event) {
+        if (!event.isPre()) {
+            index.index(event.getKey(), event.getValue());
+        }
+    }
+
+    @CacheEntryModified
+    public void modified(CacheEntryModifiedEvent<String, SessionEntity> event) {
+        if (!event.isPre()) {
+            index.index(event.getKey(), event.getValue());
+        }
+    }
+
+    @CacheEntryRemoved
+    public void removed(CacheEntryRemovedEvent<String, SessionEntity> event) {
+        if (!event.isPre()) {
+            index.unindex(event.getKey());
+        }
+    }
+
+    @CacheEntryExpired
+    public void expired(CacheEntryExpiredEvent<String, SessionEntity> event) {
+        index.unindex(event.getKey());
+    }
+
+}
@@ -29,6 +29,7 @@ import org.keycloak.models.KeycloakSessionTask;
 import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -48,6 +49,8 @@ public class InfinispanUserSessionInitializer {
 
     private static final String STATE_KEY_PREFIX = "distributed::";
 
+    private static final String BOUNDARIES_KEY_SUFFIX = "::boundaries";
+
     private static final Logger log = Logger.getLogger(InfinispanUserSessionInitializer.class);
 
     private final KeycloakSessionFactory sessionFactory;
@@ -120,8 +123,26 @@ public class InfinispanUserSessionInitializer {
 
             });
 
+            final List<List<String>> boundaries = new ArrayList<>(1);
+
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+                @Override
+                public void run(KeycloakSession session) {
+                    boundaries.add(sessionLoader.getSegmentBoundaries(session, sessionsPerSegment));
+                }
+
+            });
+
             state = new InitializerState();
-            state.init(count[0], sessionsPerSegment);
+            List<String> segmentBoundaries = boundaries.get(0);
+            if (segmentBoundaries == null) {
+                state.init(count[0], sessionsPerSegment);
+            } else {
+                // Boundaries don't change during loading, so they are saved just once and not with the state pushed after each iteration
+                log.debugf("Loading sessions by key range. Segments count: %d", segmentBoundaries.size() + 1);
+                saveToCache(stateKey + BOUNDARIES_KEY_SUFFIX, new ArrayList<>(segmentBoundaries));
+                state.initSegments(count[0], segmentBoundaries.size() + 1);
+            }
             saveStateToCache(state);
         }
         return state;
@@ -130,6 +151,11 @@ public class InfinispanUserSessionInitializer {
 
 
     private void saveStateToCache(final InitializerState state) {
+        saveToCache(stateKey, state);
+    }
+
+
+    private void saveToCache(final String key, final Serializable value) {
 
         // 3 attempts to send the message (it may fail if some node fails in the meantime)
         retry(3, new Runnable() {
@@ -140,7 +166,7 @@ public class InfinispanUserSessionInitializer {
                 // Save this synchronously to ensure all nodes read correct state
                 InfinispanUserSessionInitializer.this.workCache.getAdvancedCache().
                         withFlags(Flag.IGNORE_RETURN_VALUES, Flag.FORCE_SYNCHRONOUS)
-                        .put(stateKey, state);
+                        .put(key, value);
             }
 
         });
@@ -156,6 +182,7 @@ public class InfinispanUserSessionInitializer {
     // Just coordinator will run this
     private void startLoading() {
         InitializerState state = getOrCreateInitializerState();
+        List<String> boundaries = (List<String>) workCache.get(stateKey + BOUNDARIES_KEY_SUFFIX);
 
         // Assume each worker has same processor's count
         int processors = Runtime.getRuntime().availableProcessors();
@@ -183,7 +210,13 @@ public class InfinispanUserSessionInitializer {
                 List<Future<WorkerResult>> futures = new LinkedList<>();
                 for (Integer segment : segments) {
                     SessionInitializerWorker worker = new SessionInitializerWorker();
-                    worker.setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader);
+                    if (boundaries == null) {
+                        worker.setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader);
+                    } else {
+                        String lastKey = segment == 0 ? null : boundaries.get(segment - 1);
+                        String maxKey = segment < boundaries.size() ? boundaries.get(segment) : null;
+                        worker.setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader, lastKey, maxKey);
+                    }
                     if (!distributed) {
                         worker.setEnvironment(workCache, null);
                     }
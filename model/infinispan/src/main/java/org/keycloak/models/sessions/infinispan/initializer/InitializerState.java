@@ -36,8 +36,6 @@ public class InitializerState extends SessionEntity {
 
 
     public void init(int sessionsCount, int sessionsPerSegment) {
-        this.sessionsCount = sessionsCount;
-
         int segmentsCount = sessionsCount / sessionsPerSegment;
         if (sessionsPerSegment * segmentsCount < sessionsCount) {
             segmentsCount = segmentsCount + 1;
@@ -45,6 +43,13 @@ public class InitializerState extends SessionEntity {
 
         log.debugf("sessionsCount: %d, sessionsPerSegment: %d, segmentsCount: %d", sessionsCount, sessionsPerSegment, segmentsCount);
 
+        initSegments(sessionsCount, segmentsCount);
+    }
+
+    // Used when segments are not computed from sessionsCount, but split by key ranges
+    public void initSegments(int sessionsCount, int segmentsCount) {
+        this.sessionsCount = sessionsCount;
+
         for (int i=0 ; i<segmentsCount ; i++) {
             segments.add(false);
         }
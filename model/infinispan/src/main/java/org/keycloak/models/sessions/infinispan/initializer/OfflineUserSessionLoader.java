@@ -33,6 +33,17 @@ public class OfflineUserSessionLoader implements SessionLoader {
 
     private static final Logger log = Logger.getLogger(OfflineUserSessionLoader.class);
 
+    // False if refreshes are written to the persister, so just the timestamps never written by the refreshes are updated
+    private final boolean updateTimestamps;
+
+    public OfflineUserSessionLoader() {
+        this(true);
+    }
+
+    public OfflineUserSessionLoader(boolean updateTimestamps) {
+        this.updateTimestamps = updateTimestamps;
+    }
+
     @Override
     public void init(KeycloakSession session) {
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
@@ -40,6 +51,15 @@ public class OfflineUserSessionLoader implements SessionLoader {
         // TODO: check if update of timestamps in persister can be skipped entirely
         int clusterStartupTime = session.getProvider(ClusterProvider.class).getClusterStartupTime();
 
+        if (!updateTimestamps) {
+            // Sessions persisted before the refreshes were written have timestamps of their creation or of some previous startup
+            log.debugf("Clearing detached sessions from persistent storage and updating unwritten timestamps to %d", clusterStartupTime);
+
+            persister.clearDetachedUserSessions();
+            persister.updateUnwrittenTimestamps(clusterStartupTime, true);
+            return;
+        }
+
         log.debugf("Clearing detached sessions from persistent storage and updating timestamps to %d", clusterStartupTime);
 
         persister.clearDetachedUserSessions();
@@ -60,7 +80,38 @@ public class OfflineUserSessionLoader implements SessionLoader {
 
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
         List<UserSessionModel> sessions = persister.loadUserSessions(first, max, true);
+        importSessions(session, sessions);
+
+        return true;
+    }
+
+    @Override
+    public List<String> getSegmentBoundaries(KeycloakSession session, int sessionsPerSegment) {
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        return persister.loadUserSessionIdBoundaries(sessionsPerSegment, true);
+    }
 
+    @Override
+    public boolean loadSessions(KeycloakSession session, String lastKey, String maxKey, int pageSize) {
+        if (log.isTraceEnabled()) {
+            log.tracef("Loading sessions - lastKey: %s, maxKey: %s", lastKey, maxKey);
+        }
+
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+
+        // Page may be shorter than pageSize if some sessions were skipped, so loading ends just with empty page
+        List<UserSessionModel> sessions = persister.loadUserSessions(lastKey, maxKey, pageSize, true);
+        while (!sessions.isEmpty()) {
+            importSessions(session, sessions);
+
+            lastKey = sessions.get(sessions.size() - 1).getId();
+            sessions = persister.loadUserSessions(lastKey, maxKey, pageSize, true);
+        }
+
+        return true;
+    }
+
+    private void importSessions(KeycloakSession session, List<UserSessionModel> sessions) {
         for (UserSessionModel persistentSession : sessions) {
 
             // Save to memory/infinispan
@@ -71,9 +122,6 @@ public class OfflineUserSessionLoader implements SessionLoader {
                 offlineClientSession.setUserSession(offlineUserSession);
             }
         }
-
-        return true;
     }
 
-
 }
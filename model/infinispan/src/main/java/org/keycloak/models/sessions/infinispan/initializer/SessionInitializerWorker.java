@@ -39,6 +39,11 @@ public class SessionInitializerWorker implements DistributedCallable<String, Ser
     private int sessionsPerSegment;
     private SessionLoader sessionLoader;
 
+    // Used instead of segment and sessionsPerSegment if sessions are loaded by key range
+    private boolean keyRange;
+    private String lastKey;
+    private String maxKey;
+
     private transient Cache<String, Serializable> workCache;
 
     public void setWorkerEnvironment(int segment, int sessionsPerSegment, SessionLoader sessionLoader) {
@@ -47,6 +52,13 @@ public class SessionInitializerWorker implements DistributedCallable<String, Ser
         this.sessionLoader = sessionLoader;
     }
 
+    public void setWorkerEnvironment(int segment, int sessionsPerSegment, SessionLoader sessionLoader, String lastKey, String maxKey) {
+        setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader);
+        this.keyRange = true;
+        this.lastKey = lastKey;
+        this.maxKey = maxKey;
+    }
+
     @Override
     public void setEnvironment(Cache<String, Serializable> workCache, Set<String> inputKeys) {
         this.workCache = workCache;
@@ -71,7 +83,11 @@ public class SessionInitializerWorker implements DistributedCallable<String, Ser
 
             @Override
             public void run(KeycloakSession session) {
-                sessionLoader.loadSessions(session, first, max);
+                if (keyRange) {
+                    sessionLoader.loadSessions(session, lastKey, maxKey, max);
+                } else {
+                    sessionLoader.loadSessions(session, first, max);
+                }
             }
 
         });
@@ -20,6 +20,7 @@ package org.keycloak.models.sessions.infinispan.initializer;
 import org.keycloak.models.KeycloakSession;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -31,4 +32,10 @@ public interface SessionLoader extends Serializable {
     int getSessionsCount(KeycloakSession session);
 
     boolean loadSessions(KeycloakSession session, int first, int max);
+
+    // Returns keys splitting the sessions into segments of "sessionsPerSegment" sessions, or null if loading by key range is not supported
+    List<String> getSegmentBoundaries(KeycloakSession session, int sessionsPerSegment);
+
+    // Loads sessions with key greater than lastKey and less or equal to maxKey, by pages of "pageSize" sessions. Null key means unbounded
+    boolean loadSessions(KeycloakSession session, String lastKey, String maxKey, int pageSize);
 }
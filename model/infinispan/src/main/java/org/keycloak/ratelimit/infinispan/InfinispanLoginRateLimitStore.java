@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.ratelimit.infinispan;
+
+import org.infinispan.Cache;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.RealmModel;
+import org.keycloak.ratelimit.LoginRateLimitStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entries expire once the bucket is full again, so they don't need to be removed explicitly. Entries are written
+ * outside of the transaction of the session, as the transaction of the failed login may be rolled back.
+ */
+public class InfinispanLoginRateLimitStore implements LoginRateLimitStore {
+
+    private final Cache<String, Long> cache;
+
+    public InfinispanLoginRateLimitStore(Cache<String, Long> cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public long getFullAt(RealmModel realm, String key) {
+        Long fullAt = cache.get(realm.getId() + "/" + key);
+        return fullAt != null ? fullAt : 0;
+    }
+
+    @Override
+    public void updateFullAt(RealmModel realm, String key, long fullAt) {
+        String cacheKey = realm.getId() + "/" + key;
+        while (true) {
+            long lifespan = fullAt - Time.currentTimeMillis();
+            if (lifespan <= 0) return;
+
+            Long current = cache.get(cacheKey);
+            if (current == null) {
+                if (cache.putIfAbsent(cacheKey, fullAt, lifespan, TimeUnit.MILLISECONDS) == null) return;
+            } else if (current >= fullAt || cache.replace(cacheKey, current, fullAt, lifespan, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.ratelimit.infinispan;
+
+import org.infinispan.Cache;
+import org.keycloak.Config;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.ratelimit.LoginRateLimitStore;
+import org.keycloak.ratelimit.LoginRateLimitStoreFactory;
+
+public class InfinispanLoginRateLimitStoreFactory implements LoginRateLimitStoreFactory {
+
+    public static final String PROVIDER_ID = "infinispan";
+
+    private volatile Cache<String, Long> cache;
+
+    @Override
+    public LoginRateLimitStore create(KeycloakSession session) {
+        lazyInit(session);
+        return new InfinispanLoginRateLimitStore(cache);
+    }
+
+    private void lazyInit(KeycloakSession session) {
+        if (cache == null) {
+            synchronized (this) {
+                if (cache == null) {
+                    cache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.LOGIN_RATE_LIMIT_CACHE_NAME);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
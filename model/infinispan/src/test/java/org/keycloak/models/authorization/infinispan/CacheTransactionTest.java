@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2016 Red Hat, Inc. and/or its affiliates
+ *  and other contributors as indicated by the @author tags.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.keycloak.models.authorization.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.keycloak.models.authorization.infinispan.InfinispanStoreFactoryProvider.POLICY_INDEX_CACHE_PREFIX;
+import static org.keycloak.models.authorization.infinispan.InfinispanStoreFactoryProvider.POLICY_INDEX_REVISION_CACHE_PREFIX;
+
+public class CacheTransactionTest {
+
+    private DefaultCacheManager cacheManager;
+    private Cache<String, List> cache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cache = cacheManager.getCache("authorization");
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testUpdateCommitsNewRevision() {
+        String revision = InfinispanStoreFactoryProvider.getPolicyIndexRevision(cache, "rs1");
+        cache.put(POLICY_INDEX_CACHE_PREFIX + "rs1", new ArrayList<>());
+
+        InfinispanStoreFactoryProvider.CacheTransaction transaction = new InfinispanStoreFactoryProvider.CacheTransaction();
+        transaction.invalidatePolicyIndex(cache, "rs1");
+        Assert.assertTrue(transaction.isPolicyIndexInvalidated("rs1"));
+        Assert.assertEquals(revision, InfinispanStoreFactoryProvider.getPolicyIndexRevision(cache, "rs1"));
+
+        transaction.commit();
+        Assert.assertNotEquals(revision, InfinispanStoreFactoryProvider.getPolicyIndexRevision(cache, "rs1"));
+        Assert.assertFalse(cache.containsKey(POLICY_INDEX_CACHE_PREFIX + "rs1"));
+    }
+
+    @Test
+    public void testDeleteAfterUpdateRemovesRevision() {
+        InfinispanStoreFactoryProvider.getPolicyIndexRevision(cache, "rs1");
+        cache.put(POLICY_INDEX_CACHE_PREFIX + "rs1", new ArrayList<>());
+
+        InfinispanStoreFactoryProvider.CacheTransaction transaction = new InfinispanStoreFactoryProvider.CacheTransaction();
+        transaction.invalidatePolicyIndex(cache, "rs1");
+        transaction.removePolicyIndex(cache, "rs1");
+        // changes done after removal don't bring the revision back
+        transaction.invalidatePolicyIndex(cache, "rs1");
+        transaction.commit();
+
+        Assert.assertFalse(cache.containsKey(POLICY_INDEX_REVISION_CACHE_PREFIX + "rs1"));
+        Assert.assertFalse(cache.containsKey(POLICY_INDEX_CACHE_PREFIX + "rs1"));
+    }
+
+    @Test
+    public void testRollbackKeepsIndex() {
+        String revision = InfinispanStoreFactoryProvider.getPolicyIndexRevision(cache, "rs1");
+
+        InfinispanStoreFactoryProvider.CacheTransaction transaction = new InfinispanStoreFactoryProvider.CacheTransaction();
+        transaction.removePolicyIndex(cache, "rs1");
+        transaction.rollback();
+
+        Assert.assertEquals(revision, InfinispanStoreFactoryProvider.getPolicyIndexRevision(cache, "rs1"));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.infinispan.entities.RealmListQuery;
+import org.keycloak.models.cache.infinispan.entities.RoleListQuery;
+import org.keycloak.models.cache.infinispan.stream.HasRolePredicate;
+import org.keycloak.models.cache.infinispan.stream.InClientPredicate;
+import org.keycloak.models.cache.infinispan.stream.InRealmPredicate;
+import org.keycloak.models.cache.infinispan.stream.IndexedPredicate;
+import org.keycloak.models.cache.infinispan.stream.RealmQueryPredicate;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class DependencyIndexTest {
+
+    @Test
+    public void testDependents() {
+        DependencyIndex index = new DependencyIndex();
+        RealmModel realm = realm("realm1");
+
+        index.add(new RoleListQuery(1L, "q1", realm, new HashSet<>(Arrays.asList("role1", "role2")), "client1"));
+        index.add(new RoleListQuery(1L, "q2", realm, new HashSet<>(Arrays.asList("role2"))));
+        index.add(new RealmListQuery(1L, "realms", new HashSet<>(Arrays.asList("realm1", "realm2"))));
+
+        Assert.assertEquals(set("q1"), HasRolePredicate.create().role("role1").getCandidates(index));
+        Assert.assertEquals(set("q1", "q2"), HasRolePredicate.create().role("role2").getCandidates(index));
+        Assert.assertEquals(set("q1"), InClientPredicate.create().client("client1").getCandidates(index));
+        Assert.assertEquals(set("q1", "q2"), InRealmPredicate.create().realm("realm1").getCandidates(index));
+        Assert.assertEquals(set("realms"), RealmQueryPredicate.create().realm("realm2").getCandidates(index));
+
+        IndexedPredicate removal = RealmQueryPredicate.create().realm("realm1").or(InRealmPredicate.create().realm("realm1"));
+        Assert.assertEquals(set("q1", "q2", "realms"), removal.getCandidates(index));
+
+        index.remove("q1");
+        Assert.assertTrue(HasRolePredicate.create().role("role1").getCandidates(index).isEmpty());
+        Assert.assertEquals(set("q2"), HasRolePredicate.create().role("role2").getCandidates(index));
+        Assert.assertTrue(InClientPredicate.create().client("client1").getCandidates(index).isEmpty());
+        Assert.assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testDependenciesAccumulatedUntilRemoved() {
+        DependencyIndex index = new DependencyIndex();
+        RealmModel realm = realm("realm1");
+
+        // putForExternalRead may keep the older object in the cache, so dependencies of both must stay indexed
+        index.add(new RoleListQuery(1L, "q1", realm, new HashSet<>(Arrays.asList("role1"))));
+        index.add(new RoleListQuery(2L, "q1", realm, new HashSet<>(Arrays.asList("role2"))));
+
+        Assert.assertEquals(set("q1"), HasRolePredicate.create().role("role1").getCandidates(index));
+        Assert.assertEquals(set("q1"), HasRolePredicate.create().role("role2").getCandidates(index));
+
+        index.remove("q1");
+        Assert.assertEquals(0, index.size());
+        Assert.assertTrue(HasRolePredicate.create().role("role2").getCandidates(index).isEmpty());
+    }
+
+    private static HashSet<String> set(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static RealmModel realm(final String id) {
+        return (RealmModel) Proxy.newProxyInstance(DependencyIndexTest.class.getClassLoader(), new Class[] { RealmModel.class },
+                (proxy, method, args) -> "getId".equals(method.getName()) ? id : null);
+    }
+}
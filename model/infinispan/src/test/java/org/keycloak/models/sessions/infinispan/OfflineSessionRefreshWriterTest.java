@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OfflineSessionRefreshWriterTest {
+
+    @Test
+    public void testRefreshesCoalesced() {
+        TestWriter writer = new TestWriter();
+        writer.userSessionRefreshed("us1", 100);
+        writer.userSessionRefreshed("us1", 120);
+        writer.userSessionRefreshed("us1", 110);
+        writer.userSessionRefreshed("us2", 105);
+        writer.clientSessionRefreshed("cs1", 120);
+        Assert.assertEquals(3, writer.getPendingCount());
+
+        writer.flush();
+        Assert.assertEquals(1, writer.written.size());
+        Assert.assertEquals(map("us1", 120, "us2", 105), writer.written.get(0).get(0));
+        Assert.assertEquals(map("cs1", 120), writer.written.get(0).get(1));
+        Assert.assertEquals(0, writer.getPendingCount());
+        Assert.assertEquals(5, writer.getRecordedCount());
+        Assert.assertEquals(3, writer.getWrittenCount());
+
+        // Nothing to write
+        writer.flush();
+        Assert.assertEquals(1, writer.written.size());
+        Assert.assertEquals(1, writer.getFlushCount());
+    }
+
+    @Test
+    public void testFailedRefreshesKeptForNextFlush() {
+        TestWriter writer = new TestWriter();
+        writer.userSessionRefreshed("us1", 100);
+        writer.userSessionRefreshed("us2", 100);
+        writer.clientSessionRefreshed("cs1", 100);
+
+        writer.failing = true;
+        writer.flush();
+        Assert.assertEquals(1, writer.getFailedCount());
+        Assert.assertEquals(3, writer.getPendingCount());
+
+        writer.userSessionRefreshed("us1", 130);
+        writer.failing = false;
+        writer.flush();
+        Assert.assertEquals(map("us1", 130, "us2", 100), writer.written.get(0).get(0));
+        Assert.assertEquals(map("cs1", 100), writer.written.get(0).get(1));
+        Assert.assertEquals(0, writer.getPendingCount());
+    }
+
+    private static Map<String, Integer> map(Object... entries) {
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put((String) entries[i], (Integer) entries[i + 1]);
+        }
+        return map;
+    }
+
+    private static class TestWriter extends OfflineSessionRefreshWriter {
+
+        private final List<List<Map<String, Integer>>> written = new ArrayList<>();
+        private boolean failing;
+
+        private TestWriter() {
+            super(null, 60);
+        }
+
+        @Override
+        protected void write(Map<String, Integer> lastSessionRefreshes, Map<String, Integer> clientSessionTimestamps) {
+            if (failing) {
+                throw new RuntimeException("Failed to write");
+            }
+            List<Map<String, Integer>> batch = new ArrayList<>();
+            batch.add(lastSessionRefreshes);
+            batch.add(clientSessionTimestamps);
+            written.add(batch);
+        }
+    }
+}
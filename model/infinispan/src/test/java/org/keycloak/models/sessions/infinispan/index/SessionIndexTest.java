@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class SessionIndexTest {
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, SessionEntity> cache;
+
+    @Before
+    public void before() {
+        GlobalConfigurationBuilder gcb = new GlobalConfigurationBuilder();
+        gcb.globalJmxStatistics().allowDuplicateDomains(true);
+        cacheManager = new DefaultCacheManager(gcb.build());
+        cacheManager.defineConfiguration("sessions", new ConfigurationBuilder().build());
+        cache = cacheManager.getCache("sessions");
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testUserSessions() {
+        SessionIndex index = SessionIndexListener.register(cache);
+
+        cache.put("us1", userSession("us1", "realm1", "user1", "broker1"));
+        cache.put("us2", userSession("us2", "realm1", "user1", null));
+        cache.put("us3", userSession("us3", "realm2", "user1", null));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1", "us2")), index.getUserSessionsByUser("realm1", "user1"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us3")), index.getUserSessionsByUser("realm2", "user1"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1")), index.getUserSessionsByBrokerSessionId("realm1", "broker1"));
+        Assert.assertTrue(index.getUserSessionsByBrokerSessionId("realm2", "broker1").isEmpty());
+        Assert.assertTrue(index.getUserSessionsByUser("realm1", "user2").isEmpty());
+
+        cache.remove("us1");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us2")), index.getUserSessionsByUser("realm1", "user1"));
+        Assert.assertTrue(index.getUserSessionsByBrokerSessionId("realm1", "broker1").isEmpty());
+
+        cache.clear();
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testClientSessionModifiedInPlace() {
+        SessionIndex index = SessionIndexListener.register(cache);
+
+        ClientSessionEntity cs1 = clientSession("cs1", "realm1", "client1", null);
+        cache.put("cs1", cs1);
+        cache.put("cs2", clientSession("cs2", "realm1", "client1", "us1"));
+        cache.put("cs3", clientSession("cs3", "realm1", "client1", "us1"));
+        cache.put("cs4", clientSession("cs4", "realm1", "client2", "us2"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("cs1", "cs2", "cs3")), index.getClientSessionsByClient("realm1", "client1"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1")), index.getUserSessionsByClient("realm1", "client1"));
+
+        // Adapters update the cached entity directly and then just call replace
+        cs1.setUserSession("us3");
+        cs1.setClient("client2");
+        cache.replace("cs1", cs1);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("cs2", "cs3")), index.getClientSessionsByClient("realm1", "client1"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us2", "us3")), index.getUserSessionsByClient("realm1", "client2"));
+    }
+
+    @Test
+    public void testCurrentStateIndexedOnRegistration() {
+        cache.put("us1", userSession("us1", "realm1", "user1", null));
+        cache.put("cs1", clientSession("cs1", "realm1", "client1", "us1"));
+
+        SessionIndex index = SessionIndexListener.register(cache);
+
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1")), index.getUserSessionsByUser("realm1", "user1"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1")), index.getUserSessionsByClient("realm1", "client1"));
+    }
+
+    @Test
+    public void testExpiration() {
+        SessionIndex index = SessionIndexListener.register(cache);
+
+        int bucket = SessionIndex.EXPIRATION_BUCKET_SECONDS;
+
+        UserSessionEntity us1 = userSession("us1", "realm1", "user1", null);
+        us1.setStarted(bucket);
+        us1.setLastSessionRefresh(bucket * 5);
+        cache.put("us1", us1);
+
+        UserSessionEntity us2 = userSession("us2", "realm1", "user1", null);
+        us2.setStarted(bucket * 5);
+        us2.setLastSessionRefresh(bucket * 5);
+        cache.put("us2", us2);
+
+        ClientSessionEntity cs1 = clientSession("cs1", "realm1", "client1", null);
+        cs1.setTimestamp(bucket);
+        cache.put("cs1", cs1);
+
+        ClientSessionEntity cs2 = clientSession("cs2", "realm1", "client1", "us1");
+        cs2.setTimestamp(bucket);
+        cache.put("cs2", cs2);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1")), index.getExpiredUserSessions("realm1", bucket * 2, bucket * 2));
+        Assert.assertTrue(index.getExpiredUserSessions("realm1", null, bucket * 2).isEmpty());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1", "us2")), index.getExpiredUserSessions("realm1", null, bucket * 6));
+        Assert.assertTrue(index.getExpiredUserSessions("realm2", null, bucket * 6).isEmpty());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("cs1")), index.getExpiredClientSessions("realm1", bucket * 2, true));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("cs1", "cs2")), index.getExpiredClientSessions("realm1", bucket * 2, false));
+
+        // Refresh moves the session to the newer bucket
+        us2.setLastSessionRefresh(bucket * 10);
+        cache.replace("us2", us2);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("us1")), index.getExpiredUserSessions("realm1", null, bucket * 6));
+
+        cache.remove("us1");
+        cache.remove("cs1");
+        Assert.assertTrue(index.getExpiredUserSessions("realm1", null, bucket * 6).isEmpty());
+        Assert.assertTrue(index.getExpiredClientSessions("realm1", bucket * 2, true).isEmpty());
+    }
+
+    static UserSessionEntity userSession(String id, String realm, String user, String brokerSessionId) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealm(realm);
+        entity.setUser(user);
+        entity.setBrokerSessionId(brokerSessionId);
+        return entity;
+    }
+
+    static ClientSessionEntity clientSession(String id, String realm, String client, String userSession) {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        entity.setId(id);
+        entity.setRealm(realm);
+        entity.setClient(client);
+        entity.setUserSession(userSession);
+        return entity;
+    }
+}
@@ -53,6 +53,24 @@ public class InitializerStateTest {
         Assert.assertTrue(state.isFinished());
     }
 
+    @Test
+    public void testKeyRangeSegments() {
+        InitializerState state = new InitializerState();
+        state.initSegments(28, 3);
+
+        List<Integer> segments = state.getUnfinishedSegments(4);
+        assertContains(segments, 3, 0, 1, 2);
+
+        state.markSegmentFinished(0);
+        state.markSegmentFinished(2);
+        segments = state.getUnfinishedSegments(4);
+        assertContains(segments, 1, 1);
+
+        state.markSegmentFinished(1);
+        Assert.assertTrue(state.isFinished());
+        Assert.assertTrue(state.printState().startsWith("sessionsCount: 28"));
+    }
+
     private void assertContains(List<Integer> segments, int expectedLength, int... expected) {
         Assert.assertEquals(segments.size(), expectedLength);
         for (int i : expected) {
@@ -167,6 +167,12 @@ public class DefaultJpaConnectionProviderFactory implements JpaConnectionProvide
                         properties.put("hibernate.show_sql", config.getBoolean("showSql", false));
                         properties.put("hibernate.format_sql", config.getBoolean("formatSql", true));
 
+                        Integer jdbcBatchSize = config.getInt("jdbcBatchSize");
+                        if (jdbcBatchSize != null) {
+                            properties.put("hibernate.jdbc.batch_size", jdbcBatchSize);
+                            properties.put("hibernate.order_inserts", true);
+                        }
+
                         Connection connection = getConnection();
                         try {
                             prepareOperationalInfo(connection);
@@ -20,6 +20,7 @@ package org.keycloak.events.jpa;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.logging.Logger;
+import org.keycloak.events.AsyncEventWriter;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
@@ -46,9 +47,18 @@ public class JpaEventStoreProvider implements EventStoreProvider {
     private static final Logger logger = Logger.getLogger(JpaEventStoreProvider.class);
 
     private EntityManager em;
+    private AsyncEventWriter asyncWriter;
 
     public JpaEventStoreProvider(EntityManager em) {
+        this(em, null);
+    }
+
+    /**
+     * @param asyncWriter writer of the events outside of the request transaction or null to persist them directly
+     */
+    public JpaEventStoreProvider(EntityManager em, AsyncEventWriter asyncWriter) {
         this.em = em;
+        this.asyncWriter = asyncWriter;
     }
 
     @Override
@@ -73,6 +83,10 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(event);
+            return;
+        }
         em.persist(convertEvent(event));
     }
 
@@ -98,6 +112,10 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(event, includeRepresentation);
+            return;
+        }
         em.persist(convertAdminEvent(event, includeRepresentation));
     }
 
@@ -19,10 +19,18 @@ package org.keycloak.events.jpa;
 
 import org.keycloak.Config;
 import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.events.AsyncEventWriter;
+import org.keycloak.events.Event;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
+import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import javax.persistence.EntityManager;
+import java.util.List;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -31,23 +39,51 @@ public class JpaEventStoreProviderFactory implements EventStoreProviderFactory {
 
     public static final String ID = "jpa";
 
+    private Config.Scope config;
+    private AsyncEventWriter asyncWriter;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         JpaConnectionProvider connection = session.getProvider(JpaConnectionProvider.class);
-        return new JpaEventStoreProvider(connection.getEntityManager());
+        return new JpaEventStoreProvider(connection.getEntityManager(), asyncWriter);
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {
+    public void postInit(final KeycloakSessionFactory factory) {
+        asyncWriter = AsyncEventWriter.create(ID, config, new AsyncEventWriter.BatchWriter() {
+
+            @Override
+            public void write(final List<Event> events, final List<AdminEvent> adminEvents) {
+                KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        // Inserts are sent in JDBC batches if hibernate.jdbc.batch_size is configured
+                        EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                        for (Event event : events) {
+                            em.persist(JpaEventStoreProvider.convertEvent(event));
+                        }
+                        for (AdminEvent adminEvent : adminEvents) {
+                            em.persist(JpaEventStoreProvider.convertAdminEvent(adminEvent, true));
+                        }
+                    }
+
+                });
+            }
 
+        });
     }
 
     @Override
     public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
     }
 
     @Override
@@ -17,6 +17,9 @@
 
 package org.keycloak.models.jpa.session;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
@@ -24,30 +27,49 @@ import org.keycloak.models.ModelException;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.jpa.UserAdapter;
+import org.keycloak.models.jpa.entities.UserEntity;
 import org.keycloak.models.session.PersistentClientSessionAdapter;
 import org.keycloak.models.session.PersistentClientSessionModel;
 import org.keycloak.models.session.PersistentUserSessionAdapter;
 import org.keycloak.models.session.PersistentUserSessionModel;
 import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.storage.StorageId;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class JpaUserSessionPersisterProvider implements UserSessionPersisterProvider {
 
+    // Keeps the IN clause of the queries below the limit of all supported databases
+    private static final int IDS_CHUNK_SIZE = 500;
+
     private final KeycloakSession session;
     private final EntityManager em;
+    private final Integer fetchSize;
 
     public JpaUserSessionPersisterProvider(KeycloakSession session, EntityManager em) {
+        this(session, em, null);
+    }
+
+    public JpaUserSessionPersisterProvider(KeycloakSession session, EntityManager em, Integer fetchSize) {
         this.session = session;
         this.em = em;
+        this.fetchSize = fetchSize;
     }
 
     @Override
@@ -186,64 +208,249 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
         num = em.createNamedQuery("updateUserSessionsTimestamps").setParameter("lastSessionRefresh", time).executeUpdate();
     }
 
+    @Override
+    public void updateTimestamps(Map<String, Integer> lastSessionRefreshes, Map<String, Integer> clientSessionTimestamps, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        // Sessions refreshed in the same second are updated by single statement
+        for (Map.Entry<Integer, List<String>> entry : KeycloakModelUtils.groupByTimestamp(lastSessionRefreshes).entrySet()) {
+            List<String> ids = entry.getValue();
+            for (int i = 0; i < ids.size(); i += IDS_CHUNK_SIZE) {
+                em.createNamedQuery("updateUserSessionsTimestampsByIds")
+                        .setParameter("lastSessionRefresh", entry.getKey())
+                        .setParameter("offline", offlineStr)
+                        .setParameter("userSessionIds", ids.subList(i, Math.min(i + IDS_CHUNK_SIZE, ids.size())))
+                        .executeUpdate();
+            }
+        }
+
+        for (Map.Entry<Integer, List<String>> entry : KeycloakModelUtils.groupByTimestamp(clientSessionTimestamps).entrySet()) {
+            List<String> ids = entry.getValue();
+            for (int i = 0; i < ids.size(); i += IDS_CHUNK_SIZE) {
+                em.createNamedQuery("updateClientSessionsTimestampsByIds")
+                        .setParameter("timestamp", entry.getKey())
+                        .setParameter("offline", offlineStr)
+                        .setParameter("clientSessionIds", ids.subList(i, Math.min(i + IDS_CHUNK_SIZE, ids.size())))
+                        .executeUpdate();
+            }
+        }
+    }
+
+    @Override
+    public void updateUnwrittenTimestamps(int time, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        // ClientSessions first, as they are selected by their userSessions
+        em.createNamedQuery("updateUnwrittenClientSessionsTimestamps")
+                .setParameter("timestamp", time)
+                .setParameter("offline", offlineStr)
+                .executeUpdate();
+        em.createNamedQuery("updateUnwrittenUserSessionsTimestamps")
+                .setParameter("lastSessionRefresh", time)
+                .setParameter("offline", offlineStr)
+                .executeUpdate();
+    }
+
     @Override
     public List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline) {
         String offlineStr = offlineToString(offline);
 
-        TypedQuery<PersistentUserSessionEntity> query = em.createNamedQuery("findUserSessions", PersistentUserSessionEntity.class);
-        query.setParameter("offline", offlineStr);
+        while (true) {
+            TypedQuery<PersistentUserSessionEntity> query = em.createNamedQuery("findUserSessions", PersistentUserSessionEntity.class);
+            query.setParameter("offline", offlineStr);
+
+            if (firstResult != -1) {
+                query.setFirstResult(firstResult);
+            }
+            if (maxResults != -1) {
+                query.setMaxResults(maxResults);
+            }
+
+            List<PersistentUserSessionEntity> results = query.getResultList();
+            List<UserSessionModel> result = toAdapters(results);
 
-        if (firstResult != -1) {
-            query.setFirstResult(firstResult);
+            // Case when some users were deleted in the meantime. Their sessions were removed, so the page needs to be loaded again
+            if (result.size() < results.size()) {
+                continue;
+            }
+
+            if (!result.isEmpty()) {
+                List<String> userSessionIds = new ArrayList<>();
+                for (UserSessionModel userSession : result) {
+                    userSessionIds.add(userSession.getId());
+                }
+
+                TypedQuery<PersistentClientSessionEntity> query2 = em.createNamedQuery("findClientSessionsByUserSessions", PersistentClientSessionEntity.class);
+                query2.setParameter("userSessionIds", userSessionIds);
+                query2.setParameter("offline", offlineStr);
+                addClientSessions(result, query2.getResultList());
+            }
+
+            return result;
+        }
+    }
+
+    @Override
+    public List<String> loadUserSessionIdBoundaries(int sessionsPerSegment, boolean offline) {
+        org.hibernate.Query query = em.unwrap(Session.class).getNamedQuery("findUserSessionIds");
+        query.setParameter("offline", offlineToString(offline));
+        query.setReadOnly(true);
+        if (fetchSize != null) {
+            query.setFetchSize(fetchSize);
         }
-        if (maxResults != -1) {
+
+        // Just IDs are streamed from the DB, so the boundaries are computed without loading all the userSessions to memory
+        List<String> boundaries = new ArrayList<>();
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            String lastUserSessionId = null;
+            int count = 0;
+            while (results.next()) {
+                lastUserSessionId = (String) results.get(0);
+                count++;
+                if (count % sessionsPerSegment == 0) {
+                    boundaries.add(lastUserSessionId);
+                }
+            }
+
+            // Last segment is not bounded from above, so it's not needed to end it with the last userSession
+            if (!boundaries.isEmpty() && boundaries.get(boundaries.size() - 1).equals(lastUserSessionId)) {
+                boundaries.remove(boundaries.size() - 1);
+            }
+        } finally {
+            results.close();
+        }
+        return boundaries;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        while (true) {
+            TypedQuery<PersistentUserSessionEntity> query = em.createQuery("select sess from PersistentUserSessionEntity sess where sess.offline = :offline"
+                    + rangeCondition(lastUserSessionId, maxUserSessionId) + " order by sess.userSessionId", PersistentUserSessionEntity.class);
+            setRangeParameters(query, offlineStr, lastUserSessionId, maxUserSessionId);
             query.setMaxResults(maxResults);
+            if (fetchSize != null) {
+                query.setHint("org.hibernate.fetchSize", fetchSize);
+            }
+
+            List<PersistentUserSessionEntity> results = query.getResultList();
+            if (results.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            // Sessions of deleted users are removed and skipped. If all of them were skipped, continue with the next page
+            List<UserSessionModel> result = toAdapters(results);
+            String lastLoadedUserSessionId = results.get(results.size() - 1).getUserSessionId();
+            if (result.isEmpty()) {
+                lastUserSessionId = lastLoadedUserSessionId;
+                continue;
+            }
+
+            // ClientSessions are loaded by the same range instead of the list of userSession IDs
+            TypedQuery<PersistentClientSessionEntity> query2 = em.createQuery("select sess from PersistentClientSessionEntity sess where sess.offline = :offline"
+                    + rangeCondition(lastUserSessionId, lastLoadedUserSessionId) + " order by sess.userSessionId", PersistentClientSessionEntity.class);
+            setRangeParameters(query2, offlineStr, lastUserSessionId, lastLoadedUserSessionId);
+            if (fetchSize != null) {
+                query2.setHint("org.hibernate.fetchSize", fetchSize);
+            }
+            addClientSessions(result, query2.getResultList());
+
+            return result;
         }
+    }
 
-        List<PersistentUserSessionEntity> results = query.getResultList();
-        List<UserSessionModel> result = new ArrayList<>();
-        List<String> userSessionIds = new ArrayList<>();
-        for (PersistentUserSessionEntity entity : results) {
-            RealmModel realm = session.realms().getRealm(entity.getRealmId());
-            UserModel user = session.users().getUserById(entity.getUserId(), realm);
+    private String rangeCondition(String lastUserSessionId, String maxUserSessionId) {
+        StringBuilder condition = new StringBuilder();
+        if (lastUserSessionId != null) {
+            condition.append(" and sess.userSessionId > :lastUserSessionId");
+        }
+        if (maxUserSessionId != null) {
+            condition.append(" and sess.userSessionId <= :maxUserSessionId");
+        }
+        return condition.toString();
+    }
 
-            // Case when user was deleted in the meantime
+    private void setRangeParameters(TypedQuery<?> query, String offlineStr, String lastUserSessionId, String maxUserSessionId) {
+        query.setParameter("offline", offlineStr);
+        if (lastUserSessionId != null) {
+            query.setParameter("lastUserSessionId", lastUserSessionId);
+        }
+        if (maxUserSessionId != null) {
+            query.setParameter("maxUserSessionId", maxUserSessionId);
+        }
+    }
+
+    // Sessions of the users, which were deleted in the meantime, are removed and not returned
+    private List<UserSessionModel> toAdapters(List<PersistentUserSessionEntity> entities) {
+        Map<String, RealmModel> realms = new HashMap<>();
+        for (PersistentUserSessionEntity entity : entities) {
+            if (!realms.containsKey(entity.getRealmId())) {
+                realms.put(entity.getRealmId(), session.realms().getRealm(entity.getRealmId()));
+            }
+        }
+
+        Map<String, UserModel> users = loadUsers(entities, realms);
+
+        List<UserSessionModel> result = new ArrayList<>();
+        Set<String> removedUsers = new HashSet<>();
+        for (PersistentUserSessionEntity entity : entities) {
+            RealmModel realm = realms.get(entity.getRealmId());
+            UserModel user = users.get(entity.getUserId());
             if (user == null) {
-                onUserRemoved(realm, entity.getUserId());
-                return loadUserSessions(firstResult, maxResults, offline);
+                if (removedUsers.add(entity.getUserId())) {
+                    onUserRemoved(realm, entity.getUserId());
+                }
+                continue;
             }
 
             result.add(toAdapter(realm, user, entity));
-            userSessionIds.add(entity.getUserSessionId());
+        }
+        return result;
+    }
+
+    // Users from local storage are loaded by single query for each chunk of IDs. Other users are looked up one by one
+    private Map<String, UserModel> loadUsers(List<PersistentUserSessionEntity> entities, Map<String, RealmModel> realms) {
+        Map<String, UserModel> users = new HashMap<>();
+        Set<String> localUserIds = new LinkedHashSet<>();
+        for (PersistentUserSessionEntity entity : entities) {
+            String userId = entity.getUserId();
+            if (StorageId.isLocalStorage(userId)) {
+                localUserIds.add(userId);
+            } else if (!users.containsKey(userId)) {
+                users.put(userId, session.users().getUserById(userId, realms.get(entity.getRealmId())));
+            }
         }
 
-        if (!userSessionIds.isEmpty()) {
-            TypedQuery<PersistentClientSessionEntity> query2 = em.createNamedQuery("findClientSessionsByUserSessions", PersistentClientSessionEntity.class);
-            query2.setParameter("userSessionIds", userSessionIds);
-            query2.setParameter("offline", offlineStr);
-            List<PersistentClientSessionEntity> clientSessions = query2.getResultList();
-
-            // Assume both userSessions and clientSessions ordered by userSessionId
-            int j = 0;
-            for (UserSessionModel ss : result) {
-                PersistentUserSessionAdapter userSession = (PersistentUserSessionAdapter) ss;
-                List<ClientSessionModel> currentClientSessions = userSession.getClientSessions(); // This is empty now and we want to fill it
-
-                boolean next = true;
-                while (next && j < clientSessions.size()) {
-                    PersistentClientSessionEntity clientSession = clientSessions.get(j);
-                    if (clientSession.getUserSessionId().equals(userSession.getId())) {
-                        PersistentClientSessionAdapter clientSessAdapter = toAdapter(userSession.getRealm(), userSession, clientSession);
-                        currentClientSessions.add(clientSessAdapter);
-                        j++;
-                    } else {
-                        next = false;
-                    }
+        List<String> ids = new ArrayList<>(localUserIds);
+        for (int i = 0; i < ids.size(); i += IDS_CHUNK_SIZE) {
+            TypedQuery<UserEntity> query = em.createNamedQuery("getUsersByIds", UserEntity.class);
+            query.setParameter("ids", ids.subList(i, Math.min(i + IDS_CHUNK_SIZE, ids.size())));
+            for (UserEntity user : query.getResultList()) {
+                RealmModel realm = realms.get(user.getRealmId());
+                if (realm != null) {
+                    users.put(user.getId(), new UserAdapter(session, realm, em, user));
                 }
             }
         }
+        return users;
+    }
+
+    // ClientSessions of userSessions, which were skipped, are ignored
+    private void addClientSessions(List<UserSessionModel> userSessions, List<PersistentClientSessionEntity> clientSessions) {
+        Map<String, PersistentUserSessionAdapter> userSessionsById = new HashMap<>();
+        for (UserSessionModel userSession : userSessions) {
+            userSessionsById.put(userSession.getId(), (PersistentUserSessionAdapter) userSession);
+        }
 
-        return result;
+        for (PersistentClientSessionEntity clientSession : clientSessions) {
+            PersistentUserSessionAdapter userSession = userSessionsById.get(clientSession.getUserSessionId());
+            if (userSession != null) {
+                userSession.getClientSessions().add(toAdapter(userSession.getRealm(), userSession, clientSession));
+            }
+        }
     }
 
     private PersistentUserSessionAdapter toAdapter(RealmModel realm, UserModel user, PersistentUserSessionEntity entity) {
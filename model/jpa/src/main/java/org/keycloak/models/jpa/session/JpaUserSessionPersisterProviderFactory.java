@@ -33,14 +33,18 @@ public class JpaUserSessionPersisterProviderFactory implements UserSessionPersis
 
     public static final String ID = "jpa";
 
+    private Integer fetchSize;
+
     @Override
     public UserSessionPersisterProvider create(KeycloakSession session) {
         EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
-        return new JpaUserSessionPersisterProvider(session, em);
+        return new JpaUserSessionPersisterProvider(session, em, fetchSize);
     }
 
     @Override
     public void init(Config.Scope config) {
+        // JDBC fetch size used when streaming userSessions from the DB at startup. Driver default if not set
+        fetchSize = config.getInt("fetchSize");
 
     }
 
@@ -38,6 +38,8 @@ import java.io.Serializable;
         @NamedQuery(name="findClientSessionsByUserSession", query="select sess from PersistentClientSessionEntity sess where sess.userSessionId=:userSessionId and sess.offline = :offline"),
         @NamedQuery(name="findClientSessionsByUserSessions", query="select sess from PersistentClientSessionEntity sess where sess.offline = :offline and sess.userSessionId IN (:userSessionIds) order by sess.userSessionId"),
         @NamedQuery(name="updateClientSessionsTimestamps", query="update PersistentClientSessionEntity c set timestamp = :timestamp"),
+        @NamedQuery(name="updateUnwrittenClientSessionsTimestamps", query="update PersistentClientSessionEntity c set timestamp = :timestamp where c.offline = :offline and c.userSessionId IN (select u.userSessionId from PersistentUserSessionEntity u where u.offline = :offline and u.refreshWritten = false)"),
+        @NamedQuery(name="updateClientSessionsTimestampsByIds", query="update PersistentClientSessionEntity c set timestamp = :timestamp where c.offline = :offline and c.clientSessionId IN (:clientSessionIds) and c.timestamp < :timestamp"),
 })
 @Table(name="OFFLINE_CLIENT_SESSION")
 @Entity
@@ -35,7 +35,10 @@ import java.io.Serializable;
         @NamedQuery(name="deleteDetachedUserSessions", query="delete from PersistentUserSessionEntity sess where sess.userSessionId NOT IN (select c.userSessionId from PersistentClientSessionEntity c)"),
         @NamedQuery(name="findUserSessionsCount", query="select count(sess) from PersistentUserSessionEntity sess where sess.offline = :offline"),
         @NamedQuery(name="findUserSessions", query="select sess from PersistentUserSessionEntity sess where sess.offline = :offline order by sess.userSessionId"),
-        @NamedQuery(name="updateUserSessionsTimestamps", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh"),
+        @NamedQuery(name="findUserSessionIds", query="select sess.userSessionId from PersistentUserSessionEntity sess where sess.offline = :offline order by sess.userSessionId"),
+        @NamedQuery(name="updateUserSessionsTimestamps", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh, refreshWritten = false"),
+        @NamedQuery(name="updateUserSessionsTimestampsByIds", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh, refreshWritten = true where c.offline = :offline and c.userSessionId IN (:userSessionIds) and c.lastSessionRefresh <= :lastSessionRefresh"),
+        @NamedQuery(name="updateUnwrittenUserSessionsTimestamps", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh where c.offline = :offline and c.refreshWritten = false"),
 
 })
 @Table(name="OFFLINE_USER_SESSION")
@@ -63,6 +66,10 @@ public class PersistentUserSessionEntity {
     @Column(name="DATA")
     protected String data;
 
+    // True if lastSessionRefresh was written by updateTimestamps, so it doesn't need to be reset at startup
+    @Column(name = "REFRESH_WRITTEN")
+    protected boolean refreshWritten;
+
     public String getUserSessionId() {
         return userSessionId;
     }
@@ -111,6 +118,14 @@ public class PersistentUserSessionEntity {
         this.data = data;
     }
 
+    public boolean isRefreshWritten() {
+        return refreshWritten;
+    }
+
+    public void setRefreshWritten(boolean refreshWritten) {
+        this.refreshWritten = refreshWritten;
+    }
+
     public static class Key implements Serializable {
 
         protected String userSessionId;
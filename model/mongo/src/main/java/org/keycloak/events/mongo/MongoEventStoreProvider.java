@@ -20,6 +20,7 @@ package org.keycloak.events.mongo;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import org.keycloak.events.AsyncEventWriter;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
@@ -40,10 +41,19 @@ public class MongoEventStoreProvider implements EventStoreProvider {
     
     private DBCollection events;
     private DBCollection adminEvents;
+    private AsyncEventWriter asyncWriter;
 
     public MongoEventStoreProvider(DBCollection events, DBCollection adminEvents) {
+        this(events, adminEvents, null);
+    }
+
+    /**
+     * @param asyncWriter writer of the events outside of the request or null to insert them directly
+     */
+    public MongoEventStoreProvider(DBCollection events, DBCollection adminEvents, AsyncEventWriter asyncWriter) {
         this.events = events;
         this.adminEvents = adminEvents;
+        this.asyncWriter = asyncWriter;
     }
 
     @Override
@@ -71,6 +81,10 @@ public class MongoEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(event);
+            return;
+        }
         events.insert(convertEvent(event));
     }
 
@@ -99,6 +113,10 @@ public class MongoEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent adminEvent, boolean includeRepresentation) {
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(adminEvent, includeRepresentation);
+            return;
+        }
         adminEvents.insert(convertAdminEvent(adminEvent, includeRepresentation));
     }
 
@@ -151,7 +169,7 @@ public class MongoEventStoreProvider implements EventStoreProvider {
         return event;
     }
     
-    private static DBObject convertAdminEvent(AdminEvent adminEvent, boolean includeRepresentation) {
+    static DBObject convertAdminEvent(AdminEvent adminEvent, boolean includeRepresentation) {
         BasicDBObject e = new BasicDBObject();
         e.put("time", adminEvent.getTime());
         e.put("realmId", adminEvent.getRealmId());
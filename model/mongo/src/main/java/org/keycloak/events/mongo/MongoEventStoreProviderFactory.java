@@ -17,15 +17,25 @@
 
 package org.keycloak.events.mongo;
 
+import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.connections.mongo.MongoConnectionProvider;
+import org.keycloak.events.AsyncEventWriter;
+import org.keycloak.events.Event;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
+import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -36,6 +46,9 @@ public class MongoEventStoreProviderFactory implements EventStoreProviderFactory
 
     public static final String ID = "mongo";
 
+    private Config.Scope config;
+    private AsyncEventWriter asyncWriter;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         MongoConnectionProvider connection = session.getProvider(MongoConnectionProvider.class);
@@ -46,20 +59,54 @@ public class MongoEventStoreProviderFactory implements EventStoreProviderFactory
         collection.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
         adminCollection.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
 
-        return new MongoEventStoreProvider(collection, adminCollection);
+        return new MongoEventStoreProvider(collection, adminCollection, asyncWriter);
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {
+    public void postInit(final KeycloakSessionFactory factory) {
+        asyncWriter = AsyncEventWriter.create(ID, config, new AsyncEventWriter.BatchWriter() {
+
+            @Override
+            public void write(final List<Event> events, final List<AdminEvent> adminEvents) {
+                KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        DB db = session.getProvider(MongoConnectionProvider.class).getDB();
+
+                        // Acknowledged, so the failed batches are reported by the writer
+                        if (!events.isEmpty()) {
+                            List<DBObject> objects = new ArrayList<>(events.size());
+                            for (Event event : events) {
+                                objects.add(MongoEventStoreProvider.convertEvent(event));
+                            }
+                            db.getCollection("events").insert(objects, WriteConcern.ACKNOWLEDGED);
+                        }
+                        if (!adminEvents.isEmpty()) {
+                            List<DBObject> objects = new ArrayList<>(adminEvents.size());
+                            for (AdminEvent adminEvent : adminEvents) {
+                                objects.add(MongoEventStoreProvider.convertAdminEvent(adminEvent, true));
+                            }
+                            db.getCollection("adminEvents").insert(objects, WriteConcern.ACKNOWLEDGED);
+                        }
+                    }
+
+                });
+            }
 
+        });
     }
 
     @Override
     public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
     }
 
     @Override
@@ -39,11 +39,13 @@ import org.keycloak.models.session.PersistentClientSessionModel;
 import org.keycloak.models.session.PersistentUserSessionAdapter;
 import org.keycloak.models.session.PersistentUserSessionModel;
 import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -266,12 +268,78 @@ public class MongoUserSessionPersisterProvider implements UserSessionPersisterPr
         query = new QueryBuilder().get();
 
         update = new QueryBuilder()
-                .and("$set").is(new BasicDBObject("lastSessionRefresh", time)).get();
+                .and("$set").is(new BasicDBObject("lastSessionRefresh", time).append("refreshWritten", false)).get();
 
         getMongoStore().updateEntities(MongoOfflineUserSessionEntity.class, query, update, invocationContext);
         getMongoStore().updateEntities(MongoOnlineUserSessionEntity.class, query, update, invocationContext);
     }
 
+    @Override
+    public void updateUnwrittenTimestamps(int time, boolean offline) {
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        DBObject timestampSubquery = new QueryBuilder()
+                .and("timestamp").notEquals(time).get();
+
+        // Sessions persisted before the flag was introduced don't have it at all
+        DBObject query = new QueryBuilder()
+                .and("refreshWritten").notEquals(true)
+                .and("clientSessions").elemMatch(timestampSubquery).get();
+
+        DBObject update = new QueryBuilder()
+                .and("$set").is(new BasicDBObject("clientSessions.$.timestamp", time)).get();
+
+        int countModified = 1;
+        while (countModified > 0) {
+            countModified = getMongoStore().updateEntities(clazz, query, update, invocationContext);
+        }
+
+        query = new QueryBuilder()
+                .and("refreshWritten").notEquals(true).get();
+
+        update = new QueryBuilder()
+                .and("$set").is(new BasicDBObject("lastSessionRefresh", time)).get();
+
+        getMongoStore().updateEntities(clazz, query, update, invocationContext);
+    }
+
+    @Override
+    public void updateTimestamps(Map<String, Integer> lastSessionRefreshes, Map<String, Integer> clientSessionTimestamps, boolean offline) {
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        // Sessions refreshed in the same second are updated by single query
+        for (Map.Entry<Integer, List<String>> entry : KeycloakModelUtils.groupByTimestamp(lastSessionRefreshes).entrySet()) {
+            DBObject query = new QueryBuilder()
+                    .and("_id").in(entry.getValue())
+                    .and("lastSessionRefresh").lessThanEquals(entry.getKey())
+                    .get();
+
+            DBObject update = new QueryBuilder()
+                    .and("$set").is(new BasicDBObject("lastSessionRefresh", entry.getKey()).append("refreshWritten", true)).get();
+
+            getMongoStore().updateEntities(clazz, query, update, invocationContext);
+        }
+
+        for (Map.Entry<Integer, List<String>> entry : KeycloakModelUtils.groupByTimestamp(clientSessionTimestamps).entrySet()) {
+            DBObject timestampSubquery = new QueryBuilder()
+                    .and("clientSessionId").in(entry.getValue())
+                    .and("timestamp").lessThan(entry.getKey())
+                    .get();
+
+            DBObject query = new QueryBuilder()
+                    .and("clientSessions").elemMatch(timestampSubquery).get();
+
+            DBObject update = new QueryBuilder()
+                    .and("$set").is(new BasicDBObject("clientSessions.$.timestamp", entry.getKey())).get();
+
+            // Positional operator updates just first matching clientSession of each userSession
+            int countModified = 1;
+            while (countModified > 0) {
+                countModified = getMongoStore().updateEntities(clazz, query, update, invocationContext);
+            }
+        }
+    }
+
     @Override
     public List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline) {
         DBObject query = new QueryBuilder()
@@ -28,6 +28,8 @@ public class PersistentUserSessionEntity extends AbstractIdentifiableEntity {
     private String userId;
     private int lastSessionRefresh;
     private String data;
+    // True if lastSessionRefresh was written by updateTimestamps, so it doesn't need to be reset at startup
+    private boolean refreshWritten;
     private List<PersistentClientSessionEntity> clientSessions;
 
     public String getRealmId() {
@@ -62,6 +64,14 @@ public class PersistentUserSessionEntity extends AbstractIdentifiableEntity {
         this.data = data;
     }
 
+    public boolean isRefreshWritten() {
+        return refreshWritten;
+    }
+
+    public void setRefreshWritten(boolean refreshWritten) {
+        this.refreshWritten = refreshWritten;
+    }
+
     public List<PersistentClientSessionEntity> getClientSessions() {
         return clientSessions;
     }
@@ -66,16 +66,28 @@ public final class AuthorizationProvider implements Provider {
     private final List<PolicyProviderFactory> policyProviderFactories;
     private final KeycloakSession keycloakSession;
     private final RealmModel realm;
+    private final Executor parallelExecutor;
+    private final int partitionSize;
 
-    public AuthorizationProvider(KeycloakSession session, RealmModel realm, StoreFactory storeFactory, Executor scheduller) {
+    /**
+     * @param parallelExecutor the executor evaluating partitions of permissions in parallel, or <code>null</code> if parallel evaluation is disabled
+     * @param partitionSize the number of permissions evaluated by a single task of the <code>parallelExecutor</code>
+     */
+    public AuthorizationProvider(KeycloakSession session, RealmModel realm, StoreFactory storeFactory, Executor scheduller, Executor parallelExecutor, int partitionSize) {
         this.keycloakSession = session;
         this.realm = realm;
         this.storeFactory = storeFactory;
         this.scheduller = scheduller;
+        this.parallelExecutor = parallelExecutor;
+        this.partitionSize = partitionSize;
         this.policyProviderFactories = configurePolicyProviderFactories(session);
         this.policyEvaluator = new DefaultPolicyEvaluator(this, this.policyProviderFactories);
     }
 
+    public AuthorizationProvider(KeycloakSession session, RealmModel realm, StoreFactory storeFactory, Executor scheduller) {
+        this(session, realm, storeFactory, scheduller, null, 0);
+    }
+
     public AuthorizationProvider(KeycloakSession session, RealmModel realm, StoreFactory storeFactory) {
         this(session, realm, storeFactory, Runnable::run);
     }
@@ -87,7 +99,7 @@ public final class AuthorizationProvider implements Provider {
      * @return a {@link Evaluators} instance
      */
     public Evaluators evaluators() {
-        return new Evaluators(this.policyProviderFactories, this.policyEvaluator, this.scheduller);
+        return new Evaluators(this.policyProviderFactories, this.policyEvaluator, this.scheduller, this, this.parallelExecutor, this.partitionSize);
     }
 
     /**
@@ -18,10 +18,13 @@
 
 package org.keycloak.authorization.permission.evaluator;
 
+import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.model.ResourceServer;
 import org.keycloak.authorization.permission.ResourcePermission;
 import org.keycloak.authorization.policy.evaluation.DefaultPolicyEvaluator;
 import org.keycloak.authorization.policy.evaluation.EvaluationContext;
 import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
+import org.keycloak.models.ClientModel;
 
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -33,21 +36,56 @@ import java.util.concurrent.Executor;
  */
 public final class Evaluators {
 
+    /**
+     * Attribute of the client acting as a resource server, which enables parallel evaluation of its permissions when set to <code>true</code>.
+     */
+    public static final String PARALLEL_EVALUATION_ATTRIBUTE = "authorization.evaluation.parallel";
+
     private final List<PolicyProviderFactory> policyProviderFactories;
     private final DefaultPolicyEvaluator policyEvaluator;
     private final Executor scheduler;
+    private final AuthorizationProvider authorization;
+    private final Executor parallelExecutor;
+    private final int partitionSize;
 
     public Evaluators(List<PolicyProviderFactory> policyProviderFactories, DefaultPolicyEvaluator policyEvaluator, Executor scheduler) {
+        this(policyProviderFactories, policyEvaluator, scheduler, null, null, 0);
+    }
+
+    public Evaluators(List<PolicyProviderFactory> policyProviderFactories, DefaultPolicyEvaluator policyEvaluator, Executor scheduler, AuthorizationProvider authorization, Executor parallelExecutor, int partitionSize) {
         this.policyProviderFactories = policyProviderFactories;
         this.policyEvaluator = policyEvaluator;
         this.scheduler = scheduler;
+        this.authorization = authorization;
+        this.parallelExecutor = parallelExecutor;
+        this.partitionSize = partitionSize;
     }
 
+    /**
+     * Returns a {@link PermissionEvaluator} for the given permissions. Permissions are evaluated in parallel if there are more of them than
+     * fits into one partition and the resource server has {@link #PARALLEL_EVALUATION_ATTRIBUTE} enabled, otherwise they are
+     * evaluated by {@link #schedule(List, EvaluationContext)}.
+     */
     public PermissionEvaluator from(List<ResourcePermission> permissions, EvaluationContext evaluationContext) {
+        if (isParallel(permissions)) {
+            return new ParallelPermissionEvaluator(permissions, evaluationContext, this.authorization, schedule(permissions, evaluationContext), this.parallelExecutor, this.partitionSize);
+        }
+
         return schedule(permissions, evaluationContext);
     }
 
     public PermissionEvaluator schedule(List<ResourcePermission> permissions, EvaluationContext evaluationContext) {
         return new ScheduledPermissionEvaluator(new IterablePermissionEvaluator(permissions.iterator(), evaluationContext, this.policyEvaluator), this.scheduler);
     }
+
+    private boolean isParallel(List<ResourcePermission> permissions) {
+        if (this.parallelExecutor == null || this.partitionSize <= 0 || permissions.size() <= this.partitionSize) {
+            return false;
+        }
+
+        ResourceServer resourceServer = permissions.get(0).getResourceServer();
+        ClientModel client = this.authorization.getRealm().getClientById(resourceServer.getClientId());
+
+        return client != null && Boolean.parseBoolean(client.getAttribute(PARALLEL_EVALUATION_ATTRIBUTE));
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.permission.evaluator;
+
+import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.Decision;
+import org.keycloak.authorization.attribute.Attributes;
+import org.keycloak.authorization.identity.Identity;
+import org.keycloak.authorization.model.Resource;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.model.Scope;
+import org.keycloak.authorization.permission.ResourcePermission;
+import org.keycloak.authorization.policy.evaluation.DecisionResultCollector;
+import org.keycloak.authorization.policy.evaluation.EvaluationContext;
+import org.keycloak.authorization.policy.evaluation.Result;
+import org.keycloak.authorization.store.StoreFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits the permissions into partitions, which are evaluated in parallel by the given {@link Executor}. The calling thread
+ * waits until all the partitions are evaluated and then completes the decision, so callers see the same behavior as with
+ * sequential evaluation.
+ *
+ * <p>{@link org.keycloak.models.KeycloakSession} is not thread safe, so each partition is evaluated within its own session and
+ * transaction, with its own {@link AuthorizationProvider}. Workers get just the ids of the resource server, resources and scopes
+ * of the permissions and look them up again within their own session. The results of each partition are completed by the worker,
+ * while its session is still open, and then handed over to the {@link DecisionResultCollector} of the caller with the permissions
+ * of the caller. The identity and attributes of the {@link EvaluationContext} are resolved once by the calling thread, so workers
+ * don't touch the session of the caller.
+ *
+ * <p>Only decisions extending {@link DecisionResultCollector} can aggregate results from multiple partitions, any other decision
+ * is evaluated sequentially.
+ */
+public class ParallelPermissionEvaluator implements PermissionEvaluator {
+
+    private final List<ResourcePermission> permissions;
+    private final EvaluationContext evaluationContext;
+    private final AuthorizationProvider authorization;
+    private final PermissionEvaluator sequential;
+    private final Executor executor;
+    private final int partitionSize;
+
+    ParallelPermissionEvaluator(List<ResourcePermission> permissions, EvaluationContext evaluationContext, AuthorizationProvider authorization, PermissionEvaluator sequential, Executor executor, int partitionSize) {
+        this.permissions = permissions;
+        this.evaluationContext = evaluationContext;
+        this.authorization = authorization;
+        this.sequential = sequential;
+        this.executor = executor;
+        this.partitionSize = partitionSize;
+    }
+
+    @Override
+    public void evaluate(Decision decision) {
+        if (!(decision instanceof DecisionResultCollector)) {
+            this.sequential.evaluate(decision);
+            return;
+        }
+
+        DecisionResultCollector collector = (DecisionResultCollector) decision;
+
+        try {
+            EvaluationContext context = resolve(this.evaluationContext);
+            List<CompletableFuture<Void>> partitions = new ArrayList<>();
+
+            for (int i = 0; i < this.permissions.size(); i += this.partitionSize) {
+                List<PermissionIds> partition = new ArrayList<>();
+
+                for (ResourcePermission permission : this.permissions.subList(i, Math.min(i + this.partitionSize, this.permissions.size()))) {
+                    partition.add(new PermissionIds(permission));
+                }
+
+                partitions.add(CompletableFuture.runAsync(() -> evaluate(partition, context, collector), this.executor));
+            }
+
+            CompletableFuture.allOf(partitions.toArray(new CompletableFuture[partitions.size()])).join();
+
+            decision.onComplete();
+        } catch (CompletionException cause) {
+            decision.onError(cause.getCause() != null ? cause.getCause() : cause);
+        } catch (Throwable cause) {
+            decision.onError(cause);
+        }
+    }
+
+    private void evaluate(List<PermissionIds> partition, EvaluationContext context, DecisionResultCollector collector) {
+        String realmId = this.authorization.getRealm().getId();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        KeycloakModelUtils.runJobInTransaction(this.authorization.getKeycloakSession().getKeycloakSessionFactory(), session -> {
+            RealmModel realm = session.realms().getRealm(realmId);
+
+            session.getContext().setRealm(realm);
+
+            AuthorizationProvider authorization = session.getProvider(AuthorizationProvider.class);
+            StoreFactory storeFactory = authorization.getStoreFactory();
+            Map<ResourcePermission, ResourcePermission> callerPermissions = new IdentityHashMap<>();
+            List<ResourcePermission> permissions = new ArrayList<>();
+
+            for (PermissionIds ids : partition) {
+                ResourcePermission permission = ids.resolve(storeFactory);
+
+                // resource or resource server removed in the meantime
+                if (permission != null) {
+                    callerPermissions.put(permission, ids.permission);
+                    permissions.add(permission);
+                }
+            }
+
+            // policies are only reachable while the session is open, so the results are completed here and not by the caller
+            authorization.evaluators().schedule(permissions, context).evaluate(new DecisionResultCollector() {
+                @Override
+                public void onError(Throwable cause) {
+                    error.set(cause);
+                }
+
+                @Override
+                protected void onComplete(List<Result> results) {
+                    List<Result> callerResults = new ArrayList<>();
+
+                    for (Result result : results) {
+                        Result callerResult = new Result(callerPermissions.get(result.getPermission()));
+
+                        callerResult.getResults().addAll(result.getResults());
+                        callerResult.setStatus(result.getEffect());
+                        callerResults.add(callerResult);
+                    }
+
+                    collector.addCompletedResults(callerResults);
+                }
+            });
+        });
+
+        if (error.get() != null) {
+            throw new CompletionException(error.get());
+        }
+    }
+
+    private static EvaluationContext resolve(EvaluationContext context) {
+        Identity identity = context.getIdentity();
+        String identityId = identity.getId();
+        Attributes identityAttributes = identity.getAttributes();
+        Attributes attributes = context.getAttributes();
+        Identity resolvedIdentity = new Identity() {
+            @Override
+            public String getId() {
+                return identityId;
+            }
+
+            @Override
+            public Attributes getAttributes() {
+                return identityAttributes;
+            }
+        };
+
+        return new EvaluationContext() {
+            @Override
+            public Identity getIdentity() {
+                return resolvedIdentity;
+            }
+
+            @Override
+            public Attributes getAttributes() {
+                return attributes;
+            }
+        };
+    }
+
+    private static class PermissionIds {
+
+        private final ResourcePermission permission;
+        private final String resourceServerId;
+        private final String resourceId;
+        private final List<String> scopeIds = new ArrayList<>();
+
+        private PermissionIds(ResourcePermission permission) {
+            this.permission = permission;
+            this.resourceServerId = permission.getResourceServer().getId();
+            this.resourceId = permission.getResource() != null ? permission.getResource().getId() : null;
+
+            for (Scope scope : permission.getScopes()) {
+                this.scopeIds.add(scope.getId());
+            }
+        }
+
+        private ResourcePermission resolve(StoreFactory storeFactory) {
+            ResourceServer resourceServer = storeFactory.getResourceServerStore().findById(this.resourceServerId);
+            Resource resource = this.resourceId != null ? storeFactory.getResourceStore().findById(this.resourceId) : null;
+
+            if (resourceServer == null || (this.resourceId != null && resource == null)) {
+                return null;
+            }
+
+            List<Scope> scopes = new ArrayList<>();
+
+            for (String scopeId : this.scopeIds) {
+                Scope scope = storeFactory.getScopeStore().findById(scopeId);
+
+                if (scope != null) {
+                    scopes.add(scope);
+                }
+            }
+
+            return new ResourcePermission(resource, scopes, resourceServer);
+        }
+    }
+}
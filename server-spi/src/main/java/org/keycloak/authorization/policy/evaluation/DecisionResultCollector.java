@@ -23,6 +23,7 @@ import org.keycloak.authorization.model.Policy;
 import org.keycloak.authorization.permission.ResourcePermission;
 import org.keycloak.representations.idm.authorization.DecisionStrategy;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,9 +35,10 @@ import java.util.stream.Collectors;
 public abstract class DecisionResultCollector implements Decision<DefaultEvaluation> {
 
     private Map<ResourcePermission, Result> results = new HashMap();
+    private List<Result> completedResults = new ArrayList<>();
 
     @Override
-    public void onDecision(DefaultEvaluation evaluation) {
+    public synchronized void onDecision(DefaultEvaluation evaluation) {
         if (evaluation.getParentPolicy() != null) {
             results.computeIfAbsent(evaluation.getPermission(), Result::new).policy(evaluation.getParentPolicy()).policy(evaluation.getPolicy()).setStatus(evaluation.getEffect());
         } else {
@@ -44,8 +46,18 @@ public abstract class DecisionResultCollector implements Decision<DefaultEvaluat
         }
     }
 
+    /**
+     * Adds results, which were already completed by another collector. This is how the results of permissions evaluated
+     * in parallel by {@link org.keycloak.authorization.permission.evaluator.ParallelPermissionEvaluator} are aggregated.
+     *
+     * @param results the completed results
+     */
+    public synchronized void addCompletedResults(List<Result> results) {
+        this.completedResults.addAll(results);
+    }
+
     @Override
-    public void onComplete() {
+    public synchronized void onComplete() {
         for (Result result : results.values()) {
             for (Result.PolicyResult policyResult : result.getResults()) {
                 if (isGranted(policyResult)) {
@@ -63,7 +75,11 @@ public abstract class DecisionResultCollector implements Decision<DefaultEvaluat
             }
         }
 
-        onComplete(results.values().stream().collect(Collectors.toList()));
+        List<Result> results = this.results.values().stream().collect(Collectors.toList());
+
+        results.addAll(this.completedResults);
+
+        onComplete(results);
     }
 
     protected abstract void onComplete(List<Result> results);
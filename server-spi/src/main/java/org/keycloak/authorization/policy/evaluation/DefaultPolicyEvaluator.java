@@ -27,26 +27,30 @@ import org.keycloak.authorization.model.Scope;
 import org.keycloak.authorization.permission.ResourcePermission;
 import org.keycloak.authorization.policy.provider.PolicyProvider;
 import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
-import org.keycloak.authorization.store.PolicyStore;
 import org.keycloak.authorization.store.StoreFactory;
 import org.keycloak.representations.idm.authorization.PolicyEnforcementMode;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
+ * Looks up the policies of each permission in the {@link PolicyIndex} of the resource server, which is obtained just once
+ * for all the permissions evaluated by this evaluator.
+ *
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
  */
 public class DefaultPolicyEvaluator implements PolicyEvaluator {
 
     private final AuthorizationProvider authorization;
     private Map<String, PolicyProviderFactory> policyProviders = new HashMap<>();
+    private final Map<String, PolicyIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
 
     public DefaultPolicyEvaluator(AuthorizationProvider authorization, List<PolicyProviderFactory> policyProviderFactories) {
         this.authorization = authorization;
@@ -65,30 +69,29 @@ public class DefaultPolicyEvaluator implements PolicyEvaluator {
             return;
         }
 
-        StoreFactory storeFactory = this.authorization.getStoreFactory();
-        PolicyStore policyStore = storeFactory.getPolicyStore();
+        PolicyIndex index = getIndex(resourceServer);
         AtomicInteger policiesCount = new AtomicInteger(0);
-        Consumer<Policy> consumer = createDecisionConsumer(permission, executionContext, decision, policiesCount);
+        Consumer<String> consumer = createDecisionConsumer(index, permission, executionContext, decision, policiesCount);
         Resource resource = permission.getResource();
 
         if (resource != null) {
-            List<? extends Policy> resourcePolicies = policyStore.findByResource(resource.getId());
-
-            if (!resourcePolicies.isEmpty()) {
-                resourcePolicies.forEach(consumer);
-            }
+            index.findByResource(resource.getId()).forEach(consumer);
 
             if (resource.getType() != null) {
-                policyStore.findByResourceType(resource.getType(), resourceServer.getId()).forEach(consumer);
+                index.findByResourceType(resource.getType()).forEach(consumer);
             }
 
-            if (permission.getScopes().isEmpty() && !resource.getScopes().isEmpty()) {
-                policyStore.findByScopeIds(resource.getScopes().stream().map(Scope::getId).collect(Collectors.toList()), resourceServer.getId()).forEach(consumer);
+            if (permission.getScopes().isEmpty()) {
+                Set<String> resourceScopes = index.getResourceScopes(resource.getId());
+
+                if (!resourceScopes.isEmpty()) {
+                    index.findByScopeIds(resourceScopes).forEach(consumer);
+                }
             }
         }
 
         if (!permission.getScopes().isEmpty()) {
-            policyStore.findByScopeIds(permission.getScopes().stream().map(Scope::getId).collect(Collectors.toList()), resourceServer.getId()).forEach(consumer);
+            index.findByScopeIds(permission.getScopes().stream().map(Scope::getId).collect(Collectors.toList())).forEach(consumer);
         }
 
         if (PolicyEnforcementMode.PERMISSIVE.equals(resourceServer.getPolicyEnforcementMode()) && policiesCount.get() == 0) {
@@ -96,10 +99,40 @@ public class DefaultPolicyEvaluator implements PolicyEvaluator {
         }
     }
 
-    private  Consumer<Policy> createDecisionConsumer(ResourcePermission permission, EvaluationContext executionContext, Decision decision, AtomicInteger policiesCount) {
-        return (parentPolicy) -> {
-            if (hasRequestedScopes(permission, parentPolicy)) {
-                for (Policy associatedPolicy : parentPolicy.getAssociatedPolicies()) {
+    // Index is looked up just once for all the permissions evaluated by this evaluator
+    private PolicyIndex getIndex(ResourceServer resourceServer) {
+        return this.indexes.computeIfAbsent(resourceServer.getId(), id -> {
+            StoreFactory storeFactory = this.authorization.getStoreFactory();
+            PolicyIndex index = storeFactory.getPolicyIndex(resourceServer);
+            return index != null ? index : PolicyIndex.query(resourceServer, storeFactory);
+        });
+    }
+
+    private Policy getPolicy(String id) {
+        Policy policy = this.policies.get(id);
+
+        if (policy == null) {
+            policy = this.authorization.getStoreFactory().getPolicyStore().findById(id);
+
+            if (policy == null) {
+                throw new RuntimeException("Could not find policy [" + id + "].");
+            }
+
+            this.policies.put(id, policy);
+        }
+
+        return policy;
+    }
+
+    private Consumer<String> createDecisionConsumer(PolicyIndex index, ResourcePermission permission, EvaluationContext executionContext, Decision decision, AtomicInteger policiesCount) {
+        return (parentPolicyId) -> {
+            PolicyIndex.Entry parentEntry = index.getPolicy(parentPolicyId);
+
+            if (hasRequestedScopes(index, permission, parentEntry)) {
+                Policy parentPolicy = getPolicy(parentPolicyId);
+
+                for (String associatedPolicyId : parentEntry.getAssociatedPolicies()) {
+                    Policy associatedPolicy = getPolicy(associatedPolicyId);
                     PolicyProviderFactory providerFactory = policyProviders.get(associatedPolicy.getType());
 
                     if (providerFactory == null) {
@@ -127,60 +160,36 @@ public class DefaultPolicyEvaluator implements PolicyEvaluator {
         return new DefaultEvaluation(permission, executionContext, parentPolicy, associatedPolicy, decision);
     }
 
-    private boolean hasRequestedScopes(final ResourcePermission permission, final Policy policy) {
+    private boolean hasRequestedScopes(final PolicyIndex index, final ResourcePermission permission, final PolicyIndex.Entry policy) {
         if (permission.getScopes().isEmpty()) {
             return true;
         }
 
         Resource resourcePermission = permission.getResource();
-        Set<Resource> policyResources = policy.getResources();
+        Set<String> policyResources = policy.getResources();
 
         if (resourcePermission != null && !policyResources.isEmpty()) {
-            if (!policyResources.stream().filter(resource -> resource.getId().equals(resourcePermission.getId())).findFirst().isPresent()) {
+            if (!policyResources.contains(resourcePermission.getId())) {
                 return false;
             }
         }
 
-        Set<Scope> scopes = new HashSet<>(policy.getScopes());
+        Set<String> scopes = policy.getScopes();
 
         if (scopes.isEmpty()) {
-            Set<Resource> resources = new HashSet<>();
-
-            resources.addAll(policyResources);
-
-            for (Resource resource : resources) {
-                scopes.addAll(resource.getScopes());
-            }
-
-            if (!resources.isEmpty() && scopes.isEmpty()) {
+            if (!policyResources.isEmpty()) {
                 return false;
             }
 
-            if (scopes.isEmpty()) {
-                Resource resource = permission.getResource();
-                String type = resource.getType();
-
-                if (type != null) {
-                    List<Resource> resourcesByType = authorization.getStoreFactory().getResourceStore().findByType(type);
-
-                    for (Resource resourceType : resourcesByType) {
-                        if (resourceType.getOwner().equals(resource.getResourceServer().getClientId())) {
-                            resources.add(resourceType);
-                        }
-                    }
-                }
-            }
-
-            for (Resource resource : resources) {
-                scopes.addAll(resource.getScopes());
+            // policy without scopes and resources applies to the scopes of all resources of the same type
+            if (resourcePermission != null && resourcePermission.getType() != null) {
+                scopes = index.getResourceTypeScopes(resourcePermission.getType());
             }
         }
 
-        for (Scope givenScope : scopes) {
-            for (Scope scope : permission.getScopes()) {
-                if (givenScope.getId().equals(scope.getId())) {
-                    return true;
-                }
+        for (Scope scope : permission.getScopes()) {
+            if (scopes.contains(scope.getId())) {
+                return true;
             }
         }
 
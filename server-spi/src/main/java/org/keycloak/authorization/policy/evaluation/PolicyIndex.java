@@ -0,0 +1,336 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.policy.evaluation;
+
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.model.Resource;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.model.Scope;
+import org.keycloak.authorization.store.StoreFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Ids of all the policies of a resource server, indexed the same way the {@link org.keycloak.authorization.store.PolicyStore}
+ * looks them up for evaluation: by resource, by resource type and by scope. Scopes of each policy are resolved ahead, including
+ * the scopes inherited from the resources of the same type, so evaluation of a permission doesn't need to query the stores.
+ *
+ * <p>Index is immutable and holds just ids, so it can be cached until any policy, resource or scope of the resource server changes.
+ * Each index gets a new {@link #getRevision() revision}, so anything derived from the policies of the resource server can be
+ * checked against the current index.
+ */
+public class PolicyIndex implements Serializable {
+
+    private final String resourceServerId;
+    private final String revision = KeycloakModelUtils.generateId();
+    private final Map<String, Entry> policies = new HashMap<>();
+    private final Map<String, List<String>> byResource = new HashMap<>();
+    private final Map<String, List<String>> byResourceType = new HashMap<>();
+    private final Map<String, List<String>> byScope = new HashMap<>();
+    private final Map<String, Set<String>> resourceScopes = new HashMap<>();
+    private final Map<String, Set<String>> resourceTypeScopes = new HashMap<>();
+
+    /**
+     * A policy with its resources and scopes.
+     */
+    public static class Entry implements Serializable {
+
+        private final String id;
+        private final Set<String> resources;
+        private final Set<String> scopes;
+        private final List<String> associatedPolicies;
+
+        private Entry(String id, Set<String> resources, Set<String> scopes, List<String> associatedPolicies) {
+            this.id = id;
+            this.resources = resources;
+            this.scopes = scopes;
+            this.associatedPolicies = associatedPolicies;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Set<String> getResources() {
+            return resources;
+        }
+
+        /**
+         * @return scopes of the policy or, if it has none, the scopes of its resources
+         */
+        public Set<String> getScopes() {
+            return scopes;
+        }
+
+        public List<String> getAssociatedPolicies() {
+            return associatedPolicies;
+        }
+    }
+
+    private PolicyIndex(String resourceServerId) {
+        this.resourceServerId = resourceServerId;
+    }
+
+    /**
+     * Loads all the policies and resources of the resource server and builds the index.
+     */
+    public static PolicyIndex build(ResourceServer resourceServer, StoreFactory storeFactory) {
+        PolicyIndex index = new PolicyIndex(resourceServer.getId());
+
+        for (Resource resource : storeFactory.getResourceStore().findByResourceServer(resourceServer.getId())) {
+            Set<String> scopes = scopeIds(resource.getScopes());
+
+            index.resourceScopes.put(resource.getId(), scopes);
+
+            if (resource.getType() != null && resource.getOwner().equals(resourceServer.getClientId())) {
+                index.resourceTypeScopes.computeIfAbsent(resource.getType(), type -> new HashSet<>()).addAll(scopes);
+            }
+        }
+
+        // sorted the same way as PolicyStore.findByScopeIds
+        List<Policy> policies = new ArrayList<>(storeFactory.getPolicyStore().findByResourceServer(resourceServer.getId()));
+        policies.sort(Comparator.comparing(Policy::getName, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        for (Policy policy : policies) {
+            Entry entry = entry(policy);
+            Set<String> resourceIds = entry.getResources();
+
+            index.policies.put(policy.getId(), entry);
+
+            for (String resourceId : resourceIds) {
+                index.byResource.computeIfAbsent(resourceId, id -> new ArrayList<>()).add(policy.getId());
+            }
+
+            if (resourceIds.isEmpty()) {
+                String defaultResourceType = policy.getConfig().get("defaultResourceType");
+
+                if (defaultResourceType != null) {
+                    index.byResourceType.computeIfAbsent(defaultResourceType, type -> new ArrayList<>()).add(policy.getId());
+                }
+
+                for (String scopeId : scopeIds(policy.getScopes())) {
+                    index.byScope.computeIfAbsent(scopeId, id -> new ArrayList<>()).add(policy.getId());
+                }
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns index, which queries the stores for each lookup. It's used with stores, which don't cache the built index, as
+     * building the index loads all the policies and resources of the resource server. Results are remembered by the index,
+     * so it should be used just for one request.
+     */
+    public static PolicyIndex query(ResourceServer resourceServer, StoreFactory storeFactory) {
+        return new QueryIndex(resourceServer, storeFactory);
+    }
+
+    private static Entry entry(Policy policy) {
+        Set<Resource> resources = policy.getResources();
+        Set<String> scopes = scopeIds(policy.getScopes());
+
+        if (scopes.isEmpty()) {
+            for (Resource resource : resources) {
+                scopes.addAll(scopeIds(resource.getScopes()));
+            }
+        }
+
+        List<String> associatedPolicies = new ArrayList<>();
+
+        for (Policy associatedPolicy : policy.getAssociatedPolicies()) {
+            associatedPolicies.add(associatedPolicy.getId());
+        }
+
+        return new Entry(policy.getId(), resourceIds(resources), scopes, associatedPolicies);
+    }
+
+    private static Set<String> scopeIds(Collection<? extends Scope> scopes) {
+        Set<String> ids = new HashSet<>();
+
+        for (Scope scope : scopes) {
+            ids.add(scope.getId());
+        }
+
+        return ids;
+    }
+
+    private static Set<String> resourceIds(Set<Resource> resources) {
+        Set<String> ids = new HashSet<>();
+
+        for (Resource resource : resources) {
+            ids.add(resource.getId());
+        }
+
+        return ids;
+    }
+
+    public String getResourceServerId() {
+        return resourceServerId;
+    }
+
+    /**
+     * @return unique identifier of this index, which changes whenever the index is built again after a change of the resource server
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    public Set<String> getPolicyIds() {
+        return Collections.unmodifiableSet(policies.keySet());
+    }
+
+    public Entry getPolicy(String policyId) {
+        return policies.get(policyId);
+    }
+
+    /**
+     * Same as {@link org.keycloak.authorization.store.PolicyStore#findByResource(String)}
+     */
+    public List<String> findByResource(String resourceId) {
+        return byResource.getOrDefault(resourceId, Collections.emptyList());
+    }
+
+    /**
+     * Same as {@link org.keycloak.authorization.store.PolicyStore#findByResourceType(String, String)}
+     */
+    public List<String> findByResourceType(String resourceType) {
+        return byResourceType.getOrDefault(resourceType, Collections.emptyList());
+    }
+
+    /**
+     * Same as {@link org.keycloak.authorization.store.PolicyStore#findByScopeIds(List, String)}
+     */
+    public Collection<String> findByScopeIds(Collection<String> scopeIds) {
+        if (scopeIds.size() == 1) {
+            return byScope.getOrDefault(scopeIds.iterator().next(), Collections.emptyList());
+        }
+
+        Set<String> policies = new LinkedHashSet<>();
+
+        for (String scopeId : scopeIds) {
+            policies.addAll(byScope.getOrDefault(scopeId, Collections.emptyList()));
+        }
+
+        return policies;
+    }
+
+    /**
+     * @return scopes of the resource or empty set if the resource is unknown
+     */
+    public Set<String> getResourceScopes(String resourceId) {
+        return resourceScopes.getOrDefault(resourceId, Collections.emptySet());
+    }
+
+    /**
+     * @return scopes of all the resources of the type, which are owned by the resource server
+     */
+    public Set<String> getResourceTypeScopes(String resourceType) {
+        return resourceTypeScopes.getOrDefault(resourceType, Collections.emptySet());
+    }
+
+    // Permissions may be evaluated concurrently, so lookups are synchronized
+    private static class QueryIndex extends PolicyIndex {
+
+        private final transient ResourceServer resourceServer;
+        private final transient StoreFactory storeFactory;
+
+        private QueryIndex(ResourceServer resourceServer, StoreFactory storeFactory) {
+            super(resourceServer.getId());
+            this.resourceServer = resourceServer;
+            this.storeFactory = storeFactory;
+        }
+
+        @Override
+        public synchronized Set<String> getPolicyIds() {
+            return Collections.unmodifiableSet(policyIds(storeFactory.getPolicyStore().findByResourceServer(resourceServer.getId())));
+        }
+
+        @Override
+        public synchronized Entry getPolicy(String policyId) {
+            return super.policies.computeIfAbsent(policyId, id -> {
+                Policy policy = storeFactory.getPolicyStore().findById(id);
+
+                if (policy == null) {
+                    throw new RuntimeException("Could not find policy [" + id + "].");
+                }
+
+                return entry(policy);
+            });
+        }
+
+        @Override
+        public synchronized List<String> findByResource(String resourceId) {
+            return super.byResource.computeIfAbsent(resourceId, id -> new ArrayList<>(policyIds(storeFactory.getPolicyStore().findByResource(id))));
+        }
+
+        @Override
+        public synchronized List<String> findByResourceType(String resourceType) {
+            return super.byResourceType.computeIfAbsent(resourceType, type -> new ArrayList<>(policyIds(storeFactory.getPolicyStore().findByResourceType(type, resourceServer.getId()))));
+        }
+
+        @Override
+        public synchronized Collection<String> findByScopeIds(Collection<String> scopeIds) {
+            return policyIds(storeFactory.getPolicyStore().findByScopeIds(new ArrayList<>(scopeIds), resourceServer.getId()));
+        }
+
+        @Override
+        public synchronized Set<String> getResourceScopes(String resourceId) {
+            return super.resourceScopes.computeIfAbsent(resourceId, id -> {
+                Resource resource = storeFactory.getResourceStore().findById(id);
+                return resource == null ? Collections.emptySet() : scopeIds(resource.getScopes());
+            });
+        }
+
+        @Override
+        public synchronized Set<String> getResourceTypeScopes(String resourceType) {
+            return super.resourceTypeScopes.computeIfAbsent(resourceType, type -> {
+                Set<String> scopes = new HashSet<>();
+
+                for (Resource resource : storeFactory.getResourceStore().findByType(type)) {
+                    if (resource.getOwner().equals(resourceServer.getClientId())) {
+                        scopes.addAll(scopeIds(resource.getScopes()));
+                    }
+                }
+
+                return scopes;
+            });
+        }
+
+        private static Set<String> policyIds(List<Policy> policies) {
+            Set<String> ids = new LinkedHashSet<>();
+
+            for (Policy policy : policies) {
+                ids.add(policy.getId());
+            }
+
+            return ids;
+        }
+    }
+}
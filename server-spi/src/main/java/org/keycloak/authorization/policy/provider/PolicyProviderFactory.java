@@ -28,6 +28,11 @@ import org.keycloak.provider.ProviderFactory;
  */
 public interface PolicyProviderFactory extends ProviderFactory<PolicyProvider> {
 
+    /**
+     * Configuration of a policy, which opts in caching of decisions for policies not cacheable by default.
+     */
+    String DECISION_CACHEABLE_CONFIG = "decisionCacheable";
+
     String getName();
 
     String getGroup();
@@ -35,4 +40,16 @@ public interface PolicyProviderFactory extends ProviderFactory<PolicyProvider> {
     PolicyProvider create(Policy policy, AuthorizationProvider authorization);
 
     PolicyProviderAdminService getAdminResource(ResourceServer resourceServer);
+
+    /**
+     * Returns whether the outcome of the given policy depends just on the identity and on the permission being evaluated, so
+     * decisions made with the policy can be cached. Decisions are not cached by default, as the provider may depend on
+     * anything else, like time or the request. Such providers may still let the policy opt in with {@link #DECISION_CACHEABLE_CONFIG}.
+     *
+     * @param policy the policy
+     * @return true if decisions can be cached
+     */
+    default boolean isDecisionCacheable(Policy policy) {
+        return false;
+    }
 }
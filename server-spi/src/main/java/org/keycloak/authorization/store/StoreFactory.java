@@ -18,6 +18,8 @@
 
 package org.keycloak.authorization.store;
 
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.policy.evaluation.PolicyIndex;
 import org.keycloak.provider.Provider;
 
 /**
@@ -58,4 +60,17 @@ public interface StoreFactory extends Provider {
      */
     PolicyStore getPolicyStore();
 
+    /**
+     * Returns the {@link PolicyIndex} of the resource server. Stores, which cache data, may keep the index until some policy,
+     * resource or scope of the resource server changes. Building the index loads all the policies and resources of the
+     * resource server, so stores, which don't cache it, return <code>null</code> and the policies are looked up by
+     * querying the stores instead.
+     *
+     * @param resourceServer the resource server
+     * @return the index of the policies of the resource server or <code>null</code> if the store doesn't cache it
+     */
+    default PolicyIndex getPolicyIndex(ResourceServer resourceServer) {
+        return null;
+    }
+
 }
@@ -42,6 +42,20 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
     private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
     private static final int DERIVED_KEY_SIZE = 512;
 
+    // SecureRandom is thread safe, SecretKeyFactory isn't, so one factory is kept for each thread
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private static final ThreadLocal<SecretKeyFactory> secretKeyFactory = new ThreadLocal<SecretKeyFactory>() {
+        @Override
+        protected SecretKeyFactory initialValue() {
+            try {
+                return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("PBKDF2 algorithm not found", e);
+            }
+        }
+    };
+
     public CredentialModel encode(String rawPassword, int iterations) {
         byte[] salt = getSalt();
         String encodedPassword = encode(rawPassword, iterations, salt);
@@ -115,17 +129,12 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
 
     private byte[] getSalt() {
         byte[] buffer = new byte[16];
-        SecureRandom secureRandom = new SecureRandom();
         secureRandom.nextBytes(buffer);
         return buffer;
     }
 
     private SecretKeyFactory getSecretKeyFactory() {
-        try {
-            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("PBKDF2 algorithm not found", e);
-        }
+        return secretKeyFactory.get();
     }
 
 }
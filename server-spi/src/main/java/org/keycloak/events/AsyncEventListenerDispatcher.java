@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.common.util.Time;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ProviderFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches events to a listener asynchronously, so slow listeners don't add their latency to the requests. Each asynchronous listener
+ * has its own workers, each of them with its own bounded queue. Events of one user are always queued to the same worker, so they are
+ * delivered in order. Worker delivers the queued events in batches within single session, {@link BatchEventListenerProvider} gets the
+ * whole batch at once. Events are dropped when the queue is full.
+ *
+ * Enabled by the {@code async} option of the listener provider config, for example {@code eventsListener.email.async}. Other options
+ * are {@code asyncWorkers}, {@code asyncQueueSize} and {@code asyncBatchSize}.
+ */
+public class AsyncEventListenerDispatcher {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventListenerDispatcher.class);
+
+    public static final int DEFAULT_WORKERS = 1;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long CLOSE_TIMEOUT = 30000;
+
+    private static final ConcurrentMap<EventListenerProviderFactory, AsyncEventListenerDispatcher> dispatchers = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final KeycloakSessionFactory sessionFactory;
+    private final Worker[] workers;
+    private final int batchSize;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final EventListenerProvider listener = new QueueingListener();
+    private volatile boolean closed;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong lastLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+
+    /**
+     * @param queueSize max count of queued events of all the workers
+     */
+    AsyncEventListenerDispatcher(String id, KeycloakSessionFactory sessionFactory, int workers, int queueSize, int batchSize) {
+        this.id = id;
+        this.sessionFactory = sessionFactory;
+        this.batchSize = batchSize;
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(Math.max(queueSize / workers, 1));
+            Thread thread = new Thread(this.workers[i], "event-listener-" + id + "-" + i);
+            thread.setDaemon(true);
+            this.workers[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Use instead of {@code session.getProvider(EventListenerProvider.class, id)} to dispatch the events asynchronously, if it's enabled
+     * for the listener.
+     *
+     * @return listener, which queues the events, or the listener itself if it isn't asynchronous. Null if there is no such listener
+     */
+    public static EventListenerProvider getListener(KeycloakSession session, final String id) {
+        final KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+        EventListenerProviderFactory factory = (EventListenerProviderFactory) sessionFactory.getProviderFactory(EventListenerProvider.class, id);
+        if (factory == null) {
+            return null;
+        }
+
+        AsyncEventListenerDispatcher dispatcher = dispatchers.get(factory);
+        if (dispatcher != null) {
+            return dispatcher.listener;
+        }
+
+        final Config.Scope config = Config.scope("eventsListener", id);
+        if (!config.getBoolean("async", false)) {
+            return session.getProvider(EventListenerProvider.class, id);
+        }
+
+        synchronized (dispatchers) {
+            dispatcher = dispatchers.get(factory);
+            if (dispatcher == null) {
+                int workers = Math.max(config.getInt("asyncWorkers", DEFAULT_WORKERS), 1);
+                int queueSize = config.getInt("asyncQueueSize", DEFAULT_QUEUE_SIZE);
+                int batchSize = config.getInt("asyncBatchSize", DEFAULT_BATCH_SIZE);
+                logger.debugf("Dispatching events to listener %s asynchronously. Workers: %d, queue size: %d, batch size: %d", id, workers, queueSize, batchSize);
+
+                dispatcher = new AsyncEventListenerDispatcher(id, sessionFactory, workers, queueSize, batchSize);
+                dispatchers.put(factory, dispatcher);
+            }
+        }
+        return dispatcher.listener;
+    }
+
+    /**
+     * @return dispatcher of the listener or null if the listener isn't asynchronous or it didn't get any event yet
+     */
+    public static AsyncEventListenerDispatcher getDispatcher(KeycloakSessionFactory sessionFactory, String id) {
+        Object factory = sessionFactory.getProviderFactory(EventListenerProvider.class, id);
+        return factory != null ? dispatchers.get(factory) : null;
+    }
+
+    /**
+     * Closes dispatcher of the undeployed listener factory after the queued events are delivered
+     */
+    public static void closeDispatcher(ProviderFactory factory) {
+        AsyncEventListenerDispatcher dispatcher = dispatchers.remove(factory);
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    /**
+     * Closes dispatchers of the session factory after the queued events are delivered
+     */
+    public static void closeDispatchers(KeycloakSessionFactory sessionFactory) {
+        Iterator<Map.Entry<EventListenerProviderFactory, AsyncEventListenerDispatcher>> it = dispatchers.entrySet().iterator();
+        while (it.hasNext()) {
+            AsyncEventListenerDispatcher dispatcher = it.next().getValue();
+            if (dispatcher.sessionFactory == sessionFactory) {
+                it.remove();
+                dispatcher.close();
+            }
+        }
+    }
+
+    void onEvent(Event event) {
+        // Builders reuse the events, so they are copied
+        enqueue(event.getUserId() != null ? event.getUserId() : event.getSessionId(), new QueuedEvent(event.clone(), false));
+    }
+
+    void onEvent(AdminEvent event, boolean includeRepresentation) {
+        String userId = event.getAuthDetails() != null ? event.getAuthDetails().getUserId() : null;
+        enqueue(userId, new QueuedEvent(AsyncEventWriter.copy(event, includeRepresentation), includeRepresentation));
+    }
+
+    private void enqueue(String key, QueuedEvent event) {
+        int worker = key != null ? (key.hashCode() & Integer.MAX_VALUE) % workers.length : (nextWorker.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+        if (!closed && workers[worker].queue.offer(event)) {
+            enqueuedCount.incrementAndGet();
+            return;
+        }
+
+        // Don't flood the log when the listener can't keep up
+        if (droppedCount.incrementAndGet() % 1000 == 1) {
+            logger.warnf("Event queue of listener %s is full. Dropped %d events so far", id, droppedCount.get());
+        }
+    }
+
+    /**
+     * Delivers the events within new session
+     */
+    protected void deliver(final List<QueuedEvent> events) {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+            EventListenerProvider listener = session.getProvider(EventListenerProvider.class, id);
+            if (listener == null) {
+                throw new IllegalStateException("Event listener '" + id + "' not found");
+            }
+            deliver(listener, events);
+        });
+    }
+
+    protected void deliver(EventListenerProvider listener, List<QueuedEvent> events) {
+        if (listener instanceof BatchEventListenerProvider) {
+            List<Event> batch = new ArrayList<>();
+            List<AdminEvent> adminBatch = new ArrayList<>();
+            for (QueuedEvent event : events) {
+                if (event.event instanceof Event) {
+                    batch.add((Event) event.event);
+                } else {
+                    adminBatch.add((AdminEvent) event.event);
+                }
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    ((BatchEventListenerProvider) listener).onEvents(batch);
+                }
+                if (!adminBatch.isEmpty()) {
+                    ((BatchEventListenerProvider) listener).onAdminEvents(adminBatch);
+                }
+                deliveredCount.addAndGet(events.size());
+            } catch (RuntimeException e) {
+                failedCount.addAndGet(events.size());
+                logger.errorf(e, "Failed to send %d events to %s", events.size(), id);
+            }
+            return;
+        }
+
+        for (QueuedEvent event : events) {
+            try {
+                if (event.event instanceof Event) {
+                    listener.onEvent((Event) event.event);
+                } else {
+                    listener.onEvent((AdminEvent) event.event, event.includeRepresentation);
+                }
+                deliveredCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                logger.error("Failed to send type to " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Stops queueing events and waits until the queued events are delivered. Events sent afterwards are dropped.
+     */
+    public void close() {
+        closed = true;
+        long timeout = Time.currentTimeMillis() + CLOSE_TIMEOUT;
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join(Math.max(timeout - Time.currentTimeMillis(), 1));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        logger.debugf("Closed dispatcher of listener %s. Enqueued: %d, delivered: %d, dropped: %d, failed: %d, max lag: %d ms", id,
+                getEnqueuedCount(), getDeliveredCount(), getDroppedCount(), getFailedCount(), getMaxLag());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.queue.size();
+        }
+        return size;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return time in milliseconds the oldest event of the last delivered batch spent in the queue
+     */
+    public long getLastLag() {
+        return lastLag.get();
+    }
+
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    private class Worker implements Runnable {
+
+        private final BlockingQueue<QueuedEvent> queue;
+        private Thread thread;
+
+        private Worker(int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            while (!closed || !queue.isEmpty()) {
+                QueuedEvent first;
+                try {
+                    first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    continue;
+                }
+                if (first == null) {
+                    continue;
+                }
+
+                List<QueuedEvent> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                long lag = Time.currentTimeMillis() - first.queued;
+                lastLag.set(lag);
+                maxLag.accumulateAndGet(lag, Math::max);
+
+                try {
+                    deliver(batch);
+                } catch (RuntimeException e) {
+                    failedCount.addAndGet(batch.size());
+                    logger.errorf(e, "Failed to send %d events to %s", batch.size(), id);
+                }
+            }
+        }
+    }
+
+    protected static class QueuedEvent {
+
+        private final Object event;
+        private final boolean includeRepresentation;
+        private final long queued;
+
+        private QueuedEvent(Object event, boolean includeRepresentation) {
+            this.event = event;
+            this.includeRepresentation = includeRepresentation;
+            this.queued = Time.currentTimeMillis();
+        }
+    }
+
+    // Shared by all the sessions, the events are copied to the worker queues
+    private class QueueingListener implements EventListenerProvider {
+
+        @Override
+        public void onEvent(Event event) {
+            AsyncEventListenerDispatcher.this.onEvent(event);
+        }
+
+        @Override
+        public void onEvent(AdminEvent event, boolean includeRepresentation) {
+            AsyncEventListenerDispatcher.this.onEvent(event, includeRepresentation);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return "AsyncEventListener[" + id + "]";
+        }
+    }
+}
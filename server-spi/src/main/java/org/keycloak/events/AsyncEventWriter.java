@@ -0,0 +1,402 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes events to the event store asynchronously. Events are put to a bounded in-memory queue and a background thread takes them
+ * in batches, so each batch is written by the store within single transaction and requests don't wait for the store.
+ *
+ * When the queue is full, the event is handled according to the {@link OverflowPolicy}. Spilled events are appended to the spill file
+ * and they are written to the store once the queue is drained. With the spill policy, batches which the store fails to write are spilled
+ * too, so they are retried instead of lost. Events, which couldn't be written when the writer is closed, are spilled with any policy, so
+ * they are written after next start.
+ *
+ * Enabled by the {@code async} option of the event store provider config. Other options are {@code queueSize}, {@code batchSize},
+ * {@code overflowPolicy} (block, drop or spill) and {@code spillFile}.
+ */
+public class AsyncEventWriter {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventWriter.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long CLOSE_TIMEOUT = 30000;
+
+    public enum OverflowPolicy {
+        /**
+         * Request waits until there is a space in the queue
+         */
+        BLOCK,
+        /**
+         * Event is dropped
+         */
+        DROP,
+        /**
+         * Event is appended to the spill file
+         */
+        SPILL
+    }
+
+    public interface BatchWriter {
+
+        /**
+         * Writes the events within single transaction.
+         *
+         * @param adminEvents admin events, which contain representation only if it should be stored
+         */
+        void write(List<Event> events, List<AdminEvent> adminEvents);
+
+    }
+
+    private final String name;
+    private final BatchWriter writer;
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final File spillFile;
+    private final File replayFile;
+    private final Object spillLock = new Object();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public AsyncEventWriter(String name, int queueSize, int batchSize, OverflowPolicy overflowPolicy, File spillFile, BatchWriter writer) {
+        this.name = name;
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = spillFile;
+        this.replayFile = new File(spillFile.getPath() + ".replay");
+
+        this.thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+
+        }, "event-writer-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return writer configured by the config of the event store provider or null if asynchronous writes are disabled
+     */
+    public static AsyncEventWriter create(String name, Config.Scope config, BatchWriter writer) {
+        if (!config.getBoolean("async", false)) {
+            return null;
+        }
+
+        int queueSize = config.getInt("queueSize", DEFAULT_QUEUE_SIZE);
+        int batchSize = config.getInt("batchSize", DEFAULT_BATCH_SIZE);
+        OverflowPolicy overflowPolicy = OverflowPolicy.valueOf(config.get("overflowPolicy", OverflowPolicy.BLOCK.name()).toUpperCase());
+
+        String spillFile = config.get("spillFile");
+        if (spillFile == null) {
+            String dataDir = System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir"));
+            spillFile = new File(dataDir, "keycloak-events-" + name + ".spill").getPath();
+        }
+
+        logger.debugf("Writing events to %s asynchronously. Queue size: %d, batch size: %d, overflow policy: %s, spill file: %s", name, queueSize, batchSize,
+                overflowPolicy, spillFile);
+        return new AsyncEventWriter(name, queueSize, batchSize, overflowPolicy, new File(spillFile), writer);
+    }
+
+    public void onEvent(Event event) {
+        // Builders reuse the events, so they are copied
+        enqueue(event.clone());
+    }
+
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        enqueue(copy(event, includeRepresentation));
+    }
+
+    private void enqueue(Object event) {
+        if (closed) {
+            write(Collections.singletonList(event));
+            return;
+        }
+
+        if (queue.offer(event)) {
+            enqueuedCount.incrementAndGet();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    while (!queue.offer(event, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        if (closed) {
+                            write(Collections.singletonList(event));
+                            return;
+                        }
+                    }
+                    enqueuedCount.incrementAndGet();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
+                    logger.warnf("Interrupted when waiting for space in the event queue of %s. Event dropped", name);
+                }
+                break;
+            case DROP:
+                // Don't flood the log when the store can't keep up
+                if (droppedCount.incrementAndGet() % 1000 == 1) {
+                    logger.warnf("Event queue of %s is full. Dropped %d events so far", name, droppedCount.get());
+                }
+                break;
+            case SPILL:
+                spill(Collections.singletonList(event));
+                break;
+        }
+    }
+
+    private void drain() {
+        while (!closed || !queue.isEmpty()) {
+            Object first;
+            try {
+                first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                continue;
+            }
+
+            if (first == null) {
+                // Spilled events are written once the store has caught up with the queue
+                replaySpilled();
+                continue;
+            }
+
+            List<Object> batch = new ArrayList<>(batchSize);
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+
+            if (!write(batch) && (closed || overflowPolicy == OverflowPolicy.SPILL)) {
+                spill(batch);
+            }
+        }
+    }
+
+    private boolean write(List<Object> batch) {
+        List<Event> events = new ArrayList<>();
+        List<AdminEvent> adminEvents = new ArrayList<>();
+        for (Object event : batch) {
+            if (event instanceof Event) {
+                events.add((Event) event);
+            } else {
+                adminEvents.add((AdminEvent) event);
+            }
+        }
+
+        try {
+            writer.write(events, adminEvents);
+            writtenCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            failedCount.addAndGet(batch.size());
+            logger.errorf(e, "Failed to write %d events to %s", batch.size(), name);
+            return false;
+        }
+    }
+
+    private void spill(List<Object> events) {
+        synchronized (spillLock) {
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Object event : events) {
+                    SpilledEvent spilled = new SpilledEvent();
+                    if (event instanceof Event) {
+                        spilled.setEvent((Event) event);
+                    } else {
+                        spilled.setAdminEvent((AdminEvent) event);
+                    }
+                    out.write(JsonSerialization.writeValueAsString(spilled));
+                    out.newLine();
+                }
+                spilledCount.addAndGet(events.size());
+            } catch (IOException ioe) {
+                droppedCount.addAndGet(events.size());
+                logger.errorf(ioe, "Failed to spill %d events of %s to %s", events.size(), name, spillFile);
+            }
+        }
+    }
+
+    // Spill file is renamed, so new events can be spilled while the old ones are written. Replay file is left over if writing fails
+    private void replaySpilled() {
+        synchronized (spillLock) {
+            if (!replayFile.exists()) {
+                if (!spillFile.exists()) {
+                    return;
+                }
+                if (!spillFile.renameTo(replayFile)) {
+                    logger.errorf("Failed to rename spill file %s", spillFile);
+                    return;
+                }
+            }
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(replayFile.toPath(), StandardCharsets.UTF_8);
+            for (int i = 0; i < lines.size(); i += batchSize) {
+                List<Object> batch = new ArrayList<>(batchSize);
+                for (String line : lines.subList(i, Math.min(i + batchSize, lines.size()))) {
+                    if (line.isEmpty()) continue;
+                    try {
+                        SpilledEvent spilled = JsonSerialization.readValue(line, SpilledEvent.class);
+                        batch.add(spilled.getEvent() != null ? spilled.getEvent() : spilled.getAdminEvent());
+                    } catch (IOException ioe) {
+                        failedCount.incrementAndGet();
+                        logger.errorf(ioe, "Failed to read spilled event of %s: %s", name, line);
+                    }
+                }
+
+                if (!batch.isEmpty() && !write(batch)) {
+                    // Retried next time the queue is empty
+                    Files.write(replayFile.toPath(), lines.subList(i, lines.size()), StandardCharsets.UTF_8);
+                    return;
+                }
+            }
+
+            logger.debugf("Written %d spilled events to %s", lines.size(), name);
+            Files.delete(replayFile.toPath());
+        } catch (IOException ioe) {
+            logger.errorf(ioe, "Failed to replay spilled events of %s from %s", name, replayFile);
+        }
+    }
+
+    /**
+     * Stops accepting events to the queue and waits until the queued events are written. Events written after close are written
+     * synchronously.
+     */
+    public void close() {
+        closed = true;
+        try {
+            thread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            logger.warnf("Event writer of %s didn't finish in %d ms. %d events weren't written", name, CLOSE_TIMEOUT, queue.size());
+        }
+        logger.debugf("Closed event writer of %s. Enqueued: %d, written: %d in %d batches, dropped: %d, spilled: %d, failed: %d", name,
+                getEnqueuedCount(), getWrittenCount(), getBatchCount(), getDroppedCount(), getSpilledCount(), getFailedCount());
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    static AdminEvent copy(AdminEvent event, boolean includeRepresentation) {
+        AdminEvent copy = new AdminEvent();
+        copy.setTime(event.getTime());
+        copy.setRealmId(event.getRealmId());
+        copy.setOperationType(event.getOperationType());
+        copy.setResourceType(event.getResourceType());
+        copy.setResourcePath(event.getResourcePath());
+        copy.setError(event.getError());
+        if (includeRepresentation) {
+            copy.setRepresentation(event.getRepresentation());
+        }
+
+        AuthDetails authDetails = event.getAuthDetails();
+        if (authDetails != null) {
+            AuthDetails authDetailsCopy = new AuthDetails();
+            authDetailsCopy.setRealmId(authDetails.getRealmId());
+            authDetailsCopy.setClientId(authDetails.getClientId());
+            authDetailsCopy.setUserId(authDetails.getUserId());
+            authDetailsCopy.setIpAddress(authDetails.getIpAddress());
+            copy.setAuthDetails(authDetailsCopy);
+        }
+        return copy;
+    }
+
+    public static class SpilledEvent {
+
+        private Event event;
+        private AdminEvent adminEvent;
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public void setEvent(Event event) {
+            this.event = event;
+        }
+
+        public AdminEvent getAdminEvent() {
+            return adminEvent;
+        }
+
+        public void setAdminEvent(AdminEvent adminEvent) {
+            this.adminEvent = adminEvent;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.keycloak.events.admin.AdminEvent;
+
+import java.util.List;
+
+/**
+ * Listener, which gets the events in batches when it is dispatched asynchronously. See {@link AsyncEventListenerDispatcher}.
+ */
+public interface BatchEventListenerProvider extends EventListenerProvider {
+
+    void onEvents(List<Event> events);
+
+    /**
+     * @param events admin events, which contain representation only if it should be included
+     */
+    void onAdminEvents(List<AdminEvent> events);
+
+}
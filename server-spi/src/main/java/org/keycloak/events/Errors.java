@@ -75,4 +75,7 @@ public interface Errors {
     String PASSWORD_CONFIRM_ERROR = "password_confirm_error";
     String PASSWORD_MISSING = "password_missing";
     String PASSWORD_REJECTED = "password_rejected";
+
+    String SERVICE_UNAVAILABLE = "service_unavailable";
+    String TOO_MANY_LOGIN_FAILURES = "too_many_login_failures";
 }
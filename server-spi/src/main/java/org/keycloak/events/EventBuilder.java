@@ -59,7 +59,7 @@ public class EventBuilder {
         if (realm.getEventsListeners() != null && !realm.getEventsListeners().isEmpty()) {
             this.listeners = new LinkedList<>();
             for (String id : realm.getEventsListeners()) {
-                EventListenerProvider listener = session.getProvider(EventListenerProvider.class, id);
+                EventListenerProvider listener = AsyncEventListenerDispatcher.getListener(session, id);
                 if (listener != null) {
                     listeners.add(listener);
                 } else {
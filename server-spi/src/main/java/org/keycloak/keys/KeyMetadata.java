@@ -30,7 +30,8 @@ public class KeyMetadata {
     }
 
     public enum Type {
-        RSA
+        RSA,
+        EC
     }
 
     private String providerId;
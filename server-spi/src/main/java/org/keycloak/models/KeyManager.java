@@ -17,6 +17,8 @@
 
 package org.keycloak.models;
 
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSSigner;
 import org.keycloak.keys.KeyMetadata;
 
 import java.security.PrivateKey;
@@ -30,8 +32,23 @@ import java.util.List;
  */
 public interface KeyManager {
 
+    /**
+     * Active RSA key of the realm.
+     */
     ActiveKey getActiveKey(RealmModel realm);
 
+    /**
+     * Signer for the active key of the realm with the highest priority. RSA keys sign with RS256, elliptic curve keys with the
+     * algorithm for their curve. Signer is shared among sessions until the active key of the realm changes.
+     */
+    JWSSigner getActiveSigner(RealmModel realm);
+
+    /**
+     * Signer for the active key of the realm with the highest priority, which supports the algorithm. Signer is shared among
+     * sessions until the active key of the realm changes.
+     */
+    JWSSigner getActiveSigner(RealmModel realm, Algorithm algorithm);
+
     PublicKey getPublicKey(RealmModel realm, String kid);
 
     Certificate getCertificate(RealmModel realm,  String kid);
@@ -58,12 +58,24 @@ public class LDAPConstants {
     public static final String CONNECTION_POOLING = "connectionPooling";
     public static final String PAGINATION = "pagination";
 
+    // Max count of connections in each of the dedicated search and bind connection pools. Dedicated pools are disabled with 0
+    public static final String CONNECTION_POOL_SIZE = "connectionPoolSize";
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 0;
+
+    // Time in seconds after which pooled connection is closed instead of being reused
+    public static final String CONNECTION_POOL_MAX_LIFETIME = "connectionPoolMaxLifetime";
+    public static final int DEFAULT_CONNECTION_POOL_MAX_LIFETIME = 300;
+
     public static final String EDIT_MODE = "editMode";
 
     // Count of users processed per single transaction during sync process
     public static final String BATCH_SIZE_FOR_SYNC = "batchSizeForSync";
     public static final int DEFAULT_BATCH_SIZE_FOR_SYNC = 1000;
 
+    // Count of workers importing the batches of users in parallel during sync process
+    public static final String SYNC_WORKERS = "syncWorkers";
+    public static final int DEFAULT_SYNC_WORKERS = 1;
+
     // Config option to specify if registrations will be synced or not
     public static final String SYNC_REGISTRATIONS = "syncRegistrations";
 
@@ -29,6 +29,8 @@ public class UserFederationSyncResult {
     private int removed;
     private int failed;
 
+    private long duration;
+
     public boolean isIgnored() {
         return ignored;
     }
@@ -69,6 +71,25 @@ public class UserFederationSyncResult {
         this.failed = failed;
     }
 
+    /**
+     * @return time in milliseconds the synchronization took
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return count of users processed per second
+     */
+    public double getThroughput() {
+        int processed = added + updated + removed + failed;
+        return duration > 0 ? processed * 1000.0 / duration : 0;
+    }
+
     public void increaseAdded() {
         added++;
     }
@@ -17,7 +17,11 @@
 
 package org.keycloak.models.cache;
 
+import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
+import org.keycloak.models.RoleModel;
+
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -35,4 +39,12 @@ public interface CacheRealmProvider extends RealmProvider {
     void registerRoleInvalidation(String id);
 
     void registerGroupInvalidation(String id);
+
+    /**
+     * Ids of the role and of all the roles reachable through its composites. Closures are cached per role and invalidated together
+     * with any role they contain.
+     *
+     * @return cached closure or null if it can't be used in current transaction (for example some role was updated)
+     */
+    Set<String> getRoleClosure(RealmModel realm, RoleModel role);
 }
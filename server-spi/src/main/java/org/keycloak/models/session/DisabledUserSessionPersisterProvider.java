@@ -28,6 +28,7 @@ import org.keycloak.models.UserSessionModel;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Persistence of userSessions is disabled . Useful just if you never need survive of userSessions/clientSessions
@@ -114,11 +115,21 @@ public class DisabledUserSessionPersisterProvider implements UserSessionPersiste
 
     }
 
+    @Override
+    public void updateTimestamps(Map<String, Integer> lastSessionRefreshes, Map<String, Integer> clientSessionTimestamps, boolean offline) {
+
+    }
+
     @Override
     public List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline) {
         return Collections.emptyList();
     }
 
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline) {
+        return Collections.emptyList();
+    }
+
     @Override
     public int getUserSessionsCount(boolean offline) {
         return 0;
@@ -25,6 +25,7 @@ import org.keycloak.models.UserSessionModel;
 import org.keycloak.provider.Provider;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -52,12 +53,39 @@ public interface UserSessionPersisterProvider extends Provider {
     // Called at startup to remove userSessions without any clientSession
     void clearDetachedUserSessions();
 
-    // Update "lastSessionRefresh" of all userSessions and "timestamp" of all clientSessions to specified time
+    // Update "lastSessionRefresh" of all userSessions and "timestamp" of all clientSessions to specified time. UserSessions are marked
+    // as not written by updateTimestamps, as refreshes done before are lost
     void updateAllTimestamps(int time);
 
+    // Update "lastSessionRefresh" of userSessions and "timestamp" of clientSessions by their IDs. Timestamps are never moved backwards.
+    // Called periodically with the refreshes coalesced in memory, so it's not needed to write each refresh separately. Updated userSessions
+    // are marked as written
+    void updateTimestamps(Map<String, Integer> lastSessionRefreshes, Map<String, Integer> clientSessionTimestamps, boolean offline);
+
+    // Update "lastSessionRefresh" of userSessions not marked as written by updateTimestamps and "timestamp" of their clientSessions to specified time.
+    // Called at startup instead of updateAllTimestamps when refreshes are written, so userSessions persisted before, whose timestamps are not
+    // updated by refreshes, don't expire right after upgrade. Providers not tracking written userSessions update all of them
+    default void updateUnwrittenTimestamps(int time, boolean offline) {
+        updateAllTimestamps(time);
+    }
+
     // Called during startup. For each userSession, it loads also clientSessions
     List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline);
 
     int getUserSessionsCount(boolean offline);
 
+    // Called during startup. Returns ID of each "sessionsPerSegment"-th userSession ordered by ID, which split userSessions into segments
+    // for loadUserSessions by ID range. Returns null if loading by ID range is not supported and firstResult/maxResults paging should be used
+    default List<String> loadUserSessionIdBoundaries(int sessionsPerSegment, boolean offline) {
+        return null;
+    }
+
+    // Called during startup. Loads userSessions with ID greater than lastUserSessionId and less or equal to maxUserSessionId ordered by ID.
+    // Null lastUserSessionId or maxUserSessionId means the range is not bounded from that side. For each userSession, it loads also clientSessions.
+    // UserSessions of removed users are removed and skipped, so less than maxResults may be returned. Empty list is returned just if there are no more userSessions in the range.
+    // Called just if loadUserSessionIdBoundaries returned boundaries, so providers returning boundaries must override it as well
+    default List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline) {
+        throw new UnsupportedOperationException("Provider returning userSession ID boundaries must load userSessions by ID range");
+    }
+
 }
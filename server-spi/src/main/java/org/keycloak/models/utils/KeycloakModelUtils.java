@@ -66,6 +66,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -695,4 +696,23 @@ public final class KeycloakModelUtils {
             ((ComponentFactory)factory).onCreate(session, realm, model);
         }
     }
+
+    /**
+     * Groups the IDs of sessions by their timestamps, so sessions with the same timestamp can be updated at once.
+     *
+     * @param timestamps timestamps by session ID
+     * @return session IDs by timestamp
+     */
+    public static Map<Integer, List<String>> groupByTimestamp(Map<String, Integer> timestamps) {
+        Map<Integer, List<String>> grouped = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : timestamps.entrySet()) {
+            List<String> ids = grouped.get(entry.getValue());
+            if (ids == null) {
+                ids = new ArrayList<>();
+                grouped.put(entry.getValue(), ids);
+            }
+            ids.add(entry.getKey());
+        }
+        return grouped;
+    }
 }
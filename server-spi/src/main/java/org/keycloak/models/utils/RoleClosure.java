@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.utils;
+
+import org.keycloak.models.RoleModel;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies scope mappings to role mappings with the help of role closures. Closure of a role are the ids of the role itself and of all
+ * the roles reachable through its composites. Closures are obtained from {@link Lookup}, which is expected to cache them per role, so
+ * {@link RoleModel#hasRole(RoleModel)} checks don't need to walk the composite graph. Closures are remembered by this instance, so it
+ * should be used just for one request.
+ */
+public class RoleClosure {
+
+    public interface Lookup {
+
+        /**
+         * @return closure of the role or null if it's not available
+         */
+        Set<String> getClosure(RoleModel role);
+
+    }
+
+    private final Lookup lookup;
+    private final Map<String, Set<String>> closures = new HashMap<>();
+
+    public RoleClosure(Lookup lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Walks the composites of the role. Closures of the composites available in cache are merged instead of walked again.
+     *
+     * @param cached closures of already computed roles
+     * @return ids of the role and of all the roles reachable through its composites
+     */
+    public static Set<String> compute(RoleModel role, Lookup cached) {
+        Set<String> closure = new HashSet<>();
+        closure.add(role.getId());
+        Deque<RoleModel> queue = new ArrayDeque<>();
+        queue.add(role);
+        while (!queue.isEmpty()) {
+            RoleModel current = queue.poll();
+            if (!current.isComposite()) continue;
+            for (RoleModel child : current.getComposites()) {
+                if (closure.contains(child.getId())) continue;
+                Set<String> childClosure = cached.getClosure(child);
+                if (childClosure != null) {
+                    closure.addAll(childClosure);
+                } else {
+                    closure.add(child.getId());
+                    queue.add(child);
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * @return closure of the role or null if it's not available
+     */
+    public Set<String> getClosure(RoleModel role) {
+        Set<String> closure = closures.get(role.getId());
+        if (closure == null && !closures.containsKey(role.getId())) {
+            closure = lookup.getClosure(role);
+            closures.put(role.getId(), closure);
+        }
+        return closure;
+    }
+
+    /**
+     * Same as {@link RoleModel#hasRole(RoleModel)}
+     */
+    public boolean hasRole(RoleModel role, RoleModel otherRole) {
+        Set<String> closure = getClosure(role);
+        return closure == null ? role.hasRole(otherRole) : closure.contains(otherRole.getId());
+    }
+
+    /**
+     * Computes the roles, which are requested when scope mappings are applied to the role mappings of the user. Result is
+     * the same as calling {@code TokenManager.applyScope} for each pair of role mapping and scope mapping: the composite
+     * graph of each scope mapping is walked and each role available to the role mapping is requested, without descending
+     * to its composites. The walk is skipped for role mappings, which don't reach any role reachable from the scope mappings.
+     *
+     * @return requested roles or null if closure of some of the roles is not available
+     */
+    public Set<RoleModel> applyScope(Collection<RoleModel> roleMappings, Collection<RoleModel> scopeMappings) {
+        Set<String> scopeClosure = new HashSet<>();
+        for (RoleModel scope : scopeMappings) {
+            Set<String> closure = getClosure(scope);
+            if (closure == null) return null;
+            scopeClosure.addAll(closure);
+        }
+
+        Set<RoleModel> requested = new HashSet<>();
+        for (RoleModel role : roleMappings) {
+            Set<String> available = getClosure(role);
+            if (available == null) return null;
+            if (!intersects(available, scopeClosure)) continue;
+
+            if (available.size() == 1) {
+                // Nothing below the role, so it is requested as some scope reaches it
+                requested.add(role);
+            } else {
+                applyScope(available, scopeMappings, requested);
+            }
+        }
+        return requested;
+    }
+
+    // Walks the composite graph from all scopes at once. Whether the walk stops at the role doesn't depend on the scope it came from,
+    // so sharing the visited set among scopes gives the same result as walking from each scope separately
+    private static void applyScope(Set<String> available, Collection<RoleModel> scopeMappings, Set<RoleModel> requested) {
+        Set<String> visited = new HashSet<>();
+        Deque<RoleModel> queue = new ArrayDeque<>();
+        for (RoleModel scope : scopeMappings) {
+            if (visited.add(scope.getId())) queue.add(scope);
+        }
+        while (!queue.isEmpty()) {
+            RoleModel current = queue.poll();
+            if (available.contains(current.getId())) {
+                requested.add(current);
+                continue;
+            }
+            if (!current.isComposite()) continue;
+            for (RoleModel child : current.getComposites()) {
+                if (visited.add(child.getId())) queue.add(child);
+            }
+        }
+    }
+
+    private static boolean intersects(Set<String> set1, Set<String> set2) {
+        Set<String> smaller = set1.size() < set2.size() ? set1 : set2;
+        Set<String> bigger = smaller == set1 ? set2 : set1;
+        for (String id : smaller) {
+            if (bigger.contains(id)) return true;
+        }
+        return false;
+    }
+}
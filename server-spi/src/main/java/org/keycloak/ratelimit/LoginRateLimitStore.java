@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.ratelimit;
+
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.Provider;
+
+/**
+ * Shares the state of {@link LoginRateLimiter} among cluster nodes. State of each source is the time when its bucket is
+ * full again. Stored state is removed by the store once that time passes.
+ */
+public interface LoginRateLimitStore extends Provider {
+
+    /**
+     * @return time in milliseconds when the bucket of the source is full again or 0 if nothing is stored for the source
+     */
+    long getFullAt(RealmModel realm, String key);
+
+    /**
+     * Stores the time when the bucket of the source is full again. Stored time is never moved backwards.
+     */
+    void updateFullAt(RealmModel realm, String key, long fullAt);
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.ratelimit;
+
+import org.keycloak.common.ClientConnection;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.Provider;
+import org.keycloak.services.managers.BruteForceProtector;
+
+/**
+ * Limits the rate of failed logins per source (client IP and client) regardless of the user, which complements
+ * {@link BruteForceProtector} for attacks trying few passwords for many users. Limits are enabled just if they are configured
+ * for the provider, regardless of the brute force protection of the realm.
+ */
+public interface LoginRateLimiter extends Provider {
+
+    /**
+     * @return seconds until the source may attempt to log in again, or 0 if the attempt is allowed now
+     */
+    int checkAllowed(KeycloakSession session, RealmModel realm, ClientModel client, ClientConnection clientConnection);
+
+    void failedLogin(KeycloakSession session, RealmModel realm, ClientModel client, ClientConnection clientConnection);
+}
@@ -31,4 +31,12 @@ public interface BruteForceProtector extends Provider {
     void failedLogin(RealmModel realm, UserModel user, ClientConnection clientConnection);
 
     boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, UserModel user);
+
+    // Called when login failures of the user were cleared by admin, so failures tracked by the protector itself are cleared too
+    default void clearFailures(RealmModel realm, String userId) {
+    }
+
+    // Called when login failures of all users of the realm were cleared by admin
+    default void clearAllFailures(RealmModel realm) {
+    }
 }
@@ -0,0 +1,293 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.permission.evaluator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.Decision.Effect;
+import org.keycloak.authorization.identity.Identity;
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.model.Resource;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.permission.ResourcePermission;
+import org.keycloak.authorization.policy.evaluation.DecisionResultCollector;
+import org.keycloak.authorization.policy.evaluation.Evaluation;
+import org.keycloak.authorization.policy.evaluation.EvaluationContext;
+import org.keycloak.authorization.policy.evaluation.PolicyIndex;
+import org.keycloak.authorization.policy.evaluation.Result;
+import org.keycloak.authorization.policy.provider.PolicyProvider;
+import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
+import org.keycloak.authorization.store.PolicyStore;
+import org.keycloak.authorization.store.ResourceServerStore;
+import org.keycloak.authorization.store.ResourceStore;
+import org.keycloak.authorization.store.StoreFactory;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.representations.idm.authorization.PolicyEnforcementMode;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ParallelPermissionEvaluatorTest {
+
+    private final ResourceServer resourceServer = proxy(ResourceServer.class, values("getId", "rs", "getClientId", "client",
+            "getPolicyEnforcementMode", PolicyEnforcementMode.ENFORCING));
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Set<String> evaluatingThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<ResourcePermission> evaluatedPermissions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private ExecutorService executor;
+
+    // work done by the policy provider for each evaluated policy, in microseconds
+    private volatile long policyWork;
+    private volatile boolean failing;
+
+    @After
+    public void after() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvaluatesPartitionsInParallel() {
+        executor = Executors.newFixedThreadPool(4);
+        List<ResourcePermission> permissions = permissions(100);
+        Evaluators evaluators = authorization(permissions, executor, 10).evaluators();
+
+        List<Result> results = evaluate(evaluators.from(permissions, context()));
+
+        Assert.assertEquals(100, results.size());
+        Set<ResourcePermission> evaluated = new HashSet<>();
+        for (Result result : results) {
+            Assert.assertEquals(Effect.PERMIT, result.getEffect());
+            Assert.assertEquals(Effect.PERMIT, result.getResults().get(0).getStatus());
+            evaluated.add(result.getPermission());
+        }
+        Assert.assertEquals(new HashSet<>(permissions), evaluated);
+        // each partition within its own session
+        Assert.assertEquals(10, sessions.get());
+        Assert.assertFalse(evaluatingThreads.contains(Thread.currentThread().getName()));
+        // workers evaluate permissions looked up within their own session
+        for (ResourcePermission permission : evaluatedPermissions) {
+            Assert.assertFalse(permissions.contains(permission));
+            Assert.assertFalse(permissions.stream().anyMatch(p -> p.getResource() == permission.getResource()));
+        }
+        Assert.assertEquals(100, evaluatedPermissions.size());
+    }
+
+    @Test
+    public void testSequentialIfNotEnabledOrSmall() {
+        executor = Executors.newFixedThreadPool(4);
+        List<ResourcePermission> permissions = permissions(100);
+
+        Assert.assertEquals(100, evaluate(authorization(permissions, executor, 100).evaluators().from(permissions, context())).size());
+        Assert.assertEquals(0, sessions.get());
+
+        Assert.assertEquals(100, evaluate(authorization(permissions, null, 10).evaluators().from(permissions, context())).size());
+        Assert.assertEquals(0, sessions.get());
+        Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), evaluatingThreads);
+    }
+
+    @Test
+    public void testError() {
+        executor = Executors.newFixedThreadPool(4);
+        failing = true;
+        List<ResourcePermission> permissions = permissions(100);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicReference<List<Result>> completed = new AtomicReference<>();
+
+        authorization(permissions, executor, 10).evaluators().from(permissions, context()).evaluate(new DecisionResultCollector() {
+            @Override
+            public void onError(Throwable cause) {
+                error.set(cause);
+            }
+
+            @Override
+            protected void onComplete(List<Result> results) {
+                completed.set(results);
+            }
+        });
+
+        Assert.assertNull(completed.get());
+        Assert.assertEquals("policy failed", error.get().getMessage());
+    }
+
+    private List<Result> evaluate(PermissionEvaluator evaluator) {
+        AtomicReference<List<Result>> completed = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        evaluator.evaluate(new DecisionResultCollector() {
+            @Override
+            public void onError(Throwable cause) {
+                error.set(cause);
+            }
+
+            @Override
+            protected void onComplete(List<Result> results) {
+                completed.set(results);
+            }
+        });
+
+        if (error.get() != null) {
+            throw new RuntimeException(error.get());
+        }
+
+        return completed.get();
+    }
+
+    private List<ResourcePermission> permissions(int count) {
+        List<ResourcePermission> permissions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Resource resource = proxy(Resource.class, values("getId", "resource-" + i, "getOwner", "client", "getScopes", Collections.emptyList()));
+            permissions.add(new ResourcePermission(resource, Collections.emptyList(), resourceServer));
+        }
+        return permissions;
+    }
+
+    private AuthorizationProvider authorization(List<ResourcePermission> permissions, ExecutorService parallelExecutor, int partitionSize) {
+        Policy grant = proxy(Policy.class, values("getId", "grant", "getName", "grant", "getType", "test", "getResources", Collections.emptySet(),
+                "getScopes", Collections.emptySet(), "getAssociatedPolicies", Collections.emptySet(), "getConfig", Collections.emptyMap()));
+        Map<String, Policy> policies = new HashMap<>();
+        List<Resource> resources = new ArrayList<>();
+        policies.put("grant", grant);
+        for (ResourcePermission permission : permissions) {
+            Resource resource = permission.getResource();
+            String id = "permission-" + resource.getId();
+            resources.add(resource);
+            policies.put(id, proxy(Policy.class, values("getId", id, "getName", id, "getType", "resource", "getResources", Collections.singleton(resource),
+                    "getScopes", Collections.emptySet(), "getAssociatedPolicies", Collections.singleton(grant), "getConfig", Collections.emptyMap())));
+        }
+
+        ResourceStore resourceStore = proxy(ResourceStore.class, (proxy, method, args) -> {
+            if (method.getName().equals("findByResourceServer")) return resources;
+            if (method.getName().equals("findById")) {
+                // a new instance, same as a lookup in another session
+                return proxy(Resource.class, values("getId", args[0], "getOwner", "client", "getScopes", Collections.emptyList()));
+            }
+            return null;
+        });
+        ResourceServerStore resourceServerStore = proxy(ResourceServerStore.class, values("findById", resourceServer));
+        PolicyStore policyStore = proxy(PolicyStore.class, (proxy, method, args) -> {
+            if (method.getName().equals("findById")) return policies.get(args[0]);
+            if (method.getName().equals("findByResourceServer")) return new ArrayList<>(policies.values());
+            return null;
+        });
+        StoreFactory stores = proxy(StoreFactory.class, values("getResourceStore", resourceStore, "getPolicyStore", policyStore));
+        PolicyIndex index = PolicyIndex.build(resourceServer, stores);
+        StoreFactory storeFactory = proxy(StoreFactory.class, values("getResourceStore", resourceStore, "getPolicyStore", policyStore, "getPolicyIndex", index,
+                "getResourceServerStore", resourceServerStore));
+
+        ClientModel client = proxy(ClientModel.class, values("getAttribute", "true"));
+        RealmModel realm = proxy(RealmModel.class, values("getId", "realm", "getClientById", client));
+        PolicyProviderFactory providerFactory = proxy(PolicyProviderFactory.class, values("getId", "test", "create", new PolicyProvider() {
+            @Override
+            public void evaluate(Evaluation evaluation) {
+                evaluatingThreads.add(Thread.currentThread().getName());
+                evaluatedPermissions.add(evaluation.getPermission());
+                if (failing) {
+                    throw new RuntimeException("policy failed");
+                }
+                long end = System.nanoTime() + policyWork * 1000;
+                while (System.nanoTime() < end) {
+                    // simulates the evaluation of a policy
+                }
+                evaluation.grant();
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+
+        AtomicReference<KeycloakSessionFactory> sessionFactory = new AtomicReference<>();
+        sessionFactory.set(proxy(KeycloakSessionFactory.class, (proxy, method, args) -> {
+            if (method.getName().equals("getProviderFactories")) return Arrays.asList(providerFactory);
+            if (method.getName().equals("create")) {
+                sessions.incrementAndGet();
+                return session(sessionFactory.get(), realm, storeFactory);
+            }
+            return null;
+        }));
+
+        KeycloakSession session = proxy(KeycloakSession.class, values("getKeycloakSessionFactory", sessionFactory.get()));
+        return new AuthorizationProvider(session, realm, storeFactory, Runnable::run, parallelExecutor, partitionSize);
+    }
+
+    private KeycloakSession session(KeycloakSessionFactory sessionFactory, RealmModel realm, StoreFactory storeFactory) {
+        KeycloakTransactionManager transaction = proxy(KeycloakTransactionManager.class, values("isActive", false));
+        RealmProvider realms = proxy(RealmProvider.class, values("getRealm", realm));
+        KeycloakContext context = proxy(KeycloakContext.class, values());
+        AtomicReference<KeycloakSession> session = new AtomicReference<>();
+        session.set(proxy(KeycloakSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getKeycloakSessionFactory": return sessionFactory;
+                case "getTransactionManager": return transaction;
+                case "realms": return realms;
+                case "getContext": return context;
+                case "getProvider": return new AuthorizationProvider(session.get(), realm, storeFactory);
+                default: return null;
+            }
+        }));
+        return session.get();
+    }
+
+    private EvaluationContext context() {
+        Identity identity = proxy(Identity.class, values("getId", "alice"));
+        return proxy(EvaluationContext.class, values("getIdentity", identity));
+    }
+
+    private static Map<String, Object> values(Object... keyValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            values.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return values;
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> values) {
+        return proxy(type, (proxy, method, args) -> {
+            if (method.getName().equals("equals")) return proxy == args[0];
+            if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+            return values.get(method.getName());
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler));
+    }
+}
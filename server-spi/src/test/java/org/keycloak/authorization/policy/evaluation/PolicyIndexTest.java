@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.authorization.policy.evaluation;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.model.Resource;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.model.Scope;
+import org.keycloak.authorization.store.PolicyStore;
+import org.keycloak.authorization.store.ResourceStore;
+import org.keycloak.authorization.store.StoreFactory;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class PolicyIndexTest {
+
+    private final Scope read = scope("read");
+    private final Scope write = scope("write");
+    private final Scope delete = scope("delete");
+    private final ResourceServer resourceServer = proxy(ResourceServer.class, values("getId", "rs", "getClientId", "client"));
+
+    private final Resource document = resource("document", "urn:doc", "client", read, write);
+    private final Resource aliceDocument = resource("alice-document", "urn:doc", "alice", delete);
+    private final Resource folder = resource("folder", null, "client", read);
+
+    @Test
+    public void testIndex() {
+        Policy user = policy("user", Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), null);
+        Policy documentPermission = policy("document-permission", Arrays.asList(document), Collections.emptyList(), Arrays.asList(user), null);
+        Policy typePermission = policy("type-permission", Collections.emptyList(), Collections.emptyList(), Arrays.asList(user), "urn:doc");
+        Policy readPermission = policy("read-permission", Collections.emptyList(), Arrays.asList(read), Arrays.asList(user), null);
+        Policy writePermission = policy("write-permission", Collections.emptyList(), Arrays.asList(read, write), Arrays.asList(user), null);
+        Policy folderReadPermission = policy("folder-read-permission", Arrays.asList(folder), Arrays.asList(read), Arrays.asList(user), null);
+
+        PolicyIndex index = PolicyIndex.build(resourceServer, storeFactory(Arrays.asList(document, aliceDocument, folder),
+                Arrays.asList(user, documentPermission, typePermission, readPermission, writePermission, folderReadPermission)));
+
+        Assert.assertEquals(Arrays.asList("document-permission"), index.findByResource("document"));
+        Assert.assertEquals(Arrays.asList("folder-read-permission"), index.findByResource("folder"));
+        Assert.assertTrue(index.findByResource("alice-document").isEmpty());
+        Assert.assertEquals(Arrays.asList("type-permission"), index.findByResourceType("urn:doc"));
+
+        // policies with resources are not found by scope, same as in the stores
+        Assert.assertEquals(Arrays.asList("read-permission", "write-permission"), new ArrayList<>(index.findByScopeIds(Arrays.asList("read"))));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read-permission", "write-permission")), new HashSet<>(index.findByScopeIds(Arrays.asList("read", "write"))));
+        Assert.assertTrue(index.findByScopeIds(Arrays.asList("delete")).isEmpty());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read", "write")), index.getPolicy("document-permission").getScopes());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("document")), index.getPolicy("document-permission").getResources());
+        Assert.assertEquals(Arrays.asList("user"), index.getPolicy("document-permission").getAssociatedPolicies());
+        Assert.assertTrue(index.getPolicy("type-permission").getScopes().isEmpty());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read", "write")), index.getResourceScopes("document"));
+        // resources of other owners are not inherited by the type
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read", "write")), index.getResourceTypeScopes("urn:doc"));
+        Assert.assertTrue(index.getResourceTypeScopes("urn:folder").isEmpty());
+    }
+
+    @Test
+    public void testQuery() {
+        Policy user = policy("user", Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), null);
+        Policy documentPermission = policy("document-permission", Arrays.asList(document), Collections.emptyList(), Arrays.asList(user), null);
+        Policy readPermission = policy("read-permission", Collections.emptyList(), Arrays.asList(read), Arrays.asList(user), null);
+
+        ResourceStore resourceStore = proxy(ResourceStore.class, values("findById", document, "findByType", Arrays.asList(document, aliceDocument)));
+        PolicyStore policyStore = proxy(PolicyStore.class, values("findById", documentPermission, "findByResource", Arrays.asList(documentPermission),
+                "findByScopeIds", Arrays.asList(readPermission), "findByResourceType", Collections.emptyList()));
+        PolicyIndex index = PolicyIndex.query(resourceServer, proxy(StoreFactory.class, values("getResourceStore", resourceStore, "getPolicyStore", policyStore)));
+
+        Assert.assertEquals(Arrays.asList("document-permission"), index.findByResource("document"));
+        Assert.assertTrue(index.findByResourceType("urn:doc").isEmpty());
+        Assert.assertEquals(Arrays.asList("read-permission"), new ArrayList<>(index.findByScopeIds(Arrays.asList("read"))));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read", "write")), index.getPolicy("document-permission").getScopes());
+        Assert.assertEquals(Arrays.asList("user"), index.getPolicy("document-permission").getAssociatedPolicies());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read", "write")), index.getResourceScopes("document"));
+        // resources of other owners are not inherited by the type
+        Assert.assertEquals(new HashSet<>(Arrays.asList("read", "write")), index.getResourceTypeScopes("urn:doc"));
+    }
+
+    private StoreFactory storeFactory(List<Resource> resources, List<Policy> policies) {
+        ResourceStore resourceStore = proxy(ResourceStore.class, values("findByResourceServer", resources));
+        PolicyStore policyStore = proxy(PolicyStore.class, values("findByResourceServer", policies));
+        return proxy(StoreFactory.class, values("getResourceStore", resourceStore, "getPolicyStore", policyStore));
+    }
+
+    private static Scope scope(String id) {
+        return proxy(Scope.class, values("getId", id, "getName", id));
+    }
+
+    private static Resource resource(String id, String type, String owner, Scope... scopes) {
+        return proxy(Resource.class, values("getId", id, "getType", type, "getOwner", owner, "getScopes", Arrays.asList(scopes)));
+    }
+
+    private static Policy policy(String id, List<Resource> resources, List<Scope> scopes, List<Policy> associatedPolicies, String defaultResourceType) {
+        Map<String, String> config = new HashMap<>();
+        if (defaultResourceType != null) {
+            config.put("defaultResourceType", defaultResourceType);
+        }
+        return proxy(Policy.class, values("getId", id, "getName", id, "getResources", new HashSet<>(resources), "getScopes", new HashSet<>(scopes),
+                "getAssociatedPolicies", new HashSet<>(associatedPolicies), "getConfig", config));
+    }
+
+    private static Map<String, Object> values(Object... keyValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            values.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return values;
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> values) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, (proxy, method, args) -> {
+            if (method.getName().equals("equals")) return proxy == args[0];
+            if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+            return values.get(method.getName());
+        }));
+    }
+}
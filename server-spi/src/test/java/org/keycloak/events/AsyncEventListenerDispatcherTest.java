@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncEventListenerDispatcherTest {
+
+    @Test
+    public void testOrderPreservedPerUser() {
+        TestListener listener = new TestListener();
+        AsyncEventListenerDispatcher dispatcher = createDispatcher(listener, 4, 1000);
+
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        for (int i = 0; i < 200; i++) {
+            // Builder reuses the event
+            event.setUserId("user-" + (i % 10));
+            event.setTime(i);
+            dispatcher.onEvent(event);
+        }
+        dispatcher.close();
+
+        Assert.assertEquals(200, listener.events.size());
+        Assert.assertEquals(200, dispatcher.getDeliveredCount());
+        Map<String, Long> lastTimes = new HashMap<>();
+        for (Event delivered : listener.events) {
+            Long last = lastTimes.put(delivered.getUserId(), delivered.getTime());
+            Assert.assertTrue(last == null || last < delivered.getTime());
+        }
+    }
+
+    @Test
+    public void testBatchListener() {
+        TestBatchListener listener = new TestBatchListener();
+        AsyncEventListenerDispatcher dispatcher = createDispatcher(listener, 1, 1000);
+
+        for (int i = 0; i < 50; i++) {
+            dispatcher.onEvent(event("user", i));
+        }
+        AdminEvent adminEvent = new AdminEvent();
+        adminEvent.setOperationType(OperationType.UPDATE);
+        adminEvent.setRepresentation("{}");
+        adminEvent.setAuthDetails(new AuthDetails());
+        dispatcher.onEvent(adminEvent, false);
+        dispatcher.close();
+
+        Assert.assertEquals(50, listener.events.size());
+        for (int size : listener.batches) {
+            Assert.assertTrue(size <= 10);
+        }
+        Assert.assertEquals(1, listener.adminEvents.size());
+        Assert.assertNull(listener.adminEvents.get(0).getRepresentation());
+    }
+
+    @Test
+    public void testDroppedWhenFull() throws Exception {
+        TestListener listener = new TestListener();
+        listener.blocking = true;
+        AsyncEventListenerDispatcher dispatcher = createDispatcher(listener, 1, 5);
+
+        dispatcher.onEvent(event("user", 0));
+        Assert.assertTrue(listener.blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < 10; i++) {
+            dispatcher.onEvent(event("user", i));
+        }
+        listener.release.countDown();
+        dispatcher.close();
+
+        Assert.assertEquals(6, listener.events.size());
+        Assert.assertEquals(4, dispatcher.getDroppedCount());
+        Assert.assertEquals(6, dispatcher.getEnqueuedCount());
+
+        // Closed dispatcher doesn't accept events
+        dispatcher.onEvent(event("user", 10));
+        Assert.assertEquals(5, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testFailedListener() {
+        TestListener listener = new TestListener();
+        listener.failing = true;
+        AsyncEventListenerDispatcher dispatcher = createDispatcher(listener, 1, 100);
+
+        dispatcher.onEvent(event("user", 0));
+        dispatcher.onEvent(event("user", 1));
+        dispatcher.close();
+
+        Assert.assertEquals(2, dispatcher.getFailedCount());
+        Assert.assertEquals(0, dispatcher.getDeliveredCount());
+    }
+
+    private static AsyncEventListenerDispatcher createDispatcher(final EventListenerProvider listener, int workers, int queueSize) {
+        return new AsyncEventListenerDispatcher("test", null, workers, queueSize, 10) {
+
+            @Override
+            protected void deliver(List<QueuedEvent> events) {
+                deliver(listener, events);
+            }
+
+        };
+    }
+
+    private static Event event(String userId, long time) {
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setUserId(userId);
+        event.setTime(time);
+        return event;
+    }
+
+    private static class TestListener implements EventListenerProvider {
+
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean blocking;
+        private volatile boolean failing;
+
+        @Override
+        public void onEvent(Event event) {
+            if (blocking) {
+                blocking = false;
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (failing) {
+                throw new RuntimeException("Listener failed");
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class TestBatchListener implements BatchEventListenerProvider {
+
+        private final List<Event> events = new ArrayList<>();
+        private final List<AdminEvent> adminEvents = new ArrayList<>();
+        private final List<Integer> batches = new ArrayList<>();
+
+        @Override
+        public void onEvents(List<Event> events) {
+            this.events.addAll(events);
+            batches.add(events.size());
+        }
+
+        @Override
+        public void onAdminEvents(List<AdminEvent> events) {
+            adminEvents.addAll(events);
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onEvent(AdminEvent event, boolean includeRepresentation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncEventWriterTest {
+
+    private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+    private final List<AdminEvent> adminEvents = Collections.synchronizedList(new ArrayList<AdminEvent>());
+    private final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blocking;
+    private volatile boolean failing;
+
+    private File spillFile;
+
+    @Before
+    public void before() throws Exception {
+        spillFile = File.createTempFile("keycloak-events", ".spill");
+        spillFile.delete();
+    }
+
+    @After
+    public void after() {
+        spillFile.delete();
+        new File(spillFile.getPath() + ".replay").delete();
+    }
+
+    @Test
+    public void testEventsWrittenInBatches() {
+        AsyncEventWriter writer = createWriter(100, AsyncEventWriter.OverflowPolicy.BLOCK);
+
+        Event event = new Event();
+        event.setDetails(new HashMap<String, String>());
+        for (int i = 0; i < 50; i++) {
+            // Builder reuses the event
+            event.setType(EventType.LOGIN);
+            event.setTime(i);
+            event.getDetails().put("i", String.valueOf(i));
+            writer.onEvent(event);
+        }
+
+        AdminEvent adminEvent = adminEvent();
+        writer.onEvent(adminEvent, false);
+        writer.onEvent(adminEvent, true);
+
+        writer.close();
+
+        Assert.assertEquals(50, events.size());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, events.get(i).getTime());
+            Assert.assertEquals(String.valueOf(i), events.get(i).getDetails().get("i"));
+        }
+        Assert.assertEquals(2, adminEvents.size());
+        Assert.assertNull(adminEvents.get(0).getRepresentation());
+        Assert.assertEquals("{}", adminEvents.get(1).getRepresentation());
+
+        Assert.assertEquals(52, writer.getWrittenCount());
+        Assert.assertEquals(batches.size(), writer.getBatchCount());
+        for (int batch : batches) {
+            Assert.assertTrue(batch <= 10);
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        AsyncEventWriter writer = createWriter(5, AsyncEventWriter.OverflowPolicy.DROP);
+        fillWhileBlocked(writer, 10);
+        release.countDown();
+
+        writer.close();
+        Assert.assertEquals(6, events.size());
+        Assert.assertEquals(4, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testSpillWhenFull() throws Exception {
+        AsyncEventWriter writer = createWriter(5, AsyncEventWriter.OverflowPolicy.SPILL);
+        fillWhileBlocked(writer, 10);
+        writer.onEvent(adminEvent(), true);
+        release.countDown();
+        Assert.assertEquals(5, writer.getSpilledCount());
+        Assert.assertTrue(spillFile.exists());
+
+        // Spilled events are written once the queue is empty
+        long timeout = System.currentTimeMillis() + 10000;
+        while (writer.getWrittenCount() < 11 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        writer.close();
+
+        Assert.assertEquals(10, events.size());
+        Assert.assertEquals(1, adminEvents.size());
+        Assert.assertEquals("realm", adminEvents.get(0).getAuthDetails().getRealmId());
+        Assert.assertFalse(spillFile.exists());
+        Assert.assertFalse(new File(spillFile.getPath() + ".replay").exists());
+    }
+
+    @Test
+    public void testFailedBatchSpilled() throws Exception {
+        AsyncEventWriter writer = createWriter(100, AsyncEventWriter.OverflowPolicy.SPILL);
+        failing = true;
+        for (int i = 0; i < 3; i++) {
+            writer.onEvent(event(i));
+        }
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (writer.getSpilledCount() < 3 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(3, writer.getSpilledCount());
+
+        // Retried once the store is available
+        failing = false;
+        timeout = System.currentTimeMillis() + 10000;
+        while (writer.getWrittenCount() < 3 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        writer.close();
+
+        Assert.assertEquals(3, events.size());
+        Assert.assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void testSpilledOnClose() throws Exception {
+        final AsyncEventWriter writer = createWriter(100, AsyncEventWriter.OverflowPolicy.DROP);
+        blocking = true;
+        writer.onEvent(event(0));
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        writer.onEvent(event(1));
+        writer.onEvent(event(2));
+
+        // Events fail to be written when the writer is being closed
+        Thread closing = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                writer.close();
+            }
+
+        });
+        closing.start();
+        Thread.sleep(200);
+        failing = true;
+        release.countDown();
+        closing.join(10000);
+
+        Assert.assertTrue(events.isEmpty());
+        Assert.assertEquals(3, writer.getSpilledCount());
+
+        // Written by the next writer
+        failing = false;
+        AsyncEventWriter next = createWriter(100, AsyncEventWriter.OverflowPolicy.DROP);
+        long timeout = System.currentTimeMillis() + 10000;
+        while (next.getWrittenCount() < 3 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        next.close();
+        Assert.assertEquals(3, events.size());
+    }
+
+    // First event blocks the writer thread, so the others stay in the queue
+    private void fillWhileBlocked(AsyncEventWriter writer, int count) throws Exception {
+        blocking = true;
+        writer.onEvent(event(0));
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < count; i++) {
+            writer.onEvent(event(i));
+        }
+    }
+
+    private AsyncEventWriter createWriter(int queueSize, AsyncEventWriter.OverflowPolicy overflowPolicy) {
+        return new AsyncEventWriter("test", queueSize, 10, overflowPolicy, spillFile, new AsyncEventWriter.BatchWriter() {
+
+            @Override
+            public void write(List<Event> batchEvents, List<AdminEvent> batchAdminEvents) {
+                if (blocking) {
+                    blocked.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    blocking = false;
+                }
+                if (failing) {
+                    throw new RuntimeException("Store not available");
+                }
+                events.addAll(batchEvents);
+                adminEvents.addAll(batchAdminEvents);
+                batches.add(batchEvents.size() + batchAdminEvents.size());
+            }
+
+        });
+    }
+
+    private static Event event(int time) {
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setTime(time);
+        return event;
+    }
+
+    private static AdminEvent adminEvent() {
+        AdminEvent adminEvent = new AdminEvent();
+        adminEvent.setOperationType(OperationType.CREATE);
+        adminEvent.setRepresentation("{}");
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setRealmId("realm");
+        adminEvent.setAuthDetails(authDetails);
+        return adminEvent;
+    }
+}
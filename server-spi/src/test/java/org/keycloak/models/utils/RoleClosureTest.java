@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.RoleContainerModel;
+import org.keycloak.models.RoleModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class RoleClosureTest {
+
+    @Test
+    public void testHasRole() {
+        List<RoleModel> roles = roles(5);
+        composite(roles, 0, 1, 2);
+        composite(roles, 1, 3);
+        composite(roles, 3, 1);
+
+        RoleClosure closure = new RoleClosure(new CachingLookup());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r0", "r1", "r2", "r3")), closure.getClosure(roles.get(0)));
+        Assert.assertTrue(closure.hasRole(roles.get(0), roles.get(0)));
+        Assert.assertTrue(closure.hasRole(roles.get(0), roles.get(3)));
+        Assert.assertTrue(closure.hasRole(roles.get(3), roles.get(1)));
+        Assert.assertTrue(closure.hasRole(roles.get(1), roles.get(1)));
+        Assert.assertFalse(closure.hasRole(roles.get(1), roles.get(0)));
+        Assert.assertFalse(closure.hasRole(roles.get(2), roles.get(0)));
+        Assert.assertFalse(closure.hasRole(roles.get(4), roles.get(0)));
+    }
+
+    @Test
+    public void testComputeMergesCachedClosures() {
+        List<RoleModel> roles = roles(4);
+        composite(roles, 0, 1);
+        composite(roles, 1, 2);
+
+        // cached closure of r1 is used as is, so r2 isn't walked again
+        Map<String, Set<String>> cached = new HashMap<>();
+        cached.put("r1", new HashSet<>(Arrays.asList("r1", "r3")));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r0", "r1", "r3")), RoleClosure.compute(roles.get(0), new MapLookup(cached)));
+    }
+
+    @Test
+    public void testApplyScopeStopsAtAvailableRole() {
+        List<RoleModel> roles = roles(4);
+        // scope r0 -> r1 -> r2, user has r1 -> r2 and r3
+        composite(roles, 0, 1);
+        composite(roles, 1, 2);
+
+        RoleClosure closure = new RoleClosure(new CachingLookup());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(roles.get(1))), closure.applyScope(Arrays.asList(roles.get(1), roles.get(3)), Arrays.asList(roles.get(0))));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(roles.get(2))), closure.applyScope(Arrays.asList(roles.get(2)), Arrays.asList(roles.get(0))));
+        Assert.assertTrue(closure.applyScope(Arrays.asList(roles.get(3)), Arrays.asList(roles.get(0))).isEmpty());
+    }
+
+    @Test
+    public void testApplyScopeWithoutClosure() {
+        List<RoleModel> roles = roles(2);
+        composite(roles, 0, 1);
+
+        RoleClosure closure = new RoleClosure(new MapLookup(new HashMap<String, Set<String>>()));
+        Assert.assertNull(closure.applyScope(Arrays.asList(roles.get(1)), Arrays.asList(roles.get(0))));
+        Assert.assertTrue(closure.hasRole(roles.get(0), roles.get(1)));
+    }
+
+    @Test
+    public void testApplyScopeSameAsWalkingComposites() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            List<RoleModel> roles = randomGraph(random, 60, 3);
+            RoleClosure closure = new RoleClosure(new CachingLookup());
+            List<RoleModel> roleMappings = pick(random, roles, 8);
+            List<RoleModel> scopeMappings = pick(random, roles, 8);
+
+            Assert.assertEquals(walk(roleMappings, scopeMappings), closure.applyScope(roleMappings, scopeMappings));
+            for (RoleModel role : roleMappings) {
+                for (RoleModel other : roles) {
+                    Assert.assertEquals(role.hasRole(other), closure.hasRole(role, other));
+                }
+            }
+        }
+    }
+
+    private static class MapLookup implements RoleClosure.Lookup {
+        protected final Map<String, Set<String>> closures;
+
+        private MapLookup(Map<String, Set<String>> closures) {
+            this.closures = closures;
+        }
+
+        @Override
+        public Set<String> getClosure(RoleModel role) {
+            return closures.get(role.getId());
+        }
+    }
+
+    // Computes closures the same way as the realm cache does
+    private static class CachingLookup extends MapLookup {
+
+        private CachingLookup() {
+            super(new HashMap<String, Set<String>>());
+        }
+
+        @Override
+        public Set<String> getClosure(RoleModel role) {
+            Set<String> closure = closures.get(role.getId());
+            if (closure == null) {
+                closure = RoleClosure.compute(role, new MapLookup(closures));
+                closures.put(role.getId(), closure);
+            }
+            return closure;
+        }
+    }
+
+    // Same as TokenManager.getAccess without closure
+    private static Set<RoleModel> walk(List<RoleModel> roleMappings, List<RoleModel> scopeMappings) {
+        Set<RoleModel> requested = new HashSet<>();
+        for (RoleModel role : roleMappings) {
+            for (RoleModel scope : scopeMappings) {
+                applyScope(role, scope, new HashSet<>(), requested);
+            }
+        }
+        return requested;
+    }
+
+    private static void applyScope(RoleModel role, RoleModel scope, Set<RoleModel> visited, Set<RoleModel> requested) {
+        if (visited.contains(scope)) return;
+        visited.add(scope);
+        if (role.hasRole(scope)) {
+            requested.add(scope);
+            return;
+        }
+        if (!scope.isComposite()) return;
+
+        for (RoleModel contained : scope.getComposites()) {
+            applyScope(role, contained, visited, requested);
+        }
+    }
+
+    private static List<RoleModel> randomGraph(Random random, int size, int maxComposites) {
+        List<RoleModel> roles = roles(size);
+        for (RoleModel role : roles) {
+            // about third of the roles is composite
+            if (random.nextInt(3) != 0) continue;
+            int composites = 1 + random.nextInt(maxComposites);
+            for (int i = 0; i < composites; i++) {
+                role.addCompositeRole(roles.get(random.nextInt(size)));
+            }
+        }
+        return roles;
+    }
+
+    private static List<RoleModel> pick(Random random, List<RoleModel> roles, int count) {
+        List<RoleModel> picked = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            picked.add(roles.get(random.nextInt(roles.size())));
+        }
+        return picked;
+    }
+
+    private static List<RoleModel> roles(int count) {
+        List<RoleModel> roles = new ArrayList<>();
+        for (int i = 0; i < count; i++) roles.add(new TestRole("r" + i));
+        return roles;
+    }
+
+    private static void composite(List<RoleModel> roles, int role, int... composites) {
+        for (int composite : composites) {
+            roles.get(role).addCompositeRole(roles.get(composite));
+        }
+    }
+
+    private static class TestRole implements RoleModel {
+        private final String id;
+        private final Set<RoleModel> composites = new HashSet<>();
+
+        private TestRole(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getName() {
+            return id;
+        }
+
+        @Override
+        public String getDescription() {
+            return null;
+        }
+
+        @Override
+        public void setDescription(String description) {
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void setName(String name) {
+        }
+
+        @Override
+        public boolean isScopeParamRequired() {
+            return false;
+        }
+
+        @Override
+        public void setScopeParamRequired(boolean scopeParamRequired) {
+        }
+
+        @Override
+        public boolean isComposite() {
+            return !composites.isEmpty();
+        }
+
+        @Override
+        public void addCompositeRole(RoleModel role) {
+            composites.add(role);
+        }
+
+        @Override
+        public void removeCompositeRole(RoleModel role) {
+            composites.remove(role);
+        }
+
+        @Override
+        public Set<RoleModel> getComposites() {
+            return composites;
+        }
+
+        @Override
+        public boolean isClientRole() {
+            return false;
+        }
+
+        @Override
+        public String getContainerId() {
+            return null;
+        }
+
+        @Override
+        public RoleContainerModel getContainer() {
+            return null;
+        }
+
+        @Override
+        public boolean hasRole(RoleModel role) {
+            if (this.equals(role)) return true;
+            if (!isComposite()) return false;
+            return KeycloakModelUtils.searchFor(role, this, new HashSet<>());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RoleModel && ((RoleModel) o).getId().equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+}
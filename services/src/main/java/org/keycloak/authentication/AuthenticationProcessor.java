@@ -46,11 +46,13 @@ import org.keycloak.services.ErrorPage;
 import org.keycloak.services.ServicesLogger;
 import org.keycloak.services.managers.AuthenticationManager;
 import org.keycloak.services.managers.BruteForceProtector;
+import org.keycloak.ratelimit.LoginRateLimiter;
 import org.keycloak.services.managers.ClientSessionCode;
 import org.keycloak.services.messages.Messages;
 import org.keycloak.services.resources.LoginActionsService;
 import org.keycloak.services.util.CacheControlUtil;
 
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.net.URI;
@@ -77,6 +79,7 @@ public class AuthenticationProcessor {
     protected String flowPath;
     protected boolean browserFlow;
     protected BruteForceProtector protector;
+    protected LoginRateLimiter rateLimiter;
     protected boolean oneActionWasSuccessful;
     /**
      * This could be an error message forwarded from another authenticator
@@ -112,6 +115,13 @@ public class AuthenticationProcessor {
         return protector;
     }
 
+    public LoginRateLimiter getRateLimiter() {
+        if (rateLimiter == null) {
+            rateLimiter = session.getProvider(LoginRateLimiter.class);
+        }
+        return rateLimiter;
+    }
+
     public RealmModel getRealm() {
         return realm;
     }
@@ -538,6 +548,8 @@ public class AuthenticationProcessor {
     }
 
     public void logFailure() {
+        // counted for the source even if the user doesn't exist
+        getRateLimiter().failedLogin(session, realm, clientSession.getClient(), connection);
         if (realm.isBruteForceProtected()) {
             String username = clientSession.getNote(AbstractUsernameFormAuthenticator.ATTEMPTED_USERNAME);
             // todo need to handle non form failures
@@ -559,7 +571,15 @@ public class AuthenticationProcessor {
     }
 
     public Response handleBrowserException(Exception failure) {
-        if (failure instanceof AuthenticationFlowException) {
+        if (failure instanceof TooManyLoginFailuresException) {
+            // Event error was already sent by checkRateLimit
+            return ((TooManyLoginFailuresException) failure).getResponse();
+        } else if (failure instanceof ServiceUnavailableException) {
+            // Overloaded, for example password hashing is saturated. Response contains Retry-After
+            logger.debug("Authentication rejected, service unavailable");
+            event.error(Errors.SERVICE_UNAVAILABLE);
+            return ((ServiceUnavailableException) failure).getResponse();
+        } else if (failure instanceof AuthenticationFlowException) {
             AuthenticationFlowException e = (AuthenticationFlowException) failure;
             if (e.getError() == AuthenticationFlowError.INVALID_USER) {
                 ServicesLogger.LOGGER.failedAuthentication(e);
@@ -754,6 +774,7 @@ public class AuthenticationProcessor {
         if (authType != null) {
             event.detail(Details.AUTH_TYPE, authType);
         }
+        checkRateLimit();
 
         AuthenticationFlow authenticationFlow = createFlowExecution(this.flowId, model);
         Response challenge = authenticationFlow.processAction(execution);
@@ -786,6 +807,7 @@ public class AuthenticationProcessor {
         if (authType != null) {
             event.detail(Details.AUTH_TYPE, authType);
         }
+        checkRateLimit();
         UserModel authUser = clientSession.getAuthenticatedUser();
         validateUser(authUser);
         AuthenticationFlow authenticationFlow = createFlowExecution(this.flowId, null);
@@ -797,6 +819,18 @@ public class AuthenticationProcessor {
         return challenge;
     }
 
+    /**
+     * Rejects the attempt before any authenticator runs, if there were too many failed logins from the client IP or for the client.
+     */
+    public void checkRateLimit() {
+        int retryAfter = getRateLimiter().checkAllowed(session, realm, clientSession.getClient(), connection);
+        if (retryAfter > 0) {
+            logger.debugv("Too many login failures, retry after {0} seconds", retryAfter);
+            event.error(Errors.TOO_MANY_LOGIN_FAILURES);
+            throw new TooManyLoginFailuresException(retryAfter);
+        }
+    }
+
     /**
      * Marks that at least one action was successful
      *
@@ -833,7 +867,7 @@ public class AuthenticationProcessor {
         if (remember) {
             event.detail(Details.REMEMBER_ME, "true");
         }
-        TokenManager.attachClientSession(userSession, clientSession);
+        TokenManager.attachClientSession(session, userSession, clientSession);
         event.user(userSession.getUser())
                 .detail(Details.USERNAME, username)
                 .session(userSession);
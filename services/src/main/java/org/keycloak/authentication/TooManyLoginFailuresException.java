@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.authentication;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Login attempt rejected by {@link org.keycloak.ratelimit.LoginRateLimiter}. Response is 429 Too Many Requests
+ * with Retry-After.
+ */
+public class TooManyLoginFailuresException extends ClientErrorException {
+
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    public TooManyLoginFailuresException(int retryAfter) {
+        super(Response.status(TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, retryAfter).build());
+    }
+}
@@ -18,21 +18,36 @@
 
 package org.keycloak.authorization;
 
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.keycloak.Config;
+import org.keycloak.authorization.common.DecisionCache;
 import org.keycloak.authorization.store.StoreFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.cache.authorization.CachedStoreFactoryProvider;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Igor</a>
  */
 public class DefaultAuthorizationProviderFactory implements AuthorizationProviderFactory {
 
-    private Executor scheduler;
+    private static final Logger logger = Logger.getLogger(DefaultAuthorizationProviderFactory.class);
+
+    private ThreadPoolExecutor executor;
+    private Executor parallelExecutor;
+    private int partitionSize;
+    private DecisionCache decisionCache;
 
     @Override
     public AuthorizationProvider create(KeycloakSession session) {
@@ -41,15 +56,53 @@ public class DefaultAuthorizationProviderFactory implements AuthorizationProvide
 
     @Override
     public void init(Config.Scope config) {
-        //TODO: user-defined configuration
-//        Executor executor = Executors.newWorkStealingPool();
-//        this.scheduler = command -> {
-//            Map<Class<?>, Object> contextDataMap = ResteasyProviderFactory.getContextDataMap();
-//            executor.execute(() -> {
-//                ResteasyProviderFactory.pushContextDataMap(contextDataMap);
-//                command.run();
-//            });
-//        };
+        int decisionCacheMaxEntries = config.getInt("decisionCacheMaxEntries", 10000);
+
+        if (decisionCacheMaxEntries > 0) {
+            this.decisionCache = new DecisionCache(decisionCacheMaxEntries, config.getInt("decisionCacheLifespan", 300));
+        }
+
+        int threads = config.getInt("evaluationThreads", Runtime.getRuntime().availableProcessors());
+        int queueSize = config.getInt("evaluationQueueSize", 1000);
+        this.partitionSize = config.getInt("evaluationPartitionSize", 50);
+
+        if (threads <= 0) {
+            logger.debug("Parallel evaluation of permissions is disabled");
+            return;
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "authorization-evaluation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        // When the queue is full, the partition is evaluated by the request thread, which slows down the requests instead of failing them
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory, (runnable, executor) -> runnable.run());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        // Workers create their own sessions, but those still read the request (for example the client connection) from the Resteasy context
+        this.parallelExecutor = command -> {
+            Map<Class<?>, Object> contextDataMap = new HashMap<>(ResteasyProviderFactory.getContextDataMap());
+            this.executor.execute(() -> {
+                ResteasyProviderFactory.pushContextDataMap(contextDataMap);
+                try {
+                    command.run();
+                } finally {
+                    ResteasyProviderFactory.removeContextDataLevel();
+                }
+            });
+        };
+
+        logger.debugf("Parallel evaluation of permissions uses %d threads, partitions of %d permissions", threads, this.partitionSize);
+    }
+
+    /**
+     * @return cache of the decisions made for entitlement and RPT requests, or <code>null</code> if disabled
+     */
+    public DecisionCache getDecisionCache() {
+        return decisionCache;
     }
 
     @Override
@@ -58,7 +111,9 @@ public class DefaultAuthorizationProviderFactory implements AuthorizationProvide
 
     @Override
     public void close() {
-
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
     }
 
     @Override
@@ -74,6 +129,6 @@ public class DefaultAuthorizationProviderFactory implements AuthorizationProvide
             storeFactory = session.getProvider(StoreFactory.class);
         }
 
-        return new AuthorizationProvider(session, realm, storeFactory);
+        return new AuthorizationProvider(session, realm, storeFactory, Runnable::run, this.parallelExecutor, this.partitionSize);
     }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import org.keycloak.OAuthErrorException;
 import org.keycloak.authorization.AuthorizationProvider;
 import org.keycloak.authorization.authorization.representation.AuthorizationRequest;
 import org.keycloak.authorization.authorization.representation.AuthorizationResponse;
+import org.keycloak.authorization.common.DecisionCache;
 import org.keycloak.authorization.common.KeycloakEvaluationContext;
 import org.keycloak.authorization.common.KeycloakIdentity;
 import org.keycloak.authorization.model.Resource;
@@ -106,27 +107,23 @@ public class AuthorizationTokenService {
         }
 
         PermissionTicket ticket = verifyPermissionTicket(authorizationRequest);
+        List<ResourcePermission> permissions = createPermissions(ticket, authorizationRequest, authorization);
+        ResourceServer resourceServer = authorization.getStoreFactory().getResourceServerStore().findById(ticket.getResourceServerId());
+        DecisionCache.Lookup decision = DecisionCache.lookup(authorization, resourceServer, identity, DecisionCache.permissionsKey(permissions));
+        List<Permission> cached = decision.get();
+
+        if (cached != null) {
+            resume(cached, identity, asyncResponse);
+            return;
+        }
 
-        authorization.evaluators().from(createPermissions(ticket, authorizationRequest, authorization), evaluationContext).evaluate(new DecisionResultCollector() {
+        authorization.evaluators().from(permissions, evaluationContext).evaluate(new DecisionResultCollector() {
             @Override
             public void onComplete(List<Result> results) {
                 List<Permission> entitlements = Permissions.allPermits(results, authorization);
 
-                if (entitlements.isEmpty()) {
-                    HashMap<Object, Object> error = new HashMap<>();
-
-                    error.put(OAuth2Constants.ERROR, "not_authorized");
-
-                    asyncResponse.resume(Cors.add(httpRequest, Response.status(Status.FORBIDDEN)
-                            .entity(error))
-                            .allowedOrigins(identity.getAccessToken())
-                            .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
-                } else {
-                    AuthorizationResponse response = new AuthorizationResponse(createRequestingPartyToken(entitlements, identity.getAccessToken()));
-                    asyncResponse.resume(Cors.add(httpRequest, Response.status(Status.CREATED).entity(response)).allowedOrigins(identity.getAccessToken())
-                            .allowedMethods("POST")
-                            .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
-                }
+                decision.put(entitlements);
+                resume(entitlements, identity, asyncResponse);
             }
 
             @Override
@@ -136,6 +133,24 @@ public class AuthorizationTokenService {
         });
     }
 
+    private void resume(List<Permission> entitlements, KeycloakIdentity identity, AsyncResponse asyncResponse) {
+        if (entitlements.isEmpty()) {
+            HashMap<Object, Object> error = new HashMap<>();
+
+            error.put(OAuth2Constants.ERROR, "not_authorized");
+
+            asyncResponse.resume(Cors.add(httpRequest, Response.status(Status.FORBIDDEN)
+                    .entity(error))
+                    .allowedOrigins(identity.getAccessToken())
+                    .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
+        } else {
+            AuthorizationResponse response = new AuthorizationResponse(createRequestingPartyToken(entitlements, identity.getAccessToken()));
+            asyncResponse.resume(Cors.add(httpRequest, Response.status(Status.CREATED).entity(response)).allowedOrigins(identity.getAccessToken())
+                    .allowedMethods("POST")
+                    .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
+        }
+    }
+
     private List<ResourcePermission> createPermissions(PermissionTicket ticket, AuthorizationRequest request, AuthorizationProvider authorization) {
         StoreFactory storeFactory = authorization.getStoreFactory();
         Map<String, Set<String>> permissionsToEvaluate = new HashMap<>();
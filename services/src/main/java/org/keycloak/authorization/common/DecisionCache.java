@@ -0,0 +1,307 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.authorization.common;
+
+import org.jboss.logging.Logger;
+import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.DefaultAuthorizationProviderFactory;
+import org.keycloak.authorization.identity.Identity;
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.model.Scope;
+import org.keycloak.authorization.permission.ResourcePermission;
+import org.keycloak.authorization.policy.evaluation.PolicyIndex;
+import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
+import org.keycloak.authorization.store.PolicyStore;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.common.util.Time;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Caches the permissions granted to an identity by the policies of a resource server, so repeated entitlement and RPT requests
+ * don't evaluate all the policies again. Decisions are keyed by the resource server, the identity, a fingerprint of the claims of the
+ * identity (roles and other claims, except those changing with each token) and the requested permissions.
+ *
+ * <p>Each decision is bound to the {@link PolicyIndex#getRevision() revision} of the policy index it was made with. The index is
+ * rebuilt by the cache layer whenever any policy, resource or scope of the resource server changes, so decisions made before the
+ * change are never returned. Decisions are only cached if all the policies of the resource server are
+ * {@link PolicyProviderFactory#isDecisionCacheable(Policy) cacheable}.
+ */
+public class DecisionCache {
+
+    private static final Logger logger = Logger.getLogger(DecisionCache.class);
+
+    /**
+     * Permissions key of all the permissions of the identity, as obtained by {@code Permissions.all}.
+     */
+    public static final String ALL_PERMISSIONS = "*";
+
+    // Claims, which differ for each token of the same identity
+    private static final Set<String> VOLATILE_CLAIMS = new HashSet<>(Arrays.asList("jti", "exp", "iat", "nbf", "auth_time", "session_state", "nonce", "authorization"));
+
+    private final long lifespan;
+    private final Map<String, Decision> decisions;
+    private final Map<String, Revision> revisions;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong uncacheable = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of cached decisions, least recently used are evicted first
+     * @param lifespan lifespan of a decision in seconds
+     */
+    public DecisionCache(int maxEntries, int lifespan) {
+        this.lifespan = lifespan * 1000L;
+        this.decisions = Collections.synchronizedMap(new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        // bounded too, so revisions of removed resource servers don't stay forever. Evicted revision is just checked again
+        this.revisions = Collections.synchronizedMap(new LinkedHashMap<String, Revision>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Revision> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Starts lookup of a decision. Lookup returned when caching is disabled or not possible for the resource server never finds anything.
+     *
+     * @param permissionsKey the requested permissions, either {@link #ALL_PERMISSIONS} or {@link #permissionsKey(List)}
+     */
+    public static Lookup lookup(AuthorizationProvider authorization, ResourceServer resourceServer, Identity identity, String permissionsKey) {
+        ProviderFactory factory = authorization.getKeycloakSession().getKeycloakSessionFactory().getProviderFactory(AuthorizationProvider.class);
+        DecisionCache cache = factory instanceof DefaultAuthorizationProviderFactory ? ((DefaultAuthorizationProviderFactory) factory).getDecisionCache() : null;
+
+        if (cache == null || resourceServer == null) {
+            return new Lookup(null, null, null);
+        }
+
+        return cache.createLookup(authorization, resourceServer, identity, permissionsKey);
+    }
+
+    /**
+     * @return key identifying the resources and scopes of the permissions, regardless of their order
+     */
+    public static String permissionsKey(List<ResourcePermission> permissions) {
+        List<String> keys = new ArrayList<>();
+
+        for (ResourcePermission permission : permissions) {
+            List<String> scopes = new ArrayList<>();
+
+            for (Scope scope : permission.getScopes()) {
+                scopes.add(scope.getId());
+            }
+
+            Collections.sort(scopes);
+            keys.add((permission.getResource() == null ? "" : permission.getResource().getId()) + ":" + scopes);
+        }
+
+        Collections.sort(keys);
+
+        return keys.toString();
+    }
+
+    private Lookup createLookup(AuthorizationProvider authorization, ResourceServer resourceServer, Identity identity, String permissionsKey) {
+        PolicyIndex index = authorization.getStoreFactory().getPolicyIndex(resourceServer);
+
+        // without cached index, changes of the policies can't be detected
+        if (index == null || !isCacheable(authorization, index)) {
+            uncacheable.incrementAndGet();
+            return new Lookup(null, null, null);
+        }
+
+        String key = resourceServer.getId() + "/" + identity.getId() + "/" + digest(fingerprint(identity) + "/" + permissionsKey);
+
+        return new Lookup(this, key, index.getRevision());
+    }
+
+    private boolean isCacheable(AuthorizationProvider authorization, PolicyIndex index) {
+        Revision revision = revisions.get(index.getResourceServerId());
+
+        if (revision != null && revision.revision.equals(index.getRevision())) {
+            return revision.cacheable;
+        }
+
+        PolicyStore policyStore = authorization.getStoreFactory().getPolicyStore();
+        boolean cacheable = true;
+
+        for (String policyId : index.getPolicyIds()) {
+            Policy policy = policyStore.findById(policyId);
+            PolicyProviderFactory providerFactory = policy == null ? null : authorization.getProviderFactory(policy.getType());
+
+            if (providerFactory == null || !providerFactory.isDecisionCacheable(policy)) {
+                logger.debugf("Decisions of resource server %s are not cached, policy %s is not cacheable", index.getResourceServerId(), policyId);
+                cacheable = false;
+                break;
+            }
+        }
+
+        revisions.put(index.getResourceServerId(), new Revision(index.getRevision(), cacheable));
+
+        return cacheable;
+    }
+
+    private static String fingerprint(Identity identity) {
+        Map<String, List<String>> claims = new TreeMap<>();
+
+        for (Map.Entry<String, Collection<String>> entry : identity.getAttributes().toMap().entrySet()) {
+            if (VOLATILE_CLAIMS.contains(entry.getKey())) {
+                continue;
+            }
+
+            List<String> values = new ArrayList<>(entry.getValue());
+
+            Collections.sort(values);
+            claims.put(entry.getKey(), values);
+        }
+
+        return claims.toString();
+    }
+
+    private static String digest(String value) {
+        try {
+            return Base64Url.encode(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of lookups for resource servers with policies, which are not cacheable
+     */
+    public long getUncacheableCount() {
+        return uncacheable.get();
+    }
+
+    /**
+     * @return ratio of hits to all lookups of cacheable decisions
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    public static class Lookup {
+
+        private final DecisionCache cache;
+        private final String key;
+        private final String revision;
+
+        private Lookup(DecisionCache cache, String key, String revision) {
+            this.cache = cache;
+            this.key = key;
+            this.revision = revision;
+        }
+
+        /**
+         * @return the cached permissions or <code>null</code> if there is no valid decision
+         */
+        public List<Permission> get() {
+            if (cache == null) {
+                return null;
+            }
+
+            Decision decision = cache.decisions.get(key);
+
+            if (decision != null && decision.revision.equals(revision) && Time.currentTimeMillis() < decision.expiration) {
+                cache.hits.incrementAndGet();
+                return decision.permissions;
+            }
+
+            if (decision != null) {
+                cache.decisions.remove(key);
+            }
+
+            cache.misses.incrementAndGet();
+
+            if (logger.isTraceEnabled()) {
+                logger.tracef("Decision cache miss, hit rate %.2f", cache.getHitRate());
+            }
+
+            return null;
+        }
+
+        /**
+         * Caches the granted permissions. Those are bound to the revision obtained before the evaluation, so a decision made while
+         * the resource server changes is not found by later lookups.
+         */
+        public void put(List<Permission> permissions) {
+            if (cache != null) {
+                cache.decisions.put(key, new Decision(revision, Collections.unmodifiableList(new ArrayList<>(permissions)), Time.currentTimeMillis() + cache.lifespan));
+            }
+        }
+    }
+
+    private static class Decision {
+
+        private final String revision;
+        private final List<Permission> permissions;
+        private final long expiration;
+
+        private Decision(String revision, List<Permission> permissions, long expiration) {
+            this.revision = revision;
+            this.permissions = permissions;
+            this.expiration = expiration;
+        }
+    }
+
+    private static class Revision {
+
+        private final String revision;
+        private final boolean cacheable;
+
+        private Revision(String revision, boolean cacheable) {
+            this.revision = revision;
+            this.cacheable = cacheable;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.jboss.resteasy.spi.HttpRequest;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.OAuthErrorException;
 import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.common.DecisionCache;
 import org.keycloak.authorization.common.KeycloakEvaluationContext;
 import org.keycloak.authorization.common.KeycloakIdentity;
 import org.keycloak.authorization.entitlement.representation.EntitlementRequest;
@@ -115,6 +116,13 @@ public class EntitlementService {
 
         StoreFactory storeFactory = authorization.getStoreFactory();
         ResourceServer resourceServer = storeFactory.getResourceServerStore().findByClient(client.getId());
+        DecisionCache.Lookup decision = DecisionCache.lookup(authorization, resourceServer, identity, DecisionCache.ALL_PERMISSIONS);
+        List<Permission> cached = decision.get();
+
+        if (cached != null) {
+            resume(cached, identity, asyncResponse);
+            return;
+        }
 
         authorization.evaluators().from(Permissions.all(resourceServer, identity, authorization), new KeycloakEvaluationContext(this.authorization.getKeycloakSession())).evaluate(new DecisionResultCollector() {
 
@@ -127,18 +135,8 @@ public class EntitlementService {
             protected void onComplete(List<Result> results) {
                 List<Permission> entitlements = Permissions.allPermits(results, authorization);
 
-                if (entitlements.isEmpty()) {
-                    HashMap<Object, Object> error = new HashMap<>();
-
-                    error.put(OAuth2Constants.ERROR, "not_authorized");
-
-                    asyncResponse.resume(Cors.add(request, Response.status(Status.FORBIDDEN)
-                            .entity(error))
-                            .allowedOrigins(identity.getAccessToken())
-                            .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
-                } else {
-                    asyncResponse.resume(Cors.add(request, Response.ok().entity(new EntitlementResponse(createRequestingPartyToken(entitlements)))).allowedOrigins(identity.getAccessToken()).allowedMethods("GET").exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
-                }
+                decision.put(entitlements);
+                resume(entitlements, identity, asyncResponse);
             }
         });
     }
@@ -168,8 +166,16 @@ public class EntitlementService {
 
         StoreFactory storeFactory = authorization.getStoreFactory();
         ResourceServer resourceServer = storeFactory.getResourceServerStore().findByClient(client.getId());
+        List<ResourcePermission> permissions = createPermissions(entitlementRequest, resourceServer, authorization);
+        DecisionCache.Lookup decision = DecisionCache.lookup(authorization, resourceServer, identity, DecisionCache.permissionsKey(permissions));
+        List<Permission> cached = decision.get();
+
+        if (cached != null) {
+            resume(cached, identity, asyncResponse);
+            return;
+        }
 
-        authorization.evaluators().from(createPermissions(entitlementRequest, resourceServer, authorization), new KeycloakEvaluationContext(this.authorization.getKeycloakSession())).evaluate(new DecisionResultCollector() {
+        authorization.evaluators().from(permissions, new KeycloakEvaluationContext(this.authorization.getKeycloakSession())).evaluate(new DecisionResultCollector() {
 
             @Override
             public void onError(Throwable cause) {
@@ -180,22 +186,27 @@ public class EntitlementService {
             protected void onComplete(List<Result> results) {
                 List<Permission> entitlements = Permissions.allPermits(results, authorization);
 
-                if (entitlements.isEmpty()) {
-                    HashMap<Object, Object> error = new HashMap<>();
-
-                    error.put(OAuth2Constants.ERROR, "not_authorized");
-
-                    asyncResponse.resume(Cors.add(request, Response.status(Status.FORBIDDEN)
-                            .entity(error))
-                            .allowedOrigins(identity.getAccessToken())
-                            .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
-                } else {
-                    asyncResponse.resume(Cors.add(request, Response.ok().entity(new EntitlementResponse(createRequestingPartyToken(entitlements)))).allowedOrigins(identity.getAccessToken()).allowedMethods("GET").exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
-                }
+                decision.put(entitlements);
+                resume(entitlements, identity, asyncResponse);
             }
         });
     }
 
+    private void resume(List<Permission> entitlements, KeycloakIdentity identity, AsyncResponse asyncResponse) {
+        if (entitlements.isEmpty()) {
+            HashMap<Object, Object> error = new HashMap<>();
+
+            error.put(OAuth2Constants.ERROR, "not_authorized");
+
+            asyncResponse.resume(Cors.add(request, Response.status(Status.FORBIDDEN)
+                    .entity(error))
+                    .allowedOrigins(identity.getAccessToken())
+                    .exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
+        } else {
+            asyncResponse.resume(Cors.add(request, Response.ok().entity(new EntitlementResponse(createRequestingPartyToken(entitlements)))).allowedOrigins(identity.getAccessToken()).allowedMethods("GET").exposedHeaders(Cors.ACCESS_CONTROL_ALLOW_METHODS).build());
+        }
+    }
+
     private String createRequestingPartyToken(List<Permission> permissions) {
         AccessToken accessToken = Tokens.getAccessToken(this.authorization.getKeycloakSession());
         RealmModel realm = this.authorization.getKeycloakSession().getContext().getRealm();
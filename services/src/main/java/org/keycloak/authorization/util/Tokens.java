@@ -19,7 +19,6 @@
 package org.keycloak.authorization.util;
 
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.KeycloakContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
@@ -58,7 +57,7 @@ public class Tokens {
         try {
             JWSInput jws = new JWSInput(token);
             PublicKey publicKey = keycloakSession.keys().getPublicKey(realm, jws.getHeader().getKeyId());
-            return RSAProvider.verify(jws, publicKey);
+            return jws.verify(publicKey);
         } catch (Exception e) {
             throw new ErrorResponseException("invalid_signature", "Unexpected error while validating signature.", Status.INTERNAL_SERVER_ERROR);
         }
@@ -46,9 +46,21 @@ public class PasswordCredentialProvider implements CredentialProvider, Credentia
     private static final Logger logger = Logger.getLogger(PasswordCredentialProvider.class);
 
     protected KeycloakSession session;
+    protected PasswordHashingExecutor hashingExecutor;
+    protected VerifiedCredentialCache verifiedCredentialCache;
 
     public PasswordCredentialProvider(KeycloakSession session) {
+        this(session, null, null);
+    }
+
+    /**
+     * @param hashingExecutor executor for hashing of the passwords or null to hash on the calling thread
+     * @param verifiedCredentialCache cache of verified passwords or null if disabled
+     */
+    public PasswordCredentialProvider(KeycloakSession session, PasswordHashingExecutor hashingExecutor, VerifiedCredentialCache verifiedCredentialCache) {
         this.session = session;
+        this.hashingExecutor = hashingExecutor;
+        this.verifiedCredentialCache = verifiedCredentialCache;
     }
 
     protected UserCredentialStore getCredentialStore() {
@@ -95,7 +107,7 @@ public class PasswordCredentialProvider implements CredentialProvider, Credentia
         newPassword.setType(CredentialModel.PASSWORD);
         long createdDate = Time.currentTimeMillis();
         newPassword.setCreatedDate(createdDate);
-        hash.encode(cred.getValue(), policy, newPassword);
+        encode(hash, cred.getValue(), policy, newPassword);
         getCredentialStore().createCredential(realm, user, newPassword);
         session.getUserCache().evict(realm, user);
         return true;
@@ -177,32 +189,49 @@ public class PasswordCredentialProvider implements CredentialProvider, Credentia
             logger.debugv("No password cached or stored for user {0} ", user.getUsername());
             return false;
         }
+        int cacheTtl = verifiedCredentialCache != null ? realm.getAttribute(VerifiedCredentialCache.TTL_ATTRIBUTE, 0) : 0;
+        if (cacheTtl > 0 && verifiedCredentialCache.isVerified(password, cred.getValue())) {
+            return true;
+        }
         PasswordHashProvider hash = session.getProvider(PasswordHashProvider.class, password.getAlgorithm());
         if (hash == null) {
             logger.debugv("PasswordHashProvider {0} not found for user {1} ", password.getAlgorithm(), user.getUsername());
             return false;
         }
-        if (!hash.verify(cred.getValue(), password)) {
+        if (!verify(hash, cred.getValue(), password)) {
             logger.debugv("Failed password validation for user {0} ", user.getUsername());
             return false;
         }
         PasswordPolicy policy = realm.getPasswordPolicy();
-        if (policy == null) {
-            return true;
+        hash = policy != null ? getHashProvider(policy) : null;
+        if (hash != null && !hash.policyCheck(policy, password)) {
+            encode(hash, cred.getValue(), policy, password);
+            getCredentialStore().updateCredential(realm, user, password);
+            session.getUserCache().evict(realm, user);
         }
-        hash = getHashProvider(policy);
-        if (hash == null) {
-            return true;
-        }
-        if (hash.policyCheck(policy, password)) {
-            return true;
+
+        if (cacheTtl > 0) {
+            verifiedCredentialCache.verified(password, cred.getValue(), cacheTtl);
         }
+        return true;
+    }
 
-        hash.encode(cred.getValue(), policy, password);
-        getCredentialStore().updateCredential(realm, user, password);
-        session.getUserCache().evict(realm, user);
+    protected boolean verify(PasswordHashProvider hash, String rawPassword, CredentialModel password) {
+        if (hashingExecutor == null) {
+            return hash.verify(rawPassword, password);
+        }
+        return hashingExecutor.execute(() -> hash.verify(rawPassword, password));
+    }
 
-        return true;
+    protected void encode(PasswordHashProvider hash, String rawPassword, PasswordPolicy policy, CredentialModel password) {
+        if (hashingExecutor == null) {
+            hash.encode(rawPassword, policy, password);
+            return;
+        }
+        hashingExecutor.execute(() -> {
+            hash.encode(rawPassword, policy, password);
+            return null;
+        });
     }
 
     @Override
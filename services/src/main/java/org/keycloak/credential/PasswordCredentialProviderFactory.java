@@ -16,6 +16,7 @@
  */
 package org.keycloak.credential;
 
+import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 
 /**
@@ -24,9 +25,41 @@ import org.keycloak.models.KeycloakSession;
  */
 public class PasswordCredentialProviderFactory implements CredentialProviderFactory<PasswordCredentialProvider> {
     public static final String PROVIDER_ID="keycloak-password";
+
+    private PasswordHashingExecutor hashingExecutor;
+    private VerifiedCredentialCache verifiedCredentialCache;
+
     @Override
     public PasswordCredentialProvider create(KeycloakSession session) {
-        return new PasswordCredentialProvider(session);
+        return new PasswordCredentialProvider(session, hashingExecutor, verifiedCredentialCache);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        // Hashing executor is opt-in. 0 threads means hashing on the request thread
+        int threads = config.getInt("hashingThreads", 0);
+        if (threads > 0) {
+            int queueSize = config.getInt("hashingQueueSize", threads * 64);
+            int retryAfter = config.getInt("hashingRetryAfter", 5);
+            hashingExecutor = new PasswordHashingExecutor(threads, queueSize, retryAfter);
+        }
+
+        // Cache is used only by realms, which opt-in, see VerifiedCredentialCache.TTL_ATTRIBUTE. 0 disables it for all realms
+        int maxEntries = config.getInt("verifiedCredentialCacheMaxEntries", 10000);
+        if (maxEntries > 0) {
+            verifiedCredentialCache = new VerifiedCredentialCache(maxEntries);
+        }
+    }
+
+    public VerifiedCredentialCache getVerifiedCredentialCache() {
+        return verifiedCredentialCache;
+    }
+
+    @Override
+    public void close() {
+        if (hashingExecutor != null) {
+            hashingExecutor.close();
+        }
     }
 
     @Override
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.credential;
+
+import org.jboss.logging.Logger;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashing on dedicated threads, so CPU spent on hashing during a login storm is bounded and the HTTP worker
+ * threads remain available for other requests. The queue of waiting hashes is bounded too. Once it's full, the hashing is
+ * rejected with 503 and Retry-After instead of piling up requests.
+ */
+public class PasswordHashingExecutor {
+
+    private static final Logger logger = Logger.getLogger(PasswordHashingExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final int retryAfter;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong hashed = new AtomicLong();
+    private final AtomicLong hashTimeNanos = new AtomicLong();
+    private final AtomicLong maxHashTimeNanos = new AtomicLong();
+
+    /**
+     * @param threads number of hashing threads
+     * @param queueSize max number of hashes waiting for a thread
+     * @param retryAfter seconds sent in Retry-After header when the executor is saturated
+     */
+    public PasswordHashingExecutor(int threads, int queueSize, int retryAfter) {
+        this.retryAfter = retryAfter;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), new HashingThreadFactory());
+    }
+
+    /**
+     * Schedules the hashing.
+     *
+     * @throws ServiceUnavailableException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> hashing) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hashing.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    record(System.nanoTime() - start);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            long count = rejected.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debugv("Password hashing rejected, queue depth={0}, active={1}, rejected={2}", getQueueDepth(), getActiveCount(), count);
+            }
+            throw new ServiceUnavailableException((long) retryAfter);
+        }
+    }
+
+    /**
+     * Runs the hashing on hashing threads and waits for the result.
+     *
+     * @throws ServiceUnavailableException if the queue is full
+     */
+    public <T> T execute(Callable<T> hashing) {
+        CompletableFuture<T> future = submit(hashing);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void record(long nanos) {
+        hashed.incrementAndGet();
+        hashTimeNanos.addAndGet(nanos);
+        long max = maxHashTimeNanos.get();
+        while (nanos > max && !maxHashTimeNanos.compareAndSet(max, nanos)) {
+            max = maxHashTimeNanos.get();
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getHashedCount() {
+        return hashed.get();
+    }
+
+    /**
+     * @return average time of hashing in milliseconds, without time spent in the queue
+     */
+    public double getAverageHashTime() {
+        long count = hashed.get();
+        return count == 0 ? 0 : hashTimeNanos.get() / 1000000.0 / count;
+    }
+
+    /**
+     * @return max time of hashing in milliseconds, without time spent in the queue
+     */
+    public double getMaxHashTime() {
+        return maxHashTimeNanos.get() / 1000000.0;
+    }
+
+    public void close() {
+        executor.shutdown();
+        logger.debugv("Password hashing executor closed, hashed={0}, rejected={1}, average={2} ms, max={3} ms", getHashedCount(), getRejectedCount(), getAverageHashTime(), getMaxHashTime());
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
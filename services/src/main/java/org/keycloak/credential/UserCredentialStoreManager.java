@@ -60,6 +60,7 @@ public class UserCredentialStoreManager implements UserCredentialManager, OnUser
 
     @Override
     public void updateCredential(RealmModel realm, UserModel user, CredentialModel cred) {
+        invalidateVerified(cred.getId());
         getStoreForUser(user).updateCredential(realm, user, cred);
 
     }
@@ -71,9 +72,21 @@ public class UserCredentialStoreManager implements UserCredentialManager, OnUser
 
     @Override
     public boolean removeStoredCredential(RealmModel realm, UserModel user, String id) {
+        invalidateVerified(id);
         return getStoreForUser(user).removeStoredCredential(realm, user, id);
     }
 
+    // Verification from the cache would be ignored anyway as the stored hash changes, but there's no reason to keep it
+    protected void invalidateVerified(String credentialId) {
+        ProviderFactory factory = session.getKeycloakSessionFactory().getProviderFactory(CredentialProvider.class, PasswordCredentialProviderFactory.PROVIDER_ID);
+        if (factory instanceof PasswordCredentialProviderFactory) {
+            VerifiedCredentialCache cache = ((PasswordCredentialProviderFactory) factory).getVerifiedCredentialCache();
+            if (cache != null) {
+                cache.invalidate(credentialId);
+            }
+        }
+    }
+
     @Override
     public CredentialModel getStoredCredentialById(RealmModel realm, UserModel user, String id) {
         return getStoreForUser(user).getStoredCredentialById(realm, user, id);
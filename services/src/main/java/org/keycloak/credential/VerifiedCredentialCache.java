@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.credential;
+
+import org.keycloak.common.util.Time;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local cache of recently verified passwords, so clients repeatedly sending the same password (typically resource owner
+ * password grant of service accounts) don't pay for the full password hashing each time.
+ *
+ * The cache is keyed by credential id. Each entry holds the revision of the stored credential and HMAC of the presented
+ * password with a random key generated on startup, never the password itself. Entry is used only if the stored credential
+ * didn't change since, so updates on other nodes are recognized as well. Local updates remove the entry right away.
+ *
+ * It's opt-in for each realm by setting {@link #TTL_ATTRIBUTE} realm attribute to the number of seconds the verification
+ * is valid.
+ */
+public class VerifiedCredentialCache {
+
+    public static final String TTL_ATTRIBUTE = "verifiedCredentialCacheTtl";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final int maxEntries;
+    private final SecretKey key;
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VerifiedCredentialCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        try {
+            this.key = KeyGenerator.getInstance(MAC_ALGORITHM).generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * @return true if the password was verified against the same revision of the credential recently
+     */
+    public boolean isVerified(CredentialModel credential, String rawPassword) {
+        Entry entry = entries.get(credential.getId());
+        if (entry == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        if (entry.expiration < Time.currentTime() || !entry.revision.equals(revision(credential))) {
+            entries.remove(credential.getId(), entry);
+            misses.incrementAndGet();
+            return false;
+        }
+        if (!MessageDigest.isEqual(entry.digest, digest(credential.getId(), rawPassword))) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Caches successful verification of the password.
+     *
+     * @param ttl seconds the verification is valid
+     */
+    public void verified(CredentialModel credential, String rawPassword, int ttl) {
+        if (credential.getId() == null) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            removeExpired();
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(credential.getId(), new Entry(revision(credential), digest(credential.getId(), rawPassword), Time.currentTime() + ttl));
+    }
+
+    public void invalidate(String credentialId) {
+        if (credentialId != null) {
+            entries.remove(credentialId);
+        }
+    }
+
+    private void removeExpired() {
+        int currentTime = Time.currentTime();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiration < currentTime) {
+                it.remove();
+            }
+        }
+    }
+
+    // Stored hash changes with each update of the password as new salt is generated
+    private static String revision(CredentialModel credential) {
+        return credential.getAlgorithm() + ":" + credential.getHashIterations() + ":" + credential.getValue();
+    }
+
+    private byte[] digest(String credentialId, String rawPassword) {
+        Mac mac = macs.get();
+        mac.update(credentialId.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(rawPassword.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final String revision;
+        private final byte[] digest;
+        private final int expiration;
+
+        private Entry(String revision, byte[] digest, int expiration) {
+            this.revision = revision;
+            this.digest = digest;
+            this.expiration = expiration;
+        }
+    }
+}
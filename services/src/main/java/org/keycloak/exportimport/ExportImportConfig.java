@@ -47,6 +47,14 @@ public class ExportImportConfig {
     public static final String USERS_PER_FILE = PREFIX + "usersPerFile";
     public static final Integer DEFAULT_USERS_PER_FILE = 50;
 
+    // Number of users loaded at once when users are written into the realm file
+    public static final String USERS_PAGE_SIZE = PREFIX + "usersPageSize";
+    public static final Integer DEFAULT_USERS_PAGE_SIZE = 100;
+
+    // Number of files with users written in parallel by "dir" provider. Used if usersExportStrategy is DIFFERENT_FILES
+    public static final String EXPORT_THREADS = PREFIX + "exportThreads";
+    public static final Integer DEFAULT_EXPORT_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     // Strategy used during import data
     public static final String STRATEGY = PREFIX + "strategy";
     public static final Strategy DEFAULT_STRATEGY = Strategy.OVERWRITE_EXISTING;
@@ -113,6 +121,20 @@ public class ExportImportConfig {
         System.setProperty(USERS_PER_FILE, String.valueOf(usersPerFile));
     }
 
+    public static Integer getUsersPageSize() {
+        String usersPageSize = System.getProperty(USERS_PAGE_SIZE, String.valueOf(DEFAULT_USERS_PAGE_SIZE));
+        int pageSize = Integer.parseInt(usersPageSize.trim());
+        if (pageSize <= 0) {
+            throw new IllegalStateException("Property " + USERS_PAGE_SIZE + " must be greater than 0, but was " + pageSize);
+        }
+        return pageSize;
+    }
+
+    public static Integer getExportThreads() {
+        String exportThreads = System.getProperty(EXPORT_THREADS, String.valueOf(DEFAULT_EXPORT_THREADS));
+        return Integer.parseInt(exportThreads.trim());
+    }
+
     public static Strategy getStrategy() {
         String strategy = System.getProperty(STRATEGY, DEFAULT_STRATEGY.toString());
         return Enum.valueOf(Strategy.class, strategy);
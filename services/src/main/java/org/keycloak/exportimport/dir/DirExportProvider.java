@@ -17,9 +17,12 @@
 
 package org.keycloak.exportimport.dir;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.keycloak.exportimport.ExportImportConfig;
 import org.keycloak.exportimport.util.ExportUtils;
 import org.keycloak.exportimport.util.MultipleStepsExportProvider;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.representations.idm.RealmRepresentation;
@@ -78,6 +81,17 @@ public class DirExportProvider extends MultipleStepsExportProvider {
         JsonSerialization.prettyMapper.writeValue(stream, rep);
     }
 
+    @Override
+    protected void writeRealm(String fileName, KeycloakSessionFactory factory, String realmName) throws IOException {
+        File file = new File(this.rootDirectory, fileName);
+        JsonGenerator generator = ExportUtils.createGenerator(JsonSerialization.prettyMapper, new FileOutputStream(file));
+        try {
+            ExportUtils.exportRealmToStream(factory, realmName, ExportImportConfig.getUsersPageSize(), JsonSerialization.prettyMapper, generator);
+        } finally {
+            generator.close();
+        }
+    }
+
     @Override
     protected void writeUsers(String fileName, KeycloakSession session, RealmModel realm, List<UserModel> users) throws IOException {
         File file = new File(this.rootDirectory, fileName);
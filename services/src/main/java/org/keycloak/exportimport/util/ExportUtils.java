@@ -20,8 +20,10 @@ package org.keycloak.exportimport.util;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.keycloak.authorization.AuthorizationProvider;
 import org.keycloak.authorization.AuthorizationProviderFactory;
 import org.keycloak.authorization.model.Policy;
@@ -40,12 +42,14 @@ import org.keycloak.models.ClientTemplateModel;
 import org.keycloak.models.FederatedIdentityModel;
 import org.keycloak.models.GroupModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleContainerModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserConsentModel;
 import org.keycloak.models.UserFederationManager;
 import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.ClientTemplateRepresentation;
@@ -70,6 +74,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -574,13 +579,115 @@ public class ExportUtils {
 
     // Streaming API
 
-    public static void exportUsersToStream(KeycloakSession session, RealmModel realm, List<UserModel> usersToExport, ObjectMapper mapper, OutputStream os) throws IOException {
+    public static JsonGenerator createGenerator(ObjectMapper mapper, OutputStream os) throws IOException {
         JsonFactory factory = mapper.getFactory();
         JsonGenerator generator = factory.createGenerator(os, JsonEncoding.UTF8);
-        try {
-            if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
-                generator.useDefaultPrettyPrinter();
+        if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
+    }
+
+    /**
+     * Writes the realm including all its users as single JSON object. Realm is exported without users first, then users and federated
+     * users are loaded page by page, each page in separate transaction, and written directly to the generator. Memory needed by the
+     * export doesn't grow with the count of users.
+     *
+     * Output is the same as serialized {@link #exportRealm(KeycloakSession, RealmModel, boolean)} with users included, just the order of
+     * the properties differs.
+     */
+    public static void exportRealmToStream(KeycloakSessionFactory factory, final String realmName, final int usersPageSize, final ObjectMapper mapper,
+                                           final JsonGenerator generator) throws IOException {
+        final ObjectNode[] realmNode = new ObjectNode[1];
+        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+            @Override
+            protected void runExportImportTask(KeycloakSession session) throws IOException {
+                RealmModel realm = session.realms().getRealmByName(realmName);
+                realmNode[0] = mapper.valueToTree(exportRealm(session, realm, false));
             }
+
+        });
+
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = realmNode[0].fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            generator.writeTree(field.getValue());
+        }
+        realmNode[0] = null;
+
+        // Properties are written just if there is some user, same as exportRealm does
+        final boolean[] started = new boolean[1];
+        int first = 0;
+        int count;
+        do {
+            final int pageFirst = first;
+            final int[] pageCount = new int[1];
+            KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+                @Override
+                protected void runExportImportTask(KeycloakSession session) throws IOException {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<UserModel> users = session.users().getUsers(realm, pageFirst, usersPageSize, true);
+                    for (UserModel user : users) {
+                        startArray(generator, "users", started);
+                        generator.writeObject(exportUser(session, realm, user));
+                    }
+                    pageCount[0] = users.size();
+                }
+
+            });
+            count = pageCount[0];
+            first += count;
+            generator.flush();
+        } while (count == usersPageSize);
+        if (started[0]) {
+            generator.writeEndArray();
+        }
+
+        started[0] = false;
+        first = 0;
+        do {
+            final int pageFirst = first;
+            final int[] pageCount = new int[1];
+            KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+                @Override
+                protected void runExportImportTask(KeycloakSession session) throws IOException {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<String> userIds = session.userFederatedStorage().getStoredUsers(realm, pageFirst, usersPageSize);
+                    for (String userId : userIds) {
+                        startArray(generator, "federatedUsers", started);
+                        generator.writeObject(exportFederatedUser(session, realm, userId));
+                    }
+                    pageCount[0] = userIds.size();
+                }
+
+            });
+            count = pageCount[0];
+            first += count;
+            generator.flush();
+        } while (count == usersPageSize);
+        if (started[0]) {
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void startArray(JsonGenerator generator, String fieldName, boolean[] started) throws IOException {
+        if (!started[0]) {
+            generator.writeFieldName(fieldName);
+            generator.writeStartArray();
+            started[0] = true;
+        }
+    }
+
+    public static void exportUsersToStream(KeycloakSession session, RealmModel realm, List<UserModel> usersToExport, ObjectMapper mapper, OutputStream os) throws IOException {
+        JsonGenerator generator = createGenerator(mapper, os);
+        try {
             generator.writeStartObject();
             generator.writeStringField("realm", realm.getName());
             // generator.writeStringField("strategy", strategy.toString());
@@ -600,12 +707,8 @@ public class ExportUtils {
     }
 
     public static void exportFederatedUsersToStream(KeycloakSession session, RealmModel realm, List<String> usersToExport, ObjectMapper mapper, OutputStream os) throws IOException {
-        JsonFactory factory = mapper.getFactory();
-        JsonGenerator generator = factory.createGenerator(os, JsonEncoding.UTF8);
+        JsonGenerator generator = createGenerator(mapper, os);
         try {
-            if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
-                generator.useDefaultPrettyPrinter();
-            }
             generator.writeStartObject();
             generator.writeStringField("realm", realm.getName());
             // generator.writeStringField("strategy", strategy.toString());
@@ -30,7 +30,12 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.representations.idm.RealmRepresentation;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -68,90 +73,122 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
         final int usersPerFile = ExportImportConfig.getUsersPerFile();
         final UsersHolder usersHolder = new UsersHolder();
         final boolean exportUsersIntoRealmFile = usersExportStrategy == UsersExportStrategy.REALM_FILE;
-        FederatedUsersHolder federatedUsersHolder = new FederatedUsersHolder();
+        final FederatedUsersHolder federatedUsersHolder = new FederatedUsersHolder();
+
+        if (exportUsersIntoRealmFile) {
+            // Users are streamed into the realm file page by page
+            writeRealm(realmName + "-realm.json", factory, realmName);
+            logger.info("Realm '" + realmName + "' - data exported");
+            return;
+        }
 
         KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
 
             @Override
             protected void runExportImportTask(KeycloakSession session) throws IOException {
                 RealmModel realm = session.realms().getRealmByName(realmName);
-                RealmRepresentation rep = ExportUtils.exportRealm(session, realm, exportUsersIntoRealmFile);
+                RealmRepresentation rep = ExportUtils.exportRealm(session, realm, false);
                 writeRealm(realmName + "-realm.json", rep);
                 logger.info("Realm '" + realmName + "' - data exported");
 
                 // Count total number of users
-                if (!exportUsersIntoRealmFile) {
-                    usersHolder.totalCount = session.users().getUsersCount(realm);
-                    federatedUsersHolder.totalCount = session.userFederatedStorage().getStoredUsersCount(realm);
-                }
+                usersHolder.totalCount = session.users().getUsersCount(realm);
+                federatedUsersHolder.totalCount = session.userFederatedStorage().getStoredUsersCount(realm);
             }
 
         });
 
-        if (usersExportStrategy != UsersExportStrategy.SKIP && !exportUsersIntoRealmFile) {
-            // We need to export users now
-            usersHolder.currentPageStart = 0;
+        if (usersExportStrategy == UsersExportStrategy.SKIP) {
+            return;
+        }
+
+        // usersExportStrategy==SAME_FILE  means exporting all users into single file (but separate to realm)
+        final int usersCountPerPage = (usersExportStrategy == UsersExportStrategy.SAME_FILE) ? usersHolder.totalCount : usersPerFile;
+        final int federatedUsersCountPerPage = (usersExportStrategy == UsersExportStrategy.SAME_FILE) ? federatedUsersHolder.totalCount : usersPerFile;
 
-            // usersExportStrategy==SAME_FILE  means exporting all users into single file (but separate to realm)
-            final int countPerPage = (usersExportStrategy == UsersExportStrategy.SAME_FILE) ? usersHolder.totalCount : usersPerFile;
+        // Each file is written in its own transaction, so the files can be written in parallel
+        List<ExportImportSessionTask> tasks = new ArrayList<>();
+        for (int pageStart = 0; pageStart < usersHolder.totalCount; pageStart += usersCountPerPage) {
+            final int first = pageStart;
+            final int last = Math.min(pageStart + usersCountPerPage, usersHolder.totalCount) - 1;
+            tasks.add(new ExportImportSessionTask() {
 
-            while (usersHolder.currentPageStart < usersHolder.totalCount) {
-                if (usersHolder.currentPageStart + countPerPage < usersHolder.totalCount) {
-                    usersHolder.currentPageEnd = usersHolder.currentPageStart + countPerPage;
-                } else {
-                    usersHolder.currentPageEnd = usersHolder.totalCount;
+                @Override
+                protected void runExportImportTask(KeycloakSession session) throws IOException {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<UserModel> users = session.users().getUsers(realm, first, last - first + 1, true);
+
+                    writeUsers(realmName + "-users-" + (first / usersCountPerPage) + ".json", session, realm, users);
+
+                    logger.info("Users " + first + "-" + last + " exported");
                 }
 
-                KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+            });
+        }
+        for (int pageStart = 0; pageStart < federatedUsersHolder.totalCount; pageStart += federatedUsersCountPerPage) {
+            final int first = pageStart;
+            final int last = Math.min(pageStart + federatedUsersCountPerPage, federatedUsersHolder.totalCount) - 1;
+            tasks.add(new ExportImportSessionTask() {
 
-                    @Override
-                    protected void runExportImportTask(KeycloakSession session) throws IOException {
-                        RealmModel realm = session.realms().getRealmByName(realmName);
-                        usersHolder.users = session.users().getUsers(realm, usersHolder.currentPageStart, usersHolder.currentPageEnd - usersHolder.currentPageStart, true);
+                @Override
+                protected void runExportImportTask(KeycloakSession session) throws IOException {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<String> users = session.userFederatedStorage().getStoredUsers(realm, first, last - first + 1);
 
-                        writeUsers(realmName + "-users-" + (usersHolder.currentPageStart / countPerPage) + ".json", session, realm, usersHolder.users);
+                    writeFederatedUsers(realmName + "-federated-users-" + (first / federatedUsersCountPerPage) + ".json", session, realm, users);
 
-                        logger.info("Users " + usersHolder.currentPageStart + "-" + (usersHolder.currentPageEnd -1) + " exported");
-                    }
+                    logger.info("Federated users " + first + "-" + last + " exported");
+                }
 
-                });
+            });
+        }
 
-                usersHolder.currentPageStart = usersHolder.currentPageEnd;
+        int threads = usersExportStrategy == UsersExportStrategy.DIFFERENT_FILES ? ExportImportConfig.getExportThreads() : 1;
+        runTasks(factory, tasks, threads);
+    }
+
+    private void runTasks(final KeycloakSessionFactory factory, List<ExportImportSessionTask> tasks, int threads) throws IOException {
+        if (threads <= 1 || tasks.size() <= 1) {
+            for (ExportImportSessionTask task : tasks) {
+                KeycloakModelUtils.runJobInTransaction(factory, task);
             }
+            return;
         }
-        if (usersExportStrategy != UsersExportStrategy.SKIP && !exportUsersIntoRealmFile) {
-            // We need to export users now
-            federatedUsersHolder.currentPageStart = 0;
-
-            // usersExportStrategy==SAME_FILE  means exporting all users into single file (but separate to realm)
-            final int countPerPage = (usersExportStrategy == UsersExportStrategy.SAME_FILE) ? federatedUsersHolder.totalCount : usersPerFile;
-
-            while (federatedUsersHolder.currentPageStart < federatedUsersHolder.totalCount) {
-                if (federatedUsersHolder.currentPageStart + countPerPage < federatedUsersHolder.totalCount) {
-                    federatedUsersHolder.currentPageEnd = federatedUsersHolder.currentPageStart + countPerPage;
-                } else {
-                    federatedUsersHolder.currentPageEnd = federatedUsersHolder.totalCount;
-                }
 
-                KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+        logger.debugf("Exporting %d files with users by %d threads", tasks.size(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final ExportImportSessionTask task : tasks) {
+                futures.add(executor.submit(new Runnable() {
 
                     @Override
-                    protected void runExportImportTask(KeycloakSession session) throws IOException {
-                        RealmModel realm = session.realms().getRealmByName(realmName);
-                        federatedUsersHolder.users = session.userFederatedStorage().getStoredUsers(realm, federatedUsersHolder.currentPageStart, federatedUsersHolder.currentPageEnd - federatedUsersHolder.currentPageStart);
-
-                        writeFederatedUsers(realmName + "-federated-users-" + (federatedUsersHolder.currentPageStart / countPerPage) + ".json", session, realm, federatedUsersHolder.users);
-
-                        logger.info("Users " + federatedUsersHolder.currentPageStart + "-" + (federatedUsersHolder.currentPageEnd -1) + " exported");
+                    public void run() {
+                        KeycloakModelUtils.runJobInTransaction(factory, task);
                     }
 
-                });
+                }));
+            }
 
-                federatedUsersHolder.currentPageStart = federatedUsersHolder.currentPageEnd;
+            for (Future<?> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during export of users", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Error during export of users: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Remaining files are not written if some of them failed
+            executor.shutdownNow();
         }
     }
 
+    protected abstract void writeRealm(String fileName, KeycloakSessionFactory factory, String realmName) throws IOException;
+
     protected abstract void writeRealm(String fileName, RealmRepresentation rep) throws IOException;
 
     protected abstract void writeUsers(String fileName, KeycloakSession session, RealmModel realm, List<UserModel> users) throws IOException;
@@ -20,122 +20,18 @@ package org.keycloak.keys;
 import org.keycloak.component.ComponentModel;
 import org.keycloak.models.RealmModel;
 
-import java.security.KeyPair;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public abstract class AbstractRsaKeyProvider implements KeyProvider {
-
-    private final boolean enabled;
-
-    private final boolean active;
-
-    private final ComponentModel model;
-
-    private final Keys keys;
+public abstract class AbstractRsaKeyProvider extends AbstractKeyProvider {
 
     public AbstractRsaKeyProvider(RealmModel realm, ComponentModel model) {
-        this.model = model;
-
-        this.enabled = model.get(Attributes.ENABLED_KEY, true);
-        this.active = model.get(Attributes.ACTIVE_KEY, true);
-
-        if (model.hasNote(Keys.class.getName())) {
-            keys = model.getNote(Keys.class.getName());
-        } else {
-            keys = loadKeys(realm, model);
-            model.setNote(Keys.class.getName(), keys);
-        }
-    }
-
-    protected abstract Keys loadKeys(RealmModel realm, ComponentModel model);
-
-    @Override
-    public final String getKid() {
-        return isActive() ? keys.getKid() : null;
-    }
-
-    @Override
-    public final PrivateKey getPrivateKey() {
-        return isActive() ? keys.getKeyPair().getPrivate() : null;
-    }
-
-    @Override
-    public final PublicKey getPublicKey(String kid) {
-        return isEnabled() && kid.equals(keys.getKid()) ? keys.getKeyPair().getPublic() : null;
+        super(realm, model);
     }
 
     @Override
-    public X509Certificate getCertificate(String kid) {
-        return isEnabled() && kid.equals(keys.getKid()) ? keys.getCertificate() : null;
-    }
-
-    @Override
-    public final List<KeyMetadata> getKeyMetadata() {
-        String kid = keys.getKid();
-        PublicKey publicKey = keys.getKeyPair().getPublic();
-        if (kid != null && publicKey != null) {
-            KeyMetadata k = new KeyMetadata();
-            k.setProviderId(model.getId());
-            k.setProviderPriority(model.get(Attributes.PRIORITY_KEY, 0l));
-            k.setKid(kid);
-            if (isActive()) {
-                k.setStatus(KeyMetadata.Status.ACTIVE);
-            } else if (isEnabled()) {
-                k.setStatus(KeyMetadata.Status.PASSIVE);
-            } else {
-                k.setStatus(KeyMetadata.Status.DISABLED);
-            }
-            k.setType(KeyMetadata.Type.RSA);
-            k.setPublicKey(publicKey);
-            k.setCertificate(keys.getCertificate());
-            return Collections.singletonList(k);
-        } else {
-            return Collections.emptyList();
-        }
-    }
-
-    @Override
-    public void close() {
-    }
-
-    private boolean isEnabled() {
-        return keys != null && enabled;
-    }
-
-    private boolean isActive() {
-        return isEnabled() && active;
-    }
-
-    public static class Keys {
-        private String kid;
-        private KeyPair keyPair;
-        private X509Certificate certificate;
-
-        public Keys(String kid, KeyPair keyPair, X509Certificate certificate) {
-            this.kid = kid;
-            this.keyPair = keyPair;
-            this.certificate = certificate;
-        }
-
-        public String getKid() {
-            return kid;
-        }
-
-        public KeyPair getKeyPair() {
-            return keyPair;
-        }
-
-        public X509Certificate getCertificate() {
-            return certificate;
-        }
+    protected KeyMetadata.Type getType() {
+        return KeyMetadata.Type.RSA;
     }
 
 }
@@ -17,29 +17,8 @@
 
 package org.keycloak.keys;
 
-import org.keycloak.component.ComponentModel;
-import org.keycloak.component.ComponentValidationException;
-import org.keycloak.models.KeycloakSession;
-import org.keycloak.provider.ConfigurationValidationHelper;
-import org.keycloak.provider.ProviderConfigurationBuilder;
-
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public abstract class AbstractRsaKeyProviderFactory implements KeyProviderFactory {
-
-    public final static ProviderConfigurationBuilder configurationBuilder() {
-        return ProviderConfigurationBuilder.create()
-                .property(Attributes.PRIORITY_PROPERTY)
-                .property(Attributes.ENABLED_PROPERTY)
-                .property(Attributes.ACTIVE_PROPERTY);
-    }
-
-    @Override
-    public void validateConfiguration(KeycloakSession session, ComponentModel model) throws ComponentValidationException {
-        ConfigurationValidationHelper.check(model)
-                .checkLong(Attributes.PRIORITY_PROPERTY, false)
-                .checkBoolean(Attributes.ENABLED_PROPERTY, false)
-                .checkBoolean(Attributes.ACTIVE_PROPERTY, false);
-    }
+public abstract class AbstractRsaKeyProviderFactory extends AbstractKeyProviderFactory {
 }
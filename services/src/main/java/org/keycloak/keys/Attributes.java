@@ -46,4 +46,10 @@ public interface Attributes {
     String KEY_SIZE_KEY = "keySize";
     ProviderConfigProperty KEY_SIZE_PROPERTY = new ProviderConfigProperty(KEY_SIZE_KEY, "Keysize", "Size for the generated keys (1024, 2048 or 4096)", STRING_TYPE, null);
 
+    String ECDSA_PRIVATE_KEY_KEY = "ecdsaPrivateKey";
+    String ECDSA_PUBLIC_KEY_KEY = "ecdsaPublicKey";
+
+    String ECDSA_ELLIPTIC_CURVE_KEY = "ecdsaEllipticCurveKey";
+    ProviderConfigProperty ECDSA_ELLIPTIC_CURVE_PROPERTY = new ProviderConfigProperty(ECDSA_ELLIPTIC_CURVE_KEY, "Elliptic Curve", "Elliptic curve for the generated keys (P-256, P-384 or P-521)", STRING_TYPE, null);
+
 }
@@ -19,18 +19,29 @@ package org.keycloak.keys;
 
 import org.jboss.logging.Logger;
 import org.keycloak.component.ComponentModel;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSSigner;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.KeyManager;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
 import org.keycloak.provider.ProviderFactory;
 
+import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -39,6 +50,21 @@ public class DefaultKeyManager implements KeyManager {
 
     private static final Logger logger = Logger.getLogger(DefaultKeyManager.class);
 
+    // Signers keep initialized JCA instances, so they are shared among sessions. There is one signer for each realm and algorithm, which
+    // is replaced once the active key for the algorithm changes. Signers of the realm are evicted when the realm is removed
+    private static final ConcurrentMap<String, ConcurrentMap<Algorithm, JWSSigner>> signers = new ConcurrentHashMap<>();
+
+    private static final ProviderEventListener SIGNERS_EVICTION = new ProviderEventListener() {
+
+        @Override
+        public void onEvent(ProviderEvent event) {
+            if (event instanceof RealmModel.RealmRemovedEvent) {
+                signers.remove(((RealmModel.RealmRemovedEvent) event).getRealm().getId());
+            }
+        }
+
+    };
+
     private final KeycloakSession session;
     private final Map<String, List<KeyProvider>> providersMap = new HashMap<>();
 
@@ -49,7 +75,7 @@ public class DefaultKeyManager implements KeyManager {
     @Override
     public ActiveKey getActiveKey(RealmModel realm) {
         for (KeyProvider p : getProviders(realm)) {
-            if (p.getKid() != null && p.getPrivateKey() != null) {
+            if (isActiveRsa(p)) {
                 if (logger.isTraceEnabled()) {
                     logger.tracev("Active key realm={0} kid={1}", realm.getName(), p.getKid());
                 }
@@ -60,6 +86,58 @@ public class DefaultKeyManager implements KeyManager {
         throw new RuntimeException("Failed to get keys");
     }
 
+    @Override
+    public JWSSigner getActiveSigner(RealmModel realm) {
+        for (KeyProvider p : getProviders(realm)) {
+            if (p.getKid() != null && p.getPrivateKey() != null) {
+                PrivateKey privateKey = p.getPrivateKey();
+                Algorithm algorithm = privateKey instanceof ECPrivateKey ? ECDSAProvider.getAlgorithm((ECPrivateKey) privateKey) : Algorithm.RS256;
+                return getSigner(realm, p.getKid(), privateKey, algorithm);
+            }
+        }
+        throw new RuntimeException("Failed to get keys");
+    }
+
+    @Override
+    public JWSSigner getActiveSigner(RealmModel realm, Algorithm algorithm) {
+        for (KeyProvider p : getProviders(realm)) {
+            if (p.getKid() != null && supports(p.getPrivateKey(), algorithm)) {
+                return getSigner(realm, p.getKid(), p.getPrivateKey(), algorithm);
+            }
+        }
+        throw new RuntimeException("Failed to get keys for algorithm " + algorithm);
+    }
+
+    private JWSSigner getSigner(RealmModel realm, String kid, PrivateKey privateKey, Algorithm algorithm) {
+        ConcurrentMap<Algorithm, JWSSigner> realmSigners = signers.get(realm.getId());
+        if (realmSigners == null) {
+            realmSigners = new ConcurrentHashMap<>();
+            ConcurrentMap<Algorithm, JWSSigner> existing = signers.putIfAbsent(realm.getId(), realmSigners);
+            if (existing != null) {
+                realmSigners = existing;
+            }
+        }
+
+        JWSSigner signer = realmSigners.get(algorithm);
+        if (signer != null && signer.getKid().equals(kid)) {
+            return signer;
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.tracev("Creating signer realm={0} kid={1} algorithm={2}", realm.getName(), kid, algorithm);
+        }
+        signer = privateKey instanceof ECPrivateKey ? JWSSigner.ecdsa(algorithm, kid, privateKey) : JWSSigner.rsa(algorithm, kid, privateKey);
+        realmSigners.put(algorithm, signer);
+        return signer;
+    }
+
+    /**
+     * Listener, which evicts cached signers of removed realms. It's registered by the session factory.
+     */
+    public static ProviderEventListener getSignersEvictionListener() {
+        return SIGNERS_EVICTION;
+    }
+
     @Override
     public PublicKey getPublicKey(RealmModel realm, String kid) {
         if (kid == null) {
@@ -133,7 +211,7 @@ public class DefaultKeyManager implements KeyManager {
                     KeyProvider provider = factory.create(session, c);
                     session.enlistForClose(provider);
                     providers.add(provider);
-                    if (!active && provider.getKid() != null && provider.getPrivateKey() != null) {
+                    if (!active && isActiveRsa(provider)) {
                         active = true;
                     }
                 } catch (Throwable t) {
@@ -150,6 +228,18 @@ public class DefaultKeyManager implements KeyManager {
         return providers;
     }
 
+    private static boolean supports(PrivateKey privateKey, Algorithm algorithm) {
+        if (ECDSAProvider.isECDSA(algorithm)) {
+            return privateKey instanceof ECPrivateKey && ECDSAProvider.getAlgorithm((ECPrivateKey) privateKey) == algorithm;
+        }
+        return privateKey instanceof RSAPrivateKey && algorithm.getProvider() instanceof RSAProvider;
+    }
+
+    // Elliptic curve keys are used just for signing of the tokens, everything else needs RSA key
+    private static boolean isActiveRsa(KeyProvider provider) {
+        return provider.getKid() != null && provider.getPrivateKey() instanceof RSAPrivateKey;
+    }
+
     private class ProviderComparator implements Comparator<ComponentModel> {
 
         @Override
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.keys;
+
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.common.util.PemUtils;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.models.RealmModel;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * Elliptic curve keys for signing of the tokens with ECDSA. There's no certificate for the keys.
+ */
+public class EcdsaKeyProvider extends AbstractKeyProvider {
+
+    public EcdsaKeyProvider(RealmModel realm, ComponentModel model) {
+        super(realm, model);
+    }
+
+    @Override
+    protected Keys loadKeys(RealmModel realm, ComponentModel model) {
+        String privateEcdsaKeyPem = model.getConfig().getFirst(Attributes.ECDSA_PRIVATE_KEY_KEY);
+        String publicEcdsaKeyPem = model.getConfig().getFirst(Attributes.ECDSA_PUBLIC_KEY_KEY);
+
+        PrivateKey privateKey = PemUtils.decodePrivateKey(privateEcdsaKeyPem);
+        PublicKey publicKey = PemUtils.decodePublicKey(publicEcdsaKeyPem);
+
+        KeyPair keyPair = new KeyPair(publicKey, privateKey);
+        String kid = KeyUtils.createKeyId(keyPair.getPublic());
+
+        return new Keys(kid, keyPair, null);
+    }
+
+    @Override
+    protected KeyMetadata.Type getType() {
+        return KeyMetadata.Type.EC;
+    }
+
+}
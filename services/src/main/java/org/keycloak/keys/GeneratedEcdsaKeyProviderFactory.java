@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.keys;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.common.util.PemUtils;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.component.ComponentValidationException;
+import org.keycloak.jose.jwk.ECPublicJWK;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.ConfigurationValidationHelper;
+import org.keycloak.provider.ProviderConfigProperty;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.util.List;
+
+public class GeneratedEcdsaKeyProviderFactory extends AbstractKeyProviderFactory {
+
+    private static final Logger logger = Logger.getLogger(GeneratedEcdsaKeyProviderFactory.class);
+
+    public static final String ID = "ecdsa-generated";
+
+    private static final String HELP_TEXT = "Generates ECDSA keys for signing of the tokens";
+
+    private static final String DEFAULT_CURVE = ECPublicJWK.P256;
+
+    private static final List<ProviderConfigProperty> CONFIG_PROPERTIES = AbstractKeyProviderFactory.configurationBuilder()
+            .property(Attributes.ECDSA_ELLIPTIC_CURVE_PROPERTY)
+            .build();
+
+    @Override
+    public KeyProvider create(KeycloakSession session, ComponentModel model) {
+        return new EcdsaKeyProvider(session.getContext().getRealm(), model);
+    }
+
+    @Override
+    public void validateConfiguration(KeycloakSession session, ComponentModel model) throws ComponentValidationException {
+        super.validateConfiguration(session, model);
+
+        ConfigurationValidationHelper.check(model)
+                .checkSingle(Attributes.ECDSA_ELLIPTIC_CURVE_PROPERTY, false);
+
+        String curve;
+        if (!model.contains(Attributes.ECDSA_ELLIPTIC_CURVE_KEY)) {
+            curve = DEFAULT_CURVE;
+            model.put(Attributes.ECDSA_ELLIPTIC_CURVE_KEY, curve);
+        } else {
+            curve = model.get(Attributes.ECDSA_ELLIPTIC_CURVE_KEY);
+            if (!ECPublicJWK.P256.equals(curve) && !ECPublicJWK.P384.equals(curve) && !ECPublicJWK.P521.equals(curve)) {
+                throw new ComponentValidationException("Elliptic curve should be P-256, P-384 or P-521");
+            }
+        }
+
+        if (!(model.contains(Attributes.ECDSA_PRIVATE_KEY_KEY) && model.contains(Attributes.ECDSA_PUBLIC_KEY_KEY))) {
+            RealmModel realm = session.realms().getRealm(model.getParentId());
+            generateKeys(model, curve);
+
+            logger.debugv("Generated keys for {0}", realm.getName());
+        } else {
+            PublicKey publicKey = PemUtils.decodePublicKey(model.get(Attributes.ECDSA_PUBLIC_KEY_KEY));
+            Algorithm currentAlgorithm = ECDSAProvider.getAlgorithm((ECPublicKey) publicKey);
+            if (currentAlgorithm != getAlgorithm(curve)) {
+                RealmModel realm = session.realms().getRealm(model.getParentId());
+                generateKeys(model, curve);
+
+                logger.debugv("Elliptic curve changed, generating new keys for {0}", realm.getName());
+            }
+        }
+    }
+
+    private void generateKeys(ComponentModel model, String curve) {
+        try {
+            KeyPair keyPair = KeyUtils.generateEcKeyPair(ECPublicJWK.getStandardCurveName(curve));
+            model.put(Attributes.ECDSA_PRIVATE_KEY_KEY, PemUtils.encodeKey(keyPair.getPrivate()));
+            model.put(Attributes.ECDSA_PUBLIC_KEY_KEY, PemUtils.encodeKey(keyPair.getPublic()));
+        } catch (Throwable t) {
+            throw new ComponentValidationException("Failed to generate keys", t);
+        }
+    }
+
+    private static Algorithm getAlgorithm(String curve) {
+        switch (curve) {
+            case ECPublicJWK.P384:
+                return Algorithm.ES384;
+            case ECPublicJWK.P521:
+                return Algorithm.ES512;
+            default:
+                return Algorithm.ES256;
+        }
+    }
+
+    @Override
+    public String getHelpText() {
+        return HELP_TEXT;
+    }
+
+    @Override
+    public List<ProviderConfigProperty> getConfigProperties() {
+        return CONFIG_PROPERTIES;
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+}
@@ -22,7 +22,6 @@ import org.jboss.logging.Logger;
 import org.keycloak.common.ClientConnection;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeyManager;
@@ -158,7 +157,7 @@ public class RestartLoginCookie {
         String encodedCookie = cook.getValue();
         JWSInput input = new JWSInput(encodedCookie);
         PublicKey publicKey = session.keys().getPublicKey(realm, input.getHeader().getKeyId());
-        if (!RSAProvider.verify(input, publicKey)) {
+        if (!input.verify(publicKey)) {
             logger.debug("Failed to verify encoded RestartLoginCookie");
             return null;
         }
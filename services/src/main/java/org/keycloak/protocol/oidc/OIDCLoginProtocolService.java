@@ -192,7 +192,8 @@ public class OIDCLoginProtocolService {
 
         int i = 0;
         for (KeyMetadata k : publicKeys) {
-            keys[i++] = JWKBuilder.create().kid(k.getKid()).rs256(k.getPublicKey());
+            JWKBuilder builder = JWKBuilder.create().kid(k.getKid());
+            keys[i++] = k.getType() == KeyMetadata.Type.EC ? builder.ec(k.getPublicKey()) : builder.rs256(k.getPublicKey());
         }
 
         JSONWebKeySet keySet = new JSONWebKeySet();
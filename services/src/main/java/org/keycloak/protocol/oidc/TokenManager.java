@@ -25,26 +25,27 @@ import org.keycloak.OAuthErrorException;
 import org.keycloak.events.Details;
 import org.keycloak.events.Errors;
 import org.keycloak.events.EventBuilder;
-import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.jose.jws.JWSSigner;
 import org.keycloak.jose.jws.crypto.HashProvider;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.ClientTemplateModel;
 import org.keycloak.models.GroupModel;
-import org.keycloak.models.KeyManager;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.RoleClosure;
 import org.keycloak.protocol.ProtocolMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCIDTokenMapper;
@@ -69,6 +70,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -84,9 +86,6 @@ public class TokenManager {
     private static final Logger logger = Logger.getLogger(TokenManager.class);
     private static final String JWT = "JWT";
 
-    // Harcoded for now
-    Algorithm jwsAlgorithm = Algorithm.RS256;
-
     public static void applyScope(RoleModel role, RoleModel scope, Set<RoleModel> visited, Set<RoleModel> requested) {
         if (visited.contains(scope)) return;
         visited.add(scope);
@@ -177,7 +176,7 @@ public class TokenManager {
 
         // recreate token.
         String scopeParam = clientSession.getNote(OAuth2Constants.SCOPE);
-        Set<RoleModel> requestedRoles = TokenManager.getAccess(scopeParam, true, clientSession.getClient(), user);
+        Set<RoleModel> requestedRoles = TokenManager.getAccess(session, scopeParam, true, clientSession.getClient(), user);
         AccessToken newToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession);
         verifyAccess(oldToken, newToken);
 
@@ -277,7 +276,7 @@ public class TokenManager {
     public RefreshToken toRefreshToken(KeycloakSession session, RealmModel realm, String encodedRefreshToken) throws JWSInputException, OAuthErrorException {
         JWSInput jws = new JWSInput(encodedRefreshToken);
 
-        if (!RSAProvider.verify(jws, session.keys().getPublicKey(realm, jws.getHeader().getKeyId()))) {
+        if (!jws.verify(session.keys().getPublicKey(realm, jws.getHeader().getKeyId()))) {
             throw new OAuthErrorException(OAuthErrorException.INVALID_GRANT, "Invalid refresh token");
         }
 
@@ -288,7 +287,7 @@ public class TokenManager {
         try {
             JWSInput jws = new JWSInput(encodedIDToken);
             IDToken idToken;
-            if (!RSAProvider.verify(jws, session.keys().getPublicKey(realm, jws.getHeader().getKeyId()))) {
+            if (!jws.verify(session.keys().getPublicKey(realm, jws.getHeader().getKeyId()))) {
                 throw new OAuthErrorException(OAuthErrorException.INVALID_GRANT, "Invalid IDToken");
             }
             idToken = jws.readJsonContent(IDToken.class);
@@ -316,6 +315,10 @@ public class TokenManager {
     }
 
     public static void attachClientSession(UserSessionModel session, ClientSessionModel clientSession) {
+        attachClientSession(null, session, clientSession);
+    }
+
+    public static void attachClientSession(KeycloakSession keycloakSession, UserSessionModel session, ClientSessionModel clientSession) {
         if (clientSession.getUserSession() != null) {
             return;
         }
@@ -326,7 +329,7 @@ public class TokenManager {
         // todo scope param protocol independent
         String scopeParam = clientSession.getNote(OAuth2Constants.SCOPE);
         ClientModel client = clientSession.getClient();
-        for (RoleModel r : TokenManager.getAccess(scopeParam, true, client, user)) {
+        for (RoleModel r : TokenManager.getAccess(keycloakSession, scopeParam, true, client, user)) {
             requestedRoles.add(r.getId());
         }
         clientSession.setRoles(requestedRoles);
@@ -378,6 +381,15 @@ public class TokenManager {
     }
 
     public static Set<RoleModel> getAccess(String scopeParam, boolean applyScopeParam, ClientModel client, UserModel user) {
+        return getAccess(null, scopeParam, applyScopeParam, client, user);
+    }
+
+    /**
+     * If session is available and realm cache is enabled, cached closures of the composite roles are used to apply scope
+     * mappings instead of walking composite roles for each role mapping of the user.
+     */
+    public static Set<RoleModel> getAccess(KeycloakSession session, String scopeParam, boolean applyScopeParam, ClientModel client, UserModel user) {
+        RoleClosure closure = getRoleClosure(session, client.getRealm());
         Set<RoleModel> requestedRoles = new HashSet<RoleModel>();
 
         Set<RoleModel> mappings = user.getRoleMappings();
@@ -404,10 +416,15 @@ public class TokenManager {
             scopeMappings.addAll(client.getRoles());
             Set<RoleModel> clientScopeMappings = client.getScopeMappings();
             scopeMappings.addAll(clientScopeMappings);
-            for (RoleModel role : roleMappings) {
-                for (RoleModel desiredRole : scopeMappings) {
-                    Set<RoleModel> visited = new HashSet<RoleModel>();
-                    applyScope(role, desiredRole, visited, requestedRoles);
+            Set<RoleModel> closureRoles = closure == null ? null : closure.applyScope(roleMappings, scopeMappings);
+            if (closureRoles != null) {
+                requestedRoles = closureRoles;
+            } else {
+                for (RoleModel role : roleMappings) {
+                    for (RoleModel desiredRole : scopeMappings) {
+                        Set<RoleModel> visited = new HashSet<RoleModel>();
+                        applyScope(role, desiredRole, visited, requestedRoles);
+                    }
                 }
             }
         }
@@ -438,7 +455,7 @@ public class TokenManager {
                 RoleModel scopeParamRole = getRoleFromScopeParam(client.getRealm(), scopeParamPart);
                 if (scopeParamRole != null) {
                     for (RoleModel role : roles) {
-                        if (role.hasRole(scopeParamRole)) {
+                        if (closure != null ? closure.hasRole(role, scopeParamRole) : role.hasRole(scopeParamRole)) {
                             scopeRoles.add(scopeParamRole);
                         }
                     }
@@ -452,6 +469,21 @@ public class TokenManager {
         return requestedRoles;
     }
 
+    private static RoleClosure getRoleClosure(KeycloakSession session, final RealmModel realm) {
+        if (session == null) return null;
+        RealmProvider realms = session.realms();
+        if (!(realms instanceof CacheRealmProvider)) return null;
+        final CacheRealmProvider cache = (CacheRealmProvider) realms;
+        return new RoleClosure(new RoleClosure.Lookup() {
+
+            @Override
+            public Set<String> getClosure(RoleModel role) {
+                return cache.getRoleClosure(realm, role);
+            }
+
+        });
+    }
+
     // For now, just use "roleName" for realm roles and "clientId/roleName" for client roles
     private static String getRoleNameForScopeParam(RoleModel role) {
         if (role.getContainer() instanceof RealmModel) {
@@ -616,8 +648,8 @@ public class TokenManager {
     }
 
     public String encodeToken(KeycloakSession session, RealmModel realm, Object token) {
-        KeyManager.ActiveKey activeKey = session.keys().getActiveKey(realm);
-        return new JWSBuilder().type(JWT).kid(activeKey.getKid()).jsonContent(token).sign(jwsAlgorithm, activeKey.getPrivateKey());
+        JWSSigner signer = session.keys().getActiveSigner(realm);
+        return new JWSBuilder().type(JWT).jsonContent(token).sign(signer);
     }
 
     public AccessTokenResponseBuilder responseBuilder(RealmModel realm, ClientModel client, EventBuilder event, KeycloakSession session, UserSessionModel userSession, ClientSessionModel clientSession) {
@@ -637,7 +669,7 @@ public class TokenManager {
         IDToken idToken;
 
         boolean generateAccessTokenHash = false;
-        String codeHash;
+        String code;
 
         public AccessTokenResponseBuilder(RealmModel realm, ClientModel client, EventBuilder event, KeycloakSession session, UserSessionModel userSession, ClientSessionModel clientSession) {
             this.realm = realm;
@@ -660,7 +692,7 @@ public class TokenManager {
         public AccessTokenResponseBuilder generateAccessToken() {
             UserModel user = userSession.getUser();
             String scopeParam = clientSession.getNote(OIDCLoginProtocol.SCOPE_PARAM);
-            Set<RoleModel> requestedRoles = getAccess(scopeParam, true, client, user);
+            Set<RoleModel> requestedRoles = getAccess(session, scopeParam, true, client, user);
             accessToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession);
             return this;
         }
@@ -718,13 +750,13 @@ public class TokenManager {
         }
 
         public AccessTokenResponseBuilder generateCodeHash(String code) {
-            codeHash = HashProvider.oidcHash(jwsAlgorithm, code);
+            this.code = code;
             return this;
         }
 
 
         public AccessTokenResponse build() {
-            KeyManager.ActiveKey activeKey = session.keys().getActiveKey(realm);
+            JWSSigner signer = session.keys().getActiveSigner(realm);
 
             if (accessToken != null) {
                 event.detail(Details.TOKEN_ID, accessToken.getId());
@@ -739,9 +771,15 @@ public class TokenManager {
                 event.detail(Details.REFRESH_TOKEN_TYPE, refreshToken.getType());
             }
 
+            // access and refresh token are signed at once, ID token needs hash of the encoded access token
+            List<JWSBuilder.EncodingBuilder> builders = new LinkedList<>();
+            if (accessToken != null) builders.add(new JWSBuilder().type(JWT).jsonContent(accessToken));
+            if (refreshToken != null) builders.add(new JWSBuilder().type(JWT).jsonContent(refreshToken));
+            Iterator<String> encodedTokens = JWSBuilder.sign(signer, builders).iterator();
+
             AccessTokenResponse res = new AccessTokenResponse();
             if (accessToken != null) {
-                String encodedToken = new JWSBuilder().type(JWT).kid(activeKey.getKid()).jsonContent(accessToken).sign(jwsAlgorithm, activeKey.getPrivateKey());
+                String encodedToken = encodedTokens.next();
                 res.setToken(encodedToken);
                 res.setTokenType("bearer");
                 res.setSessionState(accessToken.getSessionState());
@@ -750,20 +788,21 @@ public class TokenManager {
                 }
             }
 
+            // hashes depend on the algorithm of the active key
             if (generateAccessTokenHash) {
-                String atHash = HashProvider.oidcHash(jwsAlgorithm, res.getToken());
+                String atHash = HashProvider.oidcHash(signer.getAlgorithm(), res.getToken());
                 idToken.setAccessTokenHash(atHash);
             }
-            if (codeHash != null) {
-                idToken.setCodeHash(codeHash);
+            if (code != null) {
+                idToken.setCodeHash(HashProvider.oidcHash(signer.getAlgorithm(), code));
             }
 
             if (idToken != null) {
-                String encodedToken = new JWSBuilder().type(JWT).kid(activeKey.getKid()).jsonContent(idToken).sign(jwsAlgorithm, activeKey.getPrivateKey());
+                String encodedToken = new JWSBuilder().type(JWT).jsonContent(idToken).sign(signer);
                 res.setIdToken(encodedToken);
             }
             if (refreshToken != null) {
-                String encodedToken = new JWSBuilder().type(JWT).kid(activeKey.getKid()).jsonContent(refreshToken).sign(jwsAlgorithm, activeKey.getPrivateKey());
+                String encodedToken = encodedTokens.next();
                 res.setRefreshToken(encodedToken);
                 if (refreshToken.getExpiration() != 0) {
                     res.setRefreshExpiresIn(refreshToken.getExpiration() - Time.currentTime());
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.ratelimit;
+
+import org.jboss.logging.Logger;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets of failed logins for each client IP and each client of the realm. Each failure takes one token and
+ * tokens are refilled at constant rate. Login attempts of the source are rejected when its bucket is empty, before any
+ * authenticator runs, so password spraying from few addresses doesn't cost a password hash per attempt.
+ *
+ * Buckets are kept in memory and updated without locking. Optionally they are shared with other cluster nodes through
+ * {@link LoginRateLimitStore}. Both limits are disabled unless configured.
+ */
+public class DefaultLoginRateLimiter implements LoginRateLimiter {
+    private static final Logger logger = Logger.getLogger(DefaultLoginRateLimiter.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    protected final Limit ipLimit;
+    protected final Limit clientLimit;
+    protected final int maxEntries;
+    protected final boolean replicate;
+
+    protected final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    protected final AtomicLong failures = new AtomicLong();
+    protected final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Bucket of {@code capacity} tokens refilled with {@code refillPerMinute} tokens per minute. Zero disables the limit.
+     */
+    public static class Limit {
+        protected final int capacity;
+        protected final long interval;
+
+        public Limit(int capacity, int refillPerMinute) {
+            this.capacity = capacity;
+            this.interval = refillPerMinute > 0 ? Math.max(1, 60000L / refillPerMinute) : 0;
+        }
+
+        public boolean isEnabled() {
+            return capacity > 0 && interval > 0;
+        }
+    }
+
+    /**
+     * Instead of the number of tokens, the bucket keeps the time when it's full again. Each failure moves the time by
+     * one refill interval, so the bucket is empty while the time is more than capacity - 1 intervals ahead.
+     */
+    protected static class TokenBucket {
+        protected final AtomicLong fullAt = new AtomicLong();
+
+        protected long waitTime(Limit limit, long currentTime) {
+            long wait = fullAt.get() - currentTime - (limit.capacity - 1) * limit.interval;
+            return wait > 0 ? wait : 0;
+        }
+
+        protected long take(Limit limit, long currentTime) {
+            while (true) {
+                long current = fullAt.get();
+                // never more than a full bucket behind, so failures over the limit don't extend the wait forever
+                long next = Math.min(Math.max(current, currentTime) + limit.interval, currentTime + limit.capacity * limit.interval);
+                if (fullAt.compareAndSet(current, next)) return next;
+            }
+        }
+
+        protected void merge(long otherFullAt) {
+            while (true) {
+                long current = fullAt.get();
+                if (current >= otherFullAt || fullAt.compareAndSet(current, otherFullAt)) return;
+            }
+        }
+
+        protected boolean isFull(long currentTime) {
+            return fullAt.get() <= currentTime;
+        }
+    }
+
+    public DefaultLoginRateLimiter(Limit ipLimit, Limit clientLimit, int maxEntries, boolean replicate) {
+        this.ipLimit = ipLimit;
+        this.clientLimit = clientLimit;
+        this.maxEntries = maxEntries;
+        this.replicate = replicate;
+    }
+
+    @Override
+    public int checkAllowed(KeycloakSession session, RealmModel realm, ClientModel client, ClientConnection clientConnection) {
+        long currentTime = Time.currentTimeMillis();
+        long wait = 0;
+        String ipKey = ipKey(clientConnection);
+        if (ipLimit.isEnabled() && ipKey != null) {
+            wait = waitTime(session, realm, ipKey, ipLimit, currentTime);
+        }
+        String clientKey = clientKey(client);
+        if (clientLimit.isEnabled() && clientKey != null) {
+            wait = Math.max(wait, waitTime(session, realm, clientKey, clientLimit, currentTime));
+        }
+        if (wait == 0) return 0;
+
+        rejected.incrementAndGet();
+        logger.debugv("Login of {0} to client {1} of realm {2} rejected for {3} ms", ipKey, clientKey, realm.getName(), wait);
+        return (int) ((wait + 999) / 1000);
+    }
+
+    @Override
+    public void failedLogin(KeycloakSession session, RealmModel realm, ClientModel client, ClientConnection clientConnection) {
+        long currentTime = Time.currentTimeMillis();
+        failures.incrementAndGet();
+        String ipKey = ipKey(clientConnection);
+        if (ipLimit.isEnabled() && ipKey != null) {
+            take(session, realm, ipKey, ipLimit, currentTime);
+        }
+        String clientKey = clientKey(client);
+        if (clientLimit.isEnabled() && clientKey != null) {
+            take(session, realm, clientKey, clientLimit, currentTime);
+        }
+    }
+
+    protected String ipKey(ClientConnection clientConnection) {
+        return clientConnection == null || clientConnection.getRemoteAddr() == null ? null : "ip:" + clientConnection.getRemoteAddr();
+    }
+
+    protected String clientKey(ClientModel client) {
+        return client == null ? null : "client:" + client.getClientId();
+    }
+
+    protected long waitTime(KeycloakSession session, RealmModel realm, String key, Limit limit, long currentTime) {
+        TokenBucket bucket = buckets.get(realm.getId() + "/" + key);
+        LoginRateLimitStore store = getStore(session);
+        if (store != null) {
+            long replicated = store.getFullAt(realm, key);
+            if (replicated > currentTime) {
+                if (bucket == null) bucket = bucket(realm.getId() + "/" + key, currentTime);
+                if (bucket != null) bucket.merge(replicated);
+            }
+        }
+        return bucket == null ? 0 : bucket.waitTime(limit, currentTime);
+    }
+
+    protected void take(KeycloakSession session, RealmModel realm, String key, Limit limit, long currentTime) {
+        TokenBucket bucket = bucket(realm.getId() + "/" + key, currentTime);
+        if (bucket == null) return;
+        long fullAt = bucket.take(limit, currentTime);
+        LoginRateLimitStore store = getStore(session);
+        if (store != null) {
+            try {
+                store.updateFullAt(realm, key, fullAt);
+            } catch (RuntimeException e) {
+                logger.warnv(e, "Failed to replicate login rate limit of {0}", key);
+            }
+        }
+    }
+
+    protected LoginRateLimitStore getStore(KeycloakSession session) {
+        return replicate ? session.getProvider(LoginRateLimitStore.class) : null;
+    }
+
+    // Returns null if there are too many sources tracked, even after removing the full buckets
+    protected TokenBucket bucket(String key, long currentTime) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) return bucket;
+        if (buckets.size() >= maxEntries) {
+            removeFull(currentTime);
+            if (buckets.size() >= maxEntries) {
+                logger.debugv("Too many login sources tracked, not limiting {0}", key);
+                return null;
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket());
+    }
+
+    protected void removeFull(long currentTime) {
+        for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext(); ) {
+            if (it.next().isFull(currentTime)) it.remove();
+        }
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getTrackedSources() {
+        return buckets.size();
+    }
+
+    @Override
+    public void close() {
+    }
+}
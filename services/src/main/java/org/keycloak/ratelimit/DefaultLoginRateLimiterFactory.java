@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.ratelimit;
+
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+public class DefaultLoginRateLimiterFactory implements LoginRateLimiterFactory {
+    DefaultLoginRateLimiter limiter;
+
+    private DefaultLoginRateLimiter.Limit ipLimit;
+    private DefaultLoginRateLimiter.Limit clientLimit;
+    private int maxEntries;
+    private boolean replicate;
+
+    @Override
+    public LoginRateLimiter create(KeycloakSession session) {
+        return limiter;
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        // Limits are opt-in, each of them is enabled once its capacity and refill rate are configured
+        ipLimit = new DefaultLoginRateLimiter.Limit(config.getInt("ipCapacity", 0), config.getInt("ipRefillPerMinute", 0));
+        clientLimit = new DefaultLoginRateLimiter.Limit(config.getInt("clientCapacity", 0), config.getInt("clientRefillPerMinute", 0));
+        maxEntries = config.getInt("maxEntries", DefaultLoginRateLimiter.DEFAULT_MAX_ENTRIES);
+        replicate = config.getBoolean("replicate", false);
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        limiter = new DefaultLoginRateLimiter(ipLimit, clientLimit, maxEntries, replicate);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getId() {
+        return "default";
+    }
+}
@@ -19,8 +19,11 @@ package org.keycloak.services;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.common.util.MultivaluedHashMap;
+import org.keycloak.events.AsyncEventListenerDispatcher;
+import org.keycloak.keys.DefaultKeyManager;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.PreShutdownEvent;
 import org.keycloak.provider.EnvironmentDependentProviderFactory;
 import org.keycloak.provider.Provider;
 import org.keycloak.provider.ProviderEvent;
@@ -70,6 +73,7 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory, Pr
 
     public void init() {
         serverStartupTimestamp = System.currentTimeMillis();
+        register(DefaultKeyManager.getSignersEvictionListener());
 
         ProviderManager pm = new ProviderManager(getClass().getClassLoader(), Config.scope().getArray("providers"));
         spis.addAll(pm.loadSpis());
@@ -127,6 +131,7 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory, Pr
         }
         factoriesMap = copy;
         for (ProviderFactory factory : undeployed) {
+            AsyncEventListenerDispatcher.closeDispatcher(factory);
             factory.close();
         }
     }
@@ -150,6 +155,7 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory, Pr
         }
         factoriesMap = copy;
         for (ProviderFactory factory : undeployed) {
+            AsyncEventListenerDispatcher.closeDispatcher(factory);
             factory.close();
         }
     }
@@ -351,6 +357,9 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory, Pr
 
     public void close() {
         ProviderManagerRegistry.SINGLETON.setDeployer(null);
+        // Queued events are delivered before the listener factories are closed
+        AsyncEventListenerDispatcher.closeDispatchers(this);
+        publish(new PreShutdownEvent());
         for (Map<String, ProviderFactory> factories : factoriesMap.values()) {
             for (ProviderFactory factory : factories.values()) {
                 factory.close();
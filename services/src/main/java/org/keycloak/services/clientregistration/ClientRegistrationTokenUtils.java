@@ -21,7 +21,6 @@ import org.keycloak.common.util.Time;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.ClientInitialAccessModel;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeyManager;
@@ -77,7 +76,7 @@ public class ClientRegistrationTokenUtils {
 
         PublicKey publicKey = session.keys().getPublicKey(realm, input.getHeader().getKeyId());
 
-        if (!RSAProvider.verify(input, publicKey)) {
+        if (!input.verify(publicKey)) {
             return TokenVerification.error(new RuntimeException("Failed verify token"));
         }
 
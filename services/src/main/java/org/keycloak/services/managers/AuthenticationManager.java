@@ -33,10 +33,11 @@ import org.keycloak.events.Errors;
 import org.keycloak.events.EventBuilder;
 import org.keycloak.events.EventType;
 import org.keycloak.forms.login.LoginFormsProvider;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSSigner;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
-import org.keycloak.models.KeyManager;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
@@ -336,14 +337,13 @@ public class AuthenticationManager {
     }
 
     protected static String encodeToken(KeycloakSession session, RealmModel realm, Object token) {
-        KeyManager.ActiveKey activeKey = session.keys().getActiveKey(realm);
+        JWSSigner signer = session.keys().getActiveSigner(realm, Algorithm.RS256);
 
-        logger.tracef("Encoding token with kid '%s'", activeKey.getKid());
+        logger.tracef("Encoding token with kid '%s'", signer.getKid());
 
         String encodedToken = new JWSBuilder()
-                .kid(activeKey.getKid())
                 .jsonContent(token)
-                .rsa256(activeKey.getPrivateKey());
+                .sign(signer);
         return encodedToken;
     }
 
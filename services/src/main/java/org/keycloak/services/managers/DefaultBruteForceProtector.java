@@ -29,30 +29,60 @@ import org.keycloak.services.ServicesLogger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A single thread will log failures.  This is so that we can avoid concurrent writes as we want an accurate failure count
+ * Failures are logged by worker threads. Failures of each user are always handled by the same worker, so there are no
+ * concurrent writes of the failures of one user as we want an accurate failure count. Each worker has its own bounded
+ * queue and persists the failures in batches of {@link #TRANSACTION_SIZE}.
+ *
+ * As persisting the failures may lag behind during an attack, each failure is also counted in memory right away. The
+ * in-memory count is used to temporarily disable the user until the queued failures of the user are persisted.
+ *
+ * Failures, which don't fit to the full queue, are merged per user into an aggregated failure of the worker and persisted
+ * with its next batch, so other cluster nodes count them as well. Just when the worker already aggregates failures of
+ * {@code maxTrackedUsers} users, the failure is dropped. Dropped failures are never persisted, so they are counted just by
+ * the in-memory count of this node. They are logged and exposed by {@link #getDroppedCount()}.
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class DefaultBruteForceProtector implements Runnable, BruteForceProtector {
+public class DefaultBruteForceProtector implements BruteForceProtector {
     private static final Logger logger = Logger.getLogger(DefaultBruteForceProtector.class);
 
     protected volatile boolean run = true;
     protected int maxDeltaTimeSeconds = 60 * 60 * 12; // 12 hours
     protected KeycloakSessionFactory factory;
-    protected CountDownLatch shutdownLatch = new CountDownLatch(1);
+    protected CountDownLatch shutdownLatch;
 
     protected volatile long failures;
     protected volatile long lastFailure;
     protected volatile long totalTime;
 
-    protected LinkedBlockingQueue<LoginEvent> queue = new LinkedBlockingQueue<LoginEvent>();
     public static final int TRANSACTION_SIZE = 20;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_MAX_TRACKED_USERS = 100000;
+    public static final long CLEANUP_INTERVAL_MILLIS = 2000;
+
+    protected final Shard[] shards;
+    protected final int maxTrackedUsers;
+    protected final Map<String, FailureWindow> windows = new ConcurrentHashMap<>();
+
+    protected final AtomicLong aggregated = new AtomicLong();
+    protected final AtomicLong dropped = new AtomicLong();
+    protected final AtomicLong persisted = new AtomicLong();
+    protected final AtomicLong totalLag = new AtomicLong();
+    protected final AtomicLong maxLag = new AtomicLong();
+    protected final AtomicLong lastCleanup = new AtomicLong();
 
     protected abstract class LoginEvent implements Comparable<LoginEvent> {
         protected final String realmId;
@@ -75,18 +105,98 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
         public ShutdownEvent() {
             super(null, null, null);
         }
+
+        @Override
+        public int compareTo(LoginEvent o) {
+            return o instanceof ShutdownEvent ? 0 : 1;
+        }
     }
 
     protected class FailedLogin extends LoginEvent {
         protected final CountDownLatch latch = new CountDownLatch(1);
+        protected final long queued;
+        protected final FailureWindow window;
+        // more than one for failures aggregated when the queue was full
+        protected final int count;
+
+        public FailedLogin(String realmId, String userId, String ip, FailureWindow window) {
+            this(realmId, userId, ip, window, 1, System.currentTimeMillis());
+        }
 
-        public FailedLogin(String realmId, String userId, String ip) {
+        protected FailedLogin(String realmId, String userId, String ip, FailureWindow window, int count, long queued) {
             super(realmId, userId, ip);
+            this.window = window;
+            this.count = count;
+            this.queued = queued;
+        }
+
+        @Override
+        public int compareTo(LoginEvent o) {
+            return o instanceof ShutdownEvent ? -1 : super.compareTo(o);
+        }
+    }
+
+    /**
+     * In-memory failures of the user, which are counted the same way as the persisted failures.
+     */
+    protected static class FailureWindow {
+        protected final AtomicInteger pending = new AtomicInteger();
+        // some failure was dropped as the queue was full, so memory knows more than the persisted failures
+        protected volatile boolean dropped;
+        protected int numFailures;
+        protected long lastFailure;
+        protected int notBefore;
+
+        protected synchronized void failure(RealmModel realm) {
+            long currentTime = Time.currentTimeMillis();
+            long deltaTime = lastFailure > 0 ? currentTime - lastFailure : 0;
+            if (deltaTime > (long) realm.getMaxDeltaTimeSeconds() * 1000L) {
+                numFailures = 0;
+                dropped = false;
+            }
+            lastFailure = currentTime;
+            numFailures++;
+
+            int waitSeconds = realm.getWaitIncrementSeconds() * (numFailures / realm.getFailureFactor());
+            if (waitSeconds == 0 && deltaTime > 0 && deltaTime < realm.getQuickLoginCheckMilliSeconds()) {
+                waitSeconds = realm.getMinimumQuickLoginWaitSeconds();
+            }
+            if (waitSeconds > 0) {
+                waitSeconds = Math.min(realm.getMaxFailureWaitSeconds(), waitSeconds);
+                notBefore = (int) (currentTime / 1000) + waitSeconds;
+            }
+        }
+
+        protected synchronized boolean isDisabled(int currentTime) {
+            return (pending.get() > 0 || dropped) && currentTime < notBefore;
+        }
+
+        // Once all the failures are persisted and the wait time passed, the persisted failures are enough to disable the user
+        protected synchronized boolean isExpired(long currentTime, int maxDeltaTimeSeconds) {
+            if (pending.get() > 0 || currentTime / 1000 < notBefore) {
+                return false;
+            }
+            return !dropped || currentTime - lastFailure > (long) maxDeltaTimeSeconds * 1000L;
         }
     }
 
     public DefaultBruteForceProtector(KeycloakSessionFactory factory) {
+        this(factory, 1, DEFAULT_QUEUE_SIZE, DEFAULT_MAX_TRACKED_USERS);
+    }
+
+    /**
+     * @param workers number of worker threads
+     * @param queueSize max number of queued failures for each worker
+     * @param maxTrackedUsers max number of users with failures counted in memory
+     */
+    public DefaultBruteForceProtector(KeycloakSessionFactory factory, int workers, int queueSize, int maxTrackedUsers) {
         this.factory = factory;
+        this.maxTrackedUsers = maxTrackedUsers;
+        this.shards = new Shard[workers];
+        for (int i = 0; i < workers; i++) {
+            shards[i] = new Shard(queueSize);
+        }
+        this.shutdownLatch = new CountDownLatch(workers);
     }
 
     public void failure(KeycloakSession session, LoginEvent event) {
@@ -115,7 +225,10 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
                     userLoginFailure.clearFailures();
                 }
             }
-            userLoginFailure.incrementFailures();
+            int count = event instanceof FailedLogin ? ((FailedLogin) event).count : 1;
+            for (int i = 0; i < count; i++) {
+                userLoginFailure.incrementFailures();
+            }
             logger.debugv("new num failures: {0}", userLoginFailure.getNumFailures());
 
             int waitSeconds = realm.getWaitIncrementSeconds() *  (userLoginFailure.getNumFailures() / realm.getFailureFactor());
@@ -153,68 +266,170 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     }
 
     public void start() {
-        new Thread(this, "Brute Force Protector").start();
+        for (int i = 0; i < shards.length; i++) {
+            new Thread(shards[i], shards.length == 1 ? "Brute Force Protector" : "Brute Force Protector " + i).start();
+        }
     }
 
     public void shutdown() {
         run = false;
         try {
-            queue.offer(new ShutdownEvent());
+            for (Shard shard : shards) {
+                shard.queue.offer(new ShutdownEvent(), 1, TimeUnit.SECONDS);
+            }
             shutdownLatch.await(10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void run() {
-        final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
-        try {
-            while (run) {
-                try {
-                    LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
-                    if (take == null) {
-                        continue;
-                    }
+    protected Shard getShard(String userId) {
+        return shards[(userId.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    protected class Shard implements Runnable {
+
+        protected final BlockingQueue<LoginEvent> queue;
+        // failures, which didn't fit to the queue, by realm and user
+        protected final Map<String, FailedLogin> overflow = new ConcurrentHashMap<>();
+
+        protected Shard(int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        /**
+         * Merges the failure into the aggregated failure of the user, which is persisted with the next batch.
+         *
+         * @return false if the failure was dropped, as failures of too many users are aggregated already
+         */
+        protected boolean addOverflow(FailedLogin event) {
+            String key = event.realmId + "/" + event.userId;
+            if (overflow.size() >= maxTrackedUsers && !overflow.containsKey(key)) {
+                return false;
+            }
+            overflow.merge(key, event, (previous, added) -> new FailedLogin(added.realmId, added.userId, added.ip, added.window,
+                    previous.count + added.count, previous.queued));
+            return true;
+        }
+
+        protected void drainOverflow(List<LoginEvent> events, int maxEvents) {
+            Iterator<String> keys = overflow.keySet().iterator();
+            for (int i = 0; i < maxEvents && keys.hasNext(); i++) {
+                FailedLogin event = overflow.remove(keys.next());
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        }
+
+        public void run() {
+            final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
+            try {
+                while (run) {
                     try {
-                        events.add(take);
-                        queue.drainTo(events, TRANSACTION_SIZE);
-                        Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
-                        KeycloakSession session = factory.create();
-                        session.getTransactionManager().begin();
+                        // cleanup runs even when the queue is never idle, otherwise tracked users would fill up during an attack
+                        removeExpiredWindowsIfDue();
+                        LoginEvent take = overflow.isEmpty() ? queue.poll(CLEANUP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS) : queue.poll();
+                        if (take == null && overflow.isEmpty()) {
+                            continue;
+                        }
                         try {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    failure(session, event);
-                                } else if (event instanceof ShutdownEvent) {
-                                    run = false;
-                                }
+                            if (take != null) {
+                                events.add(take);
+                                queue.drainTo(events, TRANSACTION_SIZE);
                             }
-                            session.getTransactionManager().commit();
-                        } catch (Exception e) {
-                            session.getTransactionManager().rollback();
-                            throw e;
-                        } finally {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    ((FailedLogin) event).latch.countDown();
+                            drainOverflow(events, TRANSACTION_SIZE);
+                            Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
+                            KeycloakSession session = factory.create();
+                            session.getTransactionManager().begin();
+                            try {
+                                for (LoginEvent event : events) {
+                                    if (event instanceof FailedLogin) {
+                                        failure(session, event);
+                                    } else if (event instanceof ShutdownEvent) {
+                                        run = false;
+                                    }
                                 }
+                                session.getTransactionManager().commit();
+                            } catch (Exception e) {
+                                session.getTransactionManager().rollback();
+                                throw e;
+                            } finally {
+                                for (LoginEvent event : events) {
+                                    if (event instanceof FailedLogin) {
+                                        processed((FailedLogin) event);
+                                    }
+                                }
+                                events.clear();
+                                session.close();
                             }
-                            events.clear();
-                            session.close();
+                        } catch (Exception e) {
+                            ServicesLogger.LOGGER.failedProcessingType(e);
                         }
-                    } catch (Exception e) {
-                        ServicesLogger.LOGGER.failedProcessingType(e);
+                    } catch (InterruptedException e) {
+                        break;
                     }
-                } catch (InterruptedException e) {
-                    break;
                 }
+            } finally {
+                shutdownLatch.countDown();
+            }
+        }
+    }
+
+    protected void processed(FailedLogin event) {
+        if (event.window != null) {
+            event.window.pending.addAndGet(-event.count);
+        }
+        event.latch.countDown();
+
+        long lag = System.currentTimeMillis() - event.queued;
+        persisted.addAndGet(event.count);
+        totalLag.addAndGet(lag);
+        long max = maxLag.get();
+        while (lag > max && !maxLag.compareAndSet(max, lag)) {
+            max = maxLag.get();
+        }
+    }
+
+    // Windows are shared by all the shards, so just one of them runs the cleanup in each interval
+    protected void removeExpiredWindowsIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastCleanup.get();
+        if (now - last >= CLEANUP_INTERVAL_MILLIS && lastCleanup.compareAndSet(last, now)) {
+            removeExpiredWindows();
+        }
+    }
+
+    protected void removeExpiredWindows() {
+        long currentTime = Time.currentTimeMillis();
+        for (Iterator<FailureWindow> it = windows.values().iterator(); it.hasNext(); ) {
+            if (it.next().isExpired(currentTime, maxDeltaTimeSeconds)) {
+                it.remove();
             }
-        } finally {
-            shutdownLatch.countDown();
         }
     }
 
-    protected void logFailure(LoginEvent event) {
+    @Override
+    public void clearFailures(RealmModel realm, String userId) {
+        windows.remove(realm.getId() + "/" + userId);
+    }
+
+    @Override
+    public void clearAllFailures(RealmModel realm) {
+        String prefix = realm.getId() + "/";
+        windows.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    protected FailureWindow getFailureWindow(RealmModel realm, UserModel user) {
+        String key = realm.getId() + "/" + user.getId();
+        FailureWindow window = windows.get(key);
+        if (window == null && windows.size() < maxTrackedUsers) {
+            window = windows.computeIfAbsent(key, k -> new FailureWindow());
+        }
+        return window;
+    }
+
+    protected synchronized void logFailure(LoginEvent event) {
         ServicesLogger.LOGGER.loginFailure(event.userId, event.ip);
         failures++;
         long delta = 0;
@@ -231,9 +446,35 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
 
     @Override
     public void failedLogin(RealmModel realm, UserModel user, ClientConnection clientConnection) {
+        FailureWindow window = getFailureWindow(realm, user);
+        if (window != null) {
+            window.pending.incrementAndGet();
+            window.failure(realm);
+        }
+
+        FailedLogin event = new FailedLogin(realm.getId(), user.getId(), clientConnection.getRemoteAddr(), window);
+        Shard shard = getShard(user.getId());
+        if (!shard.queue.offer(event)) {
+            // Queue is full, the failure is persisted with the next batch without waiting for it
+            if (shard.addOverflow(event)) {
+                long count = aggregated.incrementAndGet();
+                logger.debugv("Brute force protector queue is full, failure of user {0} aggregated, aggregated={1}", user.getId(), count);
+                return;
+            }
+
+            // The failure is counted in memory only
+            if (window != null) {
+                window.dropped = true;
+                window.pending.decrementAndGet();
+            }
+            long count = dropped.incrementAndGet();
+            if (count == 1 || count % 1000 == 0) {
+                logger.warnv("Brute force protector can't keep up, failure of user {0} not persisted. Dropped {1} failures so far", user.getId(), count);
+            }
+            return;
+        }
+
         try {
-            FailedLogin event = new FailedLogin(realm.getId(), user.getId(), clientConnection.getRemoteAddr());
-            queue.offer(event);
             // wait a minimum of seconds for type to process so that a hacker
             // cannot flood with failed logins and overwhelm the queue and not have notBefore updated to block next requests
             // todo failure HTTP responses should be queued via async HTTP
@@ -245,10 +486,18 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
 
     @Override
     public boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, UserModel user) {
+        int currTime = (int) (Time.currentTimeMillis() / 1000);
+
+        // Failures, which are not persisted yet
+        FailureWindow window = windows.get(realm.getId() + "/" + user.getId());
+        if (window != null && window.isDisabled(currTime)) {
+            logger.debugv("Temporarily disabled by failures not persisted yet, user {0}", user.getId());
+            return true;
+        }
+
         UserLoginFailureModel failure = session.sessions().getUserLoginFailure(realm, user.getId());
 
         if (failure != null) {
-            int currTime = (int) (Time.currentTimeMillis() / 1000);
             int failedLoginNotBefore = failure.getFailedLoginNotBefore();
             if (currTime < failedLoginNotBefore) {
                 logger.debugv("Current: {0} notBefore: {1}", currTime, failedLoginNotBefore);
@@ -259,6 +508,52 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
 
         return false;
     }
+
+    /**
+     * @return number of failures waiting to be persisted
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Shard shard : shards) {
+            depth += shard.queue.size();
+        }
+        return depth;
+    }
+
+    public long getPersistedCount() {
+        return persisted.get();
+    }
+
+    /**
+     * @return number of failures, which didn't fit to the queue and were aggregated to be persisted with a later batch
+     */
+    public long getAggregatedCount() {
+        return aggregated.get();
+    }
+
+    /**
+     * @return number of failures, which were not persisted as the queue was full and too many users had aggregated failures
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return average time in milliseconds from the failure to its persisting
+     */
+    public double getAverageLag() {
+        long count = persisted.get();
+        return count == 0 ? 0 : (double) totalLag.get() / count;
+    }
+
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    public int getTrackedUsers() {
+        return windows.size();
+    }
+
     @Override
     public void close() {
 
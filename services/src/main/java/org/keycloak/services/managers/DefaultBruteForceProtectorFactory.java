@@ -28,6 +28,10 @@ import org.keycloak.models.KeycloakSessionFactory;
 public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFactory {
     DefaultBruteForceProtector protector;
 
+    private int workers;
+    private int queueSize;
+    private int maxTrackedUsers;
+
     @Override
     public BruteForceProtector create(KeycloakSession session) {
         return protector;
@@ -35,12 +39,14 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
 
     @Override
     public void init(Config.Scope config) {
-
+        workers = config.getInt("workers", Math.min(4, Runtime.getRuntime().availableProcessors()));
+        queueSize = config.getInt("queueSize", DefaultBruteForceProtector.DEFAULT_QUEUE_SIZE);
+        maxTrackedUsers = config.getInt("maxTrackedUsers", DefaultBruteForceProtector.DEFAULT_MAX_TRACKED_USERS);
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
-        protector = new DefaultBruteForceProtector(factory);
+        protector = new DefaultBruteForceProtector(factory, workers, queueSize, maxTrackedUsers);
         protector.start();
 
     }
@@ -19,6 +19,7 @@ package org.keycloak.services.resources.admin;
 import org.jboss.logging.Logger;
 import org.keycloak.common.ClientConnection;
 import org.keycloak.common.util.Time;
+import org.keycloak.events.AsyncEventListenerDispatcher;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.admin.AdminEvent;
@@ -62,7 +63,7 @@ public class AdminEventBuilder {
         if (realm.getEventsListeners() != null && !realm.getEventsListeners().isEmpty()) {
             this.listeners = new LinkedList<>();
             for (String id : realm.getEventsListeners()) {
-                EventListenerProvider listener = session.getProvider(EventListenerProvider.class, id);
+                EventListenerProvider listener = AsyncEventListenerDispatcher.getListener(session, id);
                 if (listener != null) {
                     listeners.add(listener);
                 } else {
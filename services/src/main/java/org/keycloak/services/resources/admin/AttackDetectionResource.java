@@ -121,6 +121,7 @@ public class AttackDetectionResource {
             session.sessions().removeUserLoginFailure(realm, userId);
             adminEvent.operation(OperationType.DELETE).resourcePath(uriInfo).success();
         }
+        session.getProvider(BruteForceProtector.class).clearFailures(realm, userId);
     }
 
     /**
@@ -135,6 +136,7 @@ public class AttackDetectionResource {
         auth.requireManage();
 
         session.sessions().removeAllUserLoginFailures(realm);
+        session.getProvider(BruteForceProtector.class).clearAllFailures(realm);
         adminEvent.operation(OperationType.DELETE).resourcePath(uriInfo).success();
     }
 
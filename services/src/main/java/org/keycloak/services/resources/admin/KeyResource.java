@@ -28,9 +28,10 @@ import org.keycloak.representations.idm.KeysMetadataRepresentation;
 import javax.ws.rs.GET;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -56,10 +57,16 @@ public class KeyResource {
         KeyManager keystore = session.keys();
 
         KeysMetadataRepresentation keys = new KeysMetadataRepresentation();
-        keys.setActive(Collections.singletonMap(KeyMetadata.Type.RSA.name(), keystore.getActiveKey(realm).getKid()));
+        Map<String, String> active = new HashMap<>();
+        active.put(KeyMetadata.Type.RSA.name(), keystore.getActiveKey(realm).getKid());
 
         List<KeysMetadataRepresentation.KeyMetadataRepresentation> l = new LinkedList<>();
         for (KeyMetadata m : session.keys().getKeys(realm, true)) {
+            // keys are ordered by priority, so the first active elliptic curve key is the active one
+            if (m.getType() == KeyMetadata.Type.EC && m.getStatus() == KeyMetadata.Status.ACTIVE && !active.containsKey(KeyMetadata.Type.EC.name())) {
+                active.put(KeyMetadata.Type.EC.name(), m.getKid());
+            }
+
             KeysMetadataRepresentation.KeyMetadataRepresentation r = new KeysMetadataRepresentation.KeyMetadataRepresentation();
             r.setProviderId(m.getProviderId());
             r.setProviderPriority(m.getProviderPriority());
@@ -71,6 +78,7 @@ public class KeyResource {
             l.add(r);
         }
 
+        keys.setActive(active);
         keys.setKeys(l);
 
         return keys;
@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.authorization.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.authorization.AuthorizationProvider;
+import org.keycloak.authorization.DefaultAuthorizationProviderFactory;
+import org.keycloak.authorization.attribute.Attributes;
+import org.keycloak.authorization.identity.Identity;
+import org.keycloak.authorization.model.Policy;
+import org.keycloak.authorization.model.Resource;
+import org.keycloak.authorization.model.ResourceServer;
+import org.keycloak.authorization.policy.evaluation.PolicyIndex;
+import org.keycloak.authorization.policy.provider.PolicyProvider;
+import org.keycloak.authorization.policy.provider.PolicyProviderFactory;
+import org.keycloak.authorization.store.PolicyStore;
+import org.keycloak.authorization.store.ResourceStore;
+import org.keycloak.authorization.store.StoreFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DecisionCacheTest {
+
+    private final ResourceServer resourceServer = proxy(ResourceServer.class, values("getId", "rs", "getClientId", "client"));
+    private final DecisionCache cache = new DecisionCache(100, 300);
+    private final Map<String, Policy> policies = new HashMap<>();
+    private final AtomicReference<PolicyIndex> index = new AtomicReference<>();
+    private final List<Permission> permissions = Arrays.asList(new Permission("document", "document", new HashSet<>(Arrays.asList("read"))));
+
+    @Test
+    public void testHit() {
+        AuthorizationProvider authorization = authorization(policy("user-policy", "user", Collections.emptyMap()));
+
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).get());
+        DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).put(permissions);
+
+        // new token of the same identity
+        Assert.assertEquals(permissions, DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-2", "user"), DecisionCache.ALL_PERMISSIONS).get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testMissForOtherIdentityOrPermissions() {
+        AuthorizationProvider authorization = authorization(policy("user-policy", "user", Collections.emptyMap()));
+
+        DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).put(permissions);
+
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("bob", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).get());
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "admin"), DecisionCache.ALL_PERMISSIONS).get());
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), "document:[read]").get());
+    }
+
+    @Test
+    public void testMissAfterResourceServerChanged() {
+        AuthorizationProvider authorization = authorization(policy("user-policy", "user", Collections.emptyMap()));
+
+        DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).put(permissions);
+        index.set(PolicyIndex.build(resourceServer, stores()));
+
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNotCachedUnlessPoliciesOptIn() {
+        AuthorizationProvider authorization = authorization(policy("user-policy", "user", Collections.emptyMap()), policy("time-policy", "time", Collections.emptyMap()));
+
+        DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).put(permissions);
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).get());
+        Assert.assertEquals(2, cache.getUncacheableCount());
+        Assert.assertEquals(0, cache.size());
+
+        policy("time-policy", "time", Collections.singletonMap(PolicyProviderFactory.DECISION_CACHEABLE_CONFIG, "true"));
+        index.set(PolicyIndex.build(resourceServer, stores()));
+
+        DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).put(permissions);
+        Assert.assertEquals(permissions, DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).get());
+    }
+
+    @Test
+    public void testNotCachedWithoutPolicyIndex() {
+        AuthorizationProvider authorization = authorization(policy("user-policy", "user", Collections.emptyMap()));
+        index.set(null);
+
+        DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).put(permissions);
+        Assert.assertNull(DecisionCache.lookup(authorization, resourceServer, identity("alice", "jti-1", "user"), DecisionCache.ALL_PERMISSIONS).get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private Policy policy(String id, String type, Map<String, String> config) {
+        Policy policy = proxy(Policy.class, values("getId", id, "getName", id, "getType", type, "getConfig", config, "getResources", Collections.<Resource>emptySet(),
+                "getScopes", Collections.emptySet(), "getAssociatedPolicies", Collections.emptySet()));
+        policies.put(id, policy);
+        return policy;
+    }
+
+    private StoreFactory stores() {
+        ResourceStore resourceStore = proxy(ResourceStore.class, values("findByResourceServer", Collections.emptyList()));
+        PolicyStore policyStore = proxy(PolicyStore.class, (proxy, method, args) -> {
+            if (method.getName().equals("findById")) return policies.get(args[0]);
+            if (method.getName().equals("findByResourceServer")) return new ArrayList<>(policies.values());
+            return null;
+        });
+        return proxy(StoreFactory.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getResourceStore": return resourceStore;
+                case "getPolicyStore": return policyStore;
+                case "getPolicyIndex": return index.get();
+                default: return null;
+            }
+        });
+    }
+
+    private AuthorizationProvider authorization(Policy... policies) {
+        StoreFactory storeFactory = stores();
+        index.set(PolicyIndex.build(resourceServer, storeFactory));
+
+        List<PolicyProviderFactory> providerFactories = Arrays.asList(providerFactory("user"), providerFactory("time"));
+        DefaultAuthorizationProviderFactory authorizationFactory = new DefaultAuthorizationProviderFactory() {
+            @Override
+            public DecisionCache getDecisionCache() {
+                return cache;
+            }
+        };
+        KeycloakSessionFactory sessionFactory = proxy(KeycloakSessionFactory.class, (proxy, method, args) -> {
+            if (method.getName().equals("getProviderFactories")) return providerFactories;
+            if (method.getName().equals("getProviderFactory")) return authorizationFactory;
+            return null;
+        });
+        KeycloakSession session = proxy(KeycloakSession.class, values("getKeycloakSessionFactory", sessionFactory));
+
+        return new AuthorizationProvider(session, null, storeFactory);
+    }
+
+    private static PolicyProviderFactory providerFactory(String type) {
+        return proxy(PolicyProviderFactory.class, (proxy, method, args) -> {
+            if (method.getName().equals("getId")) return type;
+            if (method.getName().equals("isDecisionCacheable")) {
+                // same as the time policy
+                return !type.equals("time") || Boolean.parseBoolean(((Policy) args[0]).getConfig().get(PolicyProviderFactory.DECISION_CACHEABLE_CONFIG));
+            }
+            return null;
+        });
+    }
+
+    private static Identity identity(String id, String jti, String role) {
+        Map<String, Collection<String>> attributes = new HashMap<>();
+        attributes.put("sub", Arrays.asList(id));
+        attributes.put("jti", Arrays.asList(jti));
+        attributes.put("kc.realm.roles", Arrays.asList("uma_authorization", role));
+        Attributes claims = Attributes.from(attributes);
+        return proxy(Identity.class, values("getId", id, "getAttributes", claims));
+    }
+
+    private static Map<String, Object> values(Object... keyValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            values.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return values;
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> values) {
+        return proxy(type, (proxy, method, args) -> {
+            if (method.getName().equals("equals")) return proxy == args[0];
+            if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+            return values.get(method.getName());
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.credential;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.credential.hash.Pbkdf2PasswordHashProvider;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PasswordHashingExecutorTest {
+
+    private PasswordHashingExecutor executor;
+
+    @After
+    public void after() {
+        executor.close();
+    }
+
+    @Test
+    public void testVerify() {
+        executor = new PasswordHashingExecutor(2, 10, 5);
+        Pbkdf2PasswordHashProvider hash = new Pbkdf2PasswordHashProvider();
+        CredentialModel credential = hash.encode("password", 1000);
+
+        Assert.assertTrue(executor.execute(() -> hash.verify("password", credential)));
+        Assert.assertFalse(executor.execute(() -> hash.verify("invalid", credential)));
+        Assert.assertEquals(2, executor.getHashedCount());
+        Assert.assertTrue(executor.getMaxHashTime() > 0);
+        Assert.assertTrue(executor.getAverageHashTime() <= executor.getMaxHashTime());
+    }
+
+    @Test
+    public void testRejectedWhenSaturated() throws Exception {
+        executor = new PasswordHashingExecutor(1, 1, 7);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> running = executor.submit(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = executor.submit(() -> true);
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        try {
+            executor.execute(() -> true);
+            Assert.fail("Expected rejection");
+        } catch (ServiceUnavailableException e) {
+            Assert.assertEquals(503, e.getResponse().getStatus());
+            Assert.assertEquals("7", e.getResponse().getHeaderString("Retry-After"));
+        }
+        Assert.assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        Assert.assertTrue(running.get(10, TimeUnit.SECONDS));
+        Assert.assertTrue(queued.get(10, TimeUnit.SECONDS));
+        Assert.assertTrue(executor.execute(() -> true));
+    }
+
+    @Test
+    public void testExceptionPropagated() {
+        executor = new PasswordHashingExecutor(1, 1, 5);
+        try {
+            executor.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+            Assert.fail("Expected exception");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.credential;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+
+public class VerifiedCredentialCacheTest {
+
+    @After
+    public void after() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testVerified() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(10);
+        CredentialModel credential = credential("c1", "hash1");
+
+        Assert.assertFalse(cache.isVerified(credential, "password"));
+        cache.verified(credential, "password", 60);
+
+        Assert.assertTrue(cache.isVerified(credential, "password"));
+        Assert.assertFalse(cache.isVerified(credential, "invalid"));
+        Assert.assertFalse(cache.isVerified(credential("c2", "hash1"), "password"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testCredentialChanged() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(10);
+        cache.verified(credential("c1", "hash1"), "password", 60);
+
+        Assert.assertFalse(cache.isVerified(credential("c1", "hash2"), "password"));
+        // entry of the old revision is gone
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(cache.isVerified(credential("c1", "hash1"), "password"));
+
+        cache.verified(credential("c1", "hash1"), "password", 60);
+        cache.invalidate("c1");
+        Assert.assertFalse(cache.isVerified(credential("c1", "hash1"), "password"));
+    }
+
+    @Test
+    public void testExpiration() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(1);
+        cache.verified(credential("c1", "hash1"), "password", 60);
+
+        // full
+        cache.verified(credential("c2", "hash2"), "password", 60);
+        Assert.assertFalse(cache.isVerified(credential("c2", "hash2"), "password"));
+
+        Time.setOffset(61);
+        Assert.assertFalse(cache.isVerified(credential("c1", "hash1"), "password"));
+
+        cache.verified(credential("c1", "hash1"), "password", 60);
+        Time.setOffset(122);
+        cache.verified(credential("c2", "hash2"), "password", 60);
+        Assert.assertTrue(cache.isVerified(credential("c2", "hash2"), "password"));
+    }
+
+    private static CredentialModel credential(String id, String value) {
+        CredentialModel credential = new CredentialModel();
+        credential.setId(id);
+        credential.setAlgorithm("pbkdf2");
+        credential.setHashIterations(20000);
+        credential.setValue(value);
+        return credential;
+    }
+}
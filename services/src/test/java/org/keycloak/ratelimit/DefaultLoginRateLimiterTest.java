@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.ratelimit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DefaultLoginRateLimiterTest {
+
+    private final RealmModel realm = proxy(RealmModel.class, "getId", "realm");
+    private final ClientModel client = proxy(ClientModel.class, "getClientId", "app");
+    private final ClientModel otherClient = proxy(ClientModel.class, "getClientId", "other-app");
+
+    @After
+    public void after() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testIpLimit() {
+        // 3 failures, then one failure each 10 seconds
+        DefaultLoginRateLimiter limiter = limiter(new DefaultLoginRateLimiter.Limit(3, 6), new DefaultLoginRateLimiter.Limit(0, 0));
+        ClientConnection connection = connection("10.0.0.1");
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, limiter.checkAllowed(null, realm, client, connection));
+            limiter.failedLogin(null, realm, client, connection);
+        }
+        int retryAfter = limiter.checkAllowed(null, realm, client, connection);
+        Assert.assertTrue(retryAfter > 0 && retryAfter <= 10);
+        Assert.assertEquals(0, limiter.checkAllowed(null, realm, client, connection("10.0.0.2")));
+        Assert.assertEquals(1, limiter.getRejectedCount());
+
+        // one token refilled
+        Time.setOffset(10);
+        Assert.assertEquals(0, limiter.checkAllowed(null, realm, client, connection));
+        limiter.failedLogin(null, realm, client, connection);
+        Assert.assertTrue(limiter.checkAllowed(null, realm, client, connection) > 0);
+
+        Time.setOffset(40);
+        Assert.assertEquals(0, limiter.checkAllowed(null, realm, client, connection));
+    }
+
+    @Test
+    public void testFailuresOverLimitDontExtendWait() {
+        DefaultLoginRateLimiter limiter = limiter(new DefaultLoginRateLimiter.Limit(2, 6), new DefaultLoginRateLimiter.Limit(0, 0));
+        ClientConnection connection = connection("10.0.0.1");
+        for (int i = 0; i < 100; i++) {
+            limiter.failedLogin(null, realm, client, connection);
+        }
+        Assert.assertTrue(limiter.checkAllowed(null, realm, client, connection) <= 10);
+    }
+
+    @Test
+    public void testClientLimitAcrossAddresses() {
+        DefaultLoginRateLimiter limiter = limiter(new DefaultLoginRateLimiter.Limit(0, 0), new DefaultLoginRateLimiter.Limit(5, 60));
+        for (int i = 0; i < 5; i++) {
+            limiter.failedLogin(null, realm, client, connection("10.0.0." + i));
+        }
+        Assert.assertTrue(limiter.checkAllowed(null, realm, client, connection("10.0.1.1")) > 0);
+        Assert.assertEquals(0, limiter.checkAllowed(null, realm, otherClient, connection("10.0.1.1")));
+    }
+
+    @Test
+    public void testMaxEntries() {
+        DefaultLoginRateLimiter limiter = new DefaultLoginRateLimiter(new DefaultLoginRateLimiter.Limit(1, 60), new DefaultLoginRateLimiter.Limit(0, 0), 2, false);
+        limiter.failedLogin(null, realm, client, connection("10.0.0.1"));
+        limiter.failedLogin(null, realm, client, connection("10.0.0.2"));
+        limiter.failedLogin(null, realm, client, connection("10.0.0.3"));
+        Assert.assertEquals(2, limiter.getTrackedSources());
+        Assert.assertEquals(0, limiter.checkAllowed(null, realm, client, connection("10.0.0.3")));
+
+        // full buckets are removed to make room
+        Time.setOffset(2);
+        limiter.failedLogin(null, realm, client, connection("10.0.0.3"));
+        Assert.assertEquals(1, limiter.getTrackedSources());
+        Assert.assertTrue(limiter.checkAllowed(null, realm, client, connection("10.0.0.3")) > 0);
+    }
+
+    @Test
+    public void testReplicatedState() {
+        Map<String, Long> stored = new HashMap<>();
+        LoginRateLimitStore store = new LoginRateLimitStore() {
+            @Override
+            public long getFullAt(RealmModel realm, String key) {
+                Long fullAt = stored.get(key);
+                return fullAt != null ? fullAt : 0;
+            }
+
+            @Override
+            public void updateFullAt(RealmModel realm, String key, long fullAt) {
+                stored.merge(key, fullAt, Math::max);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        KeycloakSession session = proxy(KeycloakSession.class, "getProvider", store);
+        ClientConnection connection = connection("10.0.0.1");
+
+        DefaultLoginRateLimiter node1 = new DefaultLoginRateLimiter(new DefaultLoginRateLimiter.Limit(2, 6), new DefaultLoginRateLimiter.Limit(0, 0), DefaultLoginRateLimiter.DEFAULT_MAX_ENTRIES, true);
+        DefaultLoginRateLimiter node2 = new DefaultLoginRateLimiter(new DefaultLoginRateLimiter.Limit(2, 6), new DefaultLoginRateLimiter.Limit(0, 0), DefaultLoginRateLimiter.DEFAULT_MAX_ENTRIES, true);
+        node1.failedLogin(session, realm, client, connection);
+        node1.failedLogin(session, realm, client, connection);
+        Assert.assertTrue(node2.checkAllowed(session, realm, client, connection) > 0);
+
+        Time.setOffset(20);
+        Assert.assertEquals(0, node2.checkAllowed(session, realm, client, connection));
+    }
+
+    private static DefaultLoginRateLimiter limiter(DefaultLoginRateLimiter.Limit ipLimit, DefaultLoginRateLimiter.Limit clientLimit) {
+        return new DefaultLoginRateLimiter(ipLimit, clientLimit, DefaultLoginRateLimiter.DEFAULT_MAX_ENTRIES, false);
+    }
+
+    private static ClientConnection connection(String remoteAddr) {
+        return proxy(ClientConnection.class, "getRemoteAddr", remoteAddr);
+    }
+
+    private static <T> T proxy(Class<T> type, String method, Object value) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type },
+                (proxy, m, args) -> m.getName().equals(method) ? value : null));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.services.managers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.RealmModel;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BruteForceFailureWindowTest {
+
+    @After
+    public void after() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testDisabledWhilePending() {
+        RealmModel realm = realm(3, 60);
+        DefaultBruteForceProtector.FailureWindow window = new DefaultBruteForceProtector.FailureWindow();
+
+        for (int i = 0; i < 2; i++) {
+            window.pending.incrementAndGet();
+            window.failure(realm);
+        }
+        Assert.assertFalse(window.isDisabled(currentTime()));
+
+        window.pending.incrementAndGet();
+        window.failure(realm);
+        Assert.assertTrue(window.isDisabled(currentTime()));
+        Assert.assertFalse(window.isDisabled(currentTime() + 61));
+
+        // Persisted failures are used once all the failures are persisted
+        window.pending.set(0);
+        Assert.assertFalse(window.isDisabled(currentTime()));
+
+        window.dropped = true;
+        Assert.assertTrue(window.isDisabled(currentTime()));
+    }
+
+    @Test
+    public void testFailuresClearedAfterMaxDelta() {
+        RealmModel realm = realm(2, 60);
+        DefaultBruteForceProtector.FailureWindow window = new DefaultBruteForceProtector.FailureWindow();
+        window.pending.incrementAndGet();
+        window.failure(realm);
+
+        Time.setOffset(3601);
+        window.failure(realm);
+        Assert.assertEquals(1, window.numFailures);
+        Assert.assertFalse(window.isDisabled(currentTime()));
+        Assert.assertFalse(window.isExpired(Time.currentTimeMillis(), 3600));
+
+        window.pending.set(0);
+        Assert.assertTrue(window.isExpired(Time.currentTimeMillis() + 3601 * 1000L, 3600));
+    }
+
+    @Test
+    public void testDroppedClearedAfterMaxDelta() {
+        RealmModel realm = realm(2, 60);
+        DefaultBruteForceProtector.FailureWindow window = new DefaultBruteForceProtector.FailureWindow();
+        window.failure(realm);
+        window.dropped = true;
+        Assert.assertFalse(window.isExpired(Time.currentTimeMillis(), 3600));
+
+        Time.setOffset(3601);
+        window.failure(realm);
+        Assert.assertFalse(window.dropped);
+        Assert.assertFalse(window.isDisabled(currentTime()));
+    }
+
+    private static int currentTime() {
+        return (int) (Time.currentTimeMillis() / 1000);
+    }
+
+    private static RealmModel realm(int failureFactor, int waitIncrement) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("getFailureFactor", failureFactor);
+        values.put("getWaitIncrementSeconds", waitIncrement);
+        values.put("getMaxDeltaTimeSeconds", 3600);
+        values.put("getMaxFailureWaitSeconds", 900);
+        values.put("getQuickLoginCheckMilliSeconds", 0L);
+        values.put("getMinimumQuickLoginWaitSeconds", 60);
+        return (RealmModel) Proxy.newProxyInstance(RealmModel.class.getClassLoader(), new Class[] { RealmModel.class },
+                (proxy, method, args) -> values.get(method.getName()));
+    }
+}
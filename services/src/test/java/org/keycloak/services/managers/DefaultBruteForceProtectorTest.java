@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DefaultBruteForceProtectorTest {
+
+    @Test
+    public void testOverflowAggregatedPerUser() {
+        DefaultBruteForceProtector protector = new DefaultBruteForceProtector(null, 1, 1, 10);
+        DefaultBruteForceProtector.Shard shard = protector.shards[0];
+        DefaultBruteForceProtector.FailureWindow window = new DefaultBruteForceProtector.FailureWindow();
+        window.pending.set(3);
+
+        Assert.assertTrue(shard.addOverflow(protector.new FailedLogin("realm", "user1", "10.0.0.1", window)));
+        Assert.assertTrue(shard.addOverflow(protector.new FailedLogin("realm", "user1", "10.0.0.2", window)));
+        Assert.assertTrue(shard.addOverflow(protector.new FailedLogin("realm", "user2", "10.0.0.3", null)));
+
+        List<DefaultBruteForceProtector.LoginEvent> events = new ArrayList<>();
+        shard.drainOverflow(events, 10);
+        Assert.assertEquals(2, events.size());
+        Assert.assertTrue(shard.overflow.isEmpty());
+
+        DefaultBruteForceProtector.FailedLogin user1 = null;
+        for (DefaultBruteForceProtector.LoginEvent event : events) {
+            if (event.userId.equals("user1")) {
+                user1 = (DefaultBruteForceProtector.FailedLogin) event;
+            }
+        }
+        Assert.assertNotNull(user1);
+        Assert.assertEquals(2, user1.count);
+        Assert.assertEquals("10.0.0.2", user1.ip);
+
+        // all the aggregated failures are persisted at once
+        protector.processed(user1);
+        Assert.assertEquals(1, window.pending.get());
+        Assert.assertEquals(2, protector.getPersistedCount());
+    }
+
+    @Test
+    public void testOverflowBoundedByTrackedUsers() {
+        DefaultBruteForceProtector protector = new DefaultBruteForceProtector(null, 1, 1, 2);
+        DefaultBruteForceProtector.Shard shard = protector.shards[0];
+
+        Assert.assertTrue(shard.addOverflow(protector.new FailedLogin("realm", "user1", "10.0.0.1", null)));
+        Assert.assertTrue(shard.addOverflow(protector.new FailedLogin("realm", "user2", "10.0.0.1", null)));
+        Assert.assertFalse(shard.addOverflow(protector.new FailedLogin("realm", "user3", "10.0.0.1", null)));
+
+        // users already aggregated are still merged
+        Assert.assertTrue(shard.addOverflow(protector.new FailedLogin("realm", "user1", "10.0.0.1", null)));
+
+        List<DefaultBruteForceProtector.LoginEvent> events = new ArrayList<>();
+        shard.drainOverflow(events, 1);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(1, shard.overflow.size());
+    }
+}
@@ -358,6 +358,65 @@ public class LDAPSyncTest {
         }
     }
 
+    @Test
+    public void test05ParallelSyncInBatches() {
+        KeycloakSession session = keycloakRule.startSession();
+        String origPagination;
+        String origBatchSize;
+
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+
+            // Remove all users from model
+            for (UserModel user : session.userStorage().getUsers(testRealm, true)) {
+                session.userStorage().removeUser(testRealm, user);
+            }
+
+            // Import users in batches of 2 users by 3 workers. Pagination disabled due to ApacheDS pagination bug
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+            origPagination = providerModel.getConfig().get(LDAPConstants.PAGINATION);
+            origBatchSize = providerModel.getConfig().get(LDAPConstants.BATCH_SIZE_FOR_SYNC);
+            providerModel.getConfig().put(LDAPConstants.PAGINATION, "false");
+            providerModel.getConfig().put(LDAPConstants.BATCH_SIZE_FOR_SYNC, "2");
+            providerModel.getConfig().put(LDAPConstants.SYNC_WORKERS, "3");
+            testRealm.updateUserFederationProvider(providerModel);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+
+        session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+
+            KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+            UserFederationSyncResult syncResult = new UsersSyncManager().syncAllUsers(sessionFactory, "test", providerModel);
+            Assert.assertEquals(0, syncResult.getFailed());
+            Assert.assertTrue(syncResult.getAdded() >= 5);
+        } finally {
+            keycloakRule.stopSession(session, false);
+        }
+
+        session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+
+            FederationTestUtils.assertUserImported(session.users(), testRealm, "user1", "User1FN", "User1LN", "user1@email.org", "121");
+            FederationTestUtils.assertUserImported(session.users(), testRealm, "user2", "User2FN", "User2LN", "user2@email.org", "122");
+            FederationTestUtils.assertUserImported(session.users(), testRealm, "user3", "User3FN", "User3LN", "user3@email.org", "123");
+            FederationTestUtils.assertUserImported(session.users(), testRealm, "user4", "User4FN", "User4LN", "user4@email.org", "124");
+
+            // Revert config changes
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+            providerModel.getConfig().put(LDAPConstants.PAGINATION, origPagination);
+            providerModel.getConfig().put(LDAPConstants.BATCH_SIZE_FOR_SYNC, origBatchSize);
+            providerModel.getConfig().remove(LDAPConstants.SYNC_WORKERS);
+            testRealm.updateUserFederationProvider(providerModel);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+    }
+
     private void sleep(int time) {
         try {
             Thread.sleep(time);
@@ -100,6 +100,7 @@ public class KeycloakServerDeploymentProcessor implements DeploymentUnitProcesso
             st.addDependency(cacheContainerService.append("sessions"));
             st.addDependency(cacheContainerService.append("offlineSessions"));
             st.addDependency(cacheContainerService.append("loginFailures"));
+            st.addDependency(cacheContainerService.append("loginRateLimits"));
             st.addDependency(cacheContainerService.append("work"));
             st.addDependency(cacheContainerService.append("authorization"));
             st.addDependency(cacheContainerService.append("keys"));